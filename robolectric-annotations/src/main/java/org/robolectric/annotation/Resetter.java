@@ -1,8 +1,16 @@
 package org.robolectric.annotation;
 
+/**
+ * Indicates a static method which resets its shadow's static state between tests.
+ */
 @java.lang.annotation.Documented
 @java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)
 @java.lang.annotation.Target({java.lang.annotation.ElementType.METHOD})
 public @interface Resetter {
-
+  /**
+   * If true, the resetter runs before every test. Otherwise, it's skipped when none of its shadow's code has run
+   * since it last ran, so this must be set for resetters of state which other code changes, like the SDK's own
+   * static fields.
+   */
+  boolean always() default false;
 }
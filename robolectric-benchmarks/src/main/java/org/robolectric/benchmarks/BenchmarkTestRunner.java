@@ -0,0 +1,64 @@
+package org.robolectric.benchmarks;
+
+import org.junit.runner.Request;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.SdkConfig;
+import org.robolectric.TestRunners;
+import org.robolectric.bytecode.ShadowMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs {@link TestRunnerWorkload} against the robolectric module's test app, like {@link TestRunners.WithDefaults},
+ * and builds the class loaders and environments the other benchmarks need the same way.
+ */
+public class BenchmarkTestRunner extends TestRunners.WithDefaults {
+  public BenchmarkTestRunner(Class<?> testClass) throws InitializationError {
+    super(testClass);
+  }
+
+  static BenchmarkTestRunner create() {
+    try {
+      return new BenchmarkTestRunner(TestRunnerWorkload.class);
+    } catch (InitializationError e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return a new instrumenting class loader for the default SDK, which hasn't loaded anything yet
+   */
+  ClassLoader newClassLoader() {
+    return createRobolectricClassLoader(createSetup(), SdkConfig.getDefaultSdk());
+  }
+
+  ShadowMap getShadowMap() {
+    return createShadowMap();
+  }
+
+  /**
+   * @return a runner for just one of {@link TestRunnerWorkload}'s tests; it can be run over and over
+   */
+  static Runner runnerFor(String methodName) {
+    return Request.method(TestRunnerWorkload.class, methodName).getRunner();
+  }
+
+  static void run(Runner runner) {
+    final List<Failure> failures = new ArrayList<Failure>();
+    RunNotifier notifier = new RunNotifier();
+    notifier.addListener(new RunListener() {
+      @Override public void testFailure(Failure failure) {
+        failures.add(failure);
+      }
+    });
+    runner.run(notifier);
+    if (!failures.isEmpty()) {
+      throw new RuntimeException(failures.get(0).getException());
+    }
+  }
+}
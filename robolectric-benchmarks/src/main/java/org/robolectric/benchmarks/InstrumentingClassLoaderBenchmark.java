@@ -0,0 +1,60 @@
+package org.robolectric.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a handful of commonly used android-all classes, and everything they depend on, into a new
+ * {@link org.robolectric.bytecode.AsmInstrumentingClassLoader}, which has to read and instrument each of them. Set the
+ * {@code robolectric.classCacheDir} or {@code robolectric.instrumentedJarDir} system properties with
+ * {@code -jvmArgsAppend} to see what those save.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class InstrumentingClassLoaderBenchmark {
+  private static final String[] CLASS_NAMES = {
+      "android.app.Activity",
+      "android.content.res.Resources",
+      "android.database.sqlite.SQLiteDatabase",
+      "android.view.View",
+      "android.widget.LinearLayout",
+      "android.widget.TextView",
+  };
+
+  private BenchmarkTestRunner runner;
+  private ClassLoader classLoader;
+
+  @Setup(Level.Trial)
+  public void setUpRunner() {
+    runner = BenchmarkTestRunner.create();
+  }
+
+  @Setup(Level.Invocation)
+  public void setUpClassLoader() {
+    classLoader = runner.newClassLoader();
+  }
+
+  @Benchmark
+  public Class<?>[] loadClasses() throws ClassNotFoundException {
+    Class<?>[] classes = new Class<?>[CLASS_NAMES.length];
+    for (int i = 0; i < CLASS_NAMES.length; i++) {
+      classes[i] = classLoader.loadClass(CLASS_NAMES[i]);
+    }
+    return classes;
+  }
+}
@@ -0,0 +1,42 @@
+package org.robolectric.benchmarks;
+
+import org.junit.runner.Runner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inflates the test app's main layout through {@link org.robolectric.shadows.RoboLayoutInflater}. Inflation needs an
+ * application, so it's done in batches of {@link TestRunnerWorkload#INFLATIONS} inside a test; each inflation's time
+ * includes that share of {@link TestRunnerBenchmark}'s per-test overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LayoutInflationBenchmark {
+  private Runner inflateLayouts;
+
+  @Setup
+  public void setUp() {
+    inflateLayouts = BenchmarkTestRunner.runnerFor("inflateLayouts");
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TestRunnerWorkload.INFLATIONS)
+  public void inflateLayout() {
+    BenchmarkTestRunner.run(inflateLayouts);
+  }
+}
@@ -0,0 +1,43 @@
+package org.robolectric.benchmarks;
+
+import org.junit.runner.Runner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A query's round trip from {@link android.database.sqlite.SQLiteDatabase} through
+ * {@link org.robolectric.shadows.ShadowSQLiteConnection} to sqlite4java and back. Cursors need the system's resources,
+ * so queries are made in batches of {@link TestRunnerWorkload#QUERIES} inside a test; each query's time includes that
+ * share of {@link TestRunnerBenchmark}'s per-test overhead, and of filling the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SQLiteBenchmark {
+  private Runner queryDatabase;
+
+  @Setup
+  public void setUp() {
+    queryDatabase = BenchmarkTestRunner.runnerFor("queryDatabase");
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TestRunnerWorkload.QUERIES)
+  public void query() {
+    BenchmarkTestRunner.run(queryDatabase);
+  }
+}
@@ -0,0 +1,17 @@
+package org.robolectric.benchmarks;
+
+import android.graphics.Paint;
+import org.robolectric.util.ShadowExtractor;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Looks up a {@link Paint}'s shadow; run inside Robolectric's class loader by {@link ShadowWranglerBenchmark}.
+ */
+public class ShadowOfBenchmark implements Callable<Object> {
+  private final Paint paint = new Paint();
+
+  @Override public Object call() {
+    return ShadowExtractor.extract(paint);
+  }
+}
@@ -0,0 +1,84 @@
+package org.robolectric.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.SdkConfig;
+import org.robolectric.SdkEnvironment;
+import org.robolectric.bytecode.ClassHandler;
+import org.robolectric.bytecode.ShadowMap;
+import org.robolectric.bytecode.ShadowWrangler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What every call to an instrumented method costs: finding its plan, cached or not, running a plan which calls a
+ * shadow method, and getting an instance's shadow. Shadows are extracted by {@link ShadowOfBenchmark}, which has to
+ * run in Robolectric's class loader; it's a {@link Callable}, which both sides of the class loader share, so calling it
+ * costs no more than it would inside a test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ShadowWranglerBenchmark {
+  private static final String GET_COLOR = "android/graphics/Paint/getColor()I";
+  private static final Object[] NO_PARAMS = new Object[0];
+
+  private ShadowMap shadowMap;
+  private SdkEnvironment sdkEnvironment;
+  private ShadowWrangler shadowWrangler;
+  private Class<?> paintClass;
+  private Object paint;
+  private Object shadowPaint;
+  private ClassHandler.Plan getColorPlan;
+  private Callable<Object> shadowExtraction;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    BenchmarkTestRunner runner = BenchmarkTestRunner.create();
+    shadowMap = runner.getShadowMap();
+    sdkEnvironment = runner.createSdkEnvironment(SdkConfig.getDefaultSdk());
+    shadowWrangler = new ShadowWrangler(shadowMap, sdkEnvironment.getSdkConfig());
+    RobolectricTestRunner.injectClassHandler(sdkEnvironment.getRobolectricClassLoader(), shadowWrangler);
+
+    paintClass = sdkEnvironment.getRobolectricClassLoader().loadClass("android.graphics.Paint");
+    paint = paintClass.newInstance();
+    shadowPaint = shadowWrangler.createShadowFor(paint);
+    getColorPlan = shadowWrangler.methodInvoked(GET_COLOR, false, paintClass, -1);
+    if (getColorPlan == null) throw new IllegalStateException("no shadow method for " + GET_COLOR);
+    shadowExtraction = (Callable<Object>) sdkEnvironment.bootstrappedClass(ShadowOfBenchmark.class).newInstance();
+  }
+
+  @Benchmark
+  public ClassHandler.Plan methodInvoked() {
+    return shadowWrangler.methodInvoked(GET_COLOR, false, paintClass, -1);
+  }
+
+  @Benchmark
+  public ClassHandler.Plan methodInvokedForFirstTime() {
+    return new ShadowWrangler(shadowMap, sdkEnvironment.getSdkConfig()).methodInvoked(GET_COLOR, false, paintClass, -1);
+  }
+
+  @Benchmark
+  public Object runShadowMethodPlan() throws Throwable {
+    return getColorPlan.run(paint, shadowPaint, NO_PARAMS);
+  }
+
+  @Benchmark
+  public Object extractShadow() throws Exception {
+    return shadowExtraction.call();
+  }
+}
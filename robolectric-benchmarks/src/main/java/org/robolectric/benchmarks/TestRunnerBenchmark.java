@@ -0,0 +1,39 @@
+package org.robolectric.benchmarks;
+
+import org.junit.runner.Runner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link org.robolectric.RobolectricTestRunner} costs each test, once its environment has been created: resetting
+ * static state, setting up the application and its resources, and tearing it all down again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TestRunnerBenchmark {
+  private Runner emptyTest;
+
+  @Setup
+  public void setUp() {
+    emptyTest = BenchmarkTestRunner.runnerFor("emptyTest");
+  }
+
+  @Benchmark
+  public void runEmptyTest() {
+    BenchmarkTestRunner.run(emptyTest);
+  }
+}
@@ -0,0 +1,58 @@
+package org.robolectric.benchmarks;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.view.LayoutInflater;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.R;
+import org.robolectric.Robolectric;
+
+/**
+ * Tests which {@link TestRunnerBenchmark}, {@link LayoutInflationBenchmark} and {@link SQLiteBenchmark} run, one at a
+ * time, through {@link BenchmarkTestRunner}.
+ */
+@RunWith(BenchmarkTestRunner.class)
+public class TestRunnerWorkload {
+  public static final int INFLATIONS = 100;
+  public static final int QUERIES = 1000;
+  private static final int ROWS = 100;
+
+  @Test
+  public void emptyTest() {
+  }
+
+  @Test
+  public void inflateLayouts() {
+    LayoutInflater inflater = LayoutInflater.from(Robolectric.application);
+    for (int i = 0; i < INFLATIONS; i++) {
+      inflater.inflate(R.layout.main, null);
+    }
+  }
+
+  @Test
+  public void queryDatabase() {
+    SQLiteDatabase database = SQLiteDatabase.create(null);
+    try {
+      database.execSQL("CREATE TABLE benchmark (_id INTEGER PRIMARY KEY, name TEXT)");
+      for (int i = 0; i < ROWS; i++) {
+        ContentValues values = new ContentValues();
+        values.put("_id", i);
+        values.put("name", "row " + i);
+        database.insert("benchmark", null, values);
+      }
+
+      for (int i = 0; i < QUERIES; i++) {
+        Cursor cursor = database.rawQuery("SELECT name FROM benchmark WHERE _id = ?", new String[] {String.valueOf(i % ROWS)});
+        try {
+          if (!cursor.moveToFirst()) throw new AssertionError("no row " + i % ROWS);
+        } finally {
+          cursor.close();
+        }
+      }
+    } finally {
+      database.close();
+    }
+  }
+}
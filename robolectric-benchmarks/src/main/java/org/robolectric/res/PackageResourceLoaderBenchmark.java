@@ -0,0 +1,45 @@
+package org.robolectric.res;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.util.TestUtil.testResources;
+
+/**
+ * Loads all of the robolectric module's test app's resources, as the first test using them does. Run it from the
+ * project's directory or this module's, so the test app can be found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PackageResourceLoaderBenchmark {
+  /** Whether XML resources are kept as {@link XmlBlock}s rather than DOM documents. */
+  @Param({"false", "true"})
+  public boolean compiledXml;
+
+  @Setup
+  public void setUp() {
+    System.setProperty("robolectric.compiledXmlResources", String.valueOf(compiledXml));
+  }
+
+  @Benchmark
+  public PackageResourceLoader loadResources() {
+    PackageResourceLoader resourceLoader = new PackageResourceLoader(testResources());
+    resourceLoader.initialize();
+    return resourceLoader;
+  }
+}
@@ -0,0 +1,51 @@
+package org.robolectric.res;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the best of a resource's values for a device's qualifiers, as every resource lookup does. Lives in this
+ * package to get at {@link ResBunch.Values}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ResBunchBenchmark {
+  private static final String[] VALUE_QUALIFIERS = {
+      null, "land", "v14", "land-v14", "en", "en-rUS", "sw600dp", "sw600dp-land", "xlarge", "night", "hdpi",
+  };
+
+  private ResBunch.Values values;
+
+  @Setup
+  public void setUp() {
+    values = new ResBunch.Values();
+    for (String qualifiers : VALUE_QUALIFIERS) {
+      TypedResource<String> value = new TypedResource<String>("value for " + qualifiers, ResType.CHAR_SEQUENCE);
+      values.add(new ResBunch.Value(qualifiers, value, null));
+    }
+  }
+
+  @Benchmark
+  public ResBunch.Value pickDefault() {
+    return ResBunch.pick(values, "");
+  }
+
+  @Benchmark
+  public ResBunch.Value pickBestMatch() {
+    return ResBunch.pick(values, "en-rUS-sw600dp-land-hdpi-v18");
+  }
+}
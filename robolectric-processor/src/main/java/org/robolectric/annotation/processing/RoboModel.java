@@ -47,6 +47,11 @@ public class RoboModel {
     /** TypeElement representing the @Implements annotation. */
   final TypeElement IMPLEMENTS;
 
+  /** Bits of the flags recorded for each shadow in the generated shadow index; ShadowMap reads the same bits. */
+  static final int CALL_THROUGH_BY_DEFAULT = 1;
+  static final int INHERIT_IMPLEMENTATION_METHODS = 2;
+  static final int LOOSE_SIGNATURES = 4;
+
   /** Convenience reference for the processing environment's elements utilities. */
   private final Elements elements;
   /** Convenience reference for the processing environment's types utilities. */
@@ -232,6 +237,37 @@ public class RoboModel {
     imports.add("org.robolectric.util.ShadowExtractor");
   }
 
+  /**
+   * Returns the name the class loader knows the given type by, e.g.
+   * <code>android.view.View$OnClickListener</code>.
+   */
+  public String getBinaryName(TypeElement type) {
+    return elements.getBinaryName(type).toString();
+  }
+
+  /**
+   * Returns the boolean attributes of the shadow's <code>@Implements</code>
+   * annotation, defaults included, as shadow index flags.
+   */
+  public int getShadowFlags(TypeElement shadowType) {
+    int flags = 0;
+    AnnotationMirror am = getImplementsMirror(shadowType);
+    for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(am).entrySet()) {
+      if (!Boolean.TRUE.equals(entry.getValue().getValue())) {
+        continue;
+      }
+      String name = entry.getKey().getSimpleName().toString();
+      if (name.equals("callThroughByDefault")) {
+        flags |= CALL_THROUGH_BY_DEFAULT;
+      } else if (name.equals("inheritImplementationMethods")) {
+        flags |= INHERIT_IMPLEMENTATION_METHODS;
+      } else if (name.equals("looseSignatures")) {
+        flags |= LOOSE_SIGNATURES;
+      }
+    }
+    return flags;
+  }
+
   public NavigableMap<TypeElement, TypeElement> getShadowMap() {
     return Maps.filterEntries(shadowTypes, new Predicate<Entry<TypeElement,TypeElement>> () {
       @Override
@@ -112,6 +112,24 @@ public class RoboProcessor extends AbstractProcessor {
         writer.print("\n    " + model.getReferentFor(shadow) + ".class");
       }
       writer.println("\n  };\n");
+      writer.println("  /**");
+      writer.println("   * Shadowed class, shadow class and @Implements flags of each shadow, for ShadowMap. Kept apart from");
+      writer.println("   * DEFAULT_SHADOW_CLASSES so that reading it doesn't load every shadow class.");
+      writer.println("   */");
+      writer.println("  public static class ShadowIndex {");
+      writer.print  ("    public static final String[] ENTRIES = {");
+      firstIteration = true;
+      for (Entry<TypeElement,TypeElement> entry: model.getShadowMap().entrySet()) {
+        if (firstIteration) {
+          firstIteration = false;
+        } else {
+          writer.print(",");
+        }
+        writer.print("\n      \"" + model.getBinaryName(entry.getValue()) + "\", \""
+            + model.getBinaryName(entry.getKey()) + "\", \"" + model.getShadowFlags(entry.getKey()) + "\"");
+      }
+      writer.println("\n    };");
+      writer.println("  }\n");
       for (Entry<TypeElement,TypeElement> entry: model.getShadowMap().entrySet()) {
         final TypeElement actualType = entry.getValue();
         if (!actualType.getModifiers().contains(Modifier.PUBLIC)) {
@@ -146,6 +164,33 @@ public class RoboProcessor extends AbstractProcessor {
       }
       writer.println("  }\n");
 
+      writer.println("  /**");
+      writer.println("   * Shadows with @Resetter methods, and a way to call each one by index, for resetting just the shadows");
+      writer.println("   * which need it without loading the others.");
+      writer.println("   */");
+      writer.println("  public static class Resetters {");
+      writer.print  ("    public static final String[] SHADOW_CLASS_NAMES = {");
+      firstIteration = true;
+      for (TypeElement shadow : model.resetterMap.keySet()) {
+        if (firstIteration) {
+          firstIteration = false;
+        } else {
+          writer.print(",");
+        }
+        writer.print("\n      \"" + model.getBinaryName(shadow) + "\"");
+      }
+      writer.println("\n    };\n");
+      writer.println("    public static void reset(int index) {");
+      writer.println("      switch (index) {");
+      int index = 0;
+      for (Entry<TypeElement,ExecutableElement> entry: model.resetterMap.entrySet()) {
+        writer.println("        case " + index++ + ": " + model.getReferentFor(entry.getKey()) + "." + entry.getValue().getSimpleName() + "(); break;");
+      }
+      writer.println("        default: throw new IllegalArgumentException(\"no resetter \" + index);");
+      writer.println("      }");
+      writer.println("    }");
+      writer.println("  }\n");
+
       writer.println("  @SuppressWarnings({\"unchecked\"})");
       writer.println("  public static <P, R> P shadowOf_(R instance) {");
       writer.println("    return (P) ShadowExtractor.extract(instance);");
@@ -84,6 +84,20 @@ public class RoboProcessorTest {
       .generatesSources(forResource("org/robolectric/Robolectric_ClassNameOnly.java"));
   }
   
+  @Test
+  public void generatedFile_shouldRecordShadowFlagsInIndex() {
+    ASSERT.about(javaSources())
+      .that(ImmutableList.of(
+          ROBO_SOURCE,
+          SHADOW_EXTRACTOR_SOURCE,
+          forResource("org/robolectric/annotation/processing/shadows/ShadowDummy.java"),
+          forResource("org/robolectric/annotation/processing/shadows/ShadowFlaggedDummy.java")))
+      .processedWith(new RoboProcessor())
+      .compilesWithoutError()
+      .and()
+      .generatesSources(forResource("org/robolectric/Robolectric_ShadowIndexFlags.java"));
+  }
+
   @Test
   public void shouldGracefullyHandleUnrecognisedAnnotation() {
     ASSERT.about(javaSources())
@@ -23,6 +23,21 @@ public class Shadows {
     ShadowInnerProtected.class,
     ShadowPrivate.class
   };
+
+  /**
+   * Shadowed class, shadow class and @Implements flags of each shadow, for ShadowMap. Kept apart from
+   * DEFAULT_SHADOW_CLASSES so that reading it doesn't load every shadow class.
+   */
+  public static class ShadowIndex {
+    public static final String[] ENTRIES = {
+      "org.robolectric.annotation.processing.objects.Dummy", "org.robolectric.annotation.processing.shadows.ShadowDummy", "1",
+      "org.robolectric.annotation.processing.objects.OuterDummy2", "org.robolectric.annotation.processing.shadows.ShadowOuterDummy2", "1",
+      "org.robolectric.annotation.processing.objects.OuterDummy2$InnerPackage", "org.robolectric.annotation.processing.shadows.ShadowOuterDummy2$ShadowInnerPackage", "1",
+      "org.robolectric.annotation.processing.objects.OuterDummy2$InnerPrivate", "org.robolectric.annotation.processing.shadows.ShadowOuterDummy2$ShadowInnerPrivate", "1",
+      "org.robolectric.annotation.processing.objects.OuterDummy2$InnerProtected", "org.robolectric.annotation.processing.shadows.ShadowOuterDummy2$ShadowInnerProtected", "1",
+      "org.robolectric.annotation.processing.objects.Private", "org.robolectric.annotation.processing.shadows.ShadowPrivate", "1"
+    };
+  }
   
   public static ShadowDummy shadowOf(Dummy actual) {
     return (ShadowDummy) shadowOf_(actual);
@@ -36,6 +51,25 @@ public class Shadows {
     ShadowDummy.resetter_method();
     ShadowPrivate.resetMethod();
   }
+  
+  /**
+   * Shadows with @Resetter methods, and a way to call each one by index, for resetting just the shadows
+   * which need it without loading the others.
+   */
+  public static class Resetters {
+    public static final String[] SHADOW_CLASS_NAMES = {
+      "org.robolectric.annotation.processing.shadows.ShadowDummy",
+      "org.robolectric.annotation.processing.shadows.ShadowPrivate"
+    };
+
+    public static void reset(int index) {
+      switch (index) {
+        case 0: ShadowDummy.resetter_method(); break;
+        case 1: ShadowPrivate.resetMethod(); break;
+        default: throw new IllegalArgumentException("no resetter " + index);
+      }
+    }
+  }
 
   @SuppressWarnings({"unchecked"})
   public static <P, R> P shadowOf_(R instance) {
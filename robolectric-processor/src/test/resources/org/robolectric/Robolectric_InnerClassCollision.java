@@ -23,6 +23,21 @@ public class Shadows {
     ShadowUniqueDummy.ShadowInnerDummy.class,
     ShadowUniqueInnerDummy.class
   };
+
+  /**
+   * Shadowed class, shadow class and @Implements flags of each shadow, for ShadowMap. Kept apart from
+   * DEFAULT_SHADOW_CLASSES so that reading it doesn't load every shadow class.
+   */
+  public static class ShadowIndex {
+    public static final String[] ENTRIES = {
+      "org.robolectric.annotation.processing.objects.Dummy", "org.robolectric.annotation.processing.shadows.ShadowDummy", "1",
+      "org.robolectric.annotation.processing.objects.OuterDummy", "org.robolectric.annotation.processing.shadows.ShadowOuterDummy", "1",
+      "org.robolectric.annotation.processing.objects.OuterDummy$InnerDummy", "org.robolectric.annotation.processing.shadows.ShadowOuterDummy$ShadowInnerDummy", "1",
+      "org.robolectric.annotation.processing.objects.UniqueDummy", "org.robolectric.annotation.processing.shadows.ShadowUniqueDummy", "1",
+      "org.robolectric.annotation.processing.objects.UniqueDummy$InnerDummy", "org.robolectric.annotation.processing.shadows.ShadowUniqueDummy$ShadowInnerDummy", "1",
+      "org.robolectric.annotation.processing.objects.UniqueDummy$UniqueInnerDummy", "org.robolectric.annotation.processing.shadows.ShadowUniqueDummy$ShadowUniqueInnerDummy", "1"
+    };
+  }
   
   public static ShadowDummy shadowOf(Dummy actual) {
     return (ShadowDummy) shadowOf_(actual);
@@ -51,6 +66,23 @@ public class Shadows {
   public static void reset() {
     ShadowDummy.resetter_method();
   }
+  
+  /**
+   * Shadows with @Resetter methods, and a way to call each one by index, for resetting just the shadows
+   * which need it without loading the others.
+   */
+  public static class Resetters {
+    public static final String[] SHADOW_CLASS_NAMES = {
+      "org.robolectric.annotation.processing.shadows.ShadowDummy"
+    };
+
+    public static void reset(int index) {
+      switch (index) {
+        case 0: ShadowDummy.resetter_method(); break;
+        default: throw new IllegalArgumentException("no resetter " + index);
+      }
+    }
+  }
 
   @SuppressWarnings({"unchecked"})
   public static <P, R> P shadowOf_(R instance) {
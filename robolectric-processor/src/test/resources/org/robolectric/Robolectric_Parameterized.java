@@ -15,6 +15,17 @@ public class Shadows {
     ShadowDummy.class,
     ShadowParameterizedDummy.class
   };
+
+  /**
+   * Shadowed class, shadow class and @Implements flags of each shadow, for ShadowMap. Kept apart from
+   * DEFAULT_SHADOW_CLASSES so that reading it doesn't load every shadow class.
+   */
+  public static class ShadowIndex {
+    public static final String[] ENTRIES = {
+      "org.robolectric.annotation.processing.objects.Dummy", "org.robolectric.annotation.processing.shadows.ShadowDummy", "1",
+      "org.robolectric.annotation.processing.objects.ParameterizedDummy", "org.robolectric.annotation.processing.shadows.ShadowParameterizedDummy", "1"
+    };
+  }
   
   public static ShadowDummy shadowOf(Dummy actual) {
     return (ShadowDummy) shadowOf_(actual);
@@ -27,6 +38,23 @@ public class Shadows {
   public static void reset() {
     ShadowDummy.resetter_method();
   }
+  
+  /**
+   * Shadows with @Resetter methods, and a way to call each one by index, for resetting just the shadows
+   * which need it without loading the others.
+   */
+  public static class Resetters {
+    public static final String[] SHADOW_CLASS_NAMES = {
+      "org.robolectric.annotation.processing.shadows.ShadowDummy"
+    };
+
+    public static void reset(int index) {
+      switch (index) {
+        case 0: ShadowDummy.resetter_method(); break;
+        default: throw new IllegalArgumentException("no resetter " + index);
+      }
+    }
+  }
 
   @SuppressWarnings({"unchecked"})
   public static <P, R> P shadowOf_(R instance) {
@@ -0,0 +1,9 @@
+package org.robolectric.util;
+
+/**
+ * Implemented by every class Robolectric instruments, so that {@link ShadowExtractor} can get at an instance's
+ * shadow without reflection.
+ */
+public interface ShadowedObject {
+  Object $$robo$getData();
+}
@@ -0,0 +1,107 @@
+package org.robolectric;
+
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link RobolectricTestRunner}'s test methods on a fixed pool of worker threads.
+ *
+ * Each worker gets its own {@link SdkEnvironment} (see {@link #currentWorkerIndex()}), so Robolectric's static state
+ * is never shared between concurrently running tests. Pools are shared JVM-wide and their threads live as long as the
+ * JVM does: an environment is always used by the same thread, which matters to code that remembers the thread it was
+ * first loaded on, like {@link org.robolectric.shadows.ShadowLooper}.
+ *
+ * Anything loaded outside the environment is still shared, as are files and other external state; test classes which
+ * rely on those not changing underneath them shouldn't be run this way.
+ *
+ * Enabled by setting the {@code robolectric.threads} system property to a number greater than one.
+ */
+public class ParallelTestScheduler implements RunnerScheduler {
+  private static final Map<Integer, ExecutorService> EXECUTORS_BY_THREAD_COUNT = new HashMap<Integer, ExecutorService>();
+  private static final AtomicInteger NEXT_WORKER_INDEX = new AtomicInteger();
+
+  private final ExecutorService executor;
+  private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+  public ParallelTestScheduler(int threadCount) {
+    this.executor = getExecutor(threadCount);
+  }
+
+  /**
+   * @return the number of worker threads requested by the {@code robolectric.threads} system property, or 1
+   */
+  public static int getThreadCount() {
+    String threads = System.getProperty("robolectric.threads");
+    if (threads == null) return 1;
+    return "auto".equals(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+  }
+
+  /**
+   * @return the JVM-wide index of the worker the current thread is, or -1 if it isn't a worker
+   */
+  public static int currentWorkerIndex() {
+    Thread thread = Thread.currentThread();
+    return thread instanceof WorkerThread ? ((WorkerThread) thread).index : -1;
+  }
+
+  private static ExecutorService getExecutor(int threadCount) {
+    synchronized (EXECUTORS_BY_THREAD_COUNT) {
+      ExecutorService executor = EXECUTORS_BY_THREAD_COUNT.get(threadCount);
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+          @Override public Thread newThread(Runnable runnable) {
+            return new WorkerThread(runnable, NEXT_WORKER_INDEX.getAndIncrement());
+          }
+        });
+        EXECUTORS_BY_THREAD_COUNT.put(threadCount, executor);
+      }
+      return executor;
+    }
+  }
+
+  @Override
+  public void schedule(Runnable childStatement) {
+    futures.add(executor.submit(childStatement));
+  }
+
+  @Override
+  public void finished() {
+    Throwable failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        // test failures are reported to the RunNotifier; anything else escaped the runner itself
+        if (failure == null) failure = e.getCause();
+      }
+    }
+    futures.clear();
+
+    if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+    if (failure instanceof Error) throw (Error) failure;
+    if (failure != null) throw new RuntimeException(failure);
+  }
+
+  private static class WorkerThread extends Thread {
+    private final int index;
+
+    WorkerThread(Runnable runnable, int index) {
+      super(runnable, "robolectric-worker-" + index);
+      this.index = index;
+      setDaemon(true);
+    }
+  }
+}
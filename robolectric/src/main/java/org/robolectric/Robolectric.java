@@ -18,6 +18,7 @@ import org.robolectric.annotation.Implements;
 import org.robolectric.bytecode.DirectObjectMarker;
 import org.robolectric.bytecode.InstrumentingClassLoader;
 import org.robolectric.bytecode.RobolectricInternals;
+import org.robolectric.internal.ShadowResetter;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.builder.RobolectricPackageManager;
@@ -417,7 +418,7 @@ public class Robolectric {
     Robolectric.packageManager = null;
     Robolectric.activityThread = null;
 
-    Shadows.reset();
+    ShadowResetter.reset();
   }
 
   public static <T extends Service> ServiceController<T> buildService(Class<T> serviceClass) {
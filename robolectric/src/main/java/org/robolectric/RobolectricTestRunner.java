@@ -15,40 +15,52 @@ import org.robolectric.annotation.*;
 import org.robolectric.bytecode.*;
 import org.robolectric.internal.ParallelUniverse;
 import org.robolectric.internal.ParallelUniverseInterface;
+import org.robolectric.internal.TestTimingReport;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.res.*;
 import org.robolectric.util.AnnotationUtil;
-import org.robolectric.util.Pair;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.*;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Installs a {@link org.robolectric.bytecode.InstrumentingClassLoader} and
  * {@link org.robolectric.res.ResourceLoader} in order to
  * provide a simulation of the Android runtime environment.
+ *
+ * Test methods run one at a time unless the {@code robolectric.threads} system property asks for more; see
+ * {@link ParallelTestScheduler}.
  */
 public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   private static final Map<Class<? extends RobolectricTestRunner>, EnvHolder> envHoldersByTestRunner = new HashMap<Class<? extends RobolectricTestRunner>, EnvHolder>();
-  private static Map<Pair<AndroidManifest, SdkConfig>, ResourceLoader> resourceLoadersByManifestAndConfig = new HashMap<Pair<AndroidManifest, SdkConfig>, ResourceLoader>();
+  private static final Map<ResourcePath, PackageResourceLoader> packageResourceLoadersByPath = new HashMap<ResourcePath, PackageResourceLoader>();
+  private static final SdkEnvironmentPool sdkEnvironmentPool = new SdkEnvironmentPool(SdkEnvironmentPool.getDefaultCapacity());
+  private static final List<TestTimingListener> testTimingListeners = new CopyOnWriteArrayList<TestTimingListener>();
   private static ShadowMap mainShadowMap;
   private final EnvHolder envHolder;
-  private TestLifecycle<Application> testLifecycle;
+  // keyed by thread rather than thread-local, since ParallelTestScheduler's workers outlive the runner
+  private final Map<Thread, TestLifecycle<Application>> testLifecycles = new ConcurrentHashMap<Thread, TestLifecycle<Application>>();
   private DependencyResolver dependencyResolver;
 
   static {
     new SecureRandom(); // this starts up the Poller SunPKCS11-Darwin thread early, outside of any Robolectric classloader
+
+    if (TestTimingReport.isEnabled()) {
+      addTestTimingListener(TestTimingReport.getInstance());
+    }
   }
 
-  private Class<? extends RobolectricTestRunner> lastTestRunnerClass;
-  private SdkConfig lastSdkConfig;
-  private SdkEnvironment lastSdkEnvironment;
-  private final HashSet<Class<?>> loadedTestClasses = new HashSet<Class<?>>();
+  private final Map<Thread, SdkEnvironment> lastSdkEnvironments = new ConcurrentHashMap<Thread, SdkEnvironment>();
+  private String setupFingerprint;
+  private final Set<Class<?>> loadedTestClasses = Collections.synchronizedSet(new HashSet<Class<?>>());
 
   /**
    * Creates a runner to run {@code testClass}. Looks in your working directory for your AndroidManifest.xml file
@@ -70,12 +82,32 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       }
     }
     this.envHolder = envHolder;
+
+    int threadCount = ParallelTestScheduler.getThreadCount();
+    if (threadCount > 1) {
+      setScheduler(new ParallelTestScheduler(threadCount));
+    }
+  }
+
+  /**
+   * Tells {@code testTimingListener} how long each phase of every test run from now on took. Setting the
+   * {@code robolectric.timingReport} system property to a file name adds a listener which writes a report there; see
+   * {@link TestTimingReport}.
+   */
+  public static void addTestTimingListener(TestTimingListener testTimingListener) {
+    testTimingListeners.add(testTimingListener);
+  }
+
+  public static void removeTestTimingListener(TestTimingListener testTimingListener) {
+    testTimingListeners.remove(testTimingListener);
   }
 
   private void assureTestLifecycle(SdkEnvironment sdkEnvironment) {
     try {
       ClassLoader robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
-      testLifecycle = (TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance();
+      //noinspection unchecked
+      testLifecycles.put(Thread.currentThread(),
+          (TestLifecycle) robolectricClassLoader.loadClass(getTestLifecycleClass().getName()).newInstance());
     } catch (InstantiationException e) {
       throw new RuntimeException(e);
     } catch (IllegalAccessException e) {
@@ -136,15 +168,66 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return DefaultTestLifecycle.class;
   }
 
+  /**
+   * When the {@code robolectric.prefetchClasses} system property names a list of classes, they're loaded into the new
+   * class loader in the background; see {@link ClassPrefetcher}.
+   */
   protected ClassLoader createRobolectricClassLoader(Setup setup, SdkConfig sdkConfig) {
     URL[] urls = getJarResolver().getLocalArtifactUrls(sdkConfig.getSdkClasspathDependencies());
-    return new AsmInstrumentingClassLoader(setup, urls);
+    URL preInstrumentedJarUrl = getPreInstrumentedJarUrl(sdkConfig);
+    if (preInstrumentedJarUrl != null) {
+      URL[] withPreInstrumented = new URL[urls.length + 1];
+      withPreInstrumented[0] = preInstrumentedJarUrl;
+      System.arraycopy(urls, 0, withPreInstrumented, 1, urls.length);
+      urls = withPreInstrumented;
+    }
+    AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(setup, getInstrumentedClassCache(setup), urls);
+    if (ClassPrefetcher.isEnabled()) {
+      ClassPrefetcher.getInstance().prefetch(classLoader);
+    }
+    return classLoader;
+  }
+
+  /**
+   * Jars built by {@link PreInstrumenter} are picked up from the directory named by the
+   * {@code robolectric.instrumentedJarDir} system property.
+   *
+   * @return the location of a pre-instrumented android-all jar for {@code sdkConfig}, or null if there isn't one
+   */
+  protected URL getPreInstrumentedJarUrl(SdkConfig sdkConfig) {
+    String instrumentedJarDir = System.getProperty("robolectric.instrumentedJarDir");
+    if (instrumentedJarDir == null) return null;
+
+    File jarFile = new File(instrumentedJarDir, PreInstrumenter.instrumentedJarName(sdkConfig));
+    if (!jarFile.isFile()) return null;
+
+    try {
+      return jarFile.toURI().toURL();
+    } catch (MalformedURLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Instrumented classes are cached on disk across JVMs when the {@code robolectric.classCacheDir} system
+   * property names a directory.
+   *
+   * @return the cache to use for classes instrumented according to {@code setup}, or null to disable caching
+   */
+  protected InstrumentedClassCache getInstrumentedClassCache(Setup setup) {
+    String classCacheDir = System.getProperty("robolectric.classCacheDir");
+    if (classCacheDir == null) {
+      // each worker has its own class loader; at least don't instrument everything once per worker
+      return ParallelTestScheduler.getThreadCount() > 1 ? InstrumentedClassCache.inMemory(setup) : null;
+    }
+    return InstrumentedClassCache.open(new File(classCacheDir), setup);
   }
 
   public static void injectClassHandler(ClassLoader robolectricClassLoader, ClassHandler classHandler) {
     String className = RobolectricInternals.class.getName();
     Class<?> robolectricInternalsClass = ReflectionHelpers.loadClassReflectively(robolectricClassLoader, className);
-    ReflectionHelpers.setStaticFieldReflectively(robolectricInternalsClass, "classHandler", classHandler);
+    ReflectionHelpers.callStaticMethodReflectively(robolectricInternalsClass, "setClassHandler",
+        new ReflectionHelpers.ClassParameter(ClassHandler.class, classHandler));
   }
 
   @Override
@@ -177,78 +260,114 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
+        TestTimings timings = new TestTimings(getTestClass().getName(), method.getName());
+        long testStartTime = System.nanoTime();
         final Config config = getConfig(method.getMethod());
         AndroidManifest appManifest = getAppManifest(config);
-        SdkEnvironment sdkEnvironment = getEnvironment(appManifest, config);
-        Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
-
-        Class bootstrappedTestClass = sdkEnvironment.bootstrappedClass(getTestClass().getJavaClass());
-        HelperTestRunner helperTestRunner = getHelperTestRunner(bootstrappedTestClass);
+        timings.record(TestTimings.MANIFEST, testStartTime);
 
-        final Method bootstrappedMethod;
+        long startTime = System.nanoTime();
+        SdkEnvironment sdkEnvironment = getEnvironment(appManifest, config);
+        timings.record(TestTimings.ENVIRONMENT, startTime);
+        timings.countClassesLoadedBy(sdkEnvironment.getRobolectricClassLoader());
         try {
-          //noinspection unchecked
-          bootstrappedMethod = bootstrappedTestClass.getMethod(method.getName());
-        } catch (NoSuchMethodException e) {
-          throw new RuntimeException(e);
+          runTest(method, config, appManifest, sdkEnvironment, timings);
+        } finally {
+          testLifecycles.remove(Thread.currentThread());
+          timings.stopCountingClasses();
+          timings.setTotalNanos(System.nanoTime() - testStartTime);
+          for (TestTimingListener testTimingListener : testTimingListeners) {
+            testTimingListener.testTimed(timings);
+          }
         }
+      }
+    };
+  }
 
-        configureShadows(sdkEnvironment, config);
+  private void runTest(FrameworkMethod method, Config config, AndroidManifest appManifest, SdkEnvironment sdkEnvironment, TestTimings timings) throws Throwable {
+    long startTime = System.nanoTime();
+    Thread.currentThread().setContextClassLoader(sdkEnvironment.getRobolectricClassLoader());
 
-        ParallelUniverseInterface parallelUniverseInterface = getHooksInterface(sdkEnvironment);
-        try {
-          // Only invoke @BeforeClass once per class
-          if (!loadedTestClasses.contains(bootstrappedTestClass)) {
-            invokeBeforeClass(bootstrappedTestClass);
-          }
-          assureTestLifecycle(sdkEnvironment);
-
-          parallelUniverseInterface.resetStaticState(config);
-          parallelUniverseInterface.setSdkConfig(sdkEnvironment.getSdkConfig());
-
-          int sdkVersion = pickReportedSdkVersion(config, appManifest);
-          Class<?> versionClass = sdkEnvironment.bootstrappedClass(Build.VERSION.class);
-          Field sdk_int = versionClass.getDeclaredField("SDK_INT");
-          sdk_int.setAccessible(true);
-          Field modifiers = Field.class.getDeclaredField("modifiers");
-          modifiers.setAccessible(true);
-          modifiers.setInt(sdk_int, sdk_int.getModifiers() & ~Modifier.FINAL);
-          sdk_int.setInt(null, sdkVersion);
-
-          ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
-          setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
-          testLifecycle.beforeTest(bootstrappedMethod);
-        } catch (Exception e) {
-          e.printStackTrace();
-          throw new RuntimeException(e);
-        }
+    Class bootstrappedTestClass = sdkEnvironment.bootstrappedClass(getTestClass().getJavaClass());
+    HelperTestRunner helperTestRunner = getHelperTestRunner(bootstrappedTestClass);
 
-        final Statement statement = helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
+    final Method bootstrappedMethod;
+    try {
+      //noinspection unchecked
+      bootstrappedMethod = bootstrappedTestClass.getMethod(method.getName());
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    }
+    timings.record(TestTimings.BOOTSTRAP, startTime);
 
-        // todo: this try/finally probably isn't right -- should mimic RunAfters? [xw]
+    startTime = System.nanoTime();
+    configureShadows(sdkEnvironment, config);
+    timings.record(TestTimings.CONFIGURE_SHADOWS, startTime);
+
+    ParallelUniverseInterface parallelUniverseInterface = getHooksInterface(sdkEnvironment);
+    parallelUniverseInterface.setTestTimings(timings);
+    try {
+      startTime = System.nanoTime();
+      // Only invoke @BeforeClass once per class
+      if (!loadedTestClasses.contains(bootstrappedTestClass)) {
+        invokeBeforeClass(bootstrappedTestClass);
+      }
+      assureTestLifecycle(sdkEnvironment);
+      timings.record(TestTimings.BOOTSTRAP, startTime);
+
+      startTime = System.nanoTime();
+      parallelUniverseInterface.resetStaticState(config);
+      parallelUniverseInterface.setSdkConfig(sdkEnvironment.getSdkConfig());
+
+      int sdkVersion = pickReportedSdkVersion(config, appManifest);
+      Class<?> versionClass = sdkEnvironment.bootstrappedClass(Build.VERSION.class);
+      Field sdk_int = versionClass.getDeclaredField("SDK_INT");
+      sdk_int.setAccessible(true);
+      Field modifiers = Field.class.getDeclaredField("modifiers");
+      modifiers.setAccessible(true);
+      modifiers.setInt(sdk_int, sdk_int.getModifiers() & ~Modifier.FINAL);
+      sdk_int.setInt(null, sdkVersion);
+      timings.record(TestTimings.RESET_STATIC_STATE, startTime);
+
+      startTime = System.nanoTime();
+      ResourceLoader systemResourceLoader = sdkEnvironment.getSystemResourceLoader(getJarResolver());
+      timings.record(TestTimings.SYSTEM_RESOURCES, startTime);
+
+      startTime = System.nanoTime();
+      setUpApplicationState(bootstrappedMethod, parallelUniverseInterface, systemResourceLoader, appManifest, config);
+      getTestLifecycle().beforeTest(bootstrappedMethod);
+      timings.record(TestTimings.SET_UP_APPLICATION, startTime);
+    } catch (Exception e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    }
+
+    final Statement statement = helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
+
+    // todo: this try/finally probably isn't right -- should mimic RunAfters? [xw]
+    startTime = System.nanoTime();
+    try {
+      statement.evaluate();
+    } finally {
+      timings.record(TestTimings.TEST, startTime);
+      startTime = System.nanoTime();
+      try {
+        parallelUniverseInterface.tearDownApplication();
+      } finally {
         try {
-          statement.evaluate();
+          internalAfterTest(bootstrappedMethod);
         } finally {
-          try {
-            parallelUniverseInterface.tearDownApplication();
-          } finally {
-            try {
-              internalAfterTest(bootstrappedMethod);
-            } finally {
-              parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
-              // todo: is this really needed?
-              Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
-            }
-          }
+          parallelUniverseInterface.resetStaticState(config); // afterward too, so stuff doesn't hold on to classes?
+          // todo: is this really needed?
+          Thread.currentThread().setContextClassLoader(RobolectricTestRunner.class.getClassLoader());
+          timings.record(TestTimings.TEAR_DOWN, startTime);
         }
       }
-    };
+    }
   }
 
   private void invokeBeforeClass(final Class clazz) throws Throwable {
-    if (!loadedTestClasses.contains(clazz)) {
-      loadedTestClasses.add(clazz);
-
+    if (loadedTestClasses.add(clazz)) {
       final TestClass testClass = new TestClass(clazz);
       final List<FrameworkMethod> befores = testClass.getAnnotatedMethods(BeforeClass.class);
       for (FrameworkMethod before : befores) {
@@ -269,20 +388,49 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     final SdkConfig sdkConfig = pickSdkVersion(appManifest, config);
 
     // keep the most recently-used SdkEnvironment strongly reachable to prevent thrashing in low-memory situations.
-    if (getClass().equals(lastTestRunnerClass) && sdkConfig.equals(lastSdkConfig)) {
-      return lastSdkEnvironment;
+    SdkEnvironment sdkEnvironment = lastSdkEnvironments.get(Thread.currentThread());
+    if (sdkEnvironment != null && sdkConfig.equals(sdkEnvironment.getSdkConfig())) {
+      return sdkEnvironment;
     }
 
-    lastTestRunnerClass = null;
-    lastSdkConfig = null;
-    lastSdkEnvironment = envHolder.getSdkEnvironment(sdkConfig, new SdkEnvironment.Factory() {
+    lastSdkEnvironments.remove(Thread.currentThread());
+    sdkEnvironment = getSdkEnvironmentPool().getSdkEnvironment(getSdkEnvironmentPoolKey(sdkConfig), new SdkEnvironment.Factory() {
       @Override public SdkEnvironment create() {
         return createSdkEnvironment(sdkConfig);
       }
     });
-    lastTestRunnerClass = getClass();
-    lastSdkConfig = sdkConfig;
-    return lastSdkEnvironment;
+    lastSdkEnvironments.put(Thread.currentThread(), sdkEnvironment);
+    return sdkEnvironment;
+  }
+
+  /**
+   * Environments are shared by every runner that would build them the same way, so they're keyed by the
+   * {@link Setup} and by {@link #getSdkEnvironmentKey()}. Environments are never shared between
+   * {@link ParallelTestScheduler} workers.
+   */
+  private SdkEnvironmentPool.Key getSdkEnvironmentPoolKey(SdkConfig sdkConfig) {
+    synchronized (this) {
+      if (setupFingerprint == null) {
+        setupFingerprint = InstrumentedClassCache.fingerprint(createSetup());
+      }
+    }
+    return new SdkEnvironmentPool.Key(sdkConfig, setupFingerprint, getSdkEnvironmentKey(),
+        ParallelTestScheduler.currentWorkerIndex());
+  }
+
+  /**
+   * Runners whose keys are equal, and whose {@link Setup}s instrument classes the same way, share pooled
+   * {@link SdkEnvironment}s. By default each runner class has its own, since a subclass may build environments or
+   * class handlers differently. Subclasses which don't can return their superclass's key to share its environments.
+   *
+   * @return a key with a meaningful {@code equals} and {@code hashCode}
+   */
+  protected Object getSdkEnvironmentKey() {
+    return getClass();
+  }
+
+  protected SdkEnvironmentPool getSdkEnvironmentPool() {
+    return sdkEnvironmentPool;
   }
 
   protected SdkConfig pickSdkVersion(AndroidManifest appManifest, Config config) {
@@ -417,13 +565,14 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       classHandler = sdkEnvironment.classHandlersByShadowMap.get(shadowMap);
       if (classHandler == null) {
         classHandler = createClassHandler(shadowMap, sdkEnvironment.getSdkConfig());
+        sdkEnvironment.classHandlersByShadowMap.put(shadowMap, classHandler);
       }
     }
     return classHandler;
   }
 
   protected void setUpApplicationState(Method method, ParallelUniverseInterface parallelUniverseInterface, ResourceLoader systemResourceLoader, AndroidManifest appManifest, Config config) {
-    parallelUniverseInterface.setUpApplicationState(method, testLifecycle, systemResourceLoader, appManifest, config);
+    parallelUniverseInterface.setUpApplicationState(method, getTestLifecycle(), systemResourceLoader, appManifest, config);
   }
 
   private int getTargetSdkVersion(AndroidManifest appManifest) {
@@ -465,16 +614,21 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
   }
 
   public void internalAfterTest(final Method method) {
-    testLifecycle.afterTest(method);
+    getTestLifecycle().afterTest(method);
   }
 
   private void afterClass() {
-    testLifecycle = null;
+    testLifecycles.clear();
+    lastSdkEnvironments.clear();
   }
 
   @TestOnly
   boolean allStateIsCleared() {
-    return testLifecycle == null;
+    return testLifecycles.isEmpty() && lastSdkEnvironments.isEmpty();
+  }
+
+  private TestLifecycle<Application> getTestLifecycle() {
+    return testLifecycles.get(Thread.currentThread());
   }
 
   @Override
@@ -482,20 +636,27 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     throw new UnsupportedOperationException("this should always be invoked on the HelperTestRunner!");
   }
 
+  /**
+   * App resource loaders are kept by the current thread's {@link SdkEnvironment}, since they route to its system
+   * resources. The app and library package loaders under them don't refer to the environment, so they're shared by
+   * all environments.
+   */
   public final ResourceLoader getAppResourceLoader(SdkConfig sdkConfig, ResourceLoader systemResourceLoader, final AndroidManifest appManifest) {
-    Pair<AndroidManifest, SdkConfig> androidManifestSdkConfigPair = new Pair<AndroidManifest, SdkConfig>(appManifest, sdkConfig);
-    ResourceLoader resourceLoader = resourceLoadersByManifestAndConfig.get(androidManifestSdkConfigPair);
-    if (resourceLoader == null) {
-      resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
-      resourceLoadersByManifestAndConfig.put(androidManifestSdkConfigPair, resourceLoader);
+    Map<AndroidManifest, ResourceLoader> appResourceLoaders = lastSdkEnvironments.get(Thread.currentThread()).appResourceLoadersByManifest;
+    synchronized (appResourceLoaders) {
+      ResourceLoader resourceLoader = appResourceLoaders.get(appManifest);
+      if (resourceLoader == null) {
+        resourceLoader = createAppResourceLoader(systemResourceLoader, appManifest);
+        appResourceLoaders.put(appManifest, resourceLoader);
+      }
+      return resourceLoader;
     }
-    return resourceLoader;
   }
 
   protected ResourceLoader createAppResourceLoader(ResourceLoader systemResourceLoader, AndroidManifest appManifest) {
     List<PackageResourceLoader> appAndLibraryResourceLoaders = new ArrayList<PackageResourceLoader>();
     for (ResourcePath resourcePath : appManifest.getIncludedResourcePaths()) {
-      appAndLibraryResourceLoaders.add(createResourceLoader(resourcePath));
+      appAndLibraryResourceLoaders.add(getPackageResourceLoader(resourcePath));
     }
     OverlayResourceLoader overlayResourceLoader = new OverlayResourceLoader(appManifest.getPackageName(), appAndLibraryResourceLoaders);
 
@@ -505,7 +666,26 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
     return new RoutingResourceLoader(resourceLoaders);
   }
 
+  private PackageResourceLoader getPackageResourceLoader(ResourcePath resourcePath) {
+    synchronized (packageResourceLoadersByPath) {
+      PackageResourceLoader resourceLoader = packageResourceLoadersByPath.get(resourcePath);
+      if (resourceLoader == null) {
+        resourceLoader = createResourceLoader(resourcePath);
+        packageResourceLoadersByPath.put(resourcePath, resourceLoader);
+      }
+      return resourceLoader;
+    }
+  }
+
+  /**
+   * Resources are cached on disk, and later loaded from the cache as far as they haven't changed, when the
+   * {@code robolectric.resourceCacheDir} system property names a directory.
+   */
   public PackageResourceLoader createResourceLoader(ResourcePath resourcePath) {
+    String cacheDir = System.getProperty("robolectric.resourceCacheDir");
+    if (cacheDir != null) {
+      return ResourceCache.load(ResourceCache.fileFor(new File(cacheDir), resourcePath), resourcePath);
+    }
     return new PackageResourceLoader(resourcePath);
   }
 
@@ -514,11 +694,8 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
       if (mainShadowMap != null) return mainShadowMap;
 
       mainShadowMap = new ShadowMap.Builder()
-          //.addShadowClasses(Shadows.DEFAULT_SHADOW_CLASSES)
+          .addShadowIndex(Shadows.ShadowIndex.ENTRIES)
           .build();
-      //mainShadowMap = new ShadowMap.Builder()
-      //        .addShadowClasses(Shadows.DEFAULT_SHADOW_CLASSES)
-      //        .build();
       return mainShadowMap;
     }
   }
@@ -530,7 +707,7 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner {
 
     @Override protected Object createTest() throws Exception {
       Object test = super.createTest();
-      testLifecycle.prepareTest(test);
+      getTestLifecycle().prepareTest(test);
       return test;
     }
 
@@ -1,13 +1,16 @@
 package org.robolectric;
 
+import org.robolectric.bytecode.ClassHandler;
 import org.robolectric.bytecode.ShadowMap;
-import org.robolectric.bytecode.ShadowWrangler;
 import org.robolectric.res.Fs;
 import org.robolectric.res.PackageResourceLoader;
 import org.robolectric.res.ResourceExtractor;
 import org.robolectric.res.ResourceLoader;
 import org.robolectric.res.ResourcePath;
+import org.robolectric.res.ResourceSnapshot;
 
+import java.io.File;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
@@ -15,7 +18,8 @@ import java.util.Map;
 public class SdkEnvironment {
   private final SdkConfig sdkConfig;
   private final ClassLoader robolectricClassLoader;
-  public final Map<ShadowMap, ShadowWrangler> classHandlersByShadowMap = new HashMap<ShadowMap, ShadowWrangler>();
+  public final Map<ShadowMap, ClassHandler> classHandlersByShadowMap = new HashMap<ShadowMap, ClassHandler>();
+  public final Map<AndroidManifest, ResourceLoader> appResourceLoadersByManifest = new HashMap<AndroidManifest, ResourceLoader>();
   private ResourceLoader systemResourceLoader;
 
   public SdkEnvironment(SdkConfig sdkConfig, ClassLoader robolectricClassLoader) {
@@ -23,14 +27,54 @@ public class SdkEnvironment {
     this.robolectricClassLoader = robolectricClassLoader;
   }
 
+  /**
+   * System resources are snapshotted, and later loaded from the snapshot, when the
+   * {@code robolectric.resourceSnapshotDir} system property names a directory.
+   */
   public PackageResourceLoader createSystemResourceLoader(DependencyResolver dependencyResolver) {
     URL url = dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency());
     Fs systemResFs = Fs.fromJar(url);
+
+    File snapshotFile = getSystemResourceSnapshotFile(url);
+    if (snapshotFile != null) {
+      ResourcePath resourcePath = new ResourcePath(loadClass("android.R"), "android", systemResFs.join("res"), systemResFs.join("assets"));
+      PackageResourceLoader resourceLoader = ResourceSnapshot.read(snapshotFile, resourcePath);
+      if (resourceLoader != null) return resourceLoader;
+    }
+
     ResourceExtractor resourceExtractor = new ResourceExtractor(getRobolectricClassLoader());
     ResourcePath resourcePath = new ResourcePath(resourceExtractor.getProcessedRFile(), resourceExtractor.getPackageName(), systemResFs.join("res"), systemResFs.join("assets"));
-    return new PackageResourceLoader(resourcePath, resourceExtractor);
+    PackageResourceLoader resourceLoader = new PackageResourceLoader(resourcePath, resourceExtractor);
+    if (snapshotFile != null) {
+      ResourceSnapshot.write(snapshotFile, resourceLoader);
+    }
+    return resourceLoader;
+  }
+
+  private File getSystemResourceSnapshotFile(URL systemResourceJarUrl) {
+    String snapshotDir = System.getProperty("robolectric.resourceSnapshotDir");
+    if (snapshotDir == null) return null;
+
+    try {
+      File jarFile = new File(systemResourceJarUrl.toURI().getPath());
+      return ResourceSnapshot.fileFor(new File(snapshotDir), "system-resources-" + sdkConfig.getApiLevel(), jarFile);
+    } catch (URISyntaxException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private Class<?> loadClass(String className) {
+    try {
+      return robolectricClassLoader.loadClass(className);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
   }
 
+  /**
+   * System resources refer to this environment's {@code android.R}, so they're loaded once per environment and go
+   * away with it.
+   */
   public synchronized ResourceLoader getSystemResourceLoader(DependencyResolver dependencyResolver) {
     if (systemResourceLoader == null) {
       systemResourceLoader = createSystemResourceLoader(dependencyResolver);
@@ -0,0 +1,179 @@
+package org.robolectric;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide cache of {@link SdkEnvironment}s, shared by every {@link RobolectricTestRunner}.
+ *
+ * Environments are kept strongly reachable until the pool holds more than its capacity, at which point the least
+ * recently used ones are dropped. A dropped environment stays alive as long as a runner is still using it; it just
+ * won't be handed out again.
+ *
+ * The capacity comes from the {@code robolectric.sdkEnvironmentPoolSize} system property, and defaults to four
+ * environments for each {@link ParallelTestScheduler} worker.
+ *
+ * Environments are built outside the pool's lock, so building one doesn't hold up requests for others; concurrent
+ * requests for the same key wait for the same environment.
+ */
+public class SdkEnvironmentPool {
+  private static final int DEFAULT_ENVIRONMENTS_PER_THREAD = 4;
+
+  private final int capacity;
+  private final LinkedHashMap<Key, FutureTask<SdkEnvironment>> environments = new LinkedHashMap<Key, FutureTask<SdkEnvironment>>(16, 0.75f, true);
+
+  private long hits;
+  private long creations;
+  private long evictions;
+
+  public SdkEnvironmentPool(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1, not " + capacity);
+    this.capacity = capacity;
+  }
+
+  public static int getDefaultCapacity() {
+    String poolSize = System.getProperty("robolectric.sdkEnvironmentPoolSize");
+    if (poolSize != null) return Integer.parseInt(poolSize);
+    return DEFAULT_ENVIRONMENTS_PER_THREAD * Math.max(1, ParallelTestScheduler.getThreadCount());
+  }
+
+  public SdkEnvironment getSdkEnvironment(Key key, final SdkEnvironment.Factory factory) {
+    FutureTask<SdkEnvironment> future;
+    boolean created = false;
+    synchronized (this) {
+      future = environments.get(key);
+      if (future != null) {
+        hits++;
+      } else {
+        future = new FutureTask<SdkEnvironment>(new Callable<SdkEnvironment>() {
+          @Override public SdkEnvironment call() throws Exception {
+            return factory.create();
+          }
+        });
+        created = true;
+        creations++;
+        environments.put(key, future);
+
+        Iterator<Map.Entry<Key, FutureTask<SdkEnvironment>>> iterator = environments.entrySet().iterator();
+        while (environments.size() > capacity) {
+          iterator.next();
+          iterator.remove();
+          evictions++;
+        }
+      }
+    }
+
+    if (created) {
+      future.run();
+    }
+
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      synchronized (this) {
+        // don't hand out the failure again; the next request gets to try for itself
+        if (environments.get(key) == future) environments.remove(key);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public synchronized int size() {
+    return environments.size();
+  }
+
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  public synchronized long getCreationCount() {
+    return creations;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * @return the fraction of requests which were satisfied by an existing environment
+   */
+  public synchronized double getHitRate() {
+    long requests = hits + creations;
+    return requests == 0 ? 0 : (double) hits / requests;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SdkEnvironmentPool{" +
+        "size=" + environments.size() +
+        ", capacity=" + capacity +
+        ", hits=" + hits +
+        ", creations=" + creations +
+        ", evictions=" + evictions +
+        '}';
+  }
+
+  /**
+   * Identifies environments which are interchangeable: they emulate the same SDK, were built by runners with the same
+   * {@link RobolectricTestRunner#getSdkEnvironmentKey() key} and an equivalent {@link org.robolectric.bytecode.Setup}, and belong to the same worker thread.
+   */
+  public static class Key {
+    private final SdkConfig sdkConfig;
+    private final String setupFingerprint;
+    private final Object runnerKey;
+    private final int workerIndex;
+
+    /**
+     * @param sdkConfig the SDK the environment emulates
+     * @param setupFingerprint identifies the {@link org.robolectric.bytecode.Setup} the environment instruments with
+     * @param runnerKey identifies how the runner builds the environment
+     * @param workerIndex the {@link ParallelTestScheduler} worker the environment belongs to, or -1
+     */
+    public Key(SdkConfig sdkConfig, String setupFingerprint, Object runnerKey, int workerIndex) {
+      this.sdkConfig = sdkConfig;
+      this.setupFingerprint = setupFingerprint;
+      this.runnerKey = runnerKey;
+      this.workerIndex = workerIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key) o;
+      return workerIndex == key.workerIndex
+          && sdkConfig.equals(key.sdkConfig)
+          && setupFingerprint.equals(key.setupFingerprint)
+          && runnerKey.equals(key.runnerKey);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = sdkConfig.hashCode();
+      result = 31 * result + setupFingerprint.hashCode();
+      result = 31 * result + runnerKey.hashCode();
+      result = 31 * result + workerIndex;
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Key{" + sdkConfig + ", setup=" + setupFingerprint + ", " + runnerKey + ", worker=" + workerIndex + '}';
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package org.robolectric;
+
+/**
+ * Told how long each test run by a {@link RobolectricTestRunner} spent in each of its phases; see
+ * {@link RobolectricTestRunner#addTestTimingListener}.
+ *
+ * Tests may run on several threads at once (see {@link ParallelTestScheduler}), so listeners must be thread-safe.
+ */
+public interface TestTimingListener {
+  void testTimed(TestTimings timings);
+}
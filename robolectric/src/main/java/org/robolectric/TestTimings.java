@@ -0,0 +1,139 @@
+package org.robolectric;
+
+import org.robolectric.bytecode.AsmInstrumentingClassLoader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How long each phase of running a test took, and how many classes Robolectric had to load for it. Handed to every
+ * {@link TestTimingListener} once the test is finished.
+ *
+ * {@link #SET_UP_APPLICATION} includes {@link #APP_RESOURCES}, {@link #CREATE_APPLICATION} and
+ * {@link #APPLICATION_ON_CREATE}; the other phases don't overlap. Phases a test didn't go through, like those of
+ * application setup for a runner which doesn't set up an application, take no time.
+ */
+public class TestTimings {
+  /** Finding the test's config and reading its app's manifest. */
+  public static final String MANIFEST = "manifest";
+  /** Getting an {@link SdkEnvironment} for the test's SDK, creating one if there isn't one to reuse. */
+  public static final String ENVIRONMENT = "environment";
+  /** Loading the test class into the environment, and running its {@code @BeforeClass} methods the first time. */
+  public static final String BOOTSTRAP = "bootstrap";
+  public static final String CONFIGURE_SHADOWS = "configureShadows";
+  public static final String RESET_STATIC_STATE = "resetStaticState";
+  /** Getting the loader for the SDK's own resources, loading them if no test has yet. */
+  public static final String SYSTEM_RESOURCES = "systemResources";
+  /** Setting up the application and its resources, and the test lifecycle's {@link TestLifecycle#beforeTest}. */
+  public static final String SET_UP_APPLICATION = "setUpApplication";
+  /** Getting the loader for the app's resources, loading them if no test has yet. */
+  public static final String APP_RESOURCES = "appResources";
+  public static final String CREATE_APPLICATION = "createApplication";
+  public static final String APPLICATION_ON_CREATE = "applicationOnCreate";
+  /** The test method, with its {@code @Before} and {@code @After} methods. */
+  public static final String TEST = "test";
+  /** Tearing down the application, the test lifecycle's {@link TestLifecycle#afterTest}, and resetting static state. */
+  public static final String TEAR_DOWN = "tearDown";
+
+  /** Every phase, in the order tests go through them. */
+  public static final List<String> PHASES = Collections.unmodifiableList(Arrays.asList(MANIFEST, ENVIRONMENT,
+      BOOTSTRAP, CONFIGURE_SHADOWS, RESET_STATIC_STATE, SYSTEM_RESOURCES, SET_UP_APPLICATION, APP_RESOURCES,
+      CREATE_APPLICATION, APPLICATION_ON_CREATE, TEST, TEAR_DOWN));
+
+  private final String className;
+  private final String methodName;
+  private final Map<String, Long> nanosByPhase = new HashMap<String, Long>();
+  private long totalNanos;
+  private int loadedClassCount;
+  private int instrumentedClassCount;
+  private long instrumentationNanos;
+  private AsmInstrumentingClassLoader countingClassLoader;
+
+  public TestTimings(String className, String methodName) {
+    this.className = className;
+    this.methodName = methodName;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  /**
+   * Adds the time since {@code startNanos}, as given by {@link System#nanoTime()}, to {@code phase}.
+   */
+  public void record(String phase, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    Long soFar = nanosByPhase.get(phase);
+    nanosByPhase.put(phase, soFar == null ? nanos : soFar + nanos);
+  }
+
+  public long getNanos(String phase) {
+    Long nanos = nanosByPhase.get(phase);
+    return nanos == null ? 0 : nanos;
+  }
+
+  /**
+   * @return the time from the start of the test's first phase to the end of its last
+   */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  void setTotalNanos(long totalNanos) {
+    this.totalNanos = totalNanos;
+  }
+
+  /**
+   * @return how many classes were loaded into the test's {@link SdkEnvironment} while it ran
+   */
+  public int getLoadedClassCount() {
+    return loadedClassCount;
+  }
+
+  /**
+   * @return how many of the classes loaded while the test ran had to be instrumented, rather than coming from a
+   *     pre-instrumented jar or the instrumented class cache
+   */
+  public int getInstrumentedClassCount() {
+    return instrumentedClassCount;
+  }
+
+  /**
+   * @return the time spent instrumenting those classes; it's part of whichever phases loaded them
+   */
+  public long getInstrumentationNanos() {
+    return instrumentationNanos;
+  }
+
+  /**
+   * Starts counting the classes {@code classLoader} loads, if it's one which keeps count.
+   */
+  void countClassesLoadedBy(ClassLoader classLoader) {
+    if (!(classLoader instanceof AsmInstrumentingClassLoader)) return;
+
+    countingClassLoader = (AsmInstrumentingClassLoader) classLoader;
+    loadedClassCount = -countingClassLoader.getLoadedClassCount();
+    instrumentedClassCount = -countingClassLoader.getInstrumentedClassCount();
+    instrumentationNanos = -countingClassLoader.getInstrumentationNanos();
+  }
+
+  void stopCountingClasses() {
+    if (countingClassLoader == null) return;
+
+    loadedClassCount += countingClassLoader.getLoadedClassCount();
+    instrumentedClassCount += countingClassLoader.getInstrumentedClassCount();
+    instrumentationNanos += countingClassLoader.getInstrumentationNanos();
+    countingClassLoader = null;
+  }
+
+  @Override public String toString() {
+    return "TestTimings{" + className + "#" + methodName + ", " + totalNanos / 1000000 + "ms}";
+  }
+}
@@ -3,6 +3,7 @@ package org.robolectric.bytecode;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -22,6 +23,8 @@ import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.util.ShadowedObject;
 
 import java.io.FileOutputStream;
 import java.io.FileWriter;
@@ -29,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -38,7 +42,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.objectweb.asm.Type.ARRAY;
 import static org.objectweb.asm.Type.OBJECT;
@@ -46,56 +55,166 @@ import static org.objectweb.asm.Type.VOID;
 import static org.objectweb.asm.Type.getType;
 import static org.robolectric.util.Util.readBytes;
 
+/**
+ * Loads the Android SDK and the classes under test, instrumenting them according to a {@link Setup}.
+ *
+ * The class loader is parallel capable: threads loading different classes don't wait for each other, so classes can
+ * be instrumented on several cores at once (see {@link ClassPrefetcher}), and code under test which uses threads
+ * doesn't serialize on class loading.
+ */
 public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes, InstrumentingClassLoader {
   private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
   private static final Type OBJECT_TYPE = getType(Object.class);
   private static final Type STRING_TYPE = getType(String.class);
   private static final Type ROBOLECTRIC_INTERNALS_TYPE = Type.getType(RobolectricInternals.class);
+  // named rather than loaded, since InvokeDynamicSupport needs java.lang.invoke
+  private static final Type INVOKE_DYNAMIC_SUPPORT_TYPE = Type.getObjectType("org/robolectric/bytecode/InvokeDynamicSupport");
   private static final Type PLAN_TYPE = Type.getType(ClassHandler.Plan.class);
+  private static final Type SHADOWED_OBJECT_TYPE = Type.getType(ShadowedObject.class);
   private static final Type THROWABLE_TYPE = Type.getType(Throwable.class);
   private static final Method INITIALIZING_METHOD = new Method("initializing", "(Ljava/lang/Object;)Ljava/lang/Object;");
-  private static final Method METHOD_INVOKED_METHOD = new Method("methodInvoked", "(Ljava/lang/String;ZLjava/lang/Class;)L" + PLAN_TYPE.getInternalName() + ";");
+  private static final Method METHOD_INVOKED_METHOD = new Method("methodInvoked", "(Ljava/lang/String;ZLjava/lang/Class;I)L" + PLAN_TYPE.getInternalName() + ";");
   private static final Method PLAN_RUN_METHOD = new Method("run", OBJECT_TYPE, new Type[]{OBJECT_TYPE, OBJECT_TYPE, Type.getType(Object[].class)});
   private static final Method HANDLE_EXCEPTION_METHOD = new Method("cleanStackTrace", THROWABLE_TYPE, new Type[]{THROWABLE_TYPE});
+  private static final Handle BOOTSTRAP_HANDLE = new Handle(H_INVOKESTATIC, INVOKE_DYNAMIC_SUPPORT_TYPE.getInternalName(), "bootstrap",
+      "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;ILjava/lang/invoke/MethodHandle;)Ljava/lang/invoke/CallSite;");
   private static final String DIRECT_OBJECT_MARKER_TYPE_DESC = Type.getObjectType(DirectObjectMarker.class.getName().replace('.', '/')).getDescriptor();
   private static final String ROBO_INIT_METHOD_NAME = "$$robo$init";
   static final String GET_ROBO_DATA_METHOD_NAME = "$$robo$getData";
   private static final String GET_ROBO_DATA_SIGNATURE = "()Ljava/lang/Object;";
+  private static final String RESETTER_DESC = Type.getDescriptor(Resetter.class);
 
   private static boolean debug = false;
 
+  // Java 7 lets class loaders load different classes in parallel; on Java 6, they load a class at a time
+  private static final java.lang.reflect.Method GET_CLASS_LOADING_LOCK_METHOD = findClassLoadingLockMethod();
+
+  static {
+    if (GET_CLASS_LOADING_LOCK_METHOD != null) {
+      registerAsParallelCapableReflectively();
+    }
+  }
+
   private final Setup setup;
   private final URLClassLoader urls;
-  private final Map<String, Class> classes = new HashMap<String, Class>();
+  private final URLClassLoader preInstrumentedUrls;
+  private final Map<String, Class> classes = GET_CLASS_LOADING_LOCK_METHOD == null
+      ? new HashMap<String, Class>()
+      : new ConcurrentHashMap<String, Class>();
+  private final Queue<String> definedClassNames = new ConcurrentLinkedQueue<String>();
   private final Set<Setup.MethodRef> methodsToIntercept;
+  private final Map<Setup.MethodRef, Setup.MethodRef> interceptionHandlers;
   private final Map<String, String> classesToRemap;
+  private final InstrumentedClassCache classCache;
+  private final AtomicInteger loadedClassCount = new AtomicInteger();
+  private final AtomicInteger instrumentedClassCount = new AtomicInteger();
+  private final AtomicLong instrumentationNanos = new AtomicLong();
   private int number = 0;
 
 
   public AsmInstrumentingClassLoader(Setup setup, URL... urls) {
+    this(setup, null, urls);
+  }
+
+  public AsmInstrumentingClassLoader(Setup setup, InstrumentedClassCache classCache, URL... urls) {
     super(AsmInstrumentingClassLoader.class.getClassLoader());
     this.setup = setup;
-    this.urls = new URLClassLoader(urls, null);
+    this.classCache = classCache;
+
+    List<URL> plainUrls = new ArrayList<URL>();
+    List<URL> preInstrumentedUrls = new ArrayList<URL>();
+    String fingerprint = null;
+    for (URL url : urls) {
+      String jarFingerprint = PreInstrumenter.getFingerprint(url);
+      if (jarFingerprint == null) {
+        plainUrls.add(url);
+      } else {
+        if (fingerprint == null) fingerprint = InstrumentedClassCache.fingerprint(setup);
+        if (jarFingerprint.equals(fingerprint)) {
+          preInstrumentedUrls.add(url);
+        } else {
+          System.out.println("[WARN] ignoring " + url + ", which was instrumented with a different setup or Robolectric version");
+        }
+      }
+    }
+    this.urls = new URLClassLoader(plainUrls.toArray(new URL[plainUrls.size()]), null);
+    this.preInstrumentedUrls = preInstrumentedUrls.isEmpty()
+        ? null
+        : new URLClassLoader(preInstrumentedUrls.toArray(new URL[preInstrumentedUrls.size()]), null);
     classesToRemap = convertToSlashes(setup.classNameTranslations());
     methodsToIntercept = convertToSlashes(setup.methodsToIntercept());
+    interceptionHandlers = convertHandlersToSlashes(setup.interceptionHandlers());
+  }
+
+  private static void registerAsParallelCapableReflectively() {
+    try {
+      // Java 7 registers whichever class calls this, even reflectively, so subclasses must do the same themselves
+      java.lang.reflect.Method register = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable");
+      register.setAccessible(true);
+      register.invoke(null);
+    } catch (Exception e) {
+      throw new RuntimeException("couldn't register as parallel capable", e);
+    }
+  }
+
+  private static java.lang.reflect.Method findClassLoadingLockMethod() {
+    try {
+      java.lang.reflect.Method method = ClassLoader.class.getDeclaredMethod("getClassLoadingLock", String.class);
+      method.setAccessible(true);
+      return method;
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (SecurityException e) {
+      return null;
+    }
   }
 
   @Override
-  synchronized public Class loadClass(String name) throws ClassNotFoundException {
-    Class<?> theClass = classes.get(name);
-    if (theClass != null) {
-      if (theClass == MissingClassMarker.class) {
-        throw new ClassNotFoundException(name);
-      } else {
-        return theClass;
+  public Class loadClass(String name) throws ClassNotFoundException {
+    Class<?> theClass;
+    if (GET_CLASS_LOADING_LOCK_METHOD == null) {
+      synchronized (this) {
+        theClass = loadCachedClass(name);
       }
+    } else {
+      theClass = classes.get(name);
+      if (theClass == null) {
+        // subclasses which don't register as parallel capable themselves get this class loader as the lock
+        synchronized (classLoadingLock(name)) {
+          theClass = loadCachedClass(name);
+        }
+      }
+    }
+
+    if (theClass == MissingClassMarker.class) {
+      throw new ClassNotFoundException(name);
     }
+    return theClass;
+  }
+
+  private Class<?> loadCachedClass(String name) throws ClassNotFoundException {
+    Class<?> theClass = classes.get(name);
+    return theClass == null ? loadUncachedClass(name) : theClass;
+  }
+
+  private Object classLoadingLock(String name) {
+    try {
+      return GET_CLASS_LOADING_LOCK_METHOD.invoke(this, name);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (InvocationTargetException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
 
+  private Class<?> loadUncachedClass(String name) throws ClassNotFoundException {
     boolean shouldComeFromThisClassLoader = setup.shouldAcquire(name);
 
+    Class<?> theClass;
     try {
       if (shouldComeFromThisClassLoader) {
         theClass = findClass(name);
+        definedClassNames.add(name);
       } else {
         theClass = getParent().loadClass(name);
       }
@@ -123,30 +242,28 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
   @Override
   protected Class<?> findClass(final String className) throws ClassNotFoundException {
     if (setup.shouldAcquire(className)) {
-      byte[] origClassBytes = getByteCode(className);
+      loadedClassCount.incrementAndGet();
+      byte[] preInstrumentedBytes = getPreInstrumentedByteCode(className);
+      if (preInstrumentedBytes != null) {
+        ensurePackage(className);
+        return defineClass(className, preInstrumentedBytes, 0, preInstrumentedBytes.length);
+      }
 
-      final ClassReader classReader = new ClassReader(origClassBytes);
-      ClassNode classNode = new ClassNode(Opcodes.ASM4) {
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-          desc = remapParamType(desc);
-          return super.visitField(access, name, desc, signature, value);
-        }
+      byte[] origClassBytes = getByteCode(className);
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-          return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
-        }
-      };
-      classReader.accept(classNode, 0);
+      byte[] cachedBytes = classCache == null ? null : classCache.get(className, origClassBytes);
+      if (cachedBytes != null) {
+        ensurePackage(className);
+        return defineClass(className, cachedBytes, 0, cachedBytes.length);
+      }
 
       try {
-        byte[] bytes;
-        AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
-        if (setup.shouldInstrument(classInfo)) {
-          bytes = getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
-        } else {
-          bytes = origClassBytes;
+        long startTime = System.nanoTime();
+        byte[] bytes = instrument(className, origClassBytes);
+        instrumentationNanos.addAndGet(System.nanoTime() - startTime);
+        instrumentedClassCount.incrementAndGet();
+        if (classCache != null) {
+          classCache.put(className, origClassBytes, bytes);
         }
 //                System.out.println("[DEBUG] Defining " + classFilename + " (" + bytes.length + ") in " + this + ": class" + number++);
         ensurePackage(className);
@@ -163,6 +280,142 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     }
   }
 
+  /**
+   * @return the names of the classes this class loader has defined itself, in the order it defined them
+   */
+  public List<String> getDefinedClassNames() {
+    return new ArrayList<String>(definedClassNames);
+  }
+
+  /**
+   * @return how many classes this class loader has defined itself, rather than left to its parent
+   */
+  public int getLoadedClassCount() {
+    return loadedClassCount.get();
+  }
+
+  /**
+   * @return how many of the classes this class loader has defined it had to instrument, rather than finding them in a
+   *     pre-instrumented jar or its {@link InstrumentedClassCache}
+   */
+  public int getInstrumentedClassCount() {
+    return instrumentedClassCount.get();
+  }
+
+  /**
+   * @return the time this class loader has spent instrumenting classes
+   */
+  public long getInstrumentationNanos() {
+    return instrumentationNanos.get();
+  }
+
+  /**
+   * @return the bytes which should be defined for {@code className}; {@code origClassBytes} itself if the class
+   *     shouldn't be instrumented
+   */
+  byte[] instrument(String className, byte[] origClassBytes) throws ClassNotFoundException {
+    final ClassReader classReader = new ClassReader(origClassBytes);
+    ClassNode classNode = new ClassNode(Opcodes.ASM4) {
+      @Override
+      public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        desc = remapParamType(desc);
+        return super.visitField(access, name, desc, signature, value);
+      }
+
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return super.visitMethod(access, name, remapParams(desc), signature, exceptions);
+      }
+    };
+    classReader.accept(classNode, 0);
+
+    AsmClassInfo classInfo = new AsmClassInfo(className, classNode);
+    // interfaces can't take instrumentation, whatever the setup says; ShadowedObject itself is one
+    if (!classInfo.isInterface() && setup.shouldInstrument(classInfo)) {
+      return getInstrumentedBytes(className, classNode, setup.containsStubs(classInfo));
+    } else if (!classInfo.isInterface() && canTrackStaticState(classNode)) {
+      return getStaticStateTrackingBytes(origClassBytes);
+    } else {
+      return origClassBytes;
+    }
+  }
+
+  /**
+   * Static state can be tracked for classes with a {@link Resetter} if nothing outside the class can change it
+   * directly: all of its static fields are private, or immutable constants, and the resetter isn't
+   * {@link Resetter#always()} run because it resets state which belongs to other classes.
+   */
+  private boolean canTrackStaticState(ClassNode classNode) {
+    boolean hasResetter = false;
+    for (Object methodObj : classNode.methods) {
+      MethodNode method = (MethodNode) methodObj;
+      if (method.visibleAnnotations == null) continue;
+      for (Object annotationObj : method.visibleAnnotations) {
+        AnnotationNode annotation = (AnnotationNode) annotationObj;
+        if (RESETTER_DESC.equals(annotation.desc)) {
+          if (isAlwaysReset(annotation)) return false;
+          hasResetter = true;
+        }
+      }
+    }
+    if (!hasResetter) return false;
+
+    for (Object fieldObj : classNode.fields) {
+      FieldNode field = (FieldNode) fieldObj;
+      if ((field.access & ACC_STATIC) == 0 || (field.access & ACC_PRIVATE) != 0) continue;
+      boolean isConstant = (field.access & ACC_FINAL) != 0
+          && (field.desc.length() == 1 || field.desc.equals(STRING_TYPE.getDescriptor()));
+      if (!isConstant) return false;
+    }
+    return true;
+  }
+
+  private static boolean isAlwaysReset(AnnotationNode resetter) {
+    if (resetter.values == null) return false;
+    for (int i = 0; i < resetter.values.size(); i += 2) {
+      if ("always".equals(resetter.values.get(i))) return Boolean.TRUE.equals(resetter.values.get(i + 1));
+    }
+    return false;
+  }
+
+  /**
+   * Adds a public static boolean field which is set on entry to every method and constructor, so that callers of
+   * the class's resetter can tell whether any of its code has run since they last cleared it.
+   */
+  private byte[] getStaticStateTrackingBytes(byte[] origClassBytes) {
+    ClassNode classNode = new ClassNode(Opcodes.ASM4);
+    new ClassReader(origClassBytes).accept(classNode, 0);
+
+    classNode.fields.add(new FieldNode(ACC_PUBLIC | ACC_STATIC | ACC_SYNTHETIC, STATIC_STATE_DIRTY_FIELD_NAME,
+        Type.BOOLEAN_TYPE.getDescriptor(), null, null));
+    for (Object methodObj : classNode.methods) {
+      MethodNode method = (MethodNode) methodObj;
+      if ((method.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0 || method.name.equals("<clinit>")) continue;
+
+      InsnList markDirty = new InsnList();
+      markDirty.add(new InsnNode(ICONST_1));
+      markDirty.add(new FieldInsnNode(PUTSTATIC, classNode.name, STATIC_STATE_DIRTY_FIELD_NAME, Type.BOOLEAN_TYPE.getDescriptor()));
+      method.instructions.insert(markDirty);
+    }
+
+    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    classNode.accept(classWriter);
+    return classWriter.toByteArray();
+  }
+
+  private byte[] getPreInstrumentedByteCode(String className) throws ClassNotFoundException {
+    if (preInstrumentedUrls == null) return null;
+
+    InputStream classBytesStream = preInstrumentedUrls.getResourceAsStream(className.replace('.', '/') + ".class");
+    if (classBytesStream == null) return null;
+
+    try {
+      return readBytes(classBytesStream);
+    } catch (IOException e) {
+      throw new ClassNotFoundException("couldn't load " + className, e);
+    }
+  }
+
   protected byte[] getByteCode(String className) throws ClassNotFoundException {
     String classFilename = className.replace('.', '/') + ".class";
     InputStream classBytesStream = urls.getResourceAsStream(classFilename);
@@ -186,7 +439,12 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       String pckgName = className.substring(0, lastDotIndex);
       Package pckg = getPackage(pckgName);
       if (pckg == null) {
-        definePackage(pckgName, null, null, null, null, null, null, null);
+        try {
+          definePackage(pckgName, null, null, null, null, null, null, null);
+        } catch (IllegalArgumentException e) {
+          // another thread defined it first, loading another class in the same package
+          if (getPackage(pckgName) == null) throw e;
+        }
       }
     }
   }
@@ -255,7 +513,7 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
      *
      * Don't bother for V50 and earlier bytecode, because it doesn't contain stack map frames, and
      * also because ASM's stack map frame handling doesn't support the JSR and RET instructions
-     * present in legacy bytecode.
+     * present in legacy bytecode. (Classes using invokedynamic have already been upgraded to V51.)
      */
     int classWriterFlags = classNode.version >= 51
         ? ClassWriter.COMPUTE_FRAMES
@@ -271,6 +529,16 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         value = remapType(value);
         return super.newClass(value);
       }
+
+      @Override
+      protected String getCommonSuperClass(String type1, String type2) {
+        try {
+          return super.getCommonSuperClass(type1, type2);
+        } catch (RuntimeException e) {
+          // ASM loads the classes to find out; if they aren't loadable from here, read their bytecode instead
+          return getCommonSuperClassFromByteCode(type1, type2);
+        }
+      }
     };
     classNode.accept(classWriter);
 
@@ -291,6 +559,33 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     return classBytes;
   }
 
+  private String getCommonSuperClassFromByteCode(String type1, String type2) {
+    List<String> ancestors1 = getAncestorsFromByteCode(type1);
+    for (String ancestor : getAncestorsFromByteCode(type2)) {
+      if (ancestors1.contains(ancestor)) return ancestor;
+    }
+    return "java/lang/Object";
+  }
+
+  private List<String> getAncestorsFromByteCode(String internalName) {
+    List<String> ancestors = new ArrayList<String>();
+    String current = internalName;
+    while (current != null) {
+      ClassReader classReader;
+      try {
+        classReader = new ClassReader(getByteCode(current.replace('/', '.')));
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+      if ((classReader.getAccess() & ACC_INTERFACE) != 0) {
+        break;
+      }
+      ancestors.add(current);
+      current = classReader.getSuperName();
+    }
+    return ancestors;
+  }
+
   private static class MyGenerator extends GeneratorAdapter {
     private final boolean isStatic;
     private final String desc;
@@ -399,6 +694,15 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     return transformed;
   }
 
+  private Map<Setup.MethodRef, Setup.MethodRef> convertHandlersToSlashes(Map<Setup.MethodRef, Setup.MethodRef> methodRefs) {
+    HashMap<Setup.MethodRef, Setup.MethodRef> transformed = new HashMap<Setup.MethodRef, Setup.MethodRef>();
+    for (Map.Entry<Setup.MethodRef, Setup.MethodRef> entry : methodRefs.entrySet()) {
+      transformed.put(new Setup.MethodRef(internalize(entry.getKey().className), entry.getKey().methodName),
+          new Setup.MethodRef(internalize(entry.getValue().className), entry.getValue().methodName));
+    }
+    return transformed;
+  }
+
   private String internalize(String className) {
     return className.replace('.', '/');
   }
@@ -409,6 +713,8 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
     private final String internalClassName;
     private final String className;
     private final Type classType;
+    private final boolean invokeDynamic;
+    private int methodCount;
 
     public ClassInstrumentor(ClassNode classNode, boolean containsStubs) {
       this.classNode = classNode;
@@ -417,9 +723,14 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       this.internalClassName = classNode.name;
       this.className = classNode.name.replace('/', '.');
       this.classType = Type.getObjectType(internalClassName);
+      this.invokeDynamic = setup.useInvokeDynamic() && !containsSubroutines(classNode);
     }
 
     public void instrument() {
+      if (invokeDynamic && (classNode.version & 0xffff) < V1_7) {
+        classNode.version = V1_7;
+      }
+
       makePublic(classNode);
       classNode.access = classNode.access & ~ACC_FINAL;
 
@@ -442,6 +753,9 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       }
 
       classNode.fields.add(0, new FieldNode(ACC_PUBLIC, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_DESC, OBJECT_DESC, null));
+      if ((classNode.access & ACC_INTERFACE) == 0) {
+        classNode.interfaces.add(SHADOWED_OBJECT_TYPE.getInternalName());
+      }
 
       if (!foundMethods.contains("<init>()V")) {
         MethodNode defaultConstructor = new MethodNode(ACC_PUBLIC, "<init>", "()V", "()V", null);
@@ -496,7 +810,7 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       }
 
       {
-        MethodNode initMethodNode = new MethodNode(ACC_PROTECTED, GET_ROBO_DATA_METHOD_NAME, GET_ROBO_DATA_SIGNATURE, null, null);
+        MethodNode initMethodNode = new MethodNode(ACC_PUBLIC, GET_ROBO_DATA_METHOD_NAME, GET_ROBO_DATA_SIGNATURE, null, null);
         MyGenerator m = new MyGenerator(initMethodNode);
         m.loadThis();                                         // this
         m.getField(classType, CLASS_HANDLER_DATA_FIELD_NAME, OBJECT_TYPE);  // contents of __robo_data__
@@ -505,6 +819,9 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         classNode.methods.add(initMethodNode);
       }
 
+      // each call to the class handler passes its own method id, so plans can be kept in an array per class
+      classNode.fields.add(new FieldNode(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, METHOD_COUNT_FIELD_NAME, "I", null, methodCount));
+
       if (className.equals("android.os.Build$VERSION")) {
         for (Object field : classNode.fields) {
           FieldNode fieldNode = (FieldNode) field;
@@ -513,6 +830,20 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       }
     }
 
+    /**
+     * JSR and RET can't be expressed with stack map frames, so classes using them can't be upgraded to V51.
+     */
+    private boolean containsSubroutines(ClassNode classNode) {
+      for (MethodNode method : (List<MethodNode>) classNode.methods) {
+        for (AbstractInsnNode node : method.instructions.toArray()) {
+          if (node.getOpcode() == JSR || node.getOpcode() == RET) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
     private boolean isSyntheticAccessorMethod(MethodNode method) {
       return (method.access & ACC_SYNTHETIC) != 0;
     }
@@ -664,7 +995,12 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
             MethodInsnNode targetMethod = (MethodInsnNode) node;
             targetMethod.desc = remapParams(targetMethod.desc);
             if (shouldIntercept(targetMethod)) {
-              interceptNastyMethod(instructions, callingMethod, targetMethod);
+              Setup.MethodRef handler = interceptionHandlers.get(new Setup.MethodRef(targetMethod.owner, targetMethod.name));
+              if (handler != null) {
+                callInterceptionHandler(targetMethod, handler);
+              } else {
+                interceptNastyMethod(instructions, callingMethod, targetMethod);
+              }
             }
             break;
 
@@ -674,6 +1010,19 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       }
     }
 
+    /**
+     * Turns a call to an intercepted method into a call straight to its handler, which takes the same arguments on the
+     * stack: no boxing, no lookup and no {@link ClassHandler} on the way.
+     */
+    private void callInterceptionHandler(MethodInsnNode targetMethod, Setup.MethodRef handler) {
+      if (targetMethod.getOpcode() != INVOKESTATIC) {
+        targetMethod.desc = "(" + Type.getObjectType(targetMethod.owner).getDescriptor() + targetMethod.desc.substring(1);
+      }
+      targetMethod.setOpcode(INVOKESTATIC);
+      targetMethod.owner = handler.className;
+      targetMethod.name = handler.methodName;
+    }
+
     private void interceptNastyMethod(ListIterator<AbstractInsnNode> instructions, MethodNode callingMethod, MethodInsnNode targetMethod) {
       boolean isStatic = targetMethod.getOpcode() == INVOKESTATIC;
 
@@ -820,10 +1169,16 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
         m.mark(notInstanceOfThis);
       }
 
-      // prepare for call to classHandler.methodInvoked(String signature, boolean isStatic)
+      if (invokeDynamic) {
+        generateInvokeDynamicCall(originalMethod, originalMethodName, m, exceptionLocalVar);
+        return;
+      }
+
+      // prepare for call to classHandler.methodInvoked(String signature, boolean isStatic, Class theClass, int methodId)
       m.push(classType.getInternalName() + "/" + originalMethodName + originalMethod.desc);
       m.push(m.isStatic());
       m.push(classType);                                         // my class
+      m.push(methodCount++);                                     // method id
       m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, METHOD_INVOKED_METHOD);
       m.storeLocal(planLocalVar);
 
@@ -899,6 +1254,33 @@ public class AsmInstrumentingClassLoader extends ClassLoader implements Opcodes,
       m.returnValue();
     }
 
+    /**
+     * Calls through an invokedynamic call site which {@link RobolectricInternals#bootstrap} links to the shadow
+     * method, the original method, or a no-op, instead of asking the class handler for a plan on every call.
+     */
+    private void generateInvokeDynamicCall(MethodNode originalMethod, String originalMethodName, MyGenerator m, int exceptionLocalVar) {
+      Handle directMethod = new Handle(m.isStatic() ? H_INVOKESTATIC : H_INVOKESPECIAL,
+          internalClassName, originalMethod.name, originalMethod.desc);
+      String callSiteDesc = m.isStatic()
+          ? originalMethod.desc
+          : "(" + classType.getDescriptor() + originalMethod.desc.substring(1);
+
+      TryCatch tryCatchForHandler = m.tryStart(THROWABLE_TYPE);
+      if (!m.isStatic()) m.loadThis();
+      m.loadArgs();
+      m.invokeDynamic(originalMethodName, callSiteDesc, BOOTSTRAP_HANDLE,
+          classType.getInternalName() + "/" + originalMethodName + originalMethod.desc, m.isStatic() ? 1 : 0, directMethod);
+      tryCatchForHandler.end();
+      m.returnValue();
+
+      // catch(Throwable)
+      tryCatchForHandler.handler();
+      m.storeLocal(exceptionLocalVar);
+      m.loadLocal(exceptionLocalVar);
+      m.invokeStatic(ROBOLECTRIC_INTERNALS_TYPE, HANDLE_EXCEPTION_METHOD);
+      m.throwException();
+    }
+
     private boolean isEnum() {
       return (classNode.access & ACC_ENUM) != 0;
     }
@@ -5,7 +5,11 @@ public interface ClassHandler {
 
   Object initializing(Object instance);
 
-  Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass);
+  /**
+   * @param methodId the index {@link InstrumentingClassLoader#METHOD_COUNT_FIELD_NAME counted} among the instrumented
+   *     methods of {@code theClass}, or -1 if the caller doesn't know it
+   */
+  Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass, int methodId);
 
   Object intercept(String signature, Object instance, Object[] params, Class theClass) throws Throwable;
 
@@ -0,0 +1,175 @@
+package org.robolectric.bytecode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the classes a suite is known to need into new {@link AsmInstrumentingClassLoader}s in the background, on
+ * spare cores, so they're instrumented by the time its tests ask for them.
+ *
+ * The classes are listed a name per line in the file named by the {@code robolectric.prefetchClasses} system property.
+ * If the file doesn't exist, nothing is prefetched; instead, the classes every class loader defined are written to it
+ * when the JVM exits, ready for the next run. Classes loaded by class loaders which have been garbage collected by
+ * then are left out. Delete the file to make a new list after the suite changes; classes which are listed but no
+ * longer exist are skipped.
+ *
+ * Prefetching only defines classes; they're initialized, as always, when the tests first use them.
+ */
+public class ClassPrefetcher {
+  private static ClassPrefetcher instance;
+
+  private final File file;
+  private final boolean recording;
+  private final List<String> classNames;
+  private final ExecutorService executor;
+  private final List<WeakReference<AsmInstrumentingClassLoader>> recordedClassLoaders =
+      new ArrayList<WeakReference<AsmInstrumentingClassLoader>>();
+
+  ClassPrefetcher(File file, int threadCount) throws IOException {
+    this.file = file;
+    this.recording = !file.exists();
+    if (!recording) {
+      classNames = readClassNames(file);
+      if (threadCount < 1) {
+        executor = null;
+      } else {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "robolectric-prefetch");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          }
+        });
+        // nothing is left running between class loaders
+        threadPool.allowCoreThreadTimeOut(true);
+        executor = threadPool;
+      }
+    } else {
+      classNames = Collections.emptyList();
+      executor = null;
+    }
+  }
+
+  public static boolean isEnabled() {
+    return System.getProperty("robolectric.prefetchClasses") != null;
+  }
+
+  public static synchronized ClassPrefetcher getInstance() {
+    if (instance == null) {
+      File file = new File(System.getProperty("robolectric.prefetchClasses"));
+      try {
+        // leave a core for the tests themselves
+        instance = new ClassPrefetcher(file, Runtime.getRuntime().availableProcessors() - 1);
+      } catch (IOException e) {
+        throw new RuntimeException("couldn't read " + file, e);
+      }
+      if (instance.recording) {
+        Runtime.getRuntime().addShutdownHook(new Thread("robolectric-prefetch-record") {
+          @Override public void run() {
+            instance.writeClassNames();
+          }
+        });
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Starts loading the listed classes into {@code classLoader}, or if there's no list yet, remembers the classes it
+   * defines for the next run.
+   */
+  public void prefetch(AsmInstrumentingClassLoader classLoader) {
+    if (recording) {
+      synchronized (recordedClassLoaders) {
+        recordedClassLoaders.add(new WeakReference<AsmInstrumentingClassLoader>(classLoader));
+      }
+      return;
+    }
+    if (executor == null) return;
+
+    // don't keep class loaders the pool has let go of alive just to finish prefetching for them
+    final WeakReference<AsmInstrumentingClassLoader> classLoaderReference =
+        new WeakReference<AsmInstrumentingClassLoader>(classLoader);
+    for (final String className : classNames) {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          AsmInstrumentingClassLoader classLoader = classLoaderReference.get();
+          if (classLoader == null) return;
+
+          try {
+            classLoader.loadClass(className);
+          } catch (ClassNotFoundException e) {
+            // no longer part of the suite
+          } catch (LinkageError e) {
+            // the test which needs the class will get the same error when it loads it
+          }
+        }
+      });
+    }
+  }
+
+  List<String> getClassNames() {
+    return classNames;
+  }
+
+  void writeClassNames() {
+    Set<String> definedClassNames = new LinkedHashSet<String>();
+    synchronized (recordedClassLoaders) {
+      for (WeakReference<AsmInstrumentingClassLoader> reference : recordedClassLoaders) {
+        AsmInstrumentingClassLoader classLoader = reference.get();
+        if (classLoader != null) {
+          definedClassNames.addAll(classLoader.getDefinedClassNames());
+        }
+      }
+    }
+    if (definedClassNames.isEmpty()) return;
+
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+        for (String className : definedClassNames) {
+          writer.write(className);
+          writer.write('\n');
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't write " + file + ": " + e);
+    }
+  }
+
+  private static List<String> readClassNames(File file) throws IOException {
+    List<String> classNames = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0) classNames.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return classNames;
+  }
+}
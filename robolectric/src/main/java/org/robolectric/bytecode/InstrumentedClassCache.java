@@ -0,0 +1,462 @@
+package org.robolectric.bytecode;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * Persistent, content-addressed store of instrumented class bytes, shared by every JVM that runs with the same
+ * {@link Setup}.
+ *
+ * Entries are keyed by a SHA-1 of the class name and its original bytes, and live in a single pack file which is
+ * memory-mapped when the cache is opened. The pack file name is derived from a fingerprint of the {@link Setup}
+ * class, {@link Setup#methodsToIntercept()}, {@link Setup#interceptionHandlers()}, {@link Setup#classNameTranslations()}, {@link Setup#useInvokeDynamic()}
+ * and the Robolectric build, so a change to any of those simply selects a different (initially empty) pack file;
+ * stale packs are never read.
+ *
+ * New entries are kept in memory and merged into the pack file by {@link #flush()}, which runs automatically at
+ * JVM shutdown. Concurrent forks serialize on a lock file and merge with whatever is already on disk.
+ *
+ * An in-memory cache, which has no pack file and is never flushed, lets class loaders within one JVM share
+ * instrumented bytes without persisting them; see {@link #inMemory(Setup)}.
+ */
+public class InstrumentedClassCache {
+  private static final int MAGIC = 0x524f4243; // "ROBC"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 12;
+  private static final int KEY_SIZE = 20;
+  private static final byte UNINSTRUMENTED = 0;
+  private static final byte INSTRUMENTED = 1;
+
+  private static final Map<File, InstrumentedClassCache> OPEN_CACHES = new HashMap<File, InstrumentedClassCache>();
+  private static final Map<String, InstrumentedClassCache> IN_MEMORY_CACHES = new HashMap<String, InstrumentedClassCache>();
+
+  private final File packFile;
+  private final Map<Key, Entry> pending = new ConcurrentHashMap<Key, Entry>();
+  private volatile Pack pack;
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicInteger stores = new AtomicInteger();
+
+  InstrumentedClassCache(File packFile) {
+    this.packFile = packFile;
+    this.pack = packFile == null ? Pack.EMPTY : Pack.load(packFile);
+  }
+
+  /**
+   * Returns the cache for the given {@link Setup} in {@code cacheDir}, creating the directory if necessary.
+   * Caches are shared within a JVM, so all class loaders with an equivalent setup use the same instance.
+   */
+  public static InstrumentedClassCache open(File cacheDir, Setup setup) {
+    cacheDir.mkdirs();
+    File packFile = new File(cacheDir, "instrumented-" + fingerprint(setup) + ".pack");
+    synchronized (OPEN_CACHES) {
+      InstrumentedClassCache cache = OPEN_CACHES.get(packFile);
+      if (cache == null) {
+        cache = new InstrumentedClassCache(packFile);
+        final InstrumentedClassCache cacheToFlush = cache;
+        Runtime.getRuntime().addShutdownHook(new Thread("robolectric-class-cache-flush") {
+          @Override public void run() {
+            cacheToFlush.flush();
+          }
+        });
+        OPEN_CACHES.put(packFile, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Returns a cache for the given {@link Setup} which lives only as long as this JVM. Like {@link #open(File, Setup)},
+   * all class loaders with an equivalent setup use the same instance.
+   */
+  public static InstrumentedClassCache inMemory(Setup setup) {
+    String fingerprint = fingerprint(setup);
+    synchronized (IN_MEMORY_CACHES) {
+      InstrumentedClassCache cache = IN_MEMORY_CACHES.get(fingerprint);
+      if (cache == null) {
+        cache = new InstrumentedClassCache(null);
+        IN_MEMORY_CACHES.put(fingerprint, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * @return the bytes to define for {@code className}, or null if this version of the class hasn't been seen before.
+   */
+  public byte[] get(String className, byte[] origClassBytes) {
+    Key key = Key.of(className, origClassBytes);
+    Entry entry = pending.get(key);
+    if (entry == null) {
+      entry = pack.get(key);
+    }
+
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+    return entry.instrumented ? entry.bytes : origClassBytes;
+  }
+
+  /**
+   * Records the bytes defined for {@code className}. Passing {@code origClassBytes} itself as
+   * {@code definedClassBytes} records that the class was not instrumented without storing a second copy.
+   */
+  public void put(String className, byte[] origClassBytes, byte[] definedClassBytes) {
+    boolean instrumented = definedClassBytes != origClassBytes;
+    pending.put(Key.of(className, origClassBytes), new Entry(instrumented, instrumented ? definedClassBytes : new byte[0]));
+    stores.incrementAndGet();
+  }
+
+  public int getHitCount() {
+    return hits.get();
+  }
+
+  public int getMissCount() {
+    return misses.get();
+  }
+
+  public int getStoreCount() {
+    return stores.get();
+  }
+
+  /**
+   * @return the pack file backing this cache, or null if it's an in-memory cache
+   */
+  public File getPackFile() {
+    return packFile;
+  }
+
+  /**
+   * Merges entries added since the cache was opened into the pack file. Errors are reported but never thrown;
+   * the cache is purely an optimization.
+   */
+  public synchronized void flush() {
+    if (packFile == null || pending.isEmpty()) return;
+
+    File lockFile = new File(packFile.getPath() + ".lock");
+    File tmpFile = new File(packFile.getPath() + ".tmp");
+    try {
+      RandomAccessFile lockRaf = new RandomAccessFile(lockFile, "rw");
+      try {
+        FileLock lock = lockRaf.getChannel().lock();
+        try {
+          Pack onDisk = Pack.load(packFile); // another fork may have written since we opened
+          List<Map.Entry<Key, Entry>> additions = new ArrayList<Map.Entry<Key, Entry>>();
+          for (Map.Entry<Key, Entry> mapEntry : pending.entrySet()) {
+            if (!onDisk.contains(mapEntry.getKey())) {
+              additions.add(mapEntry);
+            }
+          }
+
+          if (!additions.isEmpty()) {
+            writePack(tmpFile, onDisk, additions);
+            if (!tmpFile.renameTo(packFile)) {
+              packFile.delete();
+              if (!tmpFile.renameTo(packFile)) {
+                throw new IOException("couldn't rename " + tmpFile + " to " + packFile);
+              }
+            }
+          }
+          pending.clear();
+          pack = Pack.load(packFile);
+        } finally {
+          lock.release();
+        }
+      } finally {
+        lockRaf.close();
+      }
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't write instrumented class cache " + packFile + ": " + e);
+      tmpFile.delete();
+    }
+  }
+
+  private static void writePack(File file, Pack existing, List<Map.Entry<Key, Entry>> additions) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(existing.size() + additions.size());
+      existing.writeEntriesTo(out);
+      for (Map.Entry<Key, Entry> mapEntry : additions) {
+        Entry entry = mapEntry.getValue();
+        out.write(mapEntry.getKey().digest);
+        out.writeByte(entry.instrumented ? INSTRUMENTED : UNINSTRUMENTED);
+        out.writeInt(entry.bytes.length);
+        out.write(entry.bytes);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "InstrumentedClassCache{" + (packFile == null ? "in-memory" : packFile.getName()) +
+        ", hits=" + hits +
+        ", misses=" + misses +
+        ", stores=" + stores +
+        '}';
+  }
+
+  /**
+   * @return a string which is the same for every {@link Setup} that instruments classes the same way
+   */
+  public static String fingerprint(Setup setup) {
+    MessageDigest digest = sha1();
+    update(digest, setup.getClass().getName());
+    update(digest, "invokedynamic=" + setup.useInvokeDynamic());
+
+    List<String> methodRefs = new ArrayList<String>();
+    for (Setup.MethodRef methodRef : setup.methodsToIntercept()) {
+      methodRefs.add(methodRef.className + "#" + methodRef.methodName);
+    }
+    Collections.sort(methodRefs);
+    for (String methodRef : methodRefs) {
+      update(digest, methodRef);
+    }
+
+    List<String> handlers = new ArrayList<String>();
+    for (Map.Entry<Setup.MethodRef, Setup.MethodRef> entry : setup.interceptionHandlers().entrySet()) {
+      handlers.add(entry.getKey().className + "#" + entry.getKey().methodName
+          + "=" + entry.getValue().className + "#" + entry.getValue().methodName);
+    }
+    Collections.sort(handlers);
+    for (String handler : handlers) {
+      update(digest, handler);
+    }
+
+    List<String> translations = new ArrayList<String>();
+    for (Map.Entry<String, String> entry : setup.classNameTranslations().entrySet()) {
+      translations.add(entry.getKey() + "=" + entry.getValue());
+    }
+    Collections.sort(translations);
+    for (String translation : translations) {
+      update(digest, translation);
+    }
+
+    Package pkg = AsmInstrumentingClassLoader.class.getPackage();
+    update(digest, String.valueOf(pkg == null ? null : pkg.getImplementationVersion()));
+
+    // snapshot builds don't bump the version, so also key on the bytecode of the instrumenter and of the setup,
+    // whose overrides of shouldInstrument() and friends aren't visible through the values above
+    for (String className : instrumenterClassNames()) {
+      updateWithClassBytes(digest, AsmInstrumentingClassLoader.class.getClassLoader(), className);
+    }
+    for (Class<?> setupClass = setup.getClass(); setupClass != null; setupClass = setupClass.getSuperclass()) {
+      updateWithClassBytes(digest, setupClass.getClassLoader(), setupClass.getName());
+      if (setupClass == Setup.class) break;
+    }
+
+    return toHex(digest.digest()).substring(0, 16);
+  }
+
+  /**
+   * @return the names of {@link AsmInstrumentingClassLoader} and all of its nested and anonymous classes
+   */
+  static List<String> instrumenterClassNames() {
+    List<String> classNames = new ArrayList<String>();
+    addWithNestedClassNames(classNames, AsmInstrumentingClassLoader.class);
+    return classNames;
+  }
+
+  private static void addWithNestedClassNames(List<String> classNames, Class<?> clazz) {
+    classNames.add(clazz.getName());
+    // anonymous classes aren't declared, but javac numbers them from $1 upwards
+    ClassLoader classLoader = clazz.getClassLoader();
+    for (int i = 1; classLoader != null && classLoader.getResource(resourceName(clazz.getName() + "$" + i)) != null; i++) {
+      classNames.add(clazz.getName() + "$" + i);
+    }
+    for (Class<?> nestedClass : clazz.getDeclaredClasses()) {
+      addWithNestedClassNames(classNames, nestedClass);
+    }
+  }
+
+  private static void updateWithClassBytes(MessageDigest digest, ClassLoader classLoader, String className) {
+    update(digest, className);
+    InputStream classBytes = classLoader == null ? null : classLoader.getResourceAsStream(resourceName(className));
+    if (classBytes != null) {
+      try {
+        digest.update(readBytes(classBytes));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static String resourceName(String className) {
+    return className.replace('.', '/') + ".class";
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    try {
+      digest.update(value.getBytes("UTF-8"));
+      digest.update((byte) 0);
+    } catch (java.io.UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder();
+    for (byte b : bytes) {
+      buf.append(String.format("%02x", b & 0xff));
+    }
+    return buf.toString();
+  }
+
+  private static class Key {
+    private final byte[] digest;
+    private final int hashCode;
+
+    Key(byte[] digest) {
+      this.digest = digest;
+      this.hashCode = Arrays.hashCode(digest);
+    }
+
+    static Key of(String className, byte[] classBytes) {
+      MessageDigest digest = sha1();
+      update(digest, className);
+      digest.update(classBytes);
+      return new Key(digest.digest());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o || (o instanceof Key && Arrays.equals(digest, ((Key) o).digest));
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class Entry {
+    final boolean instrumented;
+    final byte[] bytes;
+
+    Entry(boolean instrumented, byte[] bytes) {
+      this.instrumented = instrumented;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Read-only view of a pack file. The index is built once; entry bytes are copied out of the mapping on demand.
+   */
+  private static class Pack {
+    private static final Pack EMPTY = new Pack(null, Collections.<Key, Integer>emptyMap(), HEADER_SIZE);
+
+    private final MappedByteBuffer buffer;
+    private final Map<Key, Integer> offsets;
+    private final int endOfEntries;
+
+    private Pack(MappedByteBuffer buffer, Map<Key, Integer> offsets, int endOfEntries) {
+      this.buffer = buffer;
+      this.offsets = offsets;
+      this.endOfEntries = endOfEntries;
+    }
+
+    static Pack load(File file) {
+      if (!file.exists()) return EMPTY;
+
+      try {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+          MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+          if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return EMPTY;
+          }
+
+          int count = buffer.getInt();
+          Map<Key, Integer> offsets = new HashMap<Key, Integer>(count * 2);
+          for (int i = 0; i < count; i++) {
+            int offset = buffer.position();
+            byte[] digest = new byte[KEY_SIZE];
+            buffer.get(digest);
+            buffer.get(); // flags
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) return EMPTY;
+            buffer.position(buffer.position() + length);
+            offsets.put(new Key(digest), offset);
+          }
+          return new Pack(buffer, offsets, buffer.position());
+        } finally {
+          raf.close(); // the mapping stays valid after the file is closed
+        }
+      } catch (IOException e) {
+        return EMPTY;
+      } catch (BufferUnderflowException e) {
+        return EMPTY; // truncated or otherwise corrupt; start over
+      }
+    }
+
+    int size() {
+      return offsets.size();
+    }
+
+    boolean contains(Key key) {
+      return offsets.containsKey(key);
+    }
+
+    Entry get(Key key) {
+      Integer offset = offsets.get(key);
+      if (offset == null) return null;
+
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset + KEY_SIZE);
+      boolean instrumented = view.get() == INSTRUMENTED;
+      byte[] bytes = new byte[view.getInt()];
+      view.get(bytes);
+      return new Entry(instrumented, bytes);
+    }
+
+    void writeEntriesTo(DataOutputStream out) throws IOException {
+      if (buffer == null || offsets.isEmpty()) return;
+
+      ByteBuffer view = buffer.duplicate();
+      view.position(HEADER_SIZE);
+      byte[] chunk = new byte[64 * 1024];
+      while (view.position() < endOfEntries) {
+        int length = Math.min(chunk.length, endOfEntries - view.position());
+        view.get(chunk, 0, length);
+        out.write(chunk, 0, length);
+      }
+    }
+  }
+}
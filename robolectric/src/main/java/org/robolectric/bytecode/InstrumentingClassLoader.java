@@ -4,4 +4,6 @@ public interface InstrumentingClassLoader {
   String CLASS_HANDLER_DATA_FIELD_NAME = "__robo_data__"; // todo: rename
   String STATIC_INITIALIZER_METHOD_NAME = "__staticInitializer__";
   String CONSTRUCTOR_METHOD_NAME = "__constructor__";
+  String STATIC_STATE_DIRTY_FIELD_NAME = "$$robo$dirty";
+  String METHOD_COUNT_FIELD_NAME = "$$robo$methodCount";
 }
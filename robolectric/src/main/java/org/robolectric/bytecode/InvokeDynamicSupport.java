@@ -0,0 +1,213 @@
+package org.robolectric.bytecode;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Links the invokedynamic call sites emitted by {@link AsmInstrumentingClassLoader} when
+ * {@link Setup#useInvokeDynamic()} is on.
+ *
+ * Each call site is bound once to its method's plan: the shadow method, the original {@code $$robo$$} method, or a
+ * no-op. Bindings are guarded by a {@link SwitchPoint} per {@link ClassHandler}, which is invalidated when another
+ * handler is installed, so call sites relink on their next invocation. Handlers other than {@link ShadowWrangler} may
+ * hand out a different plan on every call, so for those the bound target still asks for a plan each time.
+ */
+public class InvokeDynamicSupport {
+  private static final Map<ClassHandler, SwitchPoint> SWITCH_POINTS = new WeakHashMap<ClassHandler, SwitchPoint>();
+  private static final MethodHandle RELINK;
+  private static final MethodHandle INVOKE_PLAN;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      RELINK = lookup.findVirtual(RoboCallSite.class, "relink", methodType(Object.class, Object[].class));
+      INVOKE_PLAN = lookup.findVirtual(PlanInvoker.class, "invoke", methodType(Object.class, Object[].class));
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The bootstrap method of every invokedynamic call site emitted by {@link AsmInstrumentingClassLoader}.
+   *
+   * This is kept out of {@link RobolectricInternals}, which is loaded on every JVM and so mustn't mention
+   * {@code java.lang.invoke}. {@link RobolectricInternals} is loaded separately into each sandbox, so the class handler
+   * is read from the copy which the calling class sees.
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String signature,
+                                   int isStatic, MethodHandle directMethod) throws ClassNotFoundException, NoSuchMethodException, NoSuchFieldException, IllegalAccessException {
+    Class<?> theClass = lookup.lookupClass();
+    Class<?> robolectricInternalsClass = theClass.getClassLoader().loadClass(RobolectricInternals.class.getName());
+    Field invokeDynamicLinkedField = robolectricInternalsClass.getDeclaredField("invokeDynamicLinked");
+    invokeDynamicLinkedField.setAccessible(true);
+    invokeDynamicLinkedField.setBoolean(null, true);
+    Field classHandlerField = robolectricInternalsClass.getDeclaredField("classHandler");
+    classHandlerField.setAccessible(true);
+    MethodHandle classHandlerGetter = MethodHandles.lookup().unreflectGetter(classHandlerField);
+
+    MethodHandle getRoboData = isStatic != 0 ? null : lookup.findVirtual(theClass,
+        AsmInstrumentingClassLoader.GET_ROBO_DATA_METHOD_NAME, methodType(Object.class));
+    return new RoboCallSite(theClass, type, signature, isStatic != 0, directMethod.asFixedArity(), getRoboData,
+        classHandlerGetter);
+  }
+
+  /**
+   * Forces every call site linked against {@code classHandler} to relink on its next invocation.
+   */
+  public static void invalidate(ClassHandler classHandler) {
+    SwitchPoint switchPoint;
+    synchronized (SWITCH_POINTS) {
+      switchPoint = SWITCH_POINTS.remove(classHandler);
+    }
+    if (switchPoint != null) {
+      SwitchPoint.invalidateAll(new SwitchPoint[] {switchPoint});
+    }
+  }
+
+  private static SwitchPoint switchPointFor(ClassHandler classHandler) {
+    synchronized (SWITCH_POINTS) {
+      SwitchPoint switchPoint = SWITCH_POINTS.get(classHandler);
+      if (switchPoint == null) {
+        switchPoint = new SwitchPoint();
+        SWITCH_POINTS.put(classHandler, switchPoint);
+      }
+      return switchPoint;
+    }
+  }
+
+  static MethodHandle doNothing(MethodType type) {
+    Class<?> returnType = type.returnType();
+    MethodHandle constant = returnType == void.class
+        ? MethodHandles.constant(Object.class, null).asType(methodType(void.class))
+        : MethodHandles.constant(returnType, zero(returnType));
+    return MethodHandles.dropArguments(constant, 0, type.parameterList());
+  }
+
+  static Object zero(Class<?> type) {
+    if (type == boolean.class) return false;
+    if (type == char.class) return (char) 0;
+    if (type == byte.class) return (byte) 0;
+    if (type == short.class) return (short) 0;
+    if (type == int.class) return 0;
+    if (type == long.class) return 0L;
+    if (type == float.class) return 0f;
+    if (type == double.class) return 0d;
+    return null;
+  }
+
+  static class RoboCallSite extends MutableCallSite {
+    private final Class<?> theClass;
+    private final String signature;
+    private final boolean isStatic;
+    private final MethodHandle directMethod;
+    private final MethodHandle getRoboData;
+    private final MethodHandle classHandlerGetter;
+    private final MethodHandle relink;
+
+    RoboCallSite(Class<?> theClass, MethodType type, String signature, boolean isStatic, MethodHandle directMethod,
+                 MethodHandle getRoboData, MethodHandle classHandlerGetter) {
+      super(type);
+      this.theClass = theClass;
+      this.signature = signature;
+      this.isStatic = isStatic;
+      this.directMethod = directMethod;
+      this.getRoboData = getRoboData;
+      this.classHandlerGetter = classHandlerGetter;
+      this.relink = RELINK.bindTo(this).asCollector(Object[].class, type.parameterCount()).asType(type);
+      setTarget(relink);
+    }
+
+    Object relink(Object[] args) throws Throwable {
+      ClassHandler classHandler = (ClassHandler) classHandlerGetter.invokeWithArguments();
+      SwitchPoint switchPoint = switchPointFor(classHandler);
+      MethodHandle target = link(classHandler).asType(type());
+      setTarget(switchPoint.guardWithTest(target, relink));
+      return target.invokeWithArguments(args);
+    }
+
+    private MethodHandle link(ClassHandler classHandler) {
+      if (classHandler instanceof ShadowWrangler) {
+        ClassHandler.Plan plan = classHandler.methodInvoked(signature, isStatic, theClass, -1);
+        if (plan == ShadowWrangler.CALL_REAL_CODE_PLAN) {
+          return directMethod;
+        } else if (plan == ShadowWrangler.DO_NOTHING_PLAN) {
+          return doNothing(type());
+        } else if (plan instanceof ShadowWrangler.ShadowMethodPlan) {
+          MethodHandle shadowMethod = bindShadowMethod(((ShadowWrangler.ShadowMethodPlan) plan).getShadowMethod());
+          if (shadowMethod != null) return shadowMethod;
+        }
+      }
+
+      PlanInvoker planInvoker = new PlanInvoker(classHandler, this);
+      return INVOKE_PLAN.bindTo(planInvoker).asCollector(Object[].class, type().parameterCount());
+    }
+
+    /**
+     * @return a handle which calls {@code shadowMethod} on this instance's shadow, or null if the shadow method's
+     *     signature needs the conversions only the reflective path performs
+     */
+    private MethodHandle bindShadowMethod(Method shadowMethod) {
+      MethodType type = type();
+      Class<?> returnType = type.returnType();
+      if (returnType.isPrimitive() && returnType != void.class && shadowMethod.getReturnType() != returnType) {
+        return null; // loose signature; a null return has to become zero
+      }
+
+      MethodHandle handle;
+      try {
+        handle = MethodHandles.publicLookup().unreflect(shadowMethod).asFixedArity();
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+
+      if (Modifier.isStatic(shadowMethod.getModifiers())) {
+        if (!isStatic) {
+          handle = MethodHandles.dropArguments(handle, 0, type.parameterType(0));
+        }
+      } else {
+        if (isStatic) return null;
+        handle = handle.asType(handle.type().changeParameterType(0, Object.class));
+        handle = MethodHandles.filterArguments(handle, 0, getRoboData);
+      }
+      return MethodHandles.explicitCastArguments(handle, type);
+    }
+  }
+
+  static class PlanInvoker {
+    private final ClassHandler classHandler;
+    private final RoboCallSite callSite;
+
+    PlanInvoker(ClassHandler classHandler, RoboCallSite callSite) {
+      this.classHandler = classHandler;
+      this.callSite = callSite;
+    }
+
+    Object invoke(Object[] args) throws Throwable {
+      ClassHandler.Plan plan = classHandler.methodInvoked(callSite.signature, callSite.isStatic, callSite.theClass, -1);
+      if (plan == null) {
+        return callSite.directMethod.invokeWithArguments(args);
+      }
+
+      Object instance = callSite.isStatic ? null : args[0];
+      Object roboData = callSite.isStatic ? null : callSite.getRoboData.invokeWithArguments(instance);
+      Object[] params = callSite.isStatic ? args : Arrays.copyOfRange(args, 1, args.length);
+      Object result = plan.run(instance, roboData, params);
+      return result == null ? zero(callSite.type().returnType()) : result;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package org.robolectric.bytecode;
+
+import org.robolectric.DependencyResolver;
+import org.robolectric.LocalDependencyResolver;
+import org.robolectric.MavenDependencyResolver;
+import org.robolectric.SdkConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * Instruments every class in an SDK's android-all jar ahead of time, so that test JVMs only have to define them.
+ *
+ * The output jar contains only classes; resources are still read from the original jar, which must remain on the
+ * {@link AsmInstrumentingClassLoader}'s classpath. The jar's manifest records the {@link Setup} fingerprint it was
+ * built with, and {@link AsmInstrumentingClassLoader} ignores jars whose fingerprint doesn't match its own.
+ *
+ * Usage: {@code PreInstrumenter <output dir> <api level>...}
+ */
+public class PreInstrumenter {
+  static final Attributes.Name FINGERPRINT_ATTRIBUTE = new Attributes.Name("Robolectric-Instrumentation-Fingerprint");
+
+  private final Setup setup;
+
+  public PreInstrumenter(Setup setup) {
+    this.setup = setup;
+  }
+
+  public static String instrumentedJarName(SdkConfig sdkConfig) {
+    return "android-all-" + sdkConfig.getArtifactVersionString() + "-instrumented.jar";
+  }
+
+  /**
+   * @return the fingerprint recorded in the manifest of a pre-instrumented jar, or null if {@code url} isn't one
+   */
+  public static String getFingerprint(URL url) {
+    if (!url.getPath().endsWith(".jar")) return null;
+
+    try {
+      JarInputStream jarInputStream = new JarInputStream(url.openStream());
+      try {
+        Manifest manifest = jarInputStream.getManifest();
+        return manifest == null ? null : manifest.getMainAttributes().getValue(FINGERPRINT_ATTRIBUTE);
+      } finally {
+        jarInputStream.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes instrumented copies of every class in {@code inputJar} that the setup would acquire to {@code outputJar}.
+   *
+   * @return the number of classes written
+   */
+  public int instrument(File inputJar, File outputJar) throws IOException {
+    AsmInstrumentingClassLoader instrumentingClassLoader = new AsmInstrumentingClassLoader(setup, inputJar.toURI().toURL());
+
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(FINGERPRINT_ATTRIBUTE, InstrumentedClassCache.fingerprint(setup));
+
+    File tmpJar = new File(outputJar.getPath() + ".tmp");
+    int count = 0;
+    JarFile jarFile = new JarFile(inputJar);
+    try {
+      JarOutputStream out = new JarOutputStream(new FileOutputStream(tmpJar), manifest);
+      try {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+          JarEntry entry = entries.nextElement();
+          String name = entry.getName();
+          if (!name.endsWith(".class")) continue;
+
+          String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+          if (!setup.shouldAcquire(className)) continue;
+
+          byte[] bytes;
+          try {
+            InputStream inputStream = jarFile.getInputStream(entry);
+            bytes = instrumentingClassLoader.instrument(className, readBytes(inputStream));
+          } catch (Exception e) {
+            // leave it out; it'll be instrumented lazily, and fail there if it's really broken
+            System.out.println("[WARN] couldn't instrument " + className + ": " + e);
+            continue;
+          }
+
+          out.putNextEntry(new JarEntry(name));
+          out.write(bytes);
+          out.closeEntry();
+          count++;
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      jarFile.close();
+    }
+
+    outputJar.delete();
+    if (!tmpJar.renameTo(outputJar)) {
+      throw new IOException("couldn't rename " + tmpJar + " to " + outputJar);
+    }
+    return count;
+  }
+
+  public static void main(String[] args) throws IOException, URISyntaxException {
+    if (args.length < 2) {
+      System.err.println("Usage: " + PreInstrumenter.class.getName() + " <output dir> <api level>...");
+      System.exit(1);
+    }
+
+    File outputDir = new File(args[0]);
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("couldn't create " + outputDir);
+    }
+
+    DependencyResolver dependencyResolver;
+    if (Boolean.getBoolean("robolectric.offline")) {
+      String dependencyDir = System.getProperty("robolectric.dependency.dir", ".");
+      dependencyResolver = new LocalDependencyResolver(new File(dependencyDir));
+    } else {
+      dependencyResolver = new MavenDependencyResolver();
+    }
+
+    PreInstrumenter preInstrumenter = new PreInstrumenter(new Setup());
+    for (int i = 1; i < args.length; i++) {
+      SdkConfig sdkConfig = new SdkConfig(Integer.parseInt(args[i]));
+      URL androidAllUrl = dependencyResolver.getLocalArtifactUrl(sdkConfig.getSystemResourceDependency());
+      File outputJar = new File(outputDir, instrumentedJarName(sdkConfig));
+
+      long startTime = System.currentTimeMillis();
+      int count = preInstrumenter.instrument(new File(androidAllUrl.toURI()), outputJar);
+      System.out.println(String.format("Instrumented %d classes for %s into %s in %dms",
+          count, sdkConfig, outputJar, System.currentTimeMillis() - startTime));
+    }
+  }
+}
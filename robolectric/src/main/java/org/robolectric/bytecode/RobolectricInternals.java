@@ -7,6 +7,16 @@ public class RobolectricInternals {
 
   @SuppressWarnings("UnusedDeclaration")
   private static ClassHandler classHandler; // initialized via magic by SdkEnvironment
+  private static volatile boolean invokeDynamicLinked; // set by InvokeDynamicSupport.bootstrap()
+
+  @SuppressWarnings("UnusedDeclaration")
+  public static void setClassHandler(ClassHandler newClassHandler) {
+    ClassHandler oldClassHandler = classHandler;
+    classHandler = newClassHandler;
+    if (invokeDynamicLinked && oldClassHandler != null && oldClassHandler != newClassHandler) {
+      InvokeDynamicSupport.invalidate(oldClassHandler);
+    }
+  }
 
   @SuppressWarnings("UnusedDeclaration")
   public static void classInitializing(Class clazz) throws Exception {
@@ -19,8 +29,8 @@ public class RobolectricInternals {
   }
 
   @SuppressWarnings("UnusedDeclaration")
-  public static ClassHandler.Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-    return classHandler.methodInvoked(signature, isStatic, theClass);
+  public static ClassHandler.Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass, int methodId) {
+    return classHandler.methodInvoked(signature, isStatic, theClass, methodId);
   }
 
   @SuppressWarnings("UnusedDeclaration")
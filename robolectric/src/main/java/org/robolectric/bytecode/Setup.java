@@ -7,6 +7,8 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.SdkConfig;
 import org.robolectric.SdkEnvironment;
 import org.robolectric.TestLifecycle;
+import org.robolectric.TestTimingListener;
+import org.robolectric.TestTimings;
 import org.robolectric.annotation.Config;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
@@ -42,8 +44,16 @@ public class Setup {
 
       org.robolectric.bytecode.InstrumentingClassLoader.class,
       org.robolectric.bytecode.AsmInstrumentingClassLoader.class,
+      org.robolectric.bytecode.InstrumentedClassCache.class,
+      org.robolectric.bytecode.ClassPrefetcher.class,
+      org.robolectric.bytecode.PreInstrumenter.class,
+      org.robolectric.bytecode.InvokeDynamicSupport.class,
       SdkEnvironment.class,
       SdkConfig.class,
+      org.robolectric.internal.ResetterReport.class,
+      org.robolectric.internal.ResetterReport.Entry.class,
+      TestTimings.class,
+      TestTimingListener.class,
       RobolectricTestRunner.class,
       RobolectricTestRunner.HelperTestRunner.class,
       ResourcePath.class,
@@ -57,6 +67,7 @@ public class Setup {
       Config.class,
       Transcript.class,
       org.robolectric.bytecode.DirectObjectMarker.class,
+      org.robolectric.util.ShadowedObject.class,
       DependencyJar.class,
       ParallelUniverseInterface.class
   );
@@ -138,6 +149,22 @@ public class Setup {
     )));
   }
 
+  /**
+   * Static methods which calls to some of the {@link #methodsToIntercept()} are rewritten to call directly, so that
+   * they don't go through {@link ClassHandler#intercept} at all. A handler for a static method takes the same
+   * arguments; one for an instance method takes the instance first. Either way, it returns the same type.
+   *
+   * @return a map from intercepted methods to their handlers
+   */
+  public Map<MethodRef, MethodRef> interceptionHandlers() {
+    Map<MethodRef, MethodRef> map = new HashMap<MethodRef, MethodRef>();
+    map.put(new MethodRef("java.lang.System", "nanoTime"),
+        new MethodRef("org.robolectric.shadows.ShadowSystemClock", "nanoTime"));
+    map.put(new MethodRef("java.lang.System", "currentTimeMillis"),
+        new MethodRef("org.robolectric.shadows.ShadowSystemClock", "currentTimeMillis"));
+    return map;
+  }
+
   /**
    * Map from a requested class to an alternate stand-in, or not.
    *
@@ -156,6 +183,15 @@ public class Setup {
     public static class FakeInnerClass {}
   }
 
+  /**
+   * Whether instrumented methods should dispatch through invokedynamic call sites rather than asking the
+   * {@link ClassHandler} for a plan on every call. Requires a Java 7 or later runtime; instrumented classes are
+   * upgraded to class file version 51.
+   */
+  public boolean useInvokeDynamic() {
+    return Boolean.getBoolean("robolectric.invokedynamic");
+  }
+
   public boolean containsStubs(ClassInfo classInfo) {
     return classInfo.getName().startsWith("com.google.android.maps.");
   }
@@ -13,6 +13,11 @@ public class ShadowMap {
   public static final ShadowMap EMPTY = new ShadowMap(Collections.<String, ShadowConfig>emptyMap());
   private static final Set<String> unloadableClassNames = new HashSet<String>();
 
+  // flags in the generated shadow index (Shadows.ShadowIndex.ENTRIES)
+  private static final int CALL_THROUGH_BY_DEFAULT = 1;
+  private static final int INHERIT_IMPLEMENTATION_METHODS = 2;
+  private static final int LOOSE_SIGNATURES = 4;
+
   private final Map<String, ShadowConfig> map;
 
   ShadowMap(Map<String, ShadowConfig> map) {
@@ -99,7 +104,7 @@ public class ShadowMap {
   public static String convertToShadowName(String className) {
     String shadowClassName =
         "org.robolectric.shadows.Shadow" + className.substring(className.lastIndexOf(".") + 1);
-    shadowClassName = shadowClassName.replaceAll("\\$", "\\$Shadow");
+    shadowClassName = shadowClassName.replace("$", "$Shadow");
     return shadowClassName;
   }
 
@@ -135,6 +140,22 @@ public class ShadowMap {
       this.map = new HashMap<String, ShadowConfig>(shadowMap.map);
     }
 
+    /**
+     * Adds the shadows listed in a shadow index generated by the Robolectric annotation processor, as triples of
+     * shadowed class name, shadow class name and flags. Classes missing from the index are still looked up by
+     * turning their names into shadow class names, so shadows compiled without the index keep working.
+     */
+    public Builder addShadowIndex(String[] shadowIndex) {
+      for (int i = 0; i < shadowIndex.length; i += 3) {
+        int flags = Integer.parseInt(shadowIndex[i + 2]);
+        addShadowClass(shadowIndex[i], shadowIndex[i + 1],
+            (flags & CALL_THROUGH_BY_DEFAULT) != 0,
+            (flags & INHERIT_IMPLEMENTATION_METHODS) != 0,
+            (flags & LOOSE_SIGNATURES) != 0);
+      }
+      return this;
+    }
+
     public Builder addShadowClasses(Class<?>... shadowClasses) {
       for (Class<?> shadowClass : shadowClasses) {
         addShadowClass(shadowClass);
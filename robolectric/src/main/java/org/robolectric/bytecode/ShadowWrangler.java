@@ -10,6 +10,10 @@ import org.robolectric.util.Function;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ShadowWrangler implements ClassHandler {
   public static final Function<Object, Object> DO_NOTHING_HANDLER = new Function<Object, Object>() {
@@ -25,19 +29,26 @@ public class ShadowWrangler implements ClassHandler {
     }
   };
   public static final Plan CALL_REAL_CODE_PLAN = null;
+  // plan caches can't tell a cached null from an empty slot, so CALL_REAL_CODE_PLAN is cached as this
+  private static final Plan CACHED_CALL_REAL_CODE_PLAN = new Plan() {
+    @Override
+    public Object run(Object instance, Object roboData, Object[] params) throws Exception {
+      throw new IllegalStateException();
+    }
+  };
   private static final boolean STRIP_SHADOW_STACK_TRACES = true;
   private static final ShadowConfig NO_SHADOW_CONFIG = new ShadowConfig(Object.class.getName(), true, false, false);
   public boolean debug = false;
 
   private final ShadowMap shadowMap;
   private final Map<Class, MetaShadow> metaShadowMap = new HashMap<Class, MetaShadow>();
-  private final Map<String, Plan> planCache = new LinkedHashMap<String, Plan>() {
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
-      return size() > 500;
-    }
-  };
-  private final Map<Class, ShadowConfig> shadowConfigCache = new HashMap<Class, ShadowConfig>();
+  private final ConcurrentMap<Class<?>, AtomicReferenceArray<Plan>> planTables = new ConcurrentHashMap<Class<?>, AtomicReferenceArray<Plan>>();
+  // for callers which don't know the method id, e.g. invokedynamic call sites
+  private final ConcurrentMap<String, Plan> planCache = new ConcurrentHashMap<String, Plan>();
+  private final AtomicLong planCacheHits = new AtomicLong();
+  private final AtomicLong planCacheMisses = new AtomicLong();
+  private final AtomicLong planRecomputes = new AtomicLong();
+  private final ConcurrentMap<Class, ShadowConfig> shadowConfigCache = new ConcurrentHashMap<Class, ShadowConfig>();
   private final SdkConfig sdkConfig;
 
   public ShadowWrangler(ShadowMap shadowMap, SdkConfig sdkConfig) {
@@ -74,12 +85,87 @@ public class ShadowWrangler implements ClassHandler {
   }
 
   @Override
-  synchronized public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
+  public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass, int methodId) {
     if (debug) System.out.println("[DEBUG] " + signature);
-    if (planCache.containsKey(signature)) return planCache.get(signature);
-    Plan plan = calculatePlan(signature, isStatic, theClass);
-    planCache.put(signature, plan);
-    return plan;
+    AtomicReferenceArray<Plan> planTable = methodId < 0 ? null : getPlanTable(theClass);
+    if (planTable == null || methodId >= planTable.length()) {
+      return methodInvoked(signature, isStatic, theClass);
+    }
+
+    Plan plan = planTable.get(methodId);
+    if (plan != null) {
+      planCacheHits.incrementAndGet();
+    } else {
+      planCacheMisses.incrementAndGet();
+      Plan calculatedPlan = calculatePlan(signature, isStatic, theClass);
+      if (planTable.compareAndSet(methodId, null, calculatedPlan == CALL_REAL_CODE_PLAN ? CACHED_CALL_REAL_CODE_PLAN : calculatedPlan)) {
+        return calculatedPlan;
+      }
+      planRecomputes.incrementAndGet(); // another thread got there first; use its plan
+      plan = planTable.get(methodId);
+    }
+    return plan == CACHED_CALL_REAL_CODE_PLAN ? CALL_REAL_CODE_PLAN : plan;
+  }
+
+  private Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
+    Plan plan = planCache.get(signature);
+    if (plan != null) {
+      planCacheHits.incrementAndGet();
+    } else {
+      planCacheMisses.incrementAndGet();
+      Plan calculatedPlan = calculatePlan(signature, isStatic, theClass);
+      plan = planCache.putIfAbsent(signature, calculatedPlan == CALL_REAL_CODE_PLAN ? CACHED_CALL_REAL_CODE_PLAN : calculatedPlan);
+      if (plan == null) {
+        return calculatedPlan;
+      }
+      planRecomputes.incrementAndGet(); // another thread got there first; use its plan
+    }
+    return plan == CACHED_CALL_REAL_CODE_PLAN ? CALL_REAL_CODE_PLAN : plan;
+  }
+
+  /**
+   * @return the plans for {@code theClass}, indexed by the method ids its instrumented methods pass to
+   *     {@link #methodInvoked}, or null if it wasn't instrumented with method ids
+   */
+  private AtomicReferenceArray<Plan> getPlanTable(Class<?> theClass) {
+    AtomicReferenceArray<Plan> planTable = planTables.get(theClass);
+    if (planTable == null) {
+      int methodCount;
+      try {
+        methodCount = theClass.getDeclaredField(InstrumentingClassLoader.METHOD_COUNT_FIELD_NAME).getInt(null);
+      } catch (NoSuchFieldException e) {
+        return null;
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+      planTable = new AtomicReferenceArray<Plan>(methodCount);
+      AtomicReferenceArray<Plan> existingPlanTable = planTables.putIfAbsent(theClass, planTable);
+      if (existingPlanTable != null) {
+        planTable = existingPlanTable;
+      }
+    }
+    return planTable;
+  }
+
+  /**
+   * @return the number of {@link #methodInvoked} calls answered from the plan cache
+   */
+  public long getPlanCacheHitCount() {
+    return planCacheHits.get();
+  }
+
+  /**
+   * @return the number of {@link #methodInvoked} calls which had to calculate a plan
+   */
+  public long getPlanCacheMissCount() {
+    return planCacheMisses.get();
+  }
+
+  /**
+   * @return the number of plans which were calculated concurrently by more than one thread, and then discarded
+   */
+  public long getPlanRecomputeCount() {
+    return planRecomputes.get();
   }
 
   private Plan calculatePlan(String signature, boolean isStatic, Class<?> theClass) {
@@ -143,11 +229,11 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
-  synchronized private ShadowConfig getShadowConfig(Class clazz) {
+  private ShadowConfig getShadowConfig(Class clazz) {
     ShadowConfig shadowConfig = shadowConfigCache.get(clazz);
     if (shadowConfig == null) {
       shadowConfig = shadowMap.get(clazz);
-      shadowConfigCache.put(clazz, shadowConfig == null ? NO_SHADOW_CONFIG : shadowConfig);
+      shadowConfigCache.putIfAbsent(clazz, shadowConfig == null ? NO_SHADOW_CONFIG : shadowConfig);
       return shadowConfig;
     } else {
       return (shadowConfig == NO_SHADOW_CONFIG) ? null : shadowConfig;
@@ -289,7 +375,8 @@ public class ShadowWrangler implements ClassHandler {
           continue;
         }
 
-        if (className.equals(ShadowMethodPlan.class.getName())) {
+        if (className.equals(ShadowMethodPlan.class.getName())
+            || className.startsWith(InvokeDynamicSupport.class.getName())) {
           continue;
         }
 
@@ -302,7 +389,8 @@ public class ShadowWrangler implements ClassHandler {
           }
         }
 
-        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")) {
+        if (className.startsWith("sun.reflect.") || className.startsWith("java.lang.reflect.")
+            || className.startsWith("java.lang.invoke.")) {
           continue;
         }
 
@@ -462,13 +550,17 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
-  private static class ShadowMethodPlan implements Plan {
+  static class ShadowMethodPlan implements Plan {
     private final Method shadowMethod;
 
     public ShadowMethodPlan(Method shadowMethod) {
       this.shadowMethod = shadowMethod;
     }
 
+    Method getShadowMethod() {
+      return shadowMethod;
+    }
+
     @Override
     public Object run(Object instance, Object roboData, Object[] params) throws Throwable {
       //noinspection UnnecessaryLocalVariable
@@ -28,6 +28,7 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
   private boolean loggingInitialized = false;
   private SdkConfig sdkConfig;
+  private TestTimings testTimings;
 
   public ParallelUniverse(RobolectricTestRunner robolectricTestRunner) {
     this.robolectricTestRunner = robolectricTestRunner;
@@ -65,7 +66,9 @@ public class ParallelUniverse implements ParallelUniverseInterface {
     Robolectric.packageManager.addPackage(DEFAULT_PACKAGE_NAME);
     ResourceLoader resourceLoader;
     if (appManifest != null) {
+      long startTime = System.nanoTime();
       resourceLoader = robolectricTestRunner.getAppResourceLoader(sdkConfig, systemResourceLoader, appManifest);
+      record(TestTimings.APP_RESOURCES, startTime);
       Robolectric.packageManager.addManifest(appManifest, resourceLoader);
     } else {
       resourceLoader = systemResourceLoader;
@@ -90,7 +93,9 @@ public class ParallelUniverse implements ParallelUniverseInterface {
 
     Context systemContextImpl = ReflectionHelpers.callStaticMethodReflectively(contextImplClass, "createSystemContext", new ClassParameter(activityThreadClass, activityThread));
 
+    long startTime = System.nanoTime();
     final Application application = (Application) testLifecycle.createApplication(method, appManifest, config);
+    record(TestTimings.CREATE_APPLICATION, startTime);
     if (application != null) {
       String packageName = appManifest != null ? appManifest.getPackageName() : null;
       if (packageName == null) packageName = DEFAULT_PACKAGE_NAME;
@@ -123,10 +128,16 @@ public class ParallelUniverse implements ParallelUniverseInterface {
       shadowOf(appResources.getAssets()).setQualifiers(qualifiers);
 
       Robolectric.application = application;
+      startTime = System.nanoTime();
       application.onCreate();
+      record(TestTimings.APPLICATION_ON_CREATE, startTime);
     }
   }
 
+  private void record(String phase, long startTime) {
+    if (testTimings != null) testTimings.record(phase, startTime);
+  }
+
   @Override
   public void tearDownApplication() {
     if (Robolectric.application != null) {
@@ -143,4 +154,9 @@ public class ParallelUniverse implements ParallelUniverseInterface {
   public void setSdkConfig(SdkConfig sdkConfig) {
     this.sdkConfig = sdkConfig;
   }
+
+  @Override
+  public void setTestTimings(TestTimings testTimings) {
+    this.testTimings = testTimings;
+  }
 }
@@ -4,6 +4,7 @@ import java.lang.reflect.Method;
 import org.robolectric.AndroidManifest;
 import org.robolectric.SdkConfig;
 import org.robolectric.TestLifecycle;
+import org.robolectric.TestTimings;
 import org.robolectric.annotation.Config;
 import org.robolectric.res.ResourceLoader;
 
@@ -17,4 +18,6 @@ public interface ParallelUniverseInterface {
   Object getCurrentApplication();
 
   void setSdkConfig(SdkConfig sdkConfig);
+
+  void setTestTimings(TestTimings testTimings);
 }
@@ -0,0 +1,109 @@
+package org.robolectric.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Totals the time spent in each shadow's {@link org.robolectric.annotation.Resetter} across every test and
+ * environment in the JVM, and writes them, costliest first, to the file named by the
+ * {@code robolectric.resetterReport} system property when the JVM exits.
+ */
+public class ResetterReport {
+  private static ResetterReport instance;
+
+  private final File file;
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  ResetterReport(File file) {
+    this.file = file;
+  }
+
+  public static boolean isEnabled() {
+    return System.getProperty("robolectric.resetterReport") != null;
+  }
+
+  public static synchronized ResetterReport getInstance() {
+    if (instance == null) {
+      instance = new ResetterReport(new File(System.getProperty("robolectric.resetterReport")));
+      Runtime.getRuntime().addShutdownHook(new Thread("robolectric-resetter-report") {
+        @Override public void run() {
+          instance.write();
+        }
+      });
+    }
+    return instance;
+  }
+
+  public synchronized void reset(String shadowClassName, long nanos) {
+    Entry entry = getEntry(shadowClassName);
+    entry.resets++;
+    entry.nanos += nanos;
+  }
+
+  public synchronized void skipped(String shadowClassName) {
+    getEntry(shadowClassName).skips++;
+  }
+
+  private Entry getEntry(String shadowClassName) {
+    Entry entry = entries.get(shadowClassName);
+    if (entry == null) {
+      entry = new Entry(shadowClassName);
+      entries.put(shadowClassName, entry);
+    }
+    return entry;
+  }
+
+  public synchronized List<Entry> getEntries() {
+    List<Entry> sorted = new ArrayList<Entry>(entries.values());
+    Collections.sort(sorted, new Comparator<Entry>() {
+      @Override public int compare(Entry a, Entry b) {
+        return a.nanos < b.nanos ? 1 : a.nanos > b.nanos ? -1 : a.shadowClassName.compareTo(b.shadowClassName);
+      }
+    });
+    return sorted;
+  }
+
+  void write() {
+    try {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+        writer.write(toString());
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't write resetter report to " + file + ": " + e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder("total ms, resets, skips, shadow\n");
+    for (Entry entry : getEntries()) {
+      buf.append(String.format(Locale.US, "%10.3f %7d %7d  %s\n",
+          entry.nanos / 1000000.0, entry.resets, entry.skips, entry.shadowClassName));
+    }
+    return buf.toString();
+  }
+
+  public static class Entry {
+    public final String shadowClassName;
+    public long nanos;
+    public int resets;
+    public int skips;
+
+    Entry(String shadowClassName) {
+      this.shadowClassName = shadowClassName;
+    }
+  }
+}
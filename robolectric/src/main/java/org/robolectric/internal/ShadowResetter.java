@@ -0,0 +1,79 @@
+package org.robolectric.internal;
+
+import org.robolectric.Shadows;
+import org.robolectric.bytecode.InstrumentingClassLoader;
+
+import java.lang.reflect.Field;
+
+/**
+ * Calls the {@link org.robolectric.annotation.Resetter}s of shadows whose static state may have changed since they
+ * were last reset.
+ *
+ * Shadows with a resetter get a flag from the {@link InstrumentingClassLoader}, set whenever any of their code runs;
+ * those without one (because other classes can reach their static fields directly, or their resetter is marked
+ * {@link org.robolectric.annotation.Resetter#always()} since it resets state belonging to other classes) are always
+ * reset. Every resetter runs the first time through, since some of them also initialize their shadow's state.
+ *
+ * Setting the {@code robolectric.incrementalReset} system property to {@code false} resets every shadow every time.
+ */
+public class ShadowResetter {
+  private static final Object NOT_TRACKED = new Object();
+
+  private static Object[] dirtyFields;
+
+  public static synchronized void reset() {
+    ResetterReport report = ResetterReport.isEnabled() ? ResetterReport.getInstance() : null;
+    boolean incremental = !"false".equals(System.getProperty("robolectric.incrementalReset"));
+
+    String[] shadowClassNames = Shadows.Resetters.SHADOW_CLASS_NAMES;
+    boolean firstReset = dirtyFields == null;
+    if (firstReset) {
+      dirtyFields = new Object[shadowClassNames.length];
+    }
+
+    for (int i = 0; i < shadowClassNames.length; i++) {
+      Field dirtyField = firstReset ? null : (Field) (dirtyFields[i] == NOT_TRACKED ? null : dirtyFields[i]);
+      if (incremental && dirtyField != null && !isDirty(dirtyField)) {
+        if (report != null) report.skipped(shadowClassNames[i]);
+        continue;
+      }
+
+      long startTime = report == null ? 0 : System.nanoTime();
+      Shadows.Resetters.reset(i);
+      if (report != null) report.reset(shadowClassNames[i], System.nanoTime() - startTime);
+
+      if (firstReset) {
+        dirtyFields[i] = findDirtyField(shadowClassNames[i]);
+        dirtyField = dirtyFields[i] == NOT_TRACKED ? null : (Field) dirtyFields[i];
+      }
+      if (dirtyField != null) setDirty(dirtyField, false);
+    }
+  }
+
+  private static Object findDirtyField(String shadowClassName) {
+    try {
+      Class<?> shadowClass = Class.forName(shadowClassName, false, ShadowResetter.class.getClassLoader());
+      return shadowClass.getField(InstrumentingClassLoader.STATIC_STATE_DIRTY_FIELD_NAME);
+    } catch (NoSuchFieldException e) {
+      return NOT_TRACKED;
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static boolean isDirty(Field dirtyField) {
+    try {
+      return dirtyField.getBoolean(null);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void setDirty(Field dirtyField, boolean dirty) {
+    try {
+      dirtyField.setBoolean(null, dirty);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package org.robolectric.internal;
+
+import org.robolectric.TestTimingListener;
+import org.robolectric.TestTimings;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes every test's {@link TestTimings} to the file named by the {@code robolectric.timingReport} system property,
+ * a line per test, as it finishes. Files whose names end in {@code .csv} get comma-separated values under a header
+ * line; anything else gets a JSON object per line. Times are in milliseconds.
+ *
+ * Reports are appended to, so several JVMs, like forked surefire runs, can share one.
+ */
+public class TestTimingReport implements TestTimingListener {
+  private static TestTimingReport instance;
+
+  private final boolean csv;
+  private final Writer writer;
+
+  TestTimingReport(File file) throws IOException {
+    csv = file.getName().endsWith(".csv");
+    boolean isNew = !file.exists() || file.length() == 0;
+    writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+    if (csv && isNew) {
+      writer.write(csvHeader());
+      writer.flush();
+    }
+  }
+
+  public static boolean isEnabled() {
+    return System.getProperty("robolectric.timingReport") != null;
+  }
+
+  public static synchronized TestTimingReport getInstance() {
+    if (instance == null) {
+      File file = new File(System.getProperty("robolectric.timingReport"));
+      try {
+        instance = new TestTimingReport(file);
+      } catch (IOException e) {
+        throw new RuntimeException("couldn't open " + file, e);
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread("robolectric-timing-report") {
+        @Override public void run() {
+          instance.close();
+        }
+      });
+    }
+    return instance;
+  }
+
+  @Override
+  public synchronized void testTimed(TestTimings timings) {
+    try {
+      writer.write(csv ? toCsv(timings) : toJson(timings));
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  synchronized void close() {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't close timing report: " + e);
+    }
+  }
+
+  static String csvHeader() {
+    StringBuilder buf = new StringBuilder("class,method,total");
+    for (String phase : TestTimings.PHASES) {
+      buf.append(',').append(phase);
+    }
+    return buf.append(",loadedClasses,instrumentedClasses,instrumentation\n").toString();
+  }
+
+  static String toCsv(TestTimings timings) {
+    StringBuilder buf = new StringBuilder()
+        .append(csvString(timings.getClassName())).append(',')
+        .append(csvString(timings.getMethodName())).append(',')
+        .append(millis(timings.getTotalNanos()));
+    for (String phase : TestTimings.PHASES) {
+      buf.append(',').append(millis(timings.getNanos(phase)));
+    }
+    return buf.append(',').append(timings.getLoadedClassCount())
+        .append(',').append(timings.getInstrumentedClassCount())
+        .append(',').append(millis(timings.getInstrumentationNanos()))
+        .append('\n').toString();
+  }
+
+  static String toJson(TestTimings timings) {
+    StringBuilder buf = new StringBuilder()
+        .append("{\"class\":").append(jsonString(timings.getClassName()))
+        .append(",\"method\":").append(jsonString(timings.getMethodName()))
+        .append(",\"total\":").append(millis(timings.getTotalNanos()))
+        .append(",\"phases\":{");
+    for (int i = 0; i < TestTimings.PHASES.size(); i++) {
+      String phase = TestTimings.PHASES.get(i);
+      if (i > 0) buf.append(',');
+      buf.append(jsonString(phase)).append(':').append(millis(timings.getNanos(phase)));
+    }
+    return buf.append("},\"loadedClasses\":").append(timings.getLoadedClassCount())
+        .append(",\"instrumentedClasses\":").append(timings.getInstrumentedClassCount())
+        .append(",\"instrumentation\":").append(millis(timings.getInstrumentationNanos()))
+        .append("}\n").toString();
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.US, "%.3f", nanos / 1000000.0);
+  }
+
+  private static String csvString(String value) {
+    if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) return value;
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private static String jsonString(String value) {
+    StringBuilder buf = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      } else if (c < ' ') {
+        buf.append(String.format("\\u%04x", (int) c));
+      } else {
+        buf.append(c);
+      }
+    }
+    return buf.append('"').toString();
+  }
+}
@@ -21,6 +21,10 @@ public class AttrData {
     return name;
   }
 
+  List<Pair> getPairs() {
+    return pairs;
+  }
+
   public String getValueFor(String key) {
     if (pairs == null) return null;
     for (Pair pair : pairs) {
@@ -65,8 +69,8 @@ public class AttrData {
   }
 
   public static class Pair {
-    private final String name;
-    private final String value;
+    final String name;
+    final String value;
 
     public Pair(String name, String value) {
       this.name = name;
@@ -0,0 +1,66 @@
+package org.robolectric.res;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Values loaded on a worker thread, held back so they can be put into their {@link ResBunch}es and
+ * {@link ResBundle}s in the same order a single thread would have put them.
+ *
+ * While a thread is {@link #capture capturing}, puts it makes are recorded here instead of being applied;
+ * {@link #apply()} makes them for real.
+ */
+class DeferredPuts {
+  private static final ThreadLocal<DeferredPuts> CAPTURING = new ThreadLocal<DeferredPuts>();
+
+  private final List<Put> puts = new ArrayList<Put>();
+
+  /**
+   * @return the puts being captured on this thread, or null if puts should be applied immediately
+   */
+  static DeferredPuts current() {
+    return CAPTURING.get();
+  }
+
+  /**
+   * Starts recording this thread's puts here. Capturing stops at {@link #stopCapturing()}.
+   */
+  void capture() {
+    CAPTURING.set(this);
+  }
+
+  void stopCapturing() {
+    CAPTURING.remove();
+  }
+
+  void add(final ResBunch resBunch, final String attrType, final String name, final TypedResource value, final XmlLoader.XmlContext xmlContext) {
+    puts.add(new Put() {
+      @Override void apply() {
+        resBunch.put(attrType, name, value, xmlContext);
+      }
+    });
+  }
+
+  <T> void add(final ResBundle<T> resBundle, final String attrType, final String name, final T value, final XmlLoader.XmlContext xmlContext) {
+    puts.add(new Put() {
+      @Override void apply() {
+        resBundle.put(attrType, name, value, xmlContext);
+      }
+    });
+  }
+
+  /**
+   * Makes the recorded puts, in the order they were recorded. Must not be called while capturing.
+   */
+  void apply() {
+    if (current() != null) throw new IllegalStateException("still capturing puts on this thread");
+    for (Put put : puts) {
+      put.apply();
+    }
+    puts.clear();
+  }
+
+  private abstract static class Put {
+    abstract void apply();
+  }
+}
@@ -9,6 +9,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class DocumentLoader {
   public static boolean DEBUG_PERF = false;
@@ -22,12 +26,27 @@ public class DocumentLoader {
 
   private final FsFile resourceBase;
   private final String packageName;
-  private final VTDGen vtdGen;
+  private final ExecutorService executor;
+  private final ThreadLocal<VTDGen> vtdGens = new ThreadLocal<VTDGen>() {
+    @Override protected VTDGen initialValue() {
+      return new VTDGen();
+    }
+  };
+  private final List<Future<DeferredPuts>> pendingFiles = new ArrayList<Future<DeferredPuts>>();
 
   public DocumentLoader(ResourcePath resourcePath) {
+    this(resourcePath, null);
+  }
+
+  /**
+   * With an executor, files are parsed and processed on its threads; the resources they define are put into their
+   * {@link ResBunch}es and {@link ResBundle}s by {@link #finish()}, in the order a sequential load would have put
+   * them, so the same value wins whichever thread got to it first.
+   */
+  public DocumentLoader(ResourcePath resourcePath, ExecutorService executor) {
     this.resourceBase = resourcePath.resourceBase;
     this.packageName = resourcePath.getPackageName();
-    vtdGen = new VTDGen();
+    this.executor = executor;
   }
 
   public void load(String folderBaseName, XmlLoader... xmlLoaders) throws Exception {
@@ -58,7 +77,32 @@ public class DocumentLoader {
     }
 
     for (FsFile file : dir.listFiles(ENDS_WITH_XML)) {
-      loadResourceXmlFile(file, xmlLoaders);
+      if (executor == null) {
+        loadResourceXmlFile(file, xmlLoaders);
+      } else {
+        pendingFiles.add(executor.submit(new DeferredLoad(file, xmlLoaders)));
+      }
+    }
+  }
+
+  /**
+   * Waits for files being loaded on the executor, and puts the resources they define. Does nothing without one.
+   */
+  public void finish() throws Exception {
+    try {
+      for (Future<DeferredPuts> pendingFile : pendingFiles) {
+        pendingFile.get().apply();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) throw (Exception) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw e;
+    } finally {
+      for (Future<DeferredPuts> pendingFile : pendingFiles) {
+        pendingFile.cancel(false);
+      }
+      pendingFiles.clear();
     }
   }
 
@@ -74,7 +118,7 @@ public class DocumentLoader {
     }
   }
 
-  private void perfBlame(String responsibleParty, long startTime) {
+  private synchronized void perfBlame(String responsibleParty, long startTime) {
     long myElapsedMs = System.currentTimeMillis() - startTime;
     Long totalElapsedMs = perfResponsibleParties.get(responsibleParty);
     perfResponsibleParties.put(responsibleParty, totalElapsedMs == null ? myElapsedMs : totalElapsedMs + myElapsedMs);
@@ -82,12 +126,34 @@ public class DocumentLoader {
 
   private VTDNav parse(FsFile xmlFile) throws Exception {
     byte[] bytes = xmlFile.getBytes();
+    VTDGen vtdGen = vtdGens.get();
     vtdGen.setDoc(bytes);
     vtdGen.parse(true);
 
     return vtdGen.getNav();
   }
 
+  private class DeferredLoad implements Callable<DeferredPuts> {
+    private final FsFile fsFile;
+    private final XmlLoader[] xmlLoaders;
+
+    DeferredLoad(FsFile fsFile, XmlLoader[] xmlLoaders) {
+      this.fsFile = fsFile;
+      this.xmlLoaders = xmlLoaders;
+    }
+
+    @Override public DeferredPuts call() throws Exception {
+      DeferredPuts deferredPuts = new DeferredPuts();
+      deferredPuts.capture();
+      try {
+        loadResourceXmlFile(fsFile, xmlLoaders);
+      } finally {
+        deferredPuts.stopCapturing();
+      }
+      return deferredPuts;
+    }
+  }
+
   private static class DirectoryMatchingFilter implements FsFile.Filter {
     private final String folderBaseName;
 
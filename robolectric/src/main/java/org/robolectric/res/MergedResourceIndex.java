@@ -29,7 +29,7 @@ public class MergedResourceIndex extends ResourceIndex {
   @Override
   public Integer getResourceId(ResName resName) {
     // todo: this is pretty silly...
-    Integer id = resourceNameToId.get(resName);
+    Integer id = table().getId(resName);
     if (id == null) {
       for (ResourceIndex subIndex : subIndexes) {
         id = subIndex.getResourceId(resName);
@@ -42,7 +42,7 @@ public class MergedResourceIndex extends ResourceIndex {
   @Override
   public ResName getResName(int resourceId) {
     // todo: this is pretty silly...
-    ResName resName = resourceIdToResName.get(resourceId);
+    ResName resName = table().getResName(resourceId);
     if (resName == null) {
       for (ResourceIndex subIndex : subIndexes) {
         resName = subIndex.getResName(resourceId);
@@ -50,13 +50,13 @@ class OverlayResourceIndex extends ResourceIndex {
     if (!actualPackageNames.contains(resName.packageName)) {
       return null;
     }
-    return resourceNameToId.get(resName.withPackageName(packageName));
+    // every name in the table is in packageName already
+    return table().getIdInAnyPackage(resName);
   }
 
   @Override
   public ResName getResName(int resourceId) {
-    ResName resName = resourceIdToResName.get(resourceId);
-    return resName == null ? null : resName.withPackageName(packageName);
+    return table().getResName(resourceId);
   }
 
   @Override public Collection<String> getPackages() {
@@ -27,6 +27,7 @@ public class OverlayResourceLoader extends XResourceLoader {
       drawableData.mergeLibraryStyle(subResourceLoader.drawableData, packageName);
       preferenceData.mergeLibraryStyle(subResourceLoader.preferenceData, packageName);
       xmlDocuments.mergeLibraryStyle(subResourceLoader.xmlDocuments, packageName);
+      xmlBlocks.mergeLibraryStyle(subResourceLoader.xmlBlocks, packageName);
       rawResources.mergeLibraryStyle(subResourceLoader.rawResources, packageName);
       data.mergeLibraryStyle(subResourceLoader.data, packageName);
     }
@@ -60,6 +61,10 @@ public class OverlayResourceLoader extends XResourceLoader {
     return super.getXml(resName.withPackageName(packageName), qualifiers);
   }
 
+  @Override public XmlBlock getXmlBlock(ResName resName, String qualifiers) {
+    return super.getXmlBlock(resName.withPackageName(packageName), qualifiers);
+  }
+
   @Override public boolean providesFor(String namespace) {
     for (PackageResourceLoader subResourceLoader : subResourceLoaders) {
       if (subResourceLoader.providesFor(namespace)) {
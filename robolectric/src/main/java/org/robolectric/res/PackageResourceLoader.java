@@ -1,7 +1,49 @@
 package org.robolectric.res;
 
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Loads the resources in one package's resource directory.
+ *
+ * Resource files are parsed on several threads when the {@code robolectric.resourceLoaderThreads} system property is
+ * a number greater than one, or "auto" for one per processor. What gets loaded doesn't depend on it.
+ *
+ * When the {@code robolectric.lazyResourceLoading} system property is "true", each family of resource folders
+ * (values, layout, menu, drawable and so on) is loaded the first time a resource of a type it defines is looked up,
+ * rather than everything being loaded at once. Subclasses which load other resources always load everything at once.
+ *
+ * When the {@code robolectric.compiledXmlResources} system property is "true", XML resource files like layouts are
+ * kept as compact {@link XmlBlock}s rather than DOM documents, and parsers for them read the blocks directly.
+ */
 public class PackageResourceLoader extends XResourceLoader {
+  private static final Map<String, Set<ResourceFolder>> FOLDERS_BY_TYPE = new HashMap<String, Set<ResourceFolder>>();
+
+  static {
+    FOLDERS_BY_TYPE.put("layout", EnumSet.of(ResourceFolder.VALUES, ResourceFolder.LAYOUT));
+    FOLDERS_BY_TYPE.put("menu", EnumSet.of(ResourceFolder.MENU));
+    FOLDERS_BY_TYPE.put("drawable", EnumSet.of(ResourceFolder.DRAWABLE, ResourceFolder.IMAGES));
+    FOLDERS_BY_TYPE.put("mipmap", EnumSet.of(ResourceFolder.IMAGES));
+    FOLDERS_BY_TYPE.put("anim", EnumSet.of(ResourceFolder.ANIM));
+    FOLDERS_BY_TYPE.put("animator", EnumSet.of(ResourceFolder.ANIMATOR));
+    FOLDERS_BY_TYPE.put("color", EnumSet.of(ResourceFolder.VALUES, ResourceFolder.COLOR));
+    FOLDERS_BY_TYPE.put("xml", EnumSet.of(ResourceFolder.XML));
+    FOLDERS_BY_TYPE.put("raw", EnumSet.of(ResourceFolder.RAW));
+  }
+
   private final ResourcePath resourcePath;
+  private final boolean lazy;
+  private final boolean compileXml = compilesXml();
+  private final ReadWriteLock lazyLoadLock = new ReentrantReadWriteLock();
+  private final Set<ResourceFolder> loadedFolders = EnumSet.noneOf(ResourceFolder.class);
 
   public PackageResourceLoader(ResourcePath resourcePath) {
     this(resourcePath, new ResourceExtractor(resourcePath));
@@ -10,61 +52,214 @@ public class PackageResourceLoader extends XResourceLoader {
   public PackageResourceLoader(ResourcePath resourcePath, ResourceIndex resourceIndex) {
     super(resourceIndex);
     this.resourcePath = resourcePath;
+    this.lazy = getClass() == PackageResourceLoader.class && Boolean.getBoolean("robolectric.lazyResourceLoading");
   }
 
   void doInitialize() {
+    if (lazy) {
+      lazyLoadLock.writeLock().lock();
+      try {
+        load(EnumSet.allOf(ResourceFolder.class));
+      } finally {
+        lazyLoadLock.writeLock().unlock();
+      }
+      return;
+    }
+
+    System.out.println("DEBUG: Loading resources for " + resourcePath.getPackageName() + " from " + resourcePath.resourceBase + "...");
+    load(EnumSet.allOf(ResourceFolder.class));
+    loadOtherResources(resourcePath);
+  }
+
+  /**
+   * In lazy mode, loads the folders which define resources of {@code resType} if they haven't been yet, and returns
+   * a read lock which keeps other folders from being loaded into the tables while the caller looks in them.
+   */
+  @Override Lock lockFor(String resType) {
+    if (!lazy || isInitialized) return super.lockFor(resType);
+
+    Set<ResourceFolder> folders = FOLDERS_BY_TYPE.get(resType);
+    if (folders == null) folders = EnumSet.of(ResourceFolder.VALUES);
+
+    Lock readLock = lazyLoadLock.readLock();
+    readLock.lock();
+    if (loadedFolders.containsAll(folders)) return readLock;
+    readLock.unlock();
+
+    lazyLoadLock.writeLock().lock();
+    try {
+      load(folders);
+      readLock.lock();
+    } finally {
+      lazyLoadLock.writeLock().unlock();
+    }
+    return readLock;
+  }
+
+  /**
+   * Loads those of {@code folders} which haven't been loaded yet, in {@link ResourceFolder} order. Folders whose
+   * resources share names with another's, like layout and values, are always loaded after it, so every resource's
+   * values end up in the same order as when everything is loaded at once.
+   */
+  void load(Set<ResourceFolder> folders) {
+    EnumSet<ResourceFolder> toLoad = EnumSet.copyOf(folders);
+    toLoad.removeAll(loadedFolders);
+    if (toLoad.isEmpty()) return;
+
+    if (lazy) {
+      System.out.println("DEBUG: Loading " + toLoad + " resources for " + resourcePath.getPackageName() + " from " + resourcePath.resourceBase + "...");
+    }
+
+    int threadCount = getLoaderThreadCount();
+    ExecutorService executor = threadCount > 1 ? newLoaderExecutor(threadCount) : null;
     try {
-      loadEverything();
+      DocumentLoader documentLoader = new DocumentLoader(resourcePath, executor);
+      for (ResourceFolder folder : toLoad) {
+        folder.load(this, documentLoader);
+      }
+      documentLoader.finish();
     } catch (RuntimeException e) {
       throw e;
     } catch (Exception e) {
       throw new RuntimeException(e);
+    } finally {
+      if (executor != null) executor.shutdownNow();
+    }
+    loadedFolders.addAll(toLoad);
+
+    if (lazy && loadedFolders.size() == ResourceFolder.values().length) {
+      makeImmutable();
+      isInitialized = true;
     }
   }
 
-  private void loadEverything() throws Exception {
-    System.out.println("DEBUG: Loading resources for " + resourcePath.getPackageName() + " from " + resourcePath.resourceBase + "...");
+  /**
+   * The families of folders in a resource directory, in the order they're loaded.
+   */
+  enum ResourceFolder {
+    VALUES("values") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        ResBunch data = loader.data;
+        documentLoader.load("values",
+            new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
+            new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
+            new ValueResourceLoader(data, "/resources/color", "color", ResType.COLOR),
+            new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR),
+            new ValueResourceLoader(data, "/resources/dimen", "dimen", ResType.DIMEN),
+            new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
+            new ValueResourceLoader(data, "/resources/integer", "integer", ResType.INTEGER),
+            new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
+            new ValueResourceLoader(data, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
+            new ValueResourceLoader(data, "/resources/fraction", "fraction", ResType.FRACTION),
+            new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
+            new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT),
+            new PluralResourceLoader(loader.pluralsData),
+            new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
+            new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
+            new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
+            new AttrResourceLoader(data),
+            new StyleResourceLoader(data)
+        );
+      }
+    },
+    LAYOUT("layout") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("layout", new OpaqueFileLoader(loader.data, "layout"), loader.xmlFileLoader("layout"));
+      }
+    },
+    MENU("menu") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("menu", new MenuLoader(loader.menuData), loader.xmlFileLoader("menu"));
+      }
+    },
+    DRAWABLE("drawable") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("drawable", new OpaqueFileLoader(loader.data, "drawable"), loader.xmlFileLoader("drawable"));
+      }
+    },
+    ANIM("anim") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("anim", new OpaqueFileLoader(loader.data, "anim"), loader.xmlFileLoader("anim"));
+      }
+    },
+    ANIMATOR("animator") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("animator", new OpaqueFileLoader(loader.data, "animator"), loader.xmlFileLoader("animator"));
+      }
+    },
+    COLOR("color") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("color", new ColorResourceLoader(loader.data), loader.xmlFileLoader("color"));
+      }
+    },
+    XML("xml") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception {
+        documentLoader.load("xml", new PreferenceLoader(loader.preferenceData), loader.xmlFileLoader("xml"));
+      }
+    },
+    IMAGES("drawable", "mipmap") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) {
+        new DrawableResourceLoader(loader.drawableData).findDrawableResources(loader.resourcePath);
+      }
+    },
+    RAW("raw") {
+      @Override void load(PackageResourceLoader loader, DocumentLoader documentLoader) {
+        new RawResourceLoader(loader.resourcePath).loadTo(loader.rawResources);
+      }
+    };
 
-    DocumentLoader documentLoader = new DocumentLoader(resourcePath);
-
-    documentLoader.load("values",
-        new ValueResourceLoader(data, "/resources/bool", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/item[@type='bool']", "bool", ResType.BOOLEAN),
-        new ValueResourceLoader(data, "/resources/color", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/item[@type='color']", "color", ResType.COLOR),
-        new ValueResourceLoader(data, "/resources/dimen", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/item[@type='dimen']", "dimen", ResType.DIMEN),
-        new ValueResourceLoader(data, "/resources/integer", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/item[@type='integer']", "integer", ResType.INTEGER),
-        new ValueResourceLoader(data, "/resources/integer-array", "array", ResType.INTEGER_ARRAY),
-        new ValueResourceLoader(data, "/resources/fraction", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item[@type='fraction']", "fraction", ResType.FRACTION),
-        new ValueResourceLoader(data, "/resources/item", "layout", ResType.LAYOUT),
-        new PluralResourceLoader(pluralsData),
-        new ValueResourceLoader(data, "/resources/string", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/item[@type='string']", "string", ResType.CHAR_SEQUENCE),
-        new ValueResourceLoader(data, "/resources/string-array", "array", ResType.CHAR_SEQUENCE_ARRAY),
-        new AttrResourceLoader(data),
-        new StyleResourceLoader(data)
-    );
-
-    documentLoader.load("layout", new OpaqueFileLoader(data, "layout"), new XmlFileLoader(xmlDocuments, "layout"));
-    documentLoader.load("menu", new MenuLoader(menuData), new XmlFileLoader(xmlDocuments, "menu"));
-    documentLoader.load("drawable", new OpaqueFileLoader(data, "drawable"), new XmlFileLoader(xmlDocuments, "drawable"));
-    documentLoader.load("anim", new OpaqueFileLoader(data, "anim"), new XmlFileLoader(xmlDocuments, "anim"));
-    documentLoader.load("animator", new OpaqueFileLoader(data, "animator"), new XmlFileLoader(xmlDocuments, "animator"));
-    documentLoader.load("color", new ColorResourceLoader(data), new XmlFileLoader(xmlDocuments, "color"));
-    documentLoader.load("xml", new PreferenceLoader(preferenceData), new XmlFileLoader(xmlDocuments, "xml"));
-
-    new DrawableResourceLoader(drawableData).findDrawableResources(resourcePath);
-    new RawResourceLoader(resourcePath).loadTo(rawResources);
+    private final String[] dirPrefixes;
 
-    loadOtherResources(resourcePath);
+    ResourceFolder(String... dirPrefixes) {
+      this.dirPrefixes = dirPrefixes;
+    }
+
+    /**
+     * @return whether files in {@code dir} may be loaded as part of this family; a few which aren't may be included
+     */
+    boolean reads(FsFile dir) {
+      for (String dirPrefix : dirPrefixes) {
+        if (dir.getName().startsWith(dirPrefix)) return true;
+      }
+      return false;
+    }
+
+    abstract void load(PackageResourceLoader loader, DocumentLoader documentLoader) throws Exception;
+  }
+
+  private XmlLoader xmlFileLoader(String attrType) {
+    return compileXml ? new XmlBlockLoader(xmlBlocks, attrType) : new XmlFileLoader(xmlDocuments, attrType);
+  }
+
+  static boolean compilesXml() {
+    return Boolean.getBoolean("robolectric.compiledXmlResources");
+  }
+
+  static int getLoaderThreadCount() {
+    String threads = System.getProperty("robolectric.resourceLoaderThreads");
+    if (threads == null) return 1;
+    return "auto".equals(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+  }
+
+  private static ExecutorService newLoaderExecutor(int threadCount) {
+    return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      private int count;
+
+      @Override public synchronized Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "robolectric-resource-loader-" + count++);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
   }
 
   protected void loadOtherResources(ResourcePath resourcePath) {
   }
 
+  ResourcePath getResourcePath() {
+    return resourcePath;
+  }
+
   @Override
   public String toString() {
     return "PackageResourceLoader{" +
@@ -0,0 +1,225 @@
+package org.robolectric.res;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the best of a resource's candidate values for a configuration's qualifiers, the way
+ * {@link ResBunch#pick(ResBunch.Values, String)} always has, but with the candidates' qualifiers indexed up front
+ * and each configuration's pick remembered.
+ *
+ * A matcher describes the candidates as they were when it was built; the values lists rebuild theirs when they change.
+ */
+class QualifierMatcher {
+  // Matches a version qualifier like "v14". Parentheses capture the numeric
+  // part for easy retrieval with Matcher.group(1).
+  private static final String VERSION_QUALIFIER_REGEX = "v([0-9]+)";
+  private static final String PADDED_VERSION_QUALIFIER_REGEX = "-" + VERSION_QUALIFIER_REGEX + "-";
+  private static final Pattern VERSION_QUALIFIER_PATTERN_WITH_LINE_END = Pattern.compile(VERSION_QUALIFIER_REGEX + "$");
+  private static final Pattern VERSION_QUALIFIER_PATTERN_WITH_DASHES = Pattern.compile(PADDED_VERSION_QUALIFIER_REGEX);
+
+  private static final int NO_VERSION = -1;
+  private static final int NO_QUALIFIERS = -2;
+  private static final int TWO_VERSIONS = -3;
+  private static final Integer NO_PICK = -1;
+
+  private final List<?> values;
+  private final String[] valueQualifiers;
+  private final boolean matchVersions;
+  private final int modCount;
+  private final Map<String, BitSet> valuesByQualifier = new HashMap<String, BitSet>();
+  private final ConcurrentMap<String, Integer> picks = new ConcurrentHashMap<String, Integer>();
+  private volatile VersionInfo versionInfo;
+
+  /**
+   * @param values the candidates, for error messages
+   * @param valueQualifiers each candidate's qualifiers, with leading and trailing dashes
+   * @param matchVersions whether to prefer the closest version qualifier which isn't newer than the configuration's
+   * @param modCount the candidates' modification count, to tell when this matcher is out of date
+   */
+  QualifierMatcher(List<?> values, String[] valueQualifiers, boolean matchVersions, int modCount) {
+    this.values = values;
+    this.valueQualifiers = valueQualifiers;
+    this.matchVersions = matchVersions;
+    this.modCount = modCount;
+
+    for (int i = 0; i < valueQualifiers.length; i++) {
+      StringTokenizer st = new StringTokenizer(valueQualifiers[i], "-");
+      while (st.hasMoreTokens()) {
+        String qualifier = st.nextToken();
+        BitSet valuesWithQualifier = valuesByQualifier.get(qualifier);
+        if (valuesWithQualifier == null) {
+          valuesWithQualifier = new BitSet(valueQualifiers.length);
+          valuesByQualifier.put(qualifier, valuesWithQualifier);
+        }
+        valuesWithQualifier.set(i);
+      }
+    }
+  }
+
+  boolean isCurrent(int modCount) {
+    return this.modCount == modCount;
+  }
+
+  /**
+   * @return the index of the best candidate for {@code qualifiers}, or -1 if there are no candidates
+   */
+  int pick(String qualifiers) {
+    Integer pick = picks.get(qualifiers);
+    if (pick == null) {
+      pick = valueQualifiers.length == 0 ? NO_PICK : Integer.valueOf(computePick(Qualifiers.of(qualifiers)));
+      picks.put(qualifiers, pick);
+    }
+    return pick;
+  }
+
+  private int computePick(Qualifiers qualifiers) {
+    final int count = valueQualifiers.length;
+    BitSet possibles = new BitSet(count);
+    possibles.set(0, count);
+
+    for (String qualifier : qualifiers.qualifiers) {
+      BitSet valuesWithQualifier = valuesByQualifier.get(qualifier);
+      if (valuesWithQualifier == null) continue;
+
+      BitSet matches = (BitSet) possibles.clone();
+      matches.and(valuesWithQualifier);
+      if (!matches.isEmpty()) {
+        possibles = matches; // eliminate any that didn't match this qualifier
+      }
+
+      if (matches.cardinality() == 1) break;
+    }
+
+    /*
+     * If any resources out of the possibles have version qualifiers, return the
+     * closest match that doesn't go over. This is the last step because it's lowest
+     * in the precedence table at:
+     * https://developer.android.com/guide/topics/resources/providing-resources.html#table2
+     */
+    if (matchVersions && qualifiers.apiLevel != -1) {
+      VersionInfo versionInfo = getVersionInfo();
+      int bestMatch = -1;
+      int bestMatchDistance = Integer.MAX_VALUE;
+      for (int i = possibles.nextSetBit(0); i >= 0; i = possibles.nextSetBit(i + 1)) {
+        int distance = getDistance(versionInfo, i, qualifiers.apiLevel);
+        // Remove the version part and see if they still match
+        if (qualifiers.withoutVersion.contains(versionInfo.qualifiersWithoutVersion[i])
+            && distance >= 0 && distance < bestMatchDistance) {
+          bestMatch = i;
+          bestMatchDistance = distance;
+        }
+      }
+      if (bestMatch != -1) {
+        return bestMatch;
+      }
+    }
+
+    int first = possibles.nextSetBit(0);
+    if (first >= 0) return first;
+    throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers.qualifierString + "\"");
+  }
+
+  /*
+   * Gets the difference between the version qualifier of the value and targetApiLevel.
+   *
+   * Return value:
+   * - Lower number is a better match (0 is a perfect match)
+   * - Less than zero: the value's version qualifier is greater than targetApiLevel,
+   *   or the value has no version qualifier
+   */
+  private int getDistance(VersionInfo versionInfo, int index, int targetApiLevel) {
+    int apiLevel = versionInfo.apiLevels[index];
+    switch (apiLevel) {
+      case TWO_VERSIONS:
+        throw new IllegalStateException("A resource file was found that had two API level qualifiers: " + values.get(index));
+      case NO_QUALIFIERS:
+        return targetApiLevel;
+      case NO_VERSION:
+        return -1;
+      default:
+        return targetApiLevel - apiLevel;
+    }
+  }
+
+  private VersionInfo getVersionInfo() {
+    if (versionInfo == null) {
+      versionInfo = new VersionInfo(valueQualifiers);
+    }
+    return versionInfo;
+  }
+
+  static int getVersionQualifierApiLevel(String qualifiers) {
+    Matcher m = VERSION_QUALIFIER_PATTERN_WITH_LINE_END.matcher(qualifiers);
+    if (m.find()) {
+      return Integer.parseInt(m.group(1));
+    }
+    return -1;
+  }
+
+  private static class VersionInfo {
+    final int[] apiLevels;
+    final String[] qualifiersWithoutVersion;
+
+    VersionInfo(String[] valueQualifiers) {
+      apiLevels = new int[valueQualifiers.length];
+      qualifiersWithoutVersion = new String[valueQualifiers.length];
+      for (int i = 0; i < valueQualifiers.length; i++) {
+        String qualifiers = valueQualifiers[i];
+        qualifiersWithoutVersion[i] = qualifiers.replaceAll(PADDED_VERSION_QUALIFIER_REGEX, "--");
+
+        Matcher m = VERSION_QUALIFIER_PATTERN_WITH_DASHES.matcher(qualifiers);
+        if (m.find()) {
+          apiLevels[i] = Integer.parseInt(m.group(1));
+          if (m.find()) {
+            apiLevels[i] = TWO_VERSIONS;
+          }
+        } else {
+          apiLevels[i] = qualifiers.equals("--") ? NO_QUALIFIERS : NO_VERSION;
+        }
+      }
+    }
+  }
+
+  /**
+   * A configuration's qualifiers, parsed once for every resource looked up with them.
+   */
+  private static class Qualifiers {
+    private static final ConcurrentMap<String, Qualifiers> INTERNED = new ConcurrentHashMap<String, Qualifiers>();
+
+    final String qualifierString;
+    final String[] qualifiers;
+    final int apiLevel;
+    final String withoutVersion;
+
+    private Qualifiers(String qualifierString) {
+      this.qualifierString = qualifierString;
+
+      List<String> qualifierList = new ArrayList<String>();
+      StringTokenizer st = new StringTokenizer(qualifierString, "-");
+      while (st.hasMoreTokens()) {
+        qualifierList.add(st.nextToken());
+      }
+      this.qualifiers = qualifierList.toArray(new String[qualifierList.size()]);
+      this.apiLevel = getVersionQualifierApiLevel(qualifierString);
+      this.withoutVersion = ("-" + qualifierString + "-").replaceAll(PADDED_VERSION_QUALIFIER_REGEX, "--");
+    }
+
+    static Qualifiers of(String qualifierString) {
+      Qualifiers qualifiers = INTERNED.get(qualifierString);
+      if (qualifiers == null) {
+        qualifiers = new Qualifiers(qualifierString);
+        INTERNED.put(qualifierString, qualifiers);
+      }
+      return qualifiers;
+    }
+  }
+}
@@ -1,12 +1,10 @@
 package org.robolectric.res;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 public class ResBundle<T> {
   private final ResMap<T> valuesMap = new ResMap<T>();
@@ -14,6 +12,12 @@ public class ResBundle<T> {
   private String overrideNamespace;
 
   public void put(String attrType, String name, T value, XmlLoader.XmlContext xmlContext) {
+    DeferredPuts deferredPuts = DeferredPuts.current();
+    if (deferredPuts != null) {
+      deferredPuts.add(this, attrType, name, value, xmlContext);
+      return;
+    }
+
     ResName resName = new ResName(maybeOverride(xmlContext.packageName), attrType, name);
     Values<T> values = valuesMap.find(resName);
     values.add(new Value<T>(xmlContext.getQualifiers(), value, xmlContext));
@@ -26,42 +30,12 @@ public class ResBundle<T> {
   }
 
   public Value<T> getValue(ResName resName, String qualifiers) {
-    Values<T> values = valuesMap.find(maybeOverride(resName));
+    Values<T> values = valuesMap.get(maybeOverride(resName));
     return (values != null) ? pick(values, qualifiers) : null;
   }
 
   public static <T> Value<T> pick(Values<T> values, String qualifiers) {
-    final int count = values.size();
-    if (count == 0) return null;
-
-    BigInteger possibles = BigInteger.ZERO;
-    for (int i = 0; i < count; i++) possibles = possibles.setBit(i);
-
-    StringTokenizer st = new StringTokenizer(qualifiers, "-");
-    while (st.hasMoreTokens()) {
-      String qualifier = st.nextToken();
-      String paddedQualifier = "-" + qualifier + "-";
-      BigInteger matches = BigInteger.ZERO;
-
-      for (int i = 0; i < count; i++) {
-        if (!possibles.testBit(i)) continue;
-
-        if (values.get(i).qualifiers.contains(paddedQualifier)) {
-          matches = matches.setBit(i);
-        }
-      }
-
-      if (!matches.equals(BigInteger.ZERO)) {
-        possibles = possibles.and(matches); // eliminate any that didn't match this qualifier
-      }
-
-      if (matches.bitCount() == 1) break;
-    }
-
-    for (int i = 0; i < count; i++) {
-      if (possibles.testBit(i)) return values.get(i);
-    }
-    throw new IllegalStateException("couldn't handle qualifiers \"" + qualifiers + "\"");
+    return values.pick(qualifiers);
   }
 
   public int size() {
@@ -86,6 +60,13 @@ public class ResBundle<T> {
     return overrideNamespace == null ? resName : new ResName(overrideNamespace, resName.type, resName.name);
   }
 
+  /**
+   * @return every resource name's candidate values, ordered by qualifiers
+   */
+  Map<ResName, Values<T>> getAllValues() {
+    return valuesMap.map;
+  }
+
   public void mergeLibraryStyle(ResBundle<T> fromResBundle, String packageName) {
     valuesMap.merge(packageName, fromResBundle.valuesMap);
     valuesArrayMap.merge(packageName, fromResBundle.valuesArrayMap);
@@ -113,12 +94,31 @@ public class ResBundle<T> {
   }
 
   static class Values<T> extends ArrayList<Value<T>> {
+    private volatile QualifierMatcher matcher;
+
+    Value<T> pick(String qualifiers) {
+      QualifierMatcher matcher = this.matcher;
+      if (matcher == null || !matcher.isCurrent(modCount)) {
+        String[] valueQualifiers = new String[size()];
+        for (int i = 0; i < valueQualifiers.length; i++) {
+          valueQualifiers[i] = get(i).qualifiers;
+        }
+        this.matcher = matcher = new QualifierMatcher(this, valueQualifiers, false, modCount);
+      }
+
+      int index = matcher.pick(qualifiers);
+      return index == -1 ? null : get(index);
+    }
   }
 
   private static class ResMap<T> {
     private final Map<ResName, Values<T>> map = new HashMap<ResName, Values<T>>();
     private boolean immutable;
 
+    public Values<T> get(ResName resName) {
+      return map.get(resName);
+    }
+
     public Values<T> find(ResName resName) {
       Values<T> values = map.get(resName);
       if (values == null) map.put(resName, values = new Values<T>());
@@ -0,0 +1,283 @@
+package org.robolectric.res;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.robolectric.res.PackageResourceLoader.ResourceFolder;
+
+/**
+ * On-disk cache of the resources loaded from an app's or a library's resource directory, so test JVMs and later builds
+ * don't need to parse them again.
+ *
+ * Each family of resource folders (values, layout, menu and so on) is cached separately, along with a hash of the
+ * names and contents of the files in it. A family is reloaded from its files only when they've changed since it was
+ * cached; the rest come from the cache. Each section is a {@link ResourceSnapshot} of what its family loaded.
+ *
+ * Resource ids aren't cached: adding a resource changes them, and reflecting over the R class is cheap.
+ */
+public class ResourceCache {
+  private static final int MAGIC = 0x52425243; // "RBRC"
+  private static final int FORMAT_VERSION = 1;
+
+  private static final Comparator<FsFile> BY_NAME = new Comparator<FsFile>() {
+    @Override public int compare(FsFile a, FsFile b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+
+  /**
+   * @return the file in {@code cacheDir} for the cache of resources loaded from {@code resourcePath}
+   */
+  public static File fileFor(File cacheDir, ResourcePath resourcePath) {
+    MessageDigest digest = ResourceSnapshot.sha1();
+    ResourceSnapshot.update(digest, resourcePath.resourceBase.getPath());
+    ResourceSnapshot.update(digest, "format=" + FORMAT_VERSION);
+    ResourceSnapshot.update(digest, "compiledXml=" + PackageResourceLoader.compilesXml());
+    ResourceSnapshot.updateWithCode(digest, ResourceCache.class, ResourceSnapshot.class, PackageResourceLoader.class);
+    return new File(cacheDir, resourcePath.getPackageName() + "-" + ResourceSnapshot.toHex(digest.digest()).substring(0, 16) + ".cache");
+  }
+
+  /**
+   * Loads the resources in {@code resourcePath}, from {@code cacheFile} where its files haven't changed and from the
+   * files themselves where they have, and brings the cache up to date. Problems with the cache are reported but never
+   * thrown; it's purely an optimization.
+   *
+   * @return a fully loaded resource loader for {@code resourcePath}
+   */
+  public static PackageResourceLoader load(File cacheFile, ResourcePath resourcePath) {
+    Map<ResourceFolder, String> hashes = hashFolders(resourcePath.resourceBase);
+    Map<ResourceFolder, ByteBuffer> cachedSections = readSections(cacheFile, resourcePath, hashes);
+
+    ResourceIndex resourceIndex = new ResourceExtractor(resourcePath);
+    PackageResourceLoader resourceLoader = new PackageResourceLoader(resourcePath, resourceIndex);
+    Map<ResourceFolder, PackageResourceLoader> sections = new EnumMap<ResourceFolder, PackageResourceLoader>(ResourceFolder.class);
+    Set<ResourceFolder> reloaded = EnumSet.noneOf(ResourceFolder.class);
+
+    for (ResourceFolder folder : ResourceFolder.values()) {
+      PackageResourceLoader section = readSection(cacheFile, cachedSections.get(folder), resourcePath, resourceIndex);
+      if (section == null) {
+        section = new PackageResourceLoader(resourcePath, resourceIndex);
+        section.load(EnumSet.of(folder));
+        reloaded.add(folder);
+      }
+      sections.put(folder, section);
+
+      // folders are added in the order they'd be loaded, so every resource's values end up in the same order
+      putAll(resourceLoader, section);
+    }
+
+    System.out.println("DEBUG: Loaded resources for " + resourcePath.getPackageName() + " from " + cacheFile
+        + (reloaded.isEmpty() ? "" : ", reloading " + reloaded));
+    if (!reloaded.isEmpty()) {
+      write(cacheFile, resourcePath, hashes, sections);
+    }
+
+    resourceLoader.markInitialized();
+    return resourceLoader;
+  }
+
+  /**
+   * @return a hash of the names and contents of the files each family of folders may load
+   */
+  static Map<ResourceFolder, String> hashFolders(FsFile resourceBase) {
+    Map<ResourceFolder, MessageDigest> digests = new EnumMap<ResourceFolder, MessageDigest>(ResourceFolder.class);
+    for (ResourceFolder folder : ResourceFolder.values()) {
+      digests.put(folder, ResourceSnapshot.sha1());
+    }
+
+    try {
+      for (FsFile dir : sortedFiles(resourceBase)) {
+        if (!dir.isDirectory()) continue;
+
+        byte[] dirHash = null;
+        for (ResourceFolder folder : ResourceFolder.values()) {
+          if (!folder.reads(dir)) continue;
+          if (dirHash == null) dirHash = hashDir(dir);
+          ResourceSnapshot.update(digests.get(folder), dir.getName());
+          digests.get(folder).update(dirHash);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    Map<ResourceFolder, String> hashes = new EnumMap<ResourceFolder, String>(ResourceFolder.class);
+    for (Map.Entry<ResourceFolder, MessageDigest> entry : digests.entrySet()) {
+      hashes.put(entry.getKey(), ResourceSnapshot.toHex(entry.getValue().digest()));
+    }
+    return hashes;
+  }
+
+  private static byte[] hashDir(FsFile dir) throws IOException {
+    MessageDigest digest = ResourceSnapshot.sha1();
+    for (FsFile file : sortedFiles(dir)) {
+      if (!file.isFile()) continue;
+      ResourceSnapshot.update(digest, file.getName());
+      digest.update(file.getBytes());
+    }
+    return digest.digest();
+  }
+
+  private static FsFile[] sortedFiles(FsFile dir) {
+    FsFile[] files = dir.listFiles();
+    if (files == null) return new FsFile[0];
+    Arrays.sort(files, BY_NAME);
+    return files;
+  }
+
+  /**
+   * @return the sections of {@code cacheFile} whose folders' hashes still match, or none if it doesn't exist or isn't a
+   *     cache of {@code resourcePath}
+   */
+  private static Map<ResourceFolder, ByteBuffer> readSections(File cacheFile, ResourcePath resourcePath, Map<ResourceFolder, String> hashes) {
+    Map<ResourceFolder, ByteBuffer> sections = new EnumMap<ResourceFolder, ByteBuffer>(ResourceFolder.class);
+    if (!cacheFile.exists()) return sections;
+
+    try {
+      RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+      ByteBuffer buffer;
+      try {
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } finally {
+        raf.close(); // the mapping stays valid after the file is closed
+      }
+
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return sections;
+      if (!resourcePath.resourceBase.getPath().equals(readString(buffer))) return sections;
+
+      int sectionCount = buffer.getInt();
+      for (int i = 0; i < sectionCount; i++) {
+        ResourceFolder folder = ResourceFolder.valueOf(readString(buffer));
+        String hash = readString(buffer);
+        int length = buffer.getInt();
+
+        ByteBuffer section = buffer.slice();
+        section.limit(length);
+        buffer.position(buffer.position() + length);
+        if (hash.equals(hashes.get(folder))) {
+          sections.put(folder, section);
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't read resource cache " + cacheFile + ": " + e);
+      sections.clear();
+    } catch (BufferUnderflowException e) {
+      System.err.println("[WARN] resource cache " + cacheFile + " is truncated");
+      sections.clear();
+    } catch (RuntimeException e) {
+      System.err.println("[WARN] couldn't read resource cache " + cacheFile + ": " + e);
+      sections.clear();
+    }
+    return sections;
+  }
+
+  private static PackageResourceLoader readSection(File cacheFile, ByteBuffer buffer, ResourcePath resourcePath, ResourceIndex resourceIndex) {
+    if (buffer == null) return null;
+
+    PackageResourceLoader section = new PackageResourceLoader(resourcePath, resourceIndex);
+    try {
+      new ResourceSnapshot.Reader(buffer, resourcePath.resourceBase).readTables(section);
+      return section;
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't read resource cache " + cacheFile + ": " + e);
+    } catch (BufferUnderflowException e) {
+      System.err.println("[WARN] resource cache " + cacheFile + " is truncated");
+    } catch (RuntimeException e) {
+      System.err.println("[WARN] couldn't read resource cache " + cacheFile + ": " + e);
+    }
+    return null;
+  }
+
+  private static void putAll(XResourceLoader to, XResourceLoader from) {
+    for (Map.Entry<ResName, ResBunch.Values> entry : from.data.getAllValues().entrySet()) {
+      for (ResBunch.Value value : entry.getValue()) {
+        to.data.put(entry.getKey().type, entry.getKey().name, value.value, value.xmlContext);
+      }
+    }
+    putAll(to.pluralsData, from.pluralsData);
+    putAll(to.stringData, from.stringData);
+    putAll(to.menuData, from.menuData);
+    putAll(to.drawableData, from.drawableData);
+    putAll(to.preferenceData, from.preferenceData);
+    putAll(to.xmlDocuments, from.xmlDocuments);
+    putAll(to.xmlBlocks, from.xmlBlocks);
+    putAll(to.rawResources, from.rawResources);
+  }
+
+  private static <T> void putAll(ResBundle<T> to, ResBundle<T> from) {
+    for (Map.Entry<ResName, ResBundle.Values<T>> entry : from.getAllValues().entrySet()) {
+      for (ResBundle.Value<T> value : entry.getValue()) {
+        to.put(entry.getKey().type, entry.getKey().name, value.value, value.xmlContext);
+      }
+    }
+  }
+
+  private static void write(File cacheFile, ResourcePath resourcePath, Map<ResourceFolder, String> hashes, Map<ResourceFolder, PackageResourceLoader> sections) {
+    File tmpFile = new File(cacheFile.getPath() + ".tmp" + System.nanoTime());
+    try {
+      cacheFile.getParentFile().mkdirs();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, resourcePath.resourceBase.getPath());
+        out.writeInt(sections.size());
+        for (Map.Entry<ResourceFolder, PackageResourceLoader> entry : sections.entrySet()) {
+          // sections are snapshotted separately so any of them can be skipped when reading
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          ResourceSnapshot.Writer writer = new ResourceSnapshot.Writer(bytes, resourcePath.resourceBase);
+          try {
+            writer.writeTables(entry.getValue());
+          } finally {
+            writer.close();
+          }
+
+          writeString(out, entry.getKey().name());
+          writeString(out, hashes.get(entry.getKey()));
+          out.writeInt(bytes.size());
+          bytes.writeTo(out);
+        }
+      } finally {
+        out.close();
+      }
+
+      // forks may race to write the same cache; whichever rename lands last wins
+      if (!tmpFile.renameTo(cacheFile)) {
+        cacheFile.delete();
+        if (!tmpFile.renameTo(cacheFile)) {
+          throw new IOException("couldn't rename " + tmpFile + " to " + cacheFile);
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("[WARN] couldn't write resource cache " + cacheFile + ": " + e);
+      tmpFile.delete();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) throws IOException {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+}
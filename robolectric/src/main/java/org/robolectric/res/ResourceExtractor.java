@@ -6,6 +6,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 public class ResourceExtractor extends ResourceIndex {
@@ -16,6 +18,9 @@ public class ResourceExtractor extends ResourceIndex {
   private final Class<?> processedRFile;
   private final String packageName;
   private final List<String> packageNames;
+  // ids made up for system resources which aren't in R; the index itself doesn't change once it's in use
+  private final ConcurrentMap<ResName, Integer> assignedIds = new ConcurrentHashMap<ResName, Integer>();
+  private final ConcurrentMap<Integer, ResName> assignedResNames = new ConcurrentHashMap<Integer, ResName>();
   private Integer maxUsedInt = null;
 
   public ResourceExtractor() {
@@ -56,6 +61,15 @@ public class ResourceExtractor extends ResourceIndex {
     gatherResourceIdsAndNames(resourcePath.rClass, packageName, true);
   }
 
+  /**
+   * Constructs an empty ResourceExtractor, for {@link ResourceSnapshot} to fill in.
+   */
+  ResourceExtractor(Class<?> processedRFile, String packageName) {
+    this.processedRFile = processedRFile;
+    this.packageName = packageName;
+    this.packageNames = Arrays.asList(packageName);
+  }
+
   private void gatherResourceIdsAndNames(Class<?> rClass, String packageName, boolean checkForCollisions) {
     for (Class innerClass : rClass.getClasses()) {
       for (Field field : innerClass.getDeclaredFields()) {
@@ -93,23 +107,36 @@ public class ResourceExtractor extends ResourceIndex {
   }
 
   @Override
-  public synchronized Integer getResourceId(ResName resName) {
-    Integer id = resourceNameToId.get(resName);
+  public Integer getResourceId(ResName resName) {
+    Integer id = table().getId(resName);
     if (id == null && ("android".equals(resName.packageName) || "".equals(resName.packageName))) {
-      if (maxUsedInt == null) {
-        maxUsedInt = resourceIdToResName.isEmpty() ? 0 : Collections.max(resourceIdToResName.keySet());
-      }
-      id = ++maxUsedInt;
-      resourceNameToId.put(resName, id);
-      resourceIdToResName.put(id, resName);
-      LOGGER.fine("no id mapping found for " + resName.getFullyQualifiedName() + "; assigning ID #0x" + Integer.toHexString(id));
+      id = assignedIds.get(resName);
+      if (id == null) id = assignId(resName);
     }
     return id;
   }
 
+  private synchronized Integer assignId(ResName resName) {
+    Integer id = assignedIds.get(resName);
+    if (id != null) return id;
+
+    if (maxUsedInt == null) {
+      maxUsedInt = resourceIdToResName.isEmpty() ? 0 : Collections.max(resourceIdToResName.keySet());
+    }
+    id = ++maxUsedInt;
+    assignedResNames.put(id, resName);
+    assignedIds.put(resName, id);
+    LOGGER.fine("no id mapping found for " + resName.getFullyQualifiedName() + "; assigning ID #0x" + Integer.toHexString(id));
+    return id;
+  }
+
   @Override
-  public synchronized ResName getResName(int resourceId) {
-    return resourceIdToResName.get(resourceId);
+  public ResName getResName(int resourceId) {
+    ResName resName = table().getResName(resourceId);
+    if (resName == null && !assignedResNames.isEmpty()) {
+      resName = assignedResNames.get(resourceId);
+    }
+    return resName;
   }
 
   @Override public Collection<String> getPackages() {
@@ -0,0 +1,92 @@
+package org.robolectric.res;
+
+import java.util.Map;
+
+/**
+ * Immutable two-way map between resource ids and names, kept in open-addressed arrays so looking up an id doesn't box
+ * it, looking up a name doesn't allocate, and neither takes a lock. Every {@code Resources.getXxx(int)} call goes
+ * through one of these.
+ */
+final class ResourceIdTable {
+  private final int idMask;
+  private final int[] ids;
+  private final ResName[] resNamesById;
+
+  private final int nameMask;
+  private final ResName[] resNames;
+  private final Integer[] idsByName;
+
+  ResourceIdTable(Map<ResName, Integer> resourceNameToId, Map<Integer, ResName> resourceIdToResName) {
+    idMask = capacityFor(resourceIdToResName.size()) - 1;
+    ids = new int[idMask + 1];
+    resNamesById = new ResName[idMask + 1];
+    for (Map.Entry<Integer, ResName> entry : resourceIdToResName.entrySet()) {
+      int id = entry.getKey();
+      int slot = hash(id) & idMask;
+      while (resNamesById[slot] != null) {
+        slot = (slot + 1) & idMask;
+      }
+      ids[slot] = id;
+      resNamesById[slot] = entry.getValue();
+    }
+
+    nameMask = capacityFor(resourceNameToId.size()) - 1;
+    resNames = new ResName[nameMask + 1];
+    idsByName = new Integer[nameMask + 1];
+    for (Map.Entry<ResName, Integer> entry : resourceNameToId.entrySet()) {
+      ResName resName = entry.getKey();
+      int slot = hash(resName.type, resName.name) & nameMask;
+      while (resNames[slot] != null) {
+        slot = (slot + 1) & nameMask;
+      }
+      resNames[slot] = resName;
+      idsByName[slot] = entry.getValue();
+    }
+  }
+
+  ResName getResName(int id) {
+    for (int slot = hash(id) & idMask; ; slot = (slot + 1) & idMask) {
+      ResName resName = resNamesById[slot];
+      if (resName == null || ids[slot] == id) return resName;
+    }
+  }
+
+  Integer getId(ResName resName) {
+    for (int slot = hash(resName.type, resName.name) & nameMask; ; slot = (slot + 1) & nameMask) {
+      ResName candidate = resNames[slot];
+      if (candidate == null) return null;
+      if (candidate == resName || candidate.equals(resName)) return idsByName[slot];
+    }
+  }
+
+  /**
+   * @return the id of the resource with {@code resName}'s type and name, whatever its package; for tables of a single
+   *     package, this saves making a copy of {@code resName} in that package first
+   */
+  Integer getIdInAnyPackage(ResName resName) {
+    for (int slot = hash(resName.type, resName.name) & nameMask; ; slot = (slot + 1) & nameMask) {
+      ResName candidate = resNames[slot];
+      if (candidate == null) return null;
+      if (candidate.name.equals(resName.name) && candidate.type.equals(resName.type)) return idsByName[slot];
+    }
+  }
+
+  // at most half full, so probe sequences stay short
+  private static int capacityFor(int size) {
+    int capacity = 2;
+    while (capacity < size * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  // resource ids are mostly sequential within a type, which would cluster badly without mixing
+  private static int hash(int id) {
+    int hash = id * 0x9e3779b9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int hash(String type, String name) {
+    return hash(31 * type.hashCode() + name.hashCode());
+  }
+}
@@ -5,8 +5,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 public abstract class ResourceIndex {
+  // filled in while the index is built, and never changed once it's in use
   protected final Map<ResName, Integer> resourceNameToId = new HashMap<ResName, Integer>();
   protected final Map<Integer, ResName> resourceIdToResName = new HashMap<Integer, ResName>();
+  private volatile ResourceIdTable table;
 
   public abstract Integer getResourceId(ResName resName);
 
@@ -18,4 +20,20 @@ public abstract class ResourceIndex {
   public abstract ResName getResName(int resourceId);
 
   public abstract Collection<String> getPackages();
+
+  /**
+   * @return a lock-free copy of {@link #resourceNameToId} and {@link #resourceIdToResName}, made on first use
+   */
+  ResourceIdTable table() {
+    ResourceIdTable table = this.table;
+    if (table == null) {
+      synchronized (this) {
+        table = this.table;
+        if (table == null) {
+          this.table = table = new ResourceIdTable(resourceNameToId, resourceIdToResName);
+        }
+      }
+    }
+    return table;
+  }
 }
@@ -16,6 +16,12 @@ public interface ResourceLoader {
 
   Document getXml(ResName resName, String qualifiers);
 
+  /**
+   * @return the XML resource compiled into a block, or null if it isn't stored that way, in which case
+   *     {@link #getXml(ResName, String)} has it
+   */
+  XmlBlock getXmlBlock(ResName resName, String qualifiers);
+
   DrawableNode getDrawableNode(ResName resName, String qualifiers);
 
   InputStream getRawValue(ResName resName);
@@ -0,0 +1,768 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.robolectric.util.Util.readBytes;
+
+/**
+ * Compact binary image of a fully loaded {@link PackageResourceLoader} and its {@link ResourceExtractor}, so
+ * resources which never change, like the system resources in an SDK jar, need only be parsed once.
+ *
+ * Snapshots are memory-mapped and decoded straight into the loader's tables; no XML is parsed and no R class is
+ * reflected over. Strings are stored once and referred to by index thereafter. Files are stored relative to the
+ * resource directory, and XML documents as a plain tree of elements, attributes and text.
+ *
+ * Use {@link #fileFor(File, String, File)} to name snapshots; any change to the source jar or to Robolectric
+ * selects a different file, so stale snapshots are never read.
+ */
+public class ResourceSnapshot {
+  private static final int MAGIC = 0x524f4252; // "ROBR"
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int NULL_STRING = -1;
+  private static final int NEW_STRING = -2;
+
+  private static final byte T_NULL = 0;
+  private static final byte T_STRING = 1;
+  private static final byte T_TYPED_RESOURCE = 2;
+  private static final byte T_FILE_TYPED_RESOURCE = 3;
+  private static final byte T_TYPED_RESOURCE_ARRAY = 4;
+  private static final byte T_ATTR_DATA = 5;
+  private static final byte T_STYLE_DATA = 6;
+  private static final byte T_PLURAL_RULES = 7;
+  private static final byte T_MENU_NODE = 8;
+  private static final byte T_PREFERENCE_NODE = 9;
+  private static final byte T_DRAWABLE_XML = 10;
+  private static final byte T_DRAWABLE_IMAGE_FILE = 11;
+  private static final byte T_DOCUMENT = 12;
+  private static final byte T_FS_FILE = 13;
+  private static final byte T_XML_BLOCK = 14;
+
+  private static final byte N_ELEMENT = 1;
+  private static final byte N_TEXT = 2;
+  private static final byte N_CDATA = 3;
+
+  /**
+   * @return the file in {@code snapshotDir} for a snapshot of resources loaded from {@code sourceFile}
+   */
+  public static File fileFor(File snapshotDir, String name, File sourceFile) {
+    MessageDigest digest = sha1();
+    update(digest, sourceFile.getAbsolutePath());
+    update(digest, sourceFile.length() + "@" + sourceFile.lastModified());
+    update(digest, "format=" + FORMAT_VERSION);
+    update(digest, "compiledXml=" + PackageResourceLoader.compilesXml());
+    updateWithCode(digest, ResourceSnapshot.class);
+
+    return new File(snapshotDir, name + "-" + toHex(digest.digest()).substring(0, 16) + ".snapshot");
+  }
+
+  /**
+   * Adds Robolectric's version, and the bytecode of {@code classes}, to {@code digest}. Snapshot builds don't bump the
+   * version, so keying on the code which reads and writes resources is what keeps stale files from being read.
+   */
+  static void updateWithCode(MessageDigest digest, Class<?>... classes) {
+    Package pkg = ResourceSnapshot.class.getPackage();
+    update(digest, String.valueOf(pkg == null ? null : pkg.getImplementationVersion()));
+
+    for (Class<?> clazz : classes) {
+      InputStream classBytes = clazz.getResourceAsStream(clazz.getSimpleName() + ".class");
+      if (classBytes == null) continue;
+      try {
+        digest.update(readBytes(classBytes));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Loads everything {@code resourceLoader} provides, and writes it to {@code snapshotFile}. Errors are reported but
+   * never thrown; snapshots are purely an optimization.
+   */
+  public static void write(File snapshotFile, PackageResourceLoader resourceLoader) {
+    File tmpFile = new File(snapshotFile.getPath() + ".tmp" + System.nanoTime());
+    try {
+      if (!(resourceLoader.getResourceIndex() instanceof ResourceExtractor)) {
+        throw new IllegalArgumentException("can't snapshot " + resourceLoader.getResourceIndex());
+      }
+
+      // ids assigned on demand once resources are in use are kept apart, so this is the index as it was built
+      ResourceExtractor resourceExtractor = (ResourceExtractor) resourceLoader.getResourceIndex();
+      resourceLoader.initialize();
+
+      snapshotFile.getParentFile().mkdirs();
+      Writer writer = new Writer(new FileOutputStream(tmpFile), resourceLoader.getResourcePath().resourceBase);
+      try {
+        writer.writeHeader();
+        writer.writeResourceIndex(resourceExtractor.resourceNameToId, resourceExtractor.resourceIdToResName);
+        writer.writeTables(resourceLoader);
+      } finally {
+        writer.close();
+      }
+
+      // forks may race to write the same snapshot; whichever rename lands last wins, and they're identical
+      if (!tmpFile.renameTo(snapshotFile)) {
+        snapshotFile.delete();
+        if (!tmpFile.renameTo(snapshotFile)) {
+          throw new IOException("couldn't rename " + tmpFile + " to " + snapshotFile);
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("[WARN] couldn't write resource snapshot " + snapshotFile + ": " + e);
+      tmpFile.delete();
+    }
+  }
+
+  /**
+   * @return a fully loaded resource loader for {@code resourcePath}, or null if {@code snapshotFile} doesn't exist or
+   *     isn't a snapshot of it
+   */
+  public static PackageResourceLoader read(File snapshotFile, ResourcePath resourcePath) {
+    if (!snapshotFile.exists()) return null;
+
+    try {
+      RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r");
+      MappedByteBuffer buffer;
+      try {
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } finally {
+        raf.close(); // the mapping stays valid after the file is closed
+      }
+
+      Reader reader = new Reader(buffer, resourcePath.resourceBase);
+      if (!reader.readHeader()) return null;
+
+      System.out.println("DEBUG: Loading resources for " + resourcePath.getPackageName() + " from " + snapshotFile + "...");
+      ResourceExtractor resourceExtractor = new ResourceExtractor(resourcePath.rClass, resourcePath.getPackageName());
+      reader.readResourceIndex(resourceExtractor);
+
+      PackageResourceLoader resourceLoader = new PackageResourceLoader(resourcePath, resourceExtractor);
+      reader.readTables(resourceLoader);
+      resourceLoader.markInitialized();
+      return resourceLoader;
+    } catch (IOException e) {
+      System.err.println("[WARN] couldn't read resource snapshot " + snapshotFile + ": " + e);
+      return null;
+    } catch (BufferUnderflowException e) {
+      System.err.println("[WARN] resource snapshot " + snapshotFile + " is truncated");
+      return null;
+    } catch (RuntimeException e) {
+      System.err.println("[WARN] couldn't read resource snapshot " + snapshotFile + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes snapshots. Strings and documents are written once and referred back to after that, so a writer's output
+   * can only be read from its start.
+   */
+  static class Writer {
+    private final DataOutputStream out;
+    private final FsFile resourceBase;
+    private final String resourceBasePrefix;
+    private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    private final Map<Object, Integer> sharedObjectIndexes = new IdentityHashMap<Object, Integer>();
+
+    Writer(OutputStream outputStream, FsFile resourceBase) {
+      this.out = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+      this.resourceBase = resourceBase;
+      this.resourceBasePrefix = resourceBase.getPath() + "/";
+    }
+
+    void writeHeader() throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeString(resourceBase.getPath());
+    }
+
+    void writeResourceIndex(Map<ResName, Integer> resourceNameToId, Map<Integer, ResName> resourceIdToResName) throws IOException {
+      out.writeInt(resourceNameToId.size());
+      for (Map.Entry<ResName, Integer> entry : resourceNameToId.entrySet()) {
+        writeResName(entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+      out.writeInt(resourceIdToResName.size());
+      for (Map.Entry<Integer, ResName> entry : resourceIdToResName.entrySet()) {
+        out.writeInt(entry.getKey());
+        writeResName(entry.getValue());
+      }
+    }
+
+    void writeTables(XResourceLoader resourceLoader) throws IOException {
+      writeResBunch(resourceLoader.data);
+      writeResBundle(resourceLoader.pluralsData);
+      writeResBundle(resourceLoader.stringData);
+      writeResBundle(resourceLoader.menuData);
+      writeResBundle(resourceLoader.drawableData);
+      writeResBundle(resourceLoader.preferenceData);
+      writeResBundle(resourceLoader.xmlDocuments);
+      writeResBundle(resourceLoader.xmlBlocks);
+      writeResBundle(resourceLoader.rawResources);
+    }
+
+    private void writeResBunch(ResBunch resBunch) throws IOException {
+      Map<ResName, ResBunch.Values> allValues = resBunch.getAllValues();
+      out.writeInt(allValues.size());
+      for (Map.Entry<ResName, ResBunch.Values> entry : allValues.entrySet()) {
+        writeResName(entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (ResBunch.Value value : entry.getValue()) {
+          writeXmlContext(checkPackage(entry.getKey(), value.xmlContext));
+          writeObject(value.value);
+        }
+      }
+    }
+
+    private <T> void writeResBundle(ResBundle<T> resBundle) throws IOException {
+      Map<ResName, ResBundle.Values<T>> allValues = resBundle.getAllValues();
+      out.writeInt(allValues.size());
+      for (Map.Entry<ResName, ResBundle.Values<T>> entry : allValues.entrySet()) {
+        writeResName(entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (ResBundle.Value<T> value : entry.getValue()) {
+          writeXmlContext(checkPackage(entry.getKey(), value.xmlContext));
+          writeObject(value.value);
+        }
+      }
+    }
+
+    private XmlLoader.XmlContext checkPackage(ResName resName, XmlLoader.XmlContext xmlContext) {
+      // values are put back under the context's package name
+      if (!resName.packageName.equals(xmlContext.packageName)) {
+        throw new IllegalArgumentException("can't snapshot " + resName + " from " + xmlContext);
+      }
+      return xmlContext;
+    }
+
+    private void writeXmlContext(XmlLoader.XmlContext xmlContext) throws IOException {
+      writeString(xmlContext.packageName);
+      writeFsFile(xmlContext.getXmlFile());
+    }
+
+    private void writeObject(Object object) throws IOException {
+      if (object == null) {
+        out.writeByte(T_NULL);
+      } else if (object instanceof String) {
+        out.writeByte(T_STRING);
+        writeString((String) object);
+      } else if (object instanceof TypedResource) {
+        writeTypedResource((TypedResource) object);
+      } else if (object instanceof AttrData) {
+        AttrData attrData = (AttrData) object;
+        out.writeByte(T_ATTR_DATA);
+        writeString(attrData.getName());
+        writeString(attrData.getFormat());
+        List<AttrData.Pair> pairs = attrData.getPairs();
+        out.writeInt(pairs == null ? -1 : pairs.size());
+        if (pairs != null) {
+          for (AttrData.Pair pair : pairs) {
+            writeString(pair.name);
+            writeString(pair.value);
+          }
+        }
+      } else if (object instanceof StyleData) {
+        StyleData styleData = (StyleData) object;
+        out.writeByte(T_STYLE_DATA);
+        writeString(styleData.getPackageName());
+        writeString(styleData.getName());
+        writeString(styleData.getParent());
+        Map<ResName, Attribute> items = styleData.getItems();
+        out.writeInt(items.size());
+        for (Map.Entry<ResName, Attribute> entry : items.entrySet()) {
+          writeResName(entry.getKey());
+          writeAttribute(entry.getValue());
+        }
+      } else if (object instanceof PluralResourceLoader.PluralRules) {
+        List<Plural> plurals = ((PluralResourceLoader.PluralRules) object).plurals;
+        out.writeByte(T_PLURAL_RULES);
+        out.writeInt(plurals.size());
+        for (Plural plural : plurals) {
+          writeString(plural.quantity);
+          writeString(plural.string);
+        }
+      } else if (object instanceof MenuNode) {
+        MenuNode menuNode = (MenuNode) object;
+        out.writeByte(T_MENU_NODE);
+        writeString(menuNode.getName());
+        writeAttributes(menuNode.getAttributes());
+        out.writeInt(menuNode.getChildren().size());
+        for (MenuNode child : menuNode.getChildren()) {
+          writeObject(child);
+        }
+      } else if (object instanceof PreferenceNode) {
+        PreferenceNode preferenceNode = (PreferenceNode) object;
+        out.writeByte(T_PREFERENCE_NODE);
+        writeString(preferenceNode.getName());
+        writeAttributes(preferenceNode.getAttributes());
+        out.writeInt(preferenceNode.getChildren().size());
+        for (PreferenceNode child : preferenceNode.getChildren()) {
+          writeObject(child);
+        }
+      } else if (object instanceof DrawableNode.Xml) {
+        DrawableNode.Xml drawableNode = (DrawableNode.Xml) object;
+        out.writeByte(T_DRAWABLE_XML);
+        writeObject(drawableNode.document);
+        writeXmlContext(drawableNode.xmlContext);
+      } else if (object instanceof DrawableNode.ImageFile) {
+        DrawableNode.ImageFile drawableNode = (DrawableNode.ImageFile) object;
+        out.writeByte(T_DRAWABLE_IMAGE_FILE);
+        writeFsFile(drawableNode.getFsFile());
+        out.writeBoolean(drawableNode.isNinePatch);
+      } else if (object instanceof Document) {
+        out.writeByte(T_DOCUMENT);
+        Integer sharedIndex = sharedObjectIndexes.get(object);
+        out.writeInt(sharedIndex == null ? -1 : sharedIndex);
+        if (sharedIndex == null) {
+          sharedObjectIndexes.put(object, sharedObjectIndexes.size());
+          writeNode(((Document) object).getDocumentElement());
+        }
+      } else if (object instanceof XmlBlock) {
+        XmlBlock xmlBlock = (XmlBlock) object;
+        out.writeByte(T_XML_BLOCK);
+        writePath(xmlBlock.fileName);
+        out.writeInt(xmlBlock.strings.length);
+        for (String string : xmlBlock.strings) {
+          writeString(string);
+        }
+        out.writeInt(xmlBlock.tokens.length);
+        for (int token : xmlBlock.tokens) {
+          out.writeInt(token);
+        }
+      } else if (object instanceof FsFile) {
+        out.writeByte(T_FS_FILE);
+        writeFsFile((FsFile) object);
+      } else {
+        throw new IllegalArgumentException("can't snapshot " + object.getClass().getName() + ": " + object);
+      }
+    }
+
+    private void writeTypedResource(TypedResource typedResource) throws IOException {
+      Object data = typedResource.getData();
+      if (typedResource.getClass() == FileTypedResource.class) {
+        out.writeByte(T_FILE_TYPED_RESOURCE);
+      } else if (typedResource.getClass() == TypedResource.class) {
+        out.writeByte(data instanceof TypedResource[] ? T_TYPED_RESOURCE_ARRAY : T_TYPED_RESOURCE);
+      } else {
+        throw new IllegalArgumentException("can't snapshot " + typedResource);
+      }
+      writeString(typedResource.getResType().name());
+
+      if (data instanceof TypedResource[]) {
+        TypedResource[] items = (TypedResource[]) data;
+        out.writeInt(items.length);
+        for (TypedResource item : items) {
+          writeObject(item);
+        }
+      } else {
+        writeObject(data);
+      }
+    }
+
+    private void writeAttributes(List<Attribute> attributes) throws IOException {
+      out.writeInt(attributes.size());
+      for (Attribute attribute : attributes) {
+        writeAttribute(attribute);
+      }
+    }
+
+    private void writeAttribute(Attribute attribute) throws IOException {
+      writeResName(attribute.resName);
+      writeString(attribute.value);
+      writeString(attribute.contextPackageName);
+    }
+
+    private void writeNode(Node node) throws IOException {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        out.writeByte(N_ELEMENT);
+        writeString(node.getNamespaceURI());
+        writeString(node.getNodeName());
+
+        NamedNodeMap attributes = node.getAttributes();
+        out.writeInt(attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+          Node attribute = attributes.item(i);
+          writeString(attribute.getNamespaceURI());
+          writeString(attribute.getNodeName());
+          writeString(attribute.getNodeValue());
+        }
+
+        List<Node> children = new ArrayList<Node>();
+        NodeList childNodes = node.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+          Node child = childNodes.item(i);
+          short type = child.getNodeType();
+          if (type == Node.ELEMENT_NODE || type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+            children.add(child);
+          }
+        }
+        out.writeInt(children.size());
+        for (Node child : children) {
+          writeNode(child);
+        }
+      } else {
+        out.writeByte(node.getNodeType() == Node.CDATA_SECTION_NODE ? N_CDATA : N_TEXT);
+        writeString(node.getNodeValue());
+      }
+    }
+
+    private void writeResName(ResName resName) throws IOException {
+      writeString(resName.packageName);
+      writeString(resName.type);
+      writeString(resName.name);
+    }
+
+    private void writeFsFile(FsFile fsFile) throws IOException {
+      writePath(fsFile.getPath());
+    }
+
+    private void writePath(String path) throws IOException {
+      boolean isRelative = path.startsWith(resourceBasePrefix);
+      out.writeBoolean(isRelative);
+      writeString(isRelative ? path.substring(resourceBasePrefix.length()) : path);
+    }
+
+    private void writeString(String string) throws IOException {
+      if (string == null) {
+        out.writeInt(NULL_STRING);
+        return;
+      }
+
+      Integer index = stringIndexes.get(string);
+      if (index != null) {
+        out.writeInt(index);
+        return;
+      }
+
+      stringIndexes.put(string, stringIndexes.size());
+      byte[] bytes = string.getBytes("UTF-8");
+      out.writeInt(NEW_STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads what a {@link Writer} wrote, from the start of {@code buffer}.
+   */
+  static class Reader {
+    private final ByteBuffer buffer;
+    private final FsFile resourceBase;
+    private final List<String> strings = new ArrayList<String>();
+    private final List<Object> sharedObjects = new ArrayList<Object>();
+    private final Map<String, FsFile> fsFiles = new HashMap<String, FsFile>();
+    private final Map<FsFile, XmlLoader.XmlContext> xmlContexts = new HashMap<FsFile, XmlLoader.XmlContext>();
+    private DocumentBuilder documentBuilder;
+
+    Reader(ByteBuffer buffer, FsFile resourceBase) {
+      this.buffer = buffer;
+      this.resourceBase = resourceBase;
+    }
+
+    boolean readHeader() throws IOException {
+      return buffer.getInt() == MAGIC
+          && buffer.getInt() == FORMAT_VERSION
+          && resourceBase.getPath().equals(readString());
+    }
+
+    void readResourceIndex(ResourceExtractor resourceExtractor) throws IOException {
+      int nameCount = buffer.getInt();
+      for (int i = 0; i < nameCount; i++) {
+        ResName resName = readResName();
+        resourceExtractor.resourceNameToId.put(resName, buffer.getInt());
+      }
+      int idCount = buffer.getInt();
+      for (int i = 0; i < idCount; i++) {
+        int id = buffer.getInt();
+        resourceExtractor.resourceIdToResName.put(id, readResName());
+      }
+    }
+
+    void readTables(XResourceLoader resourceLoader) throws IOException {
+      readResBunch(resourceLoader.data);
+      readResBundle(resourceLoader.pluralsData);
+      readResBundle(resourceLoader.stringData);
+      readResBundle(resourceLoader.menuData);
+      readResBundle(resourceLoader.drawableData);
+      readResBundle(resourceLoader.preferenceData);
+      readResBundle(resourceLoader.xmlDocuments);
+      readResBundle(resourceLoader.xmlBlocks);
+      readResBundle(resourceLoader.rawResources);
+    }
+
+    private void readResBunch(ResBunch resBunch) throws IOException {
+      int nameCount = buffer.getInt();
+      for (int i = 0; i < nameCount; i++) {
+        ResName resName = readResName();
+        int valueCount = buffer.getInt();
+        for (int j = 0; j < valueCount; j++) {
+          XmlLoader.XmlContext xmlContext = readXmlContext();
+          resBunch.put(resName.type, resName.name, (TypedResource) readObject(), xmlContext);
+        }
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void readResBundle(ResBundle<T> resBundle) throws IOException {
+      int nameCount = buffer.getInt();
+      for (int i = 0; i < nameCount; i++) {
+        ResName resName = readResName();
+        int valueCount = buffer.getInt();
+        for (int j = 0; j < valueCount; j++) {
+          XmlLoader.XmlContext xmlContext = readXmlContext();
+          resBundle.put(resName.type, resName.name, (T) readObject(), xmlContext);
+        }
+      }
+    }
+
+    private XmlLoader.XmlContext readXmlContext() throws IOException {
+      String packageName = readString();
+      FsFile xmlFile = readFsFile();
+      XmlLoader.XmlContext xmlContext = xmlContexts.get(xmlFile);
+      if (xmlContext == null || !xmlContext.packageName.equals(packageName)) {
+        xmlContext = new XmlLoader.XmlContext(packageName, xmlFile);
+        xmlContexts.put(xmlFile, xmlContext);
+      }
+      return xmlContext;
+    }
+
+    private Object readObject() throws IOException {
+      byte type = buffer.get();
+      switch (type) {
+        case T_NULL:
+          return null;
+        case T_STRING:
+          return readString();
+        case T_TYPED_RESOURCE: {
+          ResType resType = readResType();
+          return new TypedResource<Object>(readObject(), resType);
+        }
+        case T_FILE_TYPED_RESOURCE: {
+          ResType resType = readResType();
+          return new FileTypedResource<Object>(readObject(), resType);
+        }
+        case T_TYPED_RESOURCE_ARRAY: {
+          ResType resType = readResType();
+          TypedResource[] items = new TypedResource[buffer.getInt()];
+          for (int i = 0; i < items.length; i++) {
+            items[i] = (TypedResource) readObject();
+          }
+          return new TypedResource<TypedResource[]>(items, resType);
+        }
+        case T_ATTR_DATA: {
+          String name = readString();
+          String format = readString();
+          int pairCount = buffer.getInt();
+          List<AttrData.Pair> pairs = null;
+          if (pairCount >= 0) {
+            pairs = new ArrayList<AttrData.Pair>(pairCount);
+            for (int i = 0; i < pairCount; i++) {
+              pairs.add(new AttrData.Pair(readString(), readString()));
+            }
+          }
+          return new AttrData(name, format, pairs);
+        }
+        case T_STYLE_DATA: {
+          StyleData styleData = new StyleData(readString(), readString(), readString());
+          int itemCount = buffer.getInt();
+          for (int i = 0; i < itemCount; i++) {
+            styleData.add(readResName(), readAttribute());
+          }
+          return styleData;
+        }
+        case T_PLURAL_RULES: {
+          PluralResourceLoader.PluralRules pluralRules = new PluralResourceLoader.PluralRules();
+          int pluralCount = buffer.getInt();
+          for (int i = 0; i < pluralCount; i++) {
+            pluralRules.add(new Plural(readString(), readString()));
+          }
+          return pluralRules;
+        }
+        case T_MENU_NODE: {
+          MenuNode menuNode = new MenuNode(readString(), readAttributes());
+          int childCount = buffer.getInt();
+          for (int i = 0; i < childCount; i++) {
+            menuNode.addChild((MenuNode) readObject());
+          }
+          return menuNode;
+        }
+        case T_PREFERENCE_NODE: {
+          PreferenceNode preferenceNode = new PreferenceNode(readString(), readAttributes());
+          int childCount = buffer.getInt();
+          for (int i = 0; i < childCount; i++) {
+            preferenceNode.addChild((PreferenceNode) readObject());
+          }
+          return preferenceNode;
+        }
+        case T_DRAWABLE_XML: {
+          Document document = (Document) readObject();
+          return new DrawableNode.Xml(document, readXmlContext());
+        }
+        case T_DRAWABLE_IMAGE_FILE:
+          return new DrawableNode.ImageFile(readFsFile(), buffer.get() != 0);
+        case T_DOCUMENT: {
+          int sharedIndex = buffer.getInt();
+          if (sharedIndex >= 0) return sharedObjects.get(sharedIndex);
+
+          Document document = newDocument();
+          document.appendChild(readNode(document));
+          sharedObjects.add(document);
+          return document;
+        }
+        case T_FS_FILE:
+          return readFsFile();
+        case T_XML_BLOCK: {
+          String fileName = readPath();
+          String[] strings = new String[buffer.getInt()];
+          for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString();
+          }
+          int[] tokens = new int[buffer.getInt()];
+          buffer.asIntBuffer().get(tokens);
+          buffer.position(buffer.position() + tokens.length * 4);
+          return new XmlBlock(fileName, strings, tokens);
+        }
+        default:
+          throw new IllegalStateException("unknown type " + type + " at " + (buffer.position() - 1));
+      }
+    }
+
+    private ResType readResType() throws IOException {
+      return ResType.valueOf(readString());
+    }
+
+    private List<Attribute> readAttributes() throws IOException {
+      int attributeCount = buffer.getInt();
+      List<Attribute> attributes = new ArrayList<Attribute>(attributeCount);
+      for (int i = 0; i < attributeCount; i++) {
+        attributes.add(readAttribute());
+      }
+      return attributes;
+    }
+
+    private Attribute readAttribute() throws IOException {
+      return new Attribute(readResName(), readString(), readString());
+    }
+
+    private Node readNode(Document document) throws IOException {
+      byte type = buffer.get();
+      if (type == N_TEXT) return document.createTextNode(readString());
+      if (type == N_CDATA) return document.createCDATASection(readString());
+      if (type != N_ELEMENT) throw new IllegalStateException("unknown node type " + type);
+
+      Element element = document.createElementNS(readString(), readString());
+      int attributeCount = buffer.getInt();
+      for (int i = 0; i < attributeCount; i++) {
+        element.setAttributeNS(readString(), readString(), readString());
+      }
+      int childCount = buffer.getInt();
+      for (int i = 0; i < childCount; i++) {
+        element.appendChild(readNode(document));
+      }
+      return element;
+    }
+
+    private Document newDocument() {
+      if (documentBuilder == null) {
+        try {
+          DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+          documentBuilderFactory.setNamespaceAware(true);
+          documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return documentBuilder.newDocument();
+    }
+
+    private ResName readResName() throws IOException {
+      return new ResName(readString(), readString(), readString());
+    }
+
+    private String readPath() throws IOException {
+      boolean isRelative = buffer.get() != 0;
+      String path = readString();
+      return isRelative ? resourceBase.join(path.split("/")).getPath() : path;
+    }
+
+    private FsFile readFsFile() throws IOException {
+      boolean isRelative = buffer.get() != 0;
+      String path = readString();
+      String key = isRelative ? "/" + path : path;
+      FsFile fsFile = fsFiles.get(key);
+      if (fsFile == null) {
+        fsFile = isRelative ? resourceBase.join(path.split("/")) : Fs.fileFromPath(path);
+        fsFiles.put(key, fsFile);
+      }
+      return fsFile;
+    }
+
+    private String readString() throws IOException {
+      int index = buffer.getInt();
+      if (index == NULL_STRING) return null;
+      if (index != NEW_STRING) return strings.get(index);
+
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      String string = new String(bytes, "UTF-8");
+      strings.add(string);
+      return string;
+    }
+  }
+
+  static void update(MessageDigest digest, String value) {
+    try {
+      digest.update(value.getBytes("UTF-8"));
+      digest.update((byte) 0);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder();
+    for (byte b : bytes) {
+      buf.append(String.format("%02x", b & 0xff));
+    }
+    return buf.toString();
+  }
+}
@@ -41,6 +41,11 @@ public class RoutingResourceLoader implements ResourceLoader {
     return pickFor(resName).getXml(resName, "");
   }
 
+  @Override
+  public XmlBlock getXmlBlock(ResName resName, String qualifiers) {
+    return pickFor(resName).getXmlBlock(resName, qualifiers);
+  }
+
   @Override
   public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
     return pickFor(resName).getDrawableNode(resName, qualifiers);
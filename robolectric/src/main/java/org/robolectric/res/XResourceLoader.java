@@ -5,6 +5,7 @@ import org.w3c.dom.Document;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.locks.Lock;
 
 abstract class XResourceLoader implements ResourceLoader {
   final ResBunch data = new ResBunch();
@@ -14,9 +15,10 @@ abstract class XResourceLoader implements ResourceLoader {
   final ResBundle<DrawableNode> drawableData = new ResBundle<DrawableNode>();
   final ResBundle<PreferenceNode> preferenceData = new ResBundle<PreferenceNode>();
   final ResBundle<Document> xmlDocuments = new ResBundle<Document>();
+  final ResBundle<XmlBlock> xmlBlocks = new ResBundle<XmlBlock>();
   final ResBundle<FsFile> rawResources = new ResBundle<FsFile>();
   private final ResourceIndex resourceIndex;
-  boolean isInitialized = false;
+  volatile boolean isInitialized = false;
 
   protected XResourceLoader(ResourceIndex resourceIndex) {
     this.resourceIndex = resourceIndex;
@@ -26,10 +28,31 @@ abstract class XResourceLoader implements ResourceLoader {
 
   void initialize() {
     if (isInitialized) return;
-    doInitialize();
-    isInitialized = true;
+    synchronized (this) {
+      if (isInitialized) return;
+      doInitialize();
+      makeImmutable();
+      isInitialized = true;
+    }
+  }
 
+  /**
+   * Marks resources which were put in place some other way, like by {@link ResourceSnapshot}, as loaded.
+   */
+  synchronized void markInitialized() {
     makeImmutable();
+    isInitialized = true;
+  }
+
+  /**
+   * Makes sure the resources needed to look up {@code resType} are loaded. By default, that's all of them.
+   *
+   * @return a lock the caller must hold while looking them up and release afterwards, or null if none is needed
+   *     because loading is finished
+   */
+  Lock lockFor(String resType) {
+    initialize();
+    return null;
   }
 
   protected void makeImmutable() {
@@ -41,6 +64,7 @@ abstract class XResourceLoader implements ResourceLoader {
     drawableData.makeImmutable();
     preferenceData.makeImmutable();
     xmlDocuments.makeImmutable();
+    xmlBlocks.makeImmutable();
     rawResources.makeImmutable();
   }
 
@@ -50,55 +74,95 @@ abstract class XResourceLoader implements ResourceLoader {
   }
 
   public TypedResource getValue(@NotNull ResName resName, String qualifiers) {
-    initialize();
-    ResBunch.Value value = data.getValue(resName, qualifiers);
-    return value == null ? null : value.getTypedResource();
+    Lock lock = lockFor(resName.type);
+    try {
+      ResBunch.Value value = data.getValue(resName, qualifiers);
+      return value == null ? null : value.getTypedResource();
+    } finally {
+      if (lock != null) lock.unlock();
+    }
   }
 
   @Override
   public Plural getPlural(ResName resName, int quantity, String qualifiers) {
-    initialize();
-    PluralResourceLoader.PluralRules pluralRules = pluralsData.get(resName, qualifiers);
-    if (pluralRules == null) return null;
+    Lock lock = lockFor(resName.type);
+    try {
+      PluralResourceLoader.PluralRules pluralRules = pluralsData.get(resName, qualifiers);
+      if (pluralRules == null) return null;
 
-    return pluralRules.find(quantity);
+      return pluralRules.find(quantity);
+    } finally {
+      if (lock != null) lock.unlock();
+    }
   }
 
   @Override
   public Document getXml(ResName resName, String qualifiers) {
-    initialize();
-    return xmlDocuments.get(resName, qualifiers);
+    Lock lock = lockFor(resName.type);
+    try {
+      Document document = xmlDocuments.get(resName, qualifiers);
+      if (document == null) {
+        XmlBlock xmlBlock = xmlBlocks.get(resName, qualifiers);
+        if (xmlBlock != null) return xmlBlock.toDocument();
+      }
+      return document;
+    } finally {
+      if (lock != null) lock.unlock();
+    }
+  }
+
+  @Override
+  public XmlBlock getXmlBlock(ResName resName, String qualifiers) {
+    Lock lock = lockFor(resName.type);
+    try {
+      return xmlBlocks.get(resName, qualifiers);
+    } finally {
+      if (lock != null) lock.unlock();
+    }
   }
 
   @Override
   public DrawableNode getDrawableNode(ResName resName, String qualifiers) {
-    return drawableData.get(resName, qualifiers);
+    Lock lock = lockFor(resName.type);
+    try {
+      return drawableData.get(resName, qualifiers);
+    } finally {
+      if (lock != null) lock.unlock();
+    }
   }
 
   @Override
   public InputStream getRawValue(ResName resName) {
-    initialize();
-
-    FsFile file = rawResources.get(resName, "");
+    Lock lock = lockFor(resName.type);
     try {
+      FsFile file = rawResources.get(resName, "");
       return file == null ? null : file.getInputStream();
     } catch (IOException e) {
       throw new RuntimeException(e);
+    } finally {
+      if (lock != null) lock.unlock();
     }
   }
 
   @Override
   public PreferenceNode getPreferenceNode(ResName resName, String qualifiers) {
-    initialize();
-
-    return preferenceData.get(resName, qualifiers);
+    Lock lock = lockFor(resName.type);
+    try {
+      return preferenceData.get(resName, qualifiers);
+    } finally {
+      if (lock != null) lock.unlock();
+    }
   }
 
   @Override
   public MenuNode getMenuNode(ResName resName, String qualifiers) {
-    initialize();
     if (resName == null) return null;
-    return menuData.get(resName, qualifiers);
+    Lock lock = lockFor(resName.type);
+    try {
+      return menuData.get(resName, qualifiers);
+    } finally {
+      if (lock != null) lock.unlock();
+    }
   }
 
   @Override
@@ -0,0 +1,348 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of an XML resource file, a little like Android's own binary XML: a flat stream of int tokens with
+ * every string stored once, instead of a tree of DOM nodes. Blocks are immutable, and much smaller than the
+ * {@link Document}s they're compiled from.
+ *
+ * Tokens are addressed by their offset in the stream. An element token is followed by its children's tokens and then
+ * its end token; text that a pull parser skips, like whitespace and CDATA sections, is kept so elements' text content
+ * comes out as the DOM's would.
+ */
+public class XmlBlock {
+  public static final int ELEMENT = 1;
+  public static final int END_ELEMENT = 2;
+  public static final int TEXT = 3;
+  public static final int WHITESPACE = 4;
+  public static final int CDATA = 5;
+  public static final int END = 6;
+
+  private static final int NO_STRING = -1;
+
+  // element: ELEMENT, namespace, name, attribute count, first attribute number, then per attribute:
+  private static final int ELEMENT_HEADER_SIZE = 5;
+  // namespace, qualified name, local name, value
+  private static final int ATTRIBUTE_SIZE = 4;
+
+  final String fileName;
+  final String[] strings;
+  final int[] tokens;
+  private final int attributeCount;
+  private volatile ResolvedNames resolvedNames;
+
+  XmlBlock(String fileName, String[] strings, int[] tokens) {
+    this.fileName = fileName;
+    this.strings = strings;
+    this.tokens = tokens;
+
+    int attributeCount = 0;
+    for (int token = 0; tokens[token] != END; token = next(token)) {
+      if (tokens[token] == ELEMENT) attributeCount += tokens[token + 3];
+    }
+    this.attributeCount = attributeCount;
+  }
+
+  /**
+   * Compiles {@code document}, which was parsed from {@code fileName}.
+   */
+  public static XmlBlock from(Document document, String fileName) {
+    Compiler compiler = new Compiler();
+    compiler.compileElement(document.getDocumentElement());
+    compiler.tokens.add(END);
+    return new XmlBlock(fileName, compiler.strings.toArray(new String[compiler.strings.size()]), compiler.toIntArray());
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  public int getRootElement() {
+    return 0;
+  }
+
+  /**
+   * @return {@link #ELEMENT}, {@link #END_ELEMENT}, {@link #TEXT}, {@link #WHITESPACE}, {@link #CDATA} or {@link #END}
+   */
+  public int getType(int token) {
+    return tokens[token];
+  }
+
+  /**
+   * @return the token after {@code token}; for an element, that's its first child, or its end if it has none
+   */
+  public int next(int token) {
+    switch (tokens[token]) {
+      case ELEMENT:
+        return token + ELEMENT_HEADER_SIZE + tokens[token + 3] * ATTRIBUTE_SIZE;
+      case END_ELEMENT:
+      case TEXT:
+      case WHITESPACE:
+      case CDATA:
+        return token + 2;
+      default:
+        throw new IllegalArgumentException("nothing follows token " + token);
+    }
+  }
+
+  /**
+   * @return the element an {@link #END_ELEMENT} token ends
+   */
+  public int getElement(int endToken) {
+    return tokens[endToken + 1];
+  }
+
+  public String getNamespace(int element) {
+    return string(tokens[element + 1]);
+  }
+
+  public String getName(int element) {
+    return string(tokens[element + 2]);
+  }
+
+  public int getAttributeCount(int element) {
+    return tokens[element + 3];
+  }
+
+  public String getAttributeNamespace(int element, int index) {
+    return string(tokens[attribute(element, index)]);
+  }
+
+  /**
+   * @return the attribute's name as written, with any prefix
+   */
+  public String getAttributeName(int element, int index) {
+    return string(tokens[attribute(element, index) + 1]);
+  }
+
+  public String getAttributeLocalName(int element, int index) {
+    return string(tokens[attribute(element, index) + 2]);
+  }
+
+  public String getAttributeValue(int element, int index) {
+    return string(tokens[attribute(element, index) + 3]);
+  }
+
+  /**
+   * @return the index of the attribute with the given namespace and local name, or -1 if there isn't one
+   */
+  public int indexOfAttribute(int element, String namespace, String localName) {
+    int count = tokens[element + 3];
+    for (int i = 0; i < count; i++) {
+      int attribute = attribute(element, i);
+      String attributeNamespace = string(tokens[attribute]);
+      if ((namespace == null ? attributeNamespace == null : namespace.equals(attributeNamespace))
+          && localName.equals(string(tokens[attribute + 2]))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the text of a {@link #TEXT}, {@link #WHITESPACE} or {@link #CDATA} token, or, for an element, all the text
+   *     within it
+   */
+  public String getText(int token) {
+    if (tokens[token] != ELEMENT) return string(tokens[token + 1]);
+
+    StringBuilder text = new StringBuilder();
+    int depth = 0;
+    for (int current = token; ; current = next(current)) {
+      switch (tokens[current]) {
+        case ELEMENT:
+          depth++;
+          break;
+        case END_ELEMENT:
+          if (--depth == 0) return text.toString();
+          break;
+        default:
+          text.append(string(tokens[current + 1]));
+      }
+    }
+  }
+
+  /**
+   * Looks up the resource ids of attributes' names once for each resource index and key, since they're asked for over
+   * and over as views are inflated.
+   *
+   * @param key names what else the parser's names depend on, such as its package; parsers with the same resource index
+   *     and key share resolved names
+   * @param resolver resolves the name of an attribute to its id; called at most once per attribute
+   */
+  public int getAttributeNameResource(int element, int index, ResourceIndex resourceIndex, String key, NameResolver resolver) {
+    ResolvedNames resolvedNames = this.resolvedNames;
+    if (resolvedNames == null || resolvedNames.resourceIndex != resourceIndex || !resolvedNames.key.equals(key)) {
+      this.resolvedNames = resolvedNames = new ResolvedNames(resourceIndex, key, attributeCount);
+    }
+
+    int attributeNumber = tokens[element + 4] + index;
+    int id = resolvedNames.ids[attributeNumber];
+    if (id == 0) {
+      id = resolver.resolve(index) + 1;
+      resolvedNames.ids[attributeNumber] = id;
+    }
+    return id - 1;
+  }
+
+  /**
+   * @return a DOM document with the same content as the one this block was compiled from
+   */
+  public Document toDocument() {
+    try {
+      DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+      documentBuilderFactory.setNamespaceAware(true);
+      Document document = documentBuilderFactory.newDocumentBuilder().newDocument();
+
+      List<Node> openElements = new ArrayList<Node>();
+      openElements.add(document);
+      for (int token = 0; tokens[token] != END; token = next(token)) {
+        Node parent = openElements.get(openElements.size() - 1);
+        switch (tokens[token]) {
+          case ELEMENT:
+            Element element = document.createElementNS(getNamespace(token), getName(token));
+            for (int i = 0; i < getAttributeCount(token); i++) {
+              element.setAttributeNS(getAttributeNamespace(token, i), getAttributeName(token, i), getAttributeValue(token, i));
+            }
+            parent.appendChild(element);
+            openElements.add(element);
+            break;
+          case END_ELEMENT:
+            openElements.remove(openElements.size() - 1);
+            break;
+          case CDATA:
+            parent.appendChild(document.createCDATASection(getText(token)));
+            break;
+          default:
+            parent.appendChild(document.createTextNode(getText(token)));
+        }
+      }
+      return document;
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Mirrors the DOM-based parser, which skips text made of nothing but whitespace.
+   */
+  public static boolean isWhitespace(String text) {
+    return text != null && text.split("\\s").length == 0;
+  }
+
+  private int attribute(int element, int index) {
+    if (index < 0 || index >= tokens[element + 3]) {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+    return element + ELEMENT_HEADER_SIZE + index * ATTRIBUTE_SIZE;
+  }
+
+  private String string(int index) {
+    return index == NO_STRING ? null : strings[index];
+  }
+
+  @Override public String toString() {
+    return "XmlBlock{" + fileName + "}";
+  }
+
+  public interface NameResolver {
+    int resolve(int index);
+  }
+
+  private static class ResolvedNames {
+    final ResourceIndex resourceIndex;
+    final String key;
+    final int[] ids; // id + 1, or 0 if not resolved yet
+
+    ResolvedNames(ResourceIndex resourceIndex, String key, int attributeCount) {
+      this.resourceIndex = resourceIndex;
+      this.key = key;
+      this.ids = new int[attributeCount];
+    }
+  }
+
+  private static class Compiler {
+    final List<String> strings = new ArrayList<String>();
+    final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+    final List<Integer> tokens = new ArrayList<Integer>();
+    int attributeCount;
+
+    void compileElement(Node element) {
+      NamedNodeMap attributes = element.getAttributes();
+      tokens.add(ELEMENT);
+      tokens.add(name(element.getNamespaceURI()));
+      tokens.add(name(element.getNodeName()));
+      tokens.add(attributes.getLength());
+      tokens.add(attributeCount);
+      attributeCount += attributes.getLength();
+
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node attribute = attributes.item(i);
+        String localName = attribute.getLocalName();
+        tokens.add(name(attribute.getNamespaceURI()));
+        tokens.add(name(attribute.getNodeName()));
+        tokens.add(name(localName == null ? attribute.getNodeName() : localName));
+        tokens.add(string(attribute.getNodeValue()));
+      }
+
+      int endToken = tokens.size();
+      NodeList children = element.getChildNodes();
+      for (int i = 0; i < children.getLength(); i++) {
+        Node child = children.item(i);
+        switch (child.getNodeType()) {
+          case Node.ELEMENT_NODE:
+            compileElement(child);
+            break;
+          case Node.TEXT_NODE:
+            tokens.add(isWhitespace(child.getNodeValue()) ? WHITESPACE : TEXT);
+            tokens.add(string(child.getNodeValue()));
+            break;
+          case Node.CDATA_SECTION_NODE:
+            tokens.add(CDATA);
+            tokens.add(string(child.getNodeValue()));
+            break;
+          default:
+            // comments and processing instructions aren't reported
+        }
+      }
+      tokens.add(END_ELEMENT);
+      tokens.add(endToken - ELEMENT_HEADER_SIZE - attributes.getLength() * ATTRIBUTE_SIZE);
+    }
+
+    // names and namespaces recur across files, so share them between blocks
+    private int name(String name) {
+      return string(name == null ? null : name.intern());
+    }
+
+    private int string(String string) {
+      if (string == null) return NO_STRING;
+      Integer index = stringIndexes.get(string);
+      if (index == null) {
+        index = strings.size();
+        strings.add(string);
+        stringIndexes.put(string, index);
+      }
+      return index;
+    }
+
+    int[] toIntArray() {
+      int[] array = new int[tokens.size()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = tokens.get(i);
+      }
+      return array;
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package org.robolectric.res;
+
+/**
+ * Loader for XML resource files, which compiles each into an {@link XmlBlock} rather than keeping its DOM
+ * {@link org.w3c.dom.Document} like {@link XmlFileLoader} does.
+ */
+public class XmlBlockLoader extends XmlLoader {
+  private final String attrType;
+  private final ResBundle<XmlBlock> resBundle;
+
+  public XmlBlockLoader(ResBundle<XmlBlock> resBundle, String attrType) {
+    this.attrType = attrType;
+    this.resBundle = resBundle;
+  }
+
+  @Override
+  protected void processResourceXml(FsFile xmlFile, XpathResourceXmlLoader.XmlNode xmlNode, XmlContext xmlContext) throws Exception {
+    resBundle.put(attrType, xmlFile.getName().replace(".xml", ""), XmlBlock.from(parse(xmlFile), xmlFile.getPath()), xmlContext);
+  }
+}
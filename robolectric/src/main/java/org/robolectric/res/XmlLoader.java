@@ -19,15 +19,26 @@ public abstract class XmlLoader {
     documentBuilderFactory.setNamespaceAware(true);
     documentBuilderFactory.setIgnoringComments(true);
     documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+    try {
+      // deferred nodes are expanded on first read, which isn't safe when tests on several threads share a document
+      documentBuilderFactory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+    } catch (ParserConfigurationException e) {
+      // not Xerces; nothing is deferred
+    }
   }
 
-  private DocumentBuilder documentBuilder;
+  // resource files may be loaded on several threads at once; see DocumentLoader
+  private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
 
-  synchronized public Document parse(FsFile xmlFile) {
+  public Document parse(FsFile xmlFile) {
     InputStream inputStream = null;
     try {
+      DocumentBuilder documentBuilder = documentBuilders.get();
       if (documentBuilder == null) {
-        documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        synchronized (documentBuilderFactory) {
+          documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        }
+        documentBuilders.set(documentBuilder);
       }
       inputStream = xmlFile.getInputStream();
       return documentBuilder.parse(inputStream);
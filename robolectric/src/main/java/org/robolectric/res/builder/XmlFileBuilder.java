@@ -12,6 +12,7 @@ import org.robolectric.res.Fs;
 import org.robolectric.res.FsFile;
 import org.robolectric.res.ResName;
 import org.robolectric.res.ResourceIndex;
+import org.robolectric.res.XmlBlock;
 import org.robolectric.res.XmlFileLoader;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -62,10 +63,22 @@ public class XmlFileBuilder {
     return new XmlFileBuilder().getXml(document, fsFile.getPath(), packageName, resourceIndex);
   }
 
+  /**
+   * @return a parser over a resource stored as an {@link XmlBlock}, which treats attributes in the res-auto namespace
+   *     as {@link #getXmlResourceParser(String, String, ResourceIndex)} does
+   */
+  public static XmlResourceParser getXmlResourceParser(XmlBlock block, String packageName, ResourceIndex resourceIndex) {
+    return new XmlBlockResourceParser(block, block.getFileName(), packageName, resourceIndex, true);
+  }
+
   public XmlResourceParser getXml(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
     return new XmlResourceParserImpl(document, fileName, packageName, resourceIndex);
   }
 
+  public XmlResourceParser getXml(XmlBlock block, String fileName, String packageName, ResourceIndex resourceIndex) {
+    return new XmlBlockResourceParser(block, fileName, packageName, resourceIndex, false);
+  }
+
   /**
    * Replaces all instances of "http://schemas.android.com/apk/res-auto" with 
    * "http://schemas.android.com/apk/res/packageName" in the given Document.
@@ -98,38 +111,24 @@ public class XmlFileBuilder {
   }
 
   /**
-   * Concrete implementation of the {@link XmlResourceParser}.
-   * <p/>
-   * <p>Clients expects a pull parser while the resource loader
-   * initialise this object with a {@link Document}.
-   * This implementation navigates the dom and emulates a pull
-   * parser by raising all the opportune events.
-   * <p/>
-   * <p>Note that the original android implementation is based on
-   * a set of native methods calls. Here those methods are
-   * re-implemented in java when possible.
-   *
-   * @see https://github.com/android/platform_frameworks_base/blob/master/core/java/android/content/res/XmlBlock.java
+   * Shared parts of the parsers that emulate Android's binary XML parser over Robolectric's own forms of XML
+   * resources.
    */
-  public static class XmlResourceParserImpl
+  public static abstract class AbstractXmlResourceParser
       implements XmlResourceParser {
 
     private static final ResName FAKE_RES_NAME = new ResName("_robolectric_", "attr", "_fake_");
 
-    private final Document document;
-    private final String fileName;
-    private final String packageName;
-    private final ResourceIndex resourceIndex;
-
-    private Node currentNode;
+    protected final String fileName;
+    protected final String packageName;
+    protected final ResourceIndex resourceIndex;
 
     private boolean mStarted = false;
     private boolean mDecNextDepth = false;
     private int mDepth = 0;
-    private int mEventType = START_DOCUMENT;
+    protected int mEventType = START_DOCUMENT;
 
-    public XmlResourceParserImpl(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
-      this.document = document;
+    protected AbstractXmlResourceParser(String fileName, String packageName, ResourceIndex resourceIndex) {
       this.fileName = fileName;
       this.packageName = packageName;
       this.resourceIndex = resourceIndex;
@@ -214,13 +213,6 @@ public class XmlFileBuilder {
       return mDepth;
     }
 
-    public String getText() {
-      if (currentNode == null) {
-        return "";
-      }
-      return currentNode.getTextContent();
-    }
-
     public int getLineNumber() {
       // TODO(msama): The current implementation is
       //   unable to return line numbers.
@@ -264,66 +256,6 @@ public class XmlFileBuilder {
       return chars;
     }
 
-    public String getNamespace() {
-      if (currentNode == null) {
-        return "";
-      }
-      String namespace = currentNode.getNamespaceURI();
-      if (namespace == null) {
-        return "";
-      }
-      return namespace;
-    }
-
-    public String getName() {
-      if (currentNode == null) {
-        return "";
-      }
-      return currentNode.getNodeName();
-    }
-
-    Node getAttributeAt(int index) {
-      if (currentNode == null) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      NamedNodeMap map = currentNode.getAttributes();
-      if (index >= map.getLength()) {
-        throw new IndexOutOfBoundsException(String.valueOf(index));
-      }
-      return map.item(index);
-    }
-
-    public String getAttribute(String namespace, String name) {
-      if (currentNode == null) {
-        return null;
-      }
-
-      Element element = (Element) currentNode;
-      if (element.hasAttributeNS(namespace, name)) {
-        return element.getAttributeNS(namespace, name);
-      }
-      return null;
-    }
-
-    public String getAttributeNamespace(int index) {
-      Node attr = getAttributeAt(index);
-      if (attr == null) {
-        return null;
-      }
-      return attr.getNamespaceURI();
-    }
-
-    public String getAttributeName(int index) {
-      try {
-        Node attr = getAttributeAt(index);
-        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(attr.getNamespaceURI()) ?
-          attr.getLocalName() :
-          attr.getNodeName();
-      } catch (IndexOutOfBoundsException ex) {
-        return null;
-      }
-    }
-
     public String getAttributePrefix(int index) {
       throw new RuntimeException("getAttributePrefix not supported");
     }
@@ -334,18 +266,7 @@ public class XmlFileBuilder {
       return false;
     }
 
-    public int getAttributeCount() {
-      if (currentNode == null) {
-        return -1;
-      }
-      return currentNode.getAttributes().getLength();
-    }
-
-    public String getAttributeValue(int index) {
-      return qualify(getAttributeAt(index).getNodeValue());
-    }
-
-    private String qualify(String value) {
+    protected String qualify(String value) {
       Attribute attribute = asAttribute(value);
       if (attribute == null) return null;
       return attribute.qualifiedValue();
@@ -412,154 +333,12 @@ public class XmlFileBuilder {
      *
      * @throws XmlPullParserException
      */
-    private int nativeNext() throws XmlPullParserException {
-      switch (mEventType) {
-        case (CDSECT): {
-          throw new IllegalArgumentException(
-              "CDSECT is not handled by Android");
-        }
-        case (COMMENT): {
-          throw new IllegalArgumentException(
-              "COMMENT is not handled by Android");
-        }
-        case (DOCDECL): {
-          throw new IllegalArgumentException(
-              "DOCDECL is not handled by Android");
-        }
-        case (ENTITY_REF): {
-          throw new IllegalArgumentException(
-              "ENTITY_REF is not handled by Android");
-        }
-        case (END_DOCUMENT): {
-          // The end document event should have been filtered
-          // from the invoker. This should never happen.
-          throw new IllegalArgumentException(
-              "END_DOCUMENT should not be found here.");
-        }
-        case (END_TAG): {
-          return navigateToNextNode(currentNode);
-        }
-        case (IGNORABLE_WHITESPACE): {
-          throw new IllegalArgumentException(
-              "IGNORABLE_WHITESPACE");
-        }
-        case (PROCESSING_INSTRUCTION): {
-          throw new IllegalArgumentException(
-              "PROCESSING_INSTRUCTION");
-        }
-        case (START_DOCUMENT): {
-          currentNode = document.getDocumentElement();
-          return START_TAG;
-        }
-        case (START_TAG): {
-          if (currentNode.hasChildNodes()) {
-            // The node has children, navigate down
-            return processNextNodeType(
-                currentNode.getFirstChild());
-          } else {
-            // The node has no children
-            return END_TAG;
-          }
-        }
-        case (TEXT): {
-          return navigateToNextNode(currentNode);
-        }
-        default: {
-          // This can only happen if mEventType is
-          // assigned with an unmapped integer.
-          throw new RuntimeException(
-              "Robolectric-> Uknown XML event type: " + mEventType);
-        }
-      }
-
-    }
-
-    /*protected*/ int processNextNodeType(Node node)
-        throws XmlPullParserException {
-      switch (node.getNodeType()) {
-        case (Node.ATTRIBUTE_NODE): {
-          throw new IllegalArgumentException("ATTRIBUTE_NODE");
-        }
-        case (Node.CDATA_SECTION_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.COMMENT_NODE): {
-          return navigateToNextNode(node);
-        }
-        case (Node.DOCUMENT_FRAGMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
-        }
-        case (Node.DOCUMENT_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_NODE");
-        }
-        case (Node.DOCUMENT_TYPE_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.ELEMENT_NODE): {
-          currentNode = node;
-          return START_TAG;
-        }
-        case (Node.ENTITY_NODE): {
-          throw new IllegalArgumentException("ENTITY_NODE");
-        }
-        case (Node.ENTITY_REFERENCE_NODE): {
-          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
-        }
-        case (Node.NOTATION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.PROCESSING_INSTRUCTION_NODE): {
-          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
-        }
-        case (Node.TEXT_NODE): {
-          if (isWhitespace(node.getNodeValue())) {
-            // Skip whitespaces
-            return navigateToNextNode(node);
-          } else {
-            currentNode = node;
-            return TEXT;
-          }
-        }
-        default: {
-          throw new RuntimeException(
-              "Robolectric -> Unknown node type: " +
-                  node.getNodeType() + ".");
-        }
-      }
-    }
+    abstract int nativeNext() throws XmlPullParserException;
 
     /**
-     * Navigate to the next node after a node and all of his
-     * children have been explored.
-     * <p/>
-     * <p>If the node has unexplored siblings navigate to the
-     * next sibling. Otherwise return to its parent.
-     *
-     * @param node the node which was just explored.
-     * @return {@link XmlPullParserException#START_TAG} if the given
-     *         node has siblings, {@link XmlPullParserException#END_TAG}
-     *         if the node has no unexplored siblings or
-     *         {@link XmlPullParserException#END_DOCUMENT} if the explored
-     *         was the root document.
-     * @throws XmlPullParserException if the parser fails to
-     *                                parse the next node.
+     * @return the raw value of the current element's attribute, or null if it doesn't have one
      */
-    int navigateToNextNode(Node node)
-        throws XmlPullParserException {
-      Node nextNode = node.getNextSibling();
-      if (nextNode != null) {
-        // Move to the next siblings
-        return processNextNodeType(nextNode);
-      } else {
-        // Goes back to the parent
-        if (document.getDocumentElement().equals(node)) {
-          currentNode = null;
-          return END_DOCUMENT;
-        }
-        currentNode = node.getParentNode();
-        return END_TAG;
-      }
-    }
+    public abstract String getAttribute(String namespace, String name);
 
     public void require(int type, String namespace, String name)
         throws XmlPullParserException, IOException {
@@ -778,7 +557,7 @@ public class XmlFileBuilder {
       close();
     }
 
-    private int getResourceId(String possiblyQualifiedResourceName, String defaultPackageName, String defaultType) {
+    protected int getResourceId(String possiblyQualifiedResourceName, String defaultPackageName, String defaultType) {
       Attribute attribute = asAttribute(possiblyQualifiedResourceName);
 
       if (attribute.isNull()) return 0;
@@ -800,4 +579,429 @@ public class XmlFileBuilder {
       return resourceId == null ? 0 : resourceId;
     }
   }
+
+  /**
+   * Concrete implementation of the {@link XmlResourceParser}.
+   * <p/>
+   * <p>Clients expects a pull parser while the resource loader
+   * initialise this object with a {@link Document}.
+   * This implementation navigates the dom and emulates a pull
+   * parser by raising all the opportune events.
+   * <p/>
+   * <p>Note that the original android implementation is based on
+   * a set of native methods calls. Here those methods are
+   * re-implemented in java when possible.
+   *
+   * @see https://github.com/android/platform_frameworks_base/blob/master/core/java/android/content/res/XmlBlock.java
+   */
+  public static class XmlResourceParserImpl
+      extends AbstractXmlResourceParser {
+
+    private final Document document;
+
+    private Node currentNode;
+
+    public XmlResourceParserImpl(Document document, String fileName, String packageName, ResourceIndex resourceIndex) {
+      super(fileName, packageName, resourceIndex);
+      this.document = document;
+    }
+
+    public String getText() {
+      if (currentNode == null) {
+        return "";
+      }
+      return currentNode.getTextContent();
+    }
+
+    public String getNamespace() {
+      if (currentNode == null) {
+        return "";
+      }
+      String namespace = currentNode.getNamespaceURI();
+      if (namespace == null) {
+        return "";
+      }
+      return namespace;
+    }
+
+    public String getName() {
+      if (currentNode == null) {
+        return "";
+      }
+      return currentNode.getNodeName();
+    }
+
+    Node getAttributeAt(int index) {
+      if (currentNode == null) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      NamedNodeMap map = currentNode.getAttributes();
+      if (index >= map.getLength()) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return map.item(index);
+    }
+
+    public String getAttribute(String namespace, String name) {
+      if (currentNode == null) {
+        return null;
+      }
+
+      Element element = (Element) currentNode;
+      if (element.hasAttributeNS(namespace, name)) {
+        return element.getAttributeNS(namespace, name);
+      }
+      return null;
+    }
+
+    public String getAttributeNamespace(int index) {
+      Node attr = getAttributeAt(index);
+      if (attr == null) {
+        return null;
+      }
+      return attr.getNamespaceURI();
+    }
+
+    public String getAttributeName(int index) {
+      try {
+        Node attr = getAttributeAt(index);
+        return (Attribute.ANDROID_RES_NS_PREFIX + packageName).equals(attr.getNamespaceURI()) ?
+          attr.getLocalName() :
+          attr.getNodeName();
+      } catch (IndexOutOfBoundsException ex) {
+        return null;
+      }
+    }
+
+    public int getAttributeCount() {
+      if (currentNode == null) {
+        return -1;
+      }
+      return currentNode.getAttributes().getLength();
+    }
+
+    public String getAttributeValue(int index) {
+      return qualify(getAttributeAt(index).getNodeValue());
+    }
+
+    @Override int nativeNext() throws XmlPullParserException {
+      switch (mEventType) {
+        case (CDSECT): {
+          throw new IllegalArgumentException(
+              "CDSECT is not handled by Android");
+        }
+        case (COMMENT): {
+          throw new IllegalArgumentException(
+              "COMMENT is not handled by Android");
+        }
+        case (DOCDECL): {
+          throw new IllegalArgumentException(
+              "DOCDECL is not handled by Android");
+        }
+        case (ENTITY_REF): {
+          throw new IllegalArgumentException(
+              "ENTITY_REF is not handled by Android");
+        }
+        case (END_DOCUMENT): {
+          // The end document event should have been filtered
+          // from the invoker. This should never happen.
+          throw new IllegalArgumentException(
+              "END_DOCUMENT should not be found here.");
+        }
+        case (END_TAG): {
+          return navigateToNextNode(currentNode);
+        }
+        case (IGNORABLE_WHITESPACE): {
+          throw new IllegalArgumentException(
+              "IGNORABLE_WHITESPACE");
+        }
+        case (PROCESSING_INSTRUCTION): {
+          throw new IllegalArgumentException(
+              "PROCESSING_INSTRUCTION");
+        }
+        case (START_DOCUMENT): {
+          currentNode = document.getDocumentElement();
+          return START_TAG;
+        }
+        case (START_TAG): {
+          if (currentNode.hasChildNodes()) {
+            // The node has children, navigate down
+            return processNextNodeType(
+                currentNode.getFirstChild());
+          } else {
+            // The node has no children
+            return END_TAG;
+          }
+        }
+        case (TEXT): {
+          return navigateToNextNode(currentNode);
+        }
+        default: {
+          // This can only happen if mEventType is
+          // assigned with an unmapped integer.
+          throw new RuntimeException(
+              "Robolectric-> Uknown XML event type: " + mEventType);
+        }
+      }
+
+    }
+
+    /*protected*/ int processNextNodeType(Node node)
+        throws XmlPullParserException {
+      switch (node.getNodeType()) {
+        case (Node.ATTRIBUTE_NODE): {
+          throw new IllegalArgumentException("ATTRIBUTE_NODE");
+        }
+        case (Node.CDATA_SECTION_NODE): {
+          return navigateToNextNode(node);
+        }
+        case (Node.COMMENT_NODE): {
+          return navigateToNextNode(node);
+        }
+        case (Node.DOCUMENT_FRAGMENT_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_FRAGMENT_NODE");
+        }
+        case (Node.DOCUMENT_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_NODE");
+        }
+        case (Node.DOCUMENT_TYPE_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
+        }
+        case (Node.ELEMENT_NODE): {
+          currentNode = node;
+          return START_TAG;
+        }
+        case (Node.ENTITY_NODE): {
+          throw new IllegalArgumentException("ENTITY_NODE");
+        }
+        case (Node.ENTITY_REFERENCE_NODE): {
+          throw new IllegalArgumentException("ENTITY_REFERENCE_NODE");
+        }
+        case (Node.NOTATION_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
+        }
+        case (Node.PROCESSING_INSTRUCTION_NODE): {
+          throw new IllegalArgumentException("DOCUMENT_TYPE_NODE");
+        }
+        case (Node.TEXT_NODE): {
+          if (isWhitespace(node.getNodeValue())) {
+            // Skip whitespaces
+            return navigateToNextNode(node);
+          } else {
+            currentNode = node;
+            return TEXT;
+          }
+        }
+        default: {
+          throw new RuntimeException(
+              "Robolectric -> Unknown node type: " +
+                  node.getNodeType() + ".");
+        }
+      }
+    }
+
+    /**
+     * Navigate to the next node after a node and all of his
+     * children have been explored.
+     * <p/>
+     * <p>If the node has unexplored siblings navigate to the
+     * next sibling. Otherwise return to its parent.
+     *
+     * @param node the node which was just explored.
+     * @return {@link XmlPullParserException#START_TAG} if the given
+     *         node has siblings, {@link XmlPullParserException#END_TAG}
+     *         if the node has no unexplored siblings or
+     *         {@link XmlPullParserException#END_DOCUMENT} if the explored
+     *         was the root document.
+     * @throws XmlPullParserException if the parser fails to
+     *                                parse the next node.
+     */
+    int navigateToNextNode(Node node)
+        throws XmlPullParserException {
+      Node nextNode = node.getNextSibling();
+      if (nextNode != null) {
+        // Move to the next siblings
+        return processNextNodeType(nextNode);
+      } else {
+        // Goes back to the parent
+        if (document.getDocumentElement().equals(node)) {
+          currentNode = null;
+          return END_DOCUMENT;
+        }
+        currentNode = node.getParentNode();
+        return END_TAG;
+      }
+    }
+  }
+  /**
+   * {@link XmlResourceParser} over a compiled {@link XmlBlock}. It raises the same events as {@link XmlResourceParserImpl}
+   * does for the document the block was compiled from, but reads them straight off the block's token stream.
+   */
+  public static class XmlBlockResourceParser
+      extends AbstractXmlResourceParser {
+
+    private static final int NO_TOKEN = -1;
+
+    private final XmlBlock block;
+    private final boolean replaceResAutoNamespace;
+    private final String appNamespace;
+    private final String resolvedNamesKey;
+    private final XmlBlock.NameResolver nameResolver = new XmlBlock.NameResolver() {
+      @Override public int resolve(int index) {
+        return XmlBlockResourceParser.super.getAttributeNameResource(index);
+      }
+    };
+
+    private int currentToken = NO_TOKEN;
+    private int nextToken;
+
+    /**
+     * @param replaceResAutoNamespace whether to report attributes in the res-auto namespace as being in the app's own
+     *     namespace, as {@link #getXmlResourceParser(String, String, ResourceIndex)} does
+     */
+    public XmlBlockResourceParser(XmlBlock block, String fileName, String packageName, ResourceIndex resourceIndex, boolean replaceResAutoNamespace) {
+      super(fileName, packageName, resourceIndex);
+      this.block = block;
+      this.replaceResAutoNamespace = replaceResAutoNamespace;
+      this.appNamespace = Attribute.ANDROID_RES_NS_PREFIX + packageName;
+      this.resolvedNamesKey = replaceResAutoNamespace ? packageName + ":res-auto" : packageName;
+    }
+
+    public String getText() {
+      if (currentToken == NO_TOKEN) {
+        return "";
+      }
+      return block.getText(currentToken);
+    }
+
+    public String getNamespace() {
+      if (!onElement()) {
+        return "";
+      }
+      String namespace = block.getNamespace(currentToken);
+      return namespace == null ? "" : namespace;
+    }
+
+    public String getName() {
+      if (currentToken == NO_TOKEN) {
+        return "";
+      }
+      return onElement() ? block.getName(currentToken) : "#text";
+    }
+
+    public String getAttribute(String namespace, String name) {
+      if (!onElement()) {
+        return null;
+      }
+      int index = indexOfAttribute(namespace, name);
+      return index == -1 ? null : block.getAttributeValue(currentToken, index);
+    }
+
+    private int indexOfAttribute(String namespace, String name) {
+      if (replaceResAutoNamespace) {
+        if (Attribute.RES_AUTO_NS_URI.equals(namespace)) {
+          return -1;
+        }
+        if (appNamespace.equals(namespace)) {
+          int index = block.indexOfAttribute(currentToken, Attribute.RES_AUTO_NS_URI, name);
+          if (index != -1) {
+            return index;
+          }
+        }
+      }
+      return block.indexOfAttribute(currentToken, namespace, name);
+    }
+
+    public String getAttributeNamespace(int index) {
+      String namespace = block.getAttributeNamespace(element(index), index);
+      if (replaceResAutoNamespace && Attribute.RES_AUTO_NS_URI.equals(namespace)) {
+        return appNamespace;
+      }
+      return namespace;
+    }
+
+    public String getAttributeName(int index) {
+      try {
+        return appNamespace.equals(getAttributeNamespace(index)) ?
+            block.getAttributeLocalName(currentToken, index) :
+            block.getAttributeName(currentToken, index);
+      } catch (IndexOutOfBoundsException ex) {
+        return null;
+      }
+    }
+
+    public int getAttributeCount() {
+      if (!onElement()) {
+        return -1;
+      }
+      return block.getAttributeCount(currentToken);
+    }
+
+    public String getAttributeValue(int index) {
+      return qualify(block.getAttributeValue(element(index), index));
+    }
+
+    @Override public int getAttributeNameResource(int index) {
+      if (!onElement() || index < 0 || index >= block.getAttributeCount(currentToken)) {
+        return super.getAttributeNameResource(index);
+      }
+      return block.getAttributeNameResource(currentToken, index, resourceIndex, resolvedNamesKey, nameResolver);
+    }
+
+    @Override int nativeNext() throws XmlPullParserException {
+      switch (mEventType) {
+        case (START_DOCUMENT): {
+          currentToken = block.getRootElement();
+          nextToken = block.next(currentToken);
+          return START_TAG;
+        }
+        case (START_TAG):
+        case (END_TAG):
+        case (TEXT): {
+          return readNextToken();
+        }
+        default: {
+          throw new RuntimeException(
+              "Robolectric-> Uknown XML event type: " + mEventType);
+        }
+      }
+    }
+
+    private int readNextToken() {
+      while (true) {
+        int token = nextToken;
+        switch (block.getType(token)) {
+          case XmlBlock.ELEMENT:
+            currentToken = token;
+            nextToken = block.next(token);
+            return START_TAG;
+          case XmlBlock.END_ELEMENT:
+            currentToken = block.getElement(token);
+            nextToken = block.next(token);
+            return END_TAG;
+          case XmlBlock.TEXT:
+            currentToken = token;
+            nextToken = block.next(token);
+            return TEXT;
+          case XmlBlock.END:
+            currentToken = NO_TOKEN;
+            return END_DOCUMENT;
+          default:
+            // whitespace and CDATA are skipped, as by the DOM-based parser
+            nextToken = block.next(token);
+        }
+      }
+    }
+
+    private boolean onElement() {
+      return currentToken != NO_TOKEN && block.getType(currentToken) == XmlBlock.ELEMENT;
+    }
+
+    private int element(int index) {
+      if (!onElement()) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return currentToken;
+    }
+  }
 }
@@ -8,18 +8,25 @@ import android.util.TypedValue;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.jetbrains.annotations.NotNull;
 import org.robolectric.AndroidManifest;
 import org.robolectric.Robolectric;
 import org.robolectric.Shadows;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
 import org.robolectric.internal.HiddenApi;
 import org.robolectric.res.Attribute;
 import org.robolectric.res.DrawableNode;
@@ -54,6 +61,22 @@ public final class ShadowAssetManager {
 
   private static Map<Integer, List<OverlayedStyle>> appliedThemeStyles = new HashMap<Integer, List<OverlayedStyle>>();
 
+  // resource loaders never change once loaded, so neither do the styles resolved from them; still, each test starts
+  // afresh, and the resolvers only hold their loader weakly, so entries go away with it
+  private static final Map<ResourceLoader, ConcurrentMap<StyleKey, Style>> resolvedStyles = new WeakHashMap<ResourceLoader, ConcurrentMap<StyleKey, Style>>();
+  private static final Style NO_STYLE = new Style() {
+    @Override public Attribute getAttrValue(ResName resName) {
+      return null;
+    }
+  };
+
+  @Resetter
+  public static void reset() {
+    synchronized (resolvedStyles) {
+      resolvedStyles.clear();
+    }
+  }
+
   static AssetManager bind(AssetManager assetManager, AndroidManifest androidManifest, ResourceLoader resourceLoader) {
     ShadowAssetManager shadowAssetManager = shadowOf(assetManager);
     if (shadowAssetManager.appManifest != null) throw new RuntimeException("ResourceLoader already set!");
@@ -300,11 +323,64 @@ public final class ShadowAssetManager {
     return themesById.get(internalThemeId);
   }
 
+  /**
+   * Within a test, each style is resolved once for each theme and set of qualifiers; after that, the same {@link StyleResolver}, which
+   * remembers every attribute it's been asked for, is returned. Themes applied with {@link #applyThemeStyle} are
+   * overlaid on top of the resolved theme by {@link ShadowResources#getOverlayedThemeValue}, so they don't affect it.
+   */
   static Style resolveStyle(ResourceLoader resourceLoader, Style appTheme, @NotNull ResName themeStyleName, String qualifiers) {
-    TypedResource themeStyleResource = resourceLoader.getValue(themeStyleName, qualifiers);
-    if (themeStyleResource == null) return null;
-    StyleData themeStyleData = (StyleData) themeStyleResource.getData();
-    return new StyleResolver(resourceLoader, themeStyleData, appTheme, themeStyleName, qualifiers);
+    ConcurrentMap<StyleKey, Style> styles;
+    synchronized (resolvedStyles) {
+      styles = resolvedStyles.get(resourceLoader);
+      if (styles == null) {
+        styles = new ConcurrentHashMap<StyleKey, Style>();
+        resolvedStyles.put(resourceLoader, styles);
+      }
+    }
+
+    StyleKey styleKey = new StyleKey(appTheme, themeStyleName, qualifiers);
+    Style style = styles.get(styleKey);
+    if (style == null) {
+      TypedResource themeStyleResource = resourceLoader.getValue(themeStyleName, qualifiers);
+      if (themeStyleResource == null) {
+        style = NO_STYLE;
+      } else {
+        StyleData themeStyleData = (StyleData) themeStyleResource.getData();
+        style = new StyleResolver(resourceLoader, themeStyleData, appTheme, themeStyleName, qualifiers);
+      }
+      Style racingStyle = styles.putIfAbsent(styleKey, style);
+      if (racingStyle != null) style = racingStyle;
+    }
+    return style == NO_STYLE ? null : style;
+  }
+
+  private static class StyleKey {
+    private final Style appTheme;
+    private final ResName styleName;
+    private final String qualifiers;
+
+    StyleKey(Style appTheme, ResName styleName, String qualifiers) {
+      this.appTheme = appTheme;
+      this.styleName = styleName;
+      this.qualifiers = qualifiers;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof StyleKey)) return false;
+      StyleKey that = (StyleKey) o;
+      // themes are themselves resolved styles, so the same theme is always the same object
+      return appTheme == that.appTheme
+          && styleName.equals(that.styleName)
+          && (qualifiers == null ? that.qualifiers == null : qualifiers.equals(that.qualifiers));
+    }
+
+    @Override public int hashCode() {
+      int result = System.identityHashCode(appTheme);
+      result = 31 * result + styleName.hashCode();
+      result = 31 * result + (qualifiers == null ? 0 : qualifiers.hashCode());
+      return result;
+    }
   }
 
   TypedResource getAndResolve(int resId, String qualifiers, boolean resolveRefs) {
@@ -368,16 +444,22 @@ public final class ShadowAssetManager {
     this.qualifiers = qualifiers;
   }
 
+  /**
+   * Looks attributes up in a style, then in its parents, then in its theme. Parents are found as they're needed, and
+   * every attribute's value, or lack of one, is remembered, so asking again is a hash lookup.
+   */
   static class StyleResolver implements Style {
-    private final ResourceLoader resourceLoader;
+    private final WeakReference<ResourceLoader> resourceLoader;
     private final List<StyleData> styles = new ArrayList<StyleData>();
+    private final ConcurrentMap<ResName, Attribute> attrValues = new ConcurrentHashMap<ResName, Attribute>();
+    private final Set<ResName> missingAttrs = Collections.newSetFromMap(new ConcurrentHashMap<ResName, Boolean>());
     private final Style theme;
     private final ResName myResName;
     private final String qualifiers;
 
     public StyleResolver(ResourceLoader resourceLoader, StyleData styleData,
         Style theme, ResName myResName, String qualifiers) {
-      this.resourceLoader = resourceLoader;
+      this.resourceLoader = new WeakReference<ResourceLoader>(resourceLoader);
       this.theme = theme;
       this.myResName = myResName;
       this.qualifiers = qualifiers;
@@ -385,6 +467,20 @@ public final class ShadowAssetManager {
     }
 
     @Override public Attribute getAttrValue(ResName resName) {
+      Attribute value = attrValues.get(resName);
+      if (value != null) return value;
+      if (missingAttrs.contains(resName)) return null;
+
+      value = findAttrValue(resName);
+      if (value == null) {
+        missingAttrs.add(resName);
+      } else {
+        attrValues.put(resName, value);
+      }
+      return value;
+    }
+
+    private synchronized Attribute findAttrValue(ResName resName) {
       resName.mustBe("attr");
       for (StyleData style : styles) {
         Attribute value = style.getAttrValue(resName);
@@ -447,7 +543,7 @@ public final class ShadowAssetManager {
 
       styleRef = dereferenceResName(styleRef);
 
-      TypedResource typedResource = resourceLoader.getValue(styleRef, qualifiers);
+      TypedResource typedResource = getResourceLoader().getValue(styleRef, qualifiers);
 
       if (typedResource == null) {
         StringBuilder builder = new StringBuilder("Could not find any resource ")
@@ -470,6 +566,14 @@ public final class ShadowAssetManager {
       }
     }
 
+    private ResourceLoader getResourceLoader() {
+      ResourceLoader loader = resourceLoader.get();
+      if (loader == null) {
+        throw new IllegalStateException(myResName + " outlived the resource loader it was resolved from");
+      }
+      return loader;
+    }
+
     private ResName dereferenceResName(ResName res) {
       ResName styleRef = res;
       boolean dereferencing = true;
@@ -35,7 +35,7 @@ public class ShadowChoreographer {
     return sThreadInstance.get();
   }
 
-  @Resetter
+  @Resetter(always = true)
   public static synchronized void resetThreadLoopers() {
     // Blech. We need to share the main looper because somebody might refer to it in a static
     // field. We also need to keep it in a soft reference so we don't max out permgen.
@@ -150,7 +150,7 @@ abstract public class ShadowContext {
     return getShadowApplication().isStrictI18n();
   }
 
-  @Resetter
+  @Resetter(always = true)
   public static void reset() {
     clearFiles(FILES_DIR);
     clearFiles(CACHE_DIR);
@@ -7,11 +7,13 @@ import org.robolectric.Shadows;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
-import org.robolectric.util.ReflectionHelpers;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import static org.robolectric.Shadows.shadowOf;
 
@@ -24,10 +26,15 @@ import static org.robolectric.Shadows.shadowOf;
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Handler.class)
 public class ShadowHandler {
+  private static final Field MESSAGE_WHEN_FIELD = getMessageWhenField();
+
   @RealObject
   private Handler realHandler;
   private Looper looper;
-  private final List<Message> messages = new ArrayList<Message>();
+  // messages sent but not yet handled, indexed so that they can be found and removed without a scan
+  private final Set<PostedMessage> messages = new LinkedHashSet<PostedMessage>();
+  private final Map<Integer, Set<PostedMessage>> messagesByWhat = new HashMap<Integer, Set<PostedMessage>>();
+  private final Map<WhatAndObject, Set<PostedMessage>> messagesByWhatAndObject = new HashMap<WhatAndObject, Set<PostedMessage>>();
   private Handler.Callback callback;
 
   public void __constructor__() {
@@ -102,21 +109,26 @@ public class ShadowHandler {
   public final boolean sendMessageDelayed(final Message msg, long delayMillis) {
     long when = getCurrentUptimeMillis() + delayMillis;
     setMessageWhen(msg, when);
-    messages.add(msg);
-    postDelayed(new Runnable() {
-      @Override
-      public void run() {
-        if (messages.contains(msg)) {
-          messages.remove(msg);
-          routeMessage(msg);
-        }
-      }
-    }, delayMillis);
+    postDelayed(addMessage(msg), delayMillis);
     return true;
   }
 
   private void setMessageWhen(Message msg, long when) {
-    ReflectionHelpers.setFieldReflectively(msg, "when", when);
+    try {
+      MESSAGE_WHEN_FIELD.setLong(msg, when);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Field getMessageWhenField() {
+    try {
+      Field field = Message.class.getDeclaredField("when");
+      field.setAccessible(true);
+      return field;
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   private void routeMessage(Message msg) {
@@ -142,16 +154,7 @@ public class ShadowHandler {
   @Implementation
   public final boolean sendMessageAtFrontOfQueue(final Message msg) {
     setMessageWhen(msg, getCurrentUptimeMillis());
-    messages.add(0, msg);
-    postAtFrontOfQueue(new Runnable() {
-      @Override
-      public void run() {
-        if (messages.contains(msg)) {
-          messages.remove(msg);
-          routeMessage(msg);
-        }
-      }
-    });
+    postAtFrontOfQueue(addMessage(msg));
     return true;
   }
 
@@ -174,22 +177,12 @@ public class ShadowHandler {
 
   @Implementation
   public final boolean hasMessages(int what) {
-    for (Message message : messages) {
-      if (message.what == what) {
-        return true;
-      }
-    }
-    return false;
+    return messagesByWhat.containsKey(what);
   }
 
   @Implementation
   public final boolean hasMessages(int what, Object object) {
-    for (Message message : messages) {
-      if(message.what == what && message.obj == object) {
-        return true;
-      }
-    }
-    return false;
+    return messagesByWhatAndObject.containsKey(new WhatAndObject(what, object));
   }
 
 
@@ -200,24 +193,111 @@ public class ShadowHandler {
 
   @Implementation
   public final void removeMessages(int what, Object object) {
-    for (Iterator<Message> iterator = messages.iterator(); iterator.hasNext(); ) {
-      Message message = iterator.next();
-      if (message.what == what && (object == null || object.equals(message.obj))) {
-        iterator.remove();
+    Set<PostedMessage> postedMessages = messagesByWhat.get(what);
+    if (postedMessages == null) return;
+
+    for (PostedMessage postedMessage : new ArrayList<PostedMessage>(postedMessages)) {
+      if (object == null || object.equals(postedMessage.key.object)) {
+        cancel(postedMessage);
       }
     }
   }
 
   @Implementation
   public final void removeCallbacksAndMessages(Object object) {
-    for (Iterator<Message> iterator = messages.iterator(); iterator.hasNext(); ) {
-      Message message = iterator.next();
-      if (object == null || object.equals(message.obj)) {
-        iterator.remove();
+    for (PostedMessage postedMessage : new ArrayList<PostedMessage>(messages)) {
+      if (object == null || object.equals(postedMessage.key.object)) {
+        cancel(postedMessage);
       }
     }
   }
 
+  private PostedMessage addMessage(Message msg) {
+    PostedMessage postedMessage = new PostedMessage(msg);
+    messages.add(postedMessage);
+    index(messagesByWhat, postedMessage.key.what, postedMessage);
+    index(messagesByWhatAndObject, postedMessage.key, postedMessage);
+    return postedMessage;
+  }
+
+  private boolean removeMessage(PostedMessage postedMessage) {
+    if (!messages.remove(postedMessage)) return false;
+
+    unindex(messagesByWhat, postedMessage.key.what, postedMessage);
+    unindex(messagesByWhatAndObject, postedMessage.key, postedMessage);
+    return true;
+  }
+
+  private void cancel(PostedMessage postedMessage) {
+    removeMessage(postedMessage);
+    shadowOf(looper).getScheduler().remove(postedMessage);
+  }
+
+  private static <K> void index(Map<K, Set<PostedMessage>> index, K key, PostedMessage postedMessage) {
+    Set<PostedMessage> postedMessages = index.get(key);
+    if (postedMessages == null) {
+      postedMessages = new LinkedHashSet<PostedMessage>();
+      index.put(key, postedMessages);
+    }
+    postedMessages.add(postedMessage);
+  }
+
+  private static <K> void unindex(Map<K, Set<PostedMessage>> index, K key, PostedMessage postedMessage) {
+    Set<PostedMessage> postedMessages = index.get(key);
+    postedMessages.remove(postedMessage);
+    if (postedMessages.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  /**
+   * A sent message, and the runnable which handles it when its time comes. The message's {@code what} and
+   * {@code obj} are remembered as they were when it was sent, so that it can always be found in the indexes.
+   */
+  private class PostedMessage implements Runnable {
+    private final Message msg;
+    private final WhatAndObject key;
+
+    PostedMessage(Message msg) {
+      this.msg = msg;
+      this.key = new WhatAndObject(msg.what, msg.obj);
+    }
+
+    @Override
+    public void run() {
+      if (removeMessage(this)) {
+        routeMessage(msg);
+      }
+    }
+  }
+
+  /**
+   * Matches the same object, as {@link #hasMessages(int, Object)} does; unlike its equals(), an object's identity can't
+   * change while its message waits.
+   */
+  private static class WhatAndObject {
+    private final int what;
+    private final Object object;
+
+    WhatAndObject(int what, Object object) {
+      this.what = what;
+      this.object = object;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof WhatAndObject)) return false;
+      WhatAndObject that = (WhatAndObject) o;
+      return what == that.what && object == that.object;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * what + System.identityHashCode(object);
+    }
+  }
+
   /**
    * @deprecated use {@link #idleMainLooper()} instead
    */
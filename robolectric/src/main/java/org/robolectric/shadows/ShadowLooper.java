@@ -42,7 +42,7 @@ public class ShadowLooper {
     return Robolectric.newInstanceOf(Looper.class);
   }
 
-  @Resetter
+  @Resetter(always = true)
   public static synchronized void resetThreadLoopers() {
     // Blech. We need to share the main looper because somebody might refer to it in a static
     // field. We also need to keep it in a soft reference so we don't max out permgen.
@@ -25,7 +25,7 @@ public class ShadowMediaStore {
     }
   }
 
-  @Resetter
+  @Resetter(always = true)
   public static void reset() {
     ReflectionHelpers.setStaticFieldReflectively(MediaStore.Images.Media.class, "EXTERNAL_CONTENT_URI", Uri.parse("content://media/external/images/media"));
 
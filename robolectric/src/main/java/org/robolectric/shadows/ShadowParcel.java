@@ -1,38 +1,39 @@
 package org.robolectric.shadows;
 
 import android.os.Parcel;
-import android.util.Pair;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
 import org.robolectric.internal.HiddenApi;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shadow for {@link Parcel} which keeps each parcel's data in a growable byte array, laid out as Android lays it out:
+ * little-endian, with strings as UTF-16 and everything padded to four bytes. Marshalled parcels are those bytes.
+ */
 @Implements(Parcel.class)
-@SuppressWarnings("unchecked")
 public class ShadowParcel {
+  private static final Field NATIVE_PTR_FIELD = getNativePtrField();
+  // Parcel treats 0 as no native parcel at all, so it's never handed out
+  private static final AtomicInteger LAST_NATIVE_PTR = new AtomicInteger();
+  private static final ConcurrentMap<Integer, ByteBuffer> NATIVE_PTR_TO_PARCEL = new ConcurrentHashMap<Integer, ByteBuffer>();
+
   @RealObject private Parcel realObject;
-  private static final Map<Integer, ByteBuffer> NATIVE_PTR_TO_PARCEL = new LinkedHashMap<Integer, ByteBuffer>();
 
   // Unfortunately method must be shadowed since the implementation in API 16
   // calls Arrays.checkOffsetAndCount which is not preset in most JDK implementations.
   @Implementation
   public void writeByteArray(byte[] b, int offset, int len) {
-    if (b == null) {
-      realObject.writeInt(-1);
-      return;
+    try {
+      nativeWriteByteArray(NATIVE_PTR_FIELD.getInt(realObject), b, offset, len);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
     }
-    nativeWriteByteArray((Integer) getPrivateField(realObject, "mNativePtr"), b, offset, len);
   }
 
   @Implementation @HiddenApi
@@ -132,13 +133,13 @@ public class ShadowParcel {
 
   @Implementation @HiddenApi
   public static int nativeCreate() {
-    // Pick a native ptr that hasn't been used.
-    int nativePtrUsed = 0;
-    while (NATIVE_PTR_TO_PARCEL.containsKey(nativePtrUsed)) {
-      nativePtrUsed++;
+    ByteBuffer byteBuffer = new ByteBuffer();
+    while (true) {
+      int nativePtr = LAST_NATIVE_PTR.incrementAndGet();
+      if (nativePtr != 0 && NATIVE_PTR_TO_PARCEL.putIfAbsent(nativePtr, byteBuffer) == null) {
+        return nativePtr;
+      }
     }
-    NATIVE_PTR_TO_PARCEL.put(nativePtrUsed, new ByteBuffer());
-    return nativePtrUsed;
   }
 
   @Implementation @HiddenApi
@@ -158,7 +159,7 @@ public class ShadowParcel {
 
   @Implementation @HiddenApi
   public static void nativeUnmarshall(int nativePtr, byte[] data, int offset, int length) {
-    NATIVE_PTR_TO_PARCEL.put(nativePtr, ByteBuffer.fromByteArray(data, offset, length));
+    NATIVE_PTR_TO_PARCEL.get(nativePtr).setData(data, offset, length);
   }
 
   @Implementation @HiddenApi
@@ -168,139 +169,195 @@ public class ShadowParcel {
     thisByteBuffer.appendFrom(otherByteBuffer, offset, length);
   }
 
-  private Object getPrivateField(Object o, String fieldName) {
+
+  private static Field getNativePtrField() {
     try {
-      Field f = o.getClass().getDeclaredField(fieldName);
-      f.setAccessible(true);
-      return f.get(o);
-    } catch (Exception e) {
+      Field field = Parcel.class.getDeclaredField("mNativePtr");
+      field.setAccessible(true);
+      return field;
+    } catch (NoSuchFieldException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * A parcel's data: a byte array holding values as Android's Parcel.cpp writes them, and alongside it the type of
+   * value written at each four-byte word, so that reading a value as something it isn't fails as loudly as it used to.
+   * Data which came from {@link #setData} or was written off the word boundaries has no types, and reads as anything.
+   */
   private static class ByteBuffer {
-
-    // List of elements where a pair is a piece of data and the sizeof that data
-    private List<Pair<Integer, ?>> buffer = new ArrayList<Pair<Integer, ?>>();
-    private int index;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_CAPACITY = 64;
+
+    private static final byte UNTYPED = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTE_ARRAY = 6;
+    private static final String[] TYPE_NAMES = {"untyped data", "an int", "a long", "a float", "a double", "a String", "a byte array"};
+
+    private byte[] data = EMPTY;
+    private byte[] types = EMPTY;
+    private int dataSize;
+    private int dataPosition;
 
     /**
      * Removes all elements from the byte buffer
      */
     public void clear() {
-      index = 0;
-      buffer.clear();
+      data = EMPTY;
+      types = EMPTY;
+      dataSize = 0;
+      dataPosition = 0;
     }
 
     /**
      * Reads a byte array from the byte buffer based on the current data position
      */
     public byte[] readByteArray() {
-      int length = readInt();
-      if (length == -1) {
+      if (!canRead(BYTE_ARRAY, 4)) return null;
+      int length = getInt(dataPosition);
+      if (length < 0) {
+        dataPosition += 4;
         return null;
       }
+      if (dataPosition + 4 + length > dataSize) return null;
+
       byte[] array = new byte[length];
-      for (int i = 0; i < length; i++) {
-        array[i] = readByte();
-      }
+      System.arraycopy(data, dataPosition + 4, array, 0, length);
+      dataPosition += 4 + pad(length);
       return array;
     }
 
-    /**
-     * Writes a byte to the byte buffer at the current data position
-     */
-    public void writeByte(byte b) {
-      writeValue(Byte.SIZE / 8, b);
-    }
-
     /**
      * Writes a byte array starting at offset for length bytes to the byte buffer at the current
-     * data position
+     * data position: its length, or -1 for null, then its bytes
      */
     public void writeByteArray(byte[] b, int offset, int length) {
-      writeInt(b.length);
-      for (int i = offset; i < offset + length && i < b.length; i++) {
-        writeByte(b[i]);
+      if (b == null) {
+        putInt(startWrite(BYTE_ARRAY, 4), -1);
+        return;
       }
-    }
 
-    /**
-     * Reads a byte from the byte buffer based on the current data position
-     */
-    public byte readByte() {
-      return readValue((byte) 0);
+      int position = startWrite(BYTE_ARRAY, 4 + pad(length));
+      putInt(position, length);
+      System.arraycopy(b, offset, data, position + 4, length);
+      Arrays.fill(data, position + 4 + length, position + 4 + pad(length), (byte) 0);
     }
 
     /**
      * Writes an int to the byte buffer at the current data position
      */
     public void writeInt(int i) {
-      writeValue(Integer.SIZE / 8, i);
+      putInt(startWrite(INT, 4), i);
     }
 
     /**
      * Reads a int from the byte buffer based on the current data position
      */
     public int readInt() {
-      return readValue(0);
+      if (!canRead(INT, 4)) return 0;
+      int value = getInt(dataPosition);
+      dataPosition += 4;
+      return value;
     }
 
     /**
      * Writes a long to the byte buffer at the current data position
      */
     public void writeLong(long l) {
-      writeValue(Long.SIZE / 8, l);
+      putLong(startWrite(LONG, 8), l);
     }
 
     /**
      * Reads a long from the byte buffer based on the current data position
      */
     public long readLong() {
-      return readValue(0l);
+      if (!canRead(LONG, 8)) return 0;
+      long value = getLong(dataPosition);
+      dataPosition += 8;
+      return value;
     }
 
     /**
      * Writes a float to the byte buffer at the current data position
      */
     public void writeFloat(float f) {
-      writeValue(Float.SIZE / 8, f);
+      putInt(startWrite(FLOAT, 4), Float.floatToRawIntBits(f));
     }
 
     /**
      * Reads a float from the byte buffer based on the current data position
      */
     public float readFloat() {
-      return readValue(0f);
+      if (!canRead(FLOAT, 4)) return 0;
+      float value = Float.intBitsToFloat(getInt(dataPosition));
+      dataPosition += 4;
+      return value;
     }
 
     /**
      * Writes a double to the byte buffer at the current data position
      */
     public void writeDouble(double d) {
-      writeValue(Double.SIZE / 8, d);
+      putLong(startWrite(DOUBLE, 8), Double.doubleToRawLongBits(d));
     }
 
     /**
      * Reads a double from the byte buffer based on the current data position
      */
     public double readDouble() {
-      return readValue(0d);
+      if (!canRead(DOUBLE, 8)) return 0;
+      double value = Double.longBitsToDouble(getLong(dataPosition));
+      dataPosition += 8;
+      return value;
     }
 
     /**
-     * Writes a String to the byte buffer at the current data position
+     * Writes a String to the byte buffer at the current data position: its length in chars, or -1 for null, then its
+     * chars as UTF-16 with a terminating zero
      */
     public void writeString(String s) {
-      int length = s == null ? Integer.SIZE / 8 : s.length();
-      writeValue(length, s);
+      if (s == null) {
+        putInt(startWrite(STRING, 4), -1);
+        return;
+      }
+
+      int length = s.length();
+      int charBytes = pad((length + 1) * 2);
+      int position = startWrite(STRING, 4 + charBytes);
+      putInt(position, length);
+      int charPosition = position + 4;
+      for (int i = 0; i < length; i++) {
+        char c = s.charAt(i);
+        data[charPosition++] = (byte) c;
+        data[charPosition++] = (byte) (c >>> 8);
+      }
+      Arrays.fill(data, charPosition, position + 4 + charBytes, (byte) 0);
     }
 
     /**
      * Reads a String from the byte buffer based on the current data position
      */
     public String readString() {
-      return readValue(null);
+      if (!canRead(STRING, 4)) return null;
+      int length = getInt(dataPosition);
+      if (length < 0) {
+        dataPosition += 4;
+        return null;
+      }
+      int charBytes = pad((length + 1) * 2);
+      if (dataPosition + 4 + charBytes > dataSize) return null;
+
+      char[] chars = new char[length];
+      int charPosition = dataPosition + 4;
+      for (int i = 0; i < length; i++) {
+        chars[i] = (char) ((data[charPosition++] & 0xff) | (data[charPosition++] & 0xff) << 8);
+      }
+      dataPosition += 4 + charBytes;
+      return new String(chars);
     }
 
     /**
@@ -312,89 +369,58 @@ public class ShadowParcel {
      * @param length number of bytes to copy
      */
     public void appendFrom(ByteBuffer other, int offset, int length) {
-      int otherIndex = other.toIndex(offset);
-      int otherEndIndex = other.toIndex(offset + length);
-      for (int i = otherIndex; i < otherEndIndex && i < other.buffer.size(); i++) {
-        int elementSize = other.buffer.get(i).first;
-        Object elementValue = other.buffer.get(i).second;
-        writeValue(elementSize, elementValue);
+      length = Math.max(0, Math.min(length, other.dataSize - offset));
+      int position = startWrite(UNTYPED, length);
+      System.arraycopy(other.data, offset, data, position, length);
+      if ((offset & 3) == 0 && (position & 3) == 0) {
+        System.arraycopy(other.types, offset >> 2, types, position >> 2, words(length));
       }
     }
 
     /**
-     * Creates a Byte buffer from a raw byte array.
-     *
-     * @param array byte array to read from
-     * @param offset starting position in bytes to start reading array at
-     * @param length number of bytes to read from array
+     * Replaces the contents of this byte buffer with {@code length} bytes of {@code array} starting at {@code offset},
+     * and moves to their start.
      */
-    public static ByteBuffer fromByteArray(byte[] array, int offset, int length) {
-      ByteBuffer byteBuffer = new ByteBuffer();
-
-      try {
-        ByteArrayInputStream bis = new ByteArrayInputStream(array, offset,
-            length);
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        int numElements = ois.readInt();
-        for (int i = 0; i < numElements; i++) {
-          int sizeOf = ois.readInt();
-          Object value = ois.readObject();
-          byteBuffer.buffer.add(Pair.create(sizeOf, value));
-        }
-        return byteBuffer;
-      } catch (Exception e) {
-        throw new RuntimeException(e);
-      }
+    public void setData(byte[] array, int offset, int length) {
+      data = Arrays.copyOfRange(array, offset, offset + length);
+      types = new byte[words(length)];
+      dataSize = length;
+      dataPosition = 0;
     }
 
     /**
-     * Converts a ByteBuffer to a raw byte array. This method should be
-     * symmetrical with fromByteArray.
+     * Copies the bytes written to this byte buffer to a new array.
      */
     public byte[] toByteArray() {
-      try {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        int length = buffer.size();
-        oos.writeInt(length);
-        for (Pair<Integer, ?> element : buffer) {
-          oos.writeInt(element.first);
-          oos.writeObject(element.second);
-        }
-        return bos.toByteArray();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      return Arrays.copyOf(data, dataSize());
     }
 
     /**
      * Number of unused bytes in this byte buffer.
      */
     public int dataAvailable() {
-      return dataSize() - dataPosition();
+      return Math.max(0, dataSize - dataPosition);
     }
 
     /**
      * Total buffer size in bytes of byte buffer included unused space.
      */
     public int dataCapacity() {
-      return dataSize();
+      return data.length;
     }
 
     /**
      * Current data position of byte buffer in bytes. Reads / writes are from this position.
      */
     public int dataPosition() {
-      return toDataPosition(index);
+      return dataPosition;
     }
 
     /**
      * Current amount of bytes currently written for ByteBuffer.
      */
     public int dataSize() {
-      int totalSize = totalSize();
-      int dataPosition = dataPosition();
-      return totalSize > dataPosition ? totalSize : dataPosition;
+      return Math.max(dataSize, dataPosition);
     }
 
     /**
@@ -404,56 +430,100 @@ public class ShadowParcel {
      *          Desired position in bytes
      */
     public void setDataPosition(int pos) {
-      index = toIndex(pos);
+      dataPosition = pos;
     }
 
     public void setDataSize(int size) {
-      // TODO
+      ensureCapacity(size);
+      if (size > dataSize) {
+        Arrays.fill(data, dataSize, size, (byte) 0);
+        Arrays.fill(types, words(dataSize), words(size), UNTYPED);
+      }
+      dataSize = size;
+      dataPosition = Math.min(dataPosition, size);
     }
 
     public void setDataCapacity(int size) {
-      // TODO
+      ensureCapacity(size);
     }
 
-    private int totalSize() {
-      int size = 0;
-      for (Pair<Integer, ?> element : buffer) {
-        size += element.first;
+    /**
+     * Makes room for {@code length} bytes at the current position, records that a value of {@code type} starts there,
+     * and moves past them.
+     *
+     * @return the position to write the value's bytes at
+     */
+    private int startWrite(byte type, int length) {
+      int position = dataPosition;
+      ensureCapacity(position + length);
+      if (length > 0) {
+        if ((position & 3) == 0) {
+          types[position >> 2] = type;
+          Arrays.fill(types, (position >> 2) + 1, words(position + length), UNTYPED);
+        } else {
+          Arrays.fill(types, position >> 2, words(position + length), UNTYPED);
+        }
       }
-      return size;
+      dataPosition = position + length;
+      dataSize = Math.max(dataSize, dataPosition);
+      return position;
     }
 
-    private <T extends Object> T readValue(T defaultValue) {
-      T value = (index < buffer.size()) ? (T) buffer.get(index++).second
-          : defaultValue;
-      return value;
+    /**
+     * @return whether there are at least {@code length} bytes to read; they're expected to hold a value of
+     *     {@code type}
+     * @throws ClassCastException if they're known to hold a value of some other type
+     */
+    private boolean canRead(byte type, int length) {
+      if (dataPosition < 0 || dataPosition + length > dataSize) return false;
+
+      if ((dataPosition & 3) == 0) {
+        byte writtenType = types[dataPosition >> 2];
+        if (writtenType != UNTYPED && writtenType != type) {
+          throw new ClassCastException("reading " + TYPE_NAMES[type] + " from parcel data at " + dataPosition
+              + ", but " + TYPE_NAMES[writtenType] + " was written there");
+        }
+      }
+      return true;
     }
 
-    private void writeValue(int i, Object o) {
-      Pair<Integer, ?> value = Pair.create(i, o);
-      if (index < buffer.size()) {
-        buffer.set(index, value);
-      } else {
-        buffer.add(value);
-      }
-      index++;
+    private void ensureCapacity(int capacity) {
+      if (capacity <= data.length) return;
+
+      int newCapacity = Math.max(Math.max(capacity, data.length * 2), MIN_CAPACITY);
+      data = Arrays.copyOf(data, newCapacity);
+      types = Arrays.copyOf(types, words(newCapacity));
     }
 
-    private int toDataPosition(int index) {
-      int pos = 0;
-      for (int i = 0; i < index; i++) {
-        pos += buffer.get(i).first;
-      }
-      return pos;
+    private void putInt(int position, int value) {
+      data[position] = (byte) value;
+      data[position + 1] = (byte) (value >>> 8);
+      data[position + 2] = (byte) (value >>> 16);
+      data[position + 3] = (byte) (value >>> 24);
     }
 
-    private int toIndex(int dataPosition) {
-      int calculatedPos = 0;
-      int i = 0;
-      for (; i < buffer.size() && calculatedPos < dataPosition; i++) {
-        calculatedPos += buffer.get(i).first;
-      }
-      return i;
+    private int getInt(int position) {
+      return (data[position] & 0xff)
+          | (data[position + 1] & 0xff) << 8
+          | (data[position + 2] & 0xff) << 16
+          | (data[position + 3] & 0xff) << 24;
+    }
+
+    private void putLong(int position, long value) {
+      putInt(position, (int) value);
+      putInt(position + 4, (int) (value >>> 32));
+    }
+
+    private long getLong(int position) {
+      return (getInt(position) & 0xffffffffL) | ((long) getInt(position + 4)) << 32;
+    }
+
+    private static int pad(int length) {
+      return (length + 3) & ~3;
+    }
+
+    private static int words(int length) {
+      return (length + 3) >> 2;
     }
   }
 }
@@ -34,7 +34,7 @@ public class ShadowPowerManager {
   /**
    * Non-Android accessor that discards the most recent {@code PowerManager.WakeLock}s
    */
-  @Resetter
+  @Resetter(always = true)
   public static void reset() {
     ShadowApplication shadowApplication = Robolectric.getShadowApplication();
     if (shadowApplication != null) {
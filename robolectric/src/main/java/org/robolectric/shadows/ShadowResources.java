@@ -51,7 +51,7 @@ public class ShadowResources {
   @RealObject Resources realResources;
   private ResourceLoader resourceLoader;
 
-  @Resetter
+  @Resetter(always = true)
   public static void reset() {
     for (Field field : Resources.class.getDeclaredFields()) {
       if (Modifier.isStatic(field.getModifiers()) && field.getType().equals(LongSparseArray.class)) {
@@ -432,17 +432,27 @@ public class ShadowResources {
   @Implementation
   public XmlResourceParser getXml(int id) throws Resources.NotFoundException {
     ResName resName = getResName(id);
-    Document document = getResourceLoader().getXml(resName, getQualifiers());
+    ResourceLoader resourceLoader = getResourceLoader();
+    XmlBlock xmlBlock = resourceLoader.getXmlBlock(resName, getQualifiers());
+    if (xmlBlock != null) {
+      return new XmlFileBuilder().getXml(xmlBlock, resName.getFullyQualifiedName(), resName.packageName, resourceLoader.getResourceIndex());
+    }
+    Document document = resourceLoader.getXml(resName, getQualifiers());
     if (document == null) {
       throw new Resources.NotFoundException();
     }
-    return new XmlFileBuilder().getXml(document, resName.getFullyQualifiedName(), resName.packageName, getResourceLoader().getResourceIndex());
+    return new XmlFileBuilder().getXml(document, resName.getFullyQualifiedName(), resName.packageName, resourceLoader.getResourceIndex());
   }
 
   @HiddenApi @Implementation
   public XmlResourceParser loadXmlResourceParser(String file, int id, int assetCookie, String type) throws Resources.NotFoundException {
-    String packageName = getResName(id).packageName;
-    return XmlFileBuilder.getXmlResourceParser(file, packageName, getResourceLoader().getResourceIndex());
+    ResName resName = getResName(id);
+    ResourceLoader resourceLoader = getResourceLoader();
+    XmlBlock xmlBlock = resourceLoader.getXmlBlock(resName, getQualifiers());
+    if (xmlBlock != null && xmlBlock.getFileName().equals(file)) {
+      return XmlFileBuilder.getXmlResourceParser(xmlBlock, resName.packageName, resourceLoader.getResourceIndex());
+    }
+    return XmlFileBuilder.getXmlResourceParser(file, resName.packageName, resourceLoader.getResourceIndex());
   }
 
   public ResourceLoader getResourceLoader() {
@@ -17,6 +17,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -44,8 +45,8 @@ public class ShadowSQLiteConnection {
     return CONNECTIONS.getStatement(connectionPtr, pointer);
   }
 
-  private static void rethrow(final String message, final SQLiteException e) {
-    throw new android.database.sqlite.SQLiteException(message + ", base error code: " + e.getBaseErrorCode(), e);
+  private static android.database.sqlite.SQLiteException sqliteException(final String message, final SQLiteException e) {
+    return new android.database.sqlite.SQLiteException(message + ", base error code: " + e.getBaseErrorCode(), e);
   }
 
   @Implementation
@@ -71,7 +72,7 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static int nativeGetParameterCount(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return 0; } // TODO
-    return CONNECTIONS.execute("get parameters count in prepared statement", new Callable<Integer>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Integer>("get parameters count in prepared statement") {
       @Override
       public Integer call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -83,7 +84,7 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static boolean nativeIsReadOnly(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return true; } // TODO
-    return CONNECTIONS.execute("call isReadOnly", new Callable<Boolean>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Boolean>("call isReadOnly") {
       @Override
       public Boolean call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -94,7 +95,7 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static long nativeExecuteForLong(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for long", new Callable<Long>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Long>("execute for long") {
       @Override
       public Long call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -109,7 +110,7 @@ public class ShadowSQLiteConnection {
   @Implementation
   public static void nativeExecute(final int connectionPtr, final int statementPtr) {
     if (statementPtr == IGNORED_REINDEX_STMT) { return; } // TODO
-    CONNECTIONS.execute("execute", new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>("execute") {
       @Override
       public Object call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -121,7 +122,7 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static String nativeExecuteForString(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for string", new Callable<String>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<String>("execute for string") {
       @Override
       public String call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -135,7 +136,7 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static int nativeGetColumnCount(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("get columns count", new Callable<Integer>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Integer>("get columns count") {
       @Override
       public Integer call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -146,7 +147,12 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static String nativeGetColumnName(final int connectionPtr, final int statementPtr, final int index) {
-    return CONNECTIONS.execute("get column name at index " + index, new Callable<String>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<String>() {
+      @Override
+      String description() {
+        return "get column name at index " + index;
+      }
+
       @Override
       public String call() throws SQLiteException {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -157,7 +163,12 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindNull(final int connectionPtr, final int statementPtr, final int index) {
-    CONNECTIONS.execute("bind null at index " + index, new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>() {
+      @Override
+      String description() {
+        return "bind null at index " + index;
+      }
+
       @Override
       public Object call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -169,7 +180,12 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindLong(final int connectionPtr, final int statementPtr, final int index, final long value) {
-    CONNECTIONS.execute("bind long at index " + index + " with value " + value, new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>() {
+      @Override
+      String description() {
+        return "bind long at index " + index + " with value " + value;
+      }
+
       @Override
       public Object call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -181,7 +197,12 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindDouble(final int connectionPtr, final int statementPtr, final int index, final double value) {
-    CONNECTIONS.execute("bind double at index " + index + " with value " + value, new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>() {
+      @Override
+      String description() {
+        return "bind double at index " + index + " with value " + value;
+      }
+
       @Override
       public Object call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -193,7 +214,12 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindString(final int connectionPtr, final int statementPtr, final int index, final String value) {
-    CONNECTIONS.execute("bind string at index " + index, new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>() {
+      @Override
+      String description() {
+        return "bind string at index " + index;
+      }
+
       @Override
       public Object call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -205,7 +231,12 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeBindBlob(final int connectionPtr, final int statementPtr, final int index, final byte[] value) {
-    CONNECTIONS.execute("bind blob at index " + index, new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>() {
+      @Override
+      String description() {
+        return "bind blob at index " + index;
+      }
+
       @Override
       public Object call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -224,7 +255,7 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static int nativeExecuteForChangedRowCount(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for changed row count", new Callable<Integer>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Integer>("execute for changed row count") {
       @Override
       public Integer call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -236,7 +267,7 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static long nativeExecuteForLastInsertedRowId(final int connectionPtr, final int statementPtr) {
-    return CONNECTIONS.execute("execute for last inserted row ID", new Callable<Long>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Long>("execute for last inserted row ID") {
       @Override
       public Long call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -250,7 +281,7 @@ public class ShadowSQLiteConnection {
   public static long nativeExecuteForCursorWindow(final int connectionPtr, final int statementPtr, final int windowPtr,
                                                   final int startPos, final int requiredPos, final boolean countAllRows) {
 
-    return CONNECTIONS.execute("execute for cursor window", new Callable<Integer>() {
+    return CONNECTIONS.execute(connectionPtr, new DbOperation<Integer>("execute for cursor window") {
       @Override
       public Integer call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -262,7 +293,7 @@ public class ShadowSQLiteConnection {
 
   @Implementation
   public static void nativeResetStatementAndClearBindings(final int connectionPtr, final int statementPtr) {
-    CONNECTIONS.execute("reset statement", new Callable<Object>() {
+    CONNECTIONS.execute(connectionPtr, new DbOperation<Object>("reset statement") {
       @Override
       public Object call() throws Exception {
         SQLiteStatement stmt = stmt(connectionPtr, statementPtr);
@@ -300,14 +331,65 @@ public class ShadowSQLiteConnection {
   }
 
 
+  /**
+   * A piece of work for a connection's thread. Its description is only built if it fails.
+   */
+  private static abstract class DbOperation<T> implements Callable<T> {
+    private final String description;
+
+    DbOperation(String description) {
+      this.description = description;
+    }
+
+    DbOperation() {
+      this(null);
+    }
+
+    String description() {
+      return description;
+    }
+  }
+
+  /**
+   * A single thread which connections are confined to, as sqlite4java requires.
+   */
+  private static class DbThread implements ThreadFactory {
+    private final String name;
+    private final ExecutorService executor;
+    private volatile Thread thread;
+
+    DbThread(String name) {
+      this.name = name;
+      this.executor = Executors.newSingleThreadExecutor(this);
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    }
+
+    boolean isCurrentThread() {
+      return Thread.currentThread() == thread;
+    }
+  }
+
+  /**
+   * By default every connection shares a single thread. With the {@code robolectric.sqliteThreadPerConnection} system
+   * property set to {@code true}, each connection opened gets a thread of its own instead, so separate databases, and
+   * separate connections to the same one, can be used in parallel. A connection's thread stops when it's closed; one
+   * which is never closed leaves its idle thread behind.
+   */
   private static class Connections {
 
     private final AtomicInteger pointerCounter = new AtomicInteger(0);
 
     private final Map<Integer, SQLiteStatement> statementsMap = new ConcurrentHashMap<Integer, SQLiteStatement>();
     private final Map<Integer, SQLiteConnection> connectionsMap = new ConcurrentHashMap<Integer, SQLiteConnection>();
+    private final Map<Integer, DbThread> threadsMap = new ConcurrentHashMap<Integer, DbThread>();
 
-    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+    private volatile DbThread sharedThread;
 
     public SQLiteConnection getConnection(final int pointer) {
       SQLiteConnection connection = connectionsMap.get(pointer);
@@ -333,21 +415,31 @@ public class ShadowSQLiteConnection {
     }
 
     public int open(final String path) {
+      int ptr = pointerCounter.incrementAndGet();
+      DbThread thread = Boolean.getBoolean("robolectric.sqliteThreadPerConnection")
+          ? new DbThread("robolectric-sqlite-" + ptr)
+          : sharedThread();
 
-      SQLiteConnection dbConnection = execute("open SQLite connection", new Callable<SQLiteConnection>() {
-        @Override
-        public SQLiteConnection call() throws Exception {
-          SQLiteConnection connection = IN_MEMORY_PATH.equals(path)
-              ? new SQLiteConnection()
-              : new SQLiteConnection(new File(path));
+      SQLiteConnection dbConnection;
+      try {
+        dbConnection = execute(thread, new DbOperation<SQLiteConnection>("open SQLite connection") {
+          @Override
+          public SQLiteConnection call() throws Exception {
+            SQLiteConnection connection = IN_MEMORY_PATH.equals(path)
+                ? new SQLiteConnection()
+                : new SQLiteConnection(new File(path));
 
-          connection.open();
+            connection.open();
 
-          return connection;
-        }
-      });
+            return connection;
+          }
+        });
+      } catch (RuntimeException e) {
+        if (thread != sharedThread) thread.executor.shutdown();
+        throw e;
+      }
 
-      int ptr = pointerCounter.incrementAndGet();
+      threadsMap.put(ptr, thread);
       connectionsMap.put(ptr, dbConnection);
       return ptr;
     }
@@ -358,7 +450,7 @@ public class ShadowSQLiteConnection {
         return IGNORED_REINDEX_STMT;
       }
 
-      SQLiteStatement stmt = execute("prepare statement", new Callable<SQLiteStatement>() {
+      SQLiteStatement stmt = execute(connectionPtr, new DbOperation<SQLiteStatement>("prepare statement") {
         @Override
         public SQLiteStatement call() throws Exception {
           SQLiteConnection connection = getConnection(connectionPtr);
@@ -372,7 +464,7 @@ public class ShadowSQLiteConnection {
     }
 
     public void close(final int ptr) {
-      execute("close connection", new Callable<Object>() {
+      execute(ptr, new DbOperation<Object>("close connection") {
         @Override
         public Object call() throws Exception {
           SQLiteConnection connection = getConnection(ptr);
@@ -380,13 +472,20 @@ public class ShadowSQLiteConnection {
           return null;
         }
       });
+
+      DbThread thread = threadsMap.get(ptr);
+      if (thread != sharedThread) {
+        // nothing can use a closed connection, so its thread is done as soon as its queue is
+        threadsMap.remove(ptr);
+        thread.executor.shutdown();
+      }
     }
 
     public void finalizeStmt(final int connectionPtr, final int statementPtr) {
       if (statementPtr == IGNORED_REINDEX_STMT) {
         return;
       }
-      execute("finalize statement", new Callable<Object>() {
+      execute(connectionPtr, new DbOperation<Object>("finalize statement") {
         @Override
         public Object call() throws Exception {
           SQLiteStatement stmt = getStatement(connectionPtr, statementPtr);
@@ -400,7 +499,7 @@ public class ShadowSQLiteConnection {
     public void cancel(int connectionPtr) {
       getConnection(connectionPtr); // check connection
 
-      execute("cancel", new Callable<Object>() {
+      execute(connectionPtr, new DbOperation<Object>("cancel") {
         @Override
         public Object call() throws Exception {
           SQLiteStatement statement = statementsMap.get(pointerCounter.get());
@@ -412,52 +511,49 @@ public class ShadowSQLiteConnection {
       });
     }
 
-    public <T> T execute(final String comment, final Callable<T> work) {
-      Future<DbOperationResult<T>> future = dbExecutor.submit(new Callable<DbOperationResult<T>>() {
-        @Override
-        public DbOperationResult<T> call() throws Exception {
-          T result = null;
-          Exception error = null;
-          try {
-            result = work.call();
-          } catch (Exception e) {
-            error = e;
-          }
-          return new DbOperationResult<T>(result, error);
-        }
-      });
+    public <T> T execute(final int connectionPtr, final DbOperation<T> operation) {
+      DbThread thread = threadsMap.get(connectionPtr);
+      if (thread == null) {
+        // fail the same way as an operation on a connection which is already closed
+        thread = sharedThread();
+      }
+      return execute(thread, operation);
+    }
 
-      DbOperationResult<T> execResult;
-      try {
-        execResult = future.get();
-
-        if (execResult.error != null) {
-          if (execResult.error instanceof SQLiteException) {
-            rethrow("Cannot " + comment, (SQLiteException) execResult.error);
-          } else if (execResult.error instanceof android.database.sqlite.SQLiteException) {
-            throw (android.database.sqlite.SQLiteException) execResult.error;
-          } else {
-            throw new RuntimeException(execResult.error);
-          }
+    private <T> T execute(final DbThread thread, final DbOperation<T> operation) {
+      if (thread.isCurrentThread()) {
+        // already on the connection's thread, as when one operation calls another; queueing would deadlock
+        try {
+          return operation.call();
+        } catch (Exception e) {
+          throw wrap(operation, e);
         }
+      }
 
-        return execResult.value;
-
+      Future<T> future = thread.executor.submit(operation);
+      try {
+        return future.get();
       } catch (ExecutionException e) {
-        throw new RuntimeException(e);
+        throw wrap(operation, e.getCause());
       } catch (InterruptedException e) {
         throw new RuntimeException(e);
       }
-
     }
 
-    private static class DbOperationResult<T> {
-      final T value;
-      final Exception error;
+    private synchronized DbThread sharedThread() {
+      if (sharedThread == null) {
+        sharedThread = new DbThread("robolectric-sqlite");
+      }
+      return sharedThread;
+    }
 
-      DbOperationResult(T value, Exception error) {
-        this.value = value;
-        this.error = error;
+    private static RuntimeException wrap(DbOperation<?> operation, Throwable error) {
+      if (error instanceof SQLiteException) {
+        return sqliteException("Cannot " + operation.description(), (SQLiteException) error);
+      } else if (error instanceof android.database.sqlite.SQLiteException) {
+        return (android.database.sqlite.SQLiteException) error;
+      } else {
+        return new RuntimeException(error);
       }
     }
   }
@@ -1,17 +1,30 @@
 package org.robolectric.util;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.ListIterator;
-
+import java.util.Map;
+
+/**
+ * Runs posted runnables at their scheduled times as the scheduler's clock is advanced.
+ *
+ * Posted runnables are kept in a binary heap ordered by scheduled time, and then by the order they were posted in, so
+ * posting, running and removing them take logarithmic time however many are waiting.
+ */
 public class Scheduler {
-  private List<PostedRunnable> postedRunnables = new ArrayList<PostedRunnable>();
+  private PostedRunnable[] queue = new PostedRunnable[16];
+  private int queueSize = 0;
+  private final Map<Runnable, List<PostedRunnable>> postedRunnablesByRunnable = new IdentityHashMap<Runnable, List<PostedRunnable>>();
+  private long nextSequence = 0;
+  private long nextFrontOfQueueSequence = -1;
   private long currentTime = 0;
   private boolean paused = false;
   private Thread associatedThread = Thread.currentThread();
   private boolean isConstantlyIdling = false;
   private boolean isExecutingRunnable = false;
+  private long runTaskCount = 0;
+  private int maxQueueDepth = 0;
 
   public synchronized long getCurrentTime() {
     return currentTime;
@@ -32,7 +45,7 @@ public class Scheduler {
 
   public synchronized void postDelayed(Runnable runnable, long delayMillis) {
     if ((!isConstantlyIdling && (paused || delayMillis > 0)) || Thread.currentThread() != associatedThread) {
-      queueRunnableAndSort(runnable, currentTime + delayMillis);
+      queueRunnable(runnable, currentTime + delayMillis, nextSequence++);
     } else {
       runOrQueueRunnable(runnable, currentTime + delayMillis);
     }
@@ -40,9 +53,10 @@ public class Scheduler {
 
   private void runOrQueueRunnable(Runnable runnable, long scheduledTime) {
     if (isExecutingRunnable) {
-      queueRunnableAndSort(runnable, scheduledTime);
+      queueRunnable(runnable, scheduledTime, nextSequence++);
       return;
     }
+    runTaskCount++;
     isExecutingRunnable = true;
     try {
       runnable.run();
@@ -51,30 +65,24 @@ public class Scheduler {
     }
   }
 
-  private void queueRunnableAndSort(Runnable runnable, long scheduledTime) {
-    postedRunnables.add(new PostedRunnable(runnable, scheduledTime));
-    Collections.sort(postedRunnables);
-  }
-
   public synchronized void post(Runnable runnable) {
     postDelayed(runnable, 0);
   }
 
   public synchronized void postAtFrontOfQueue(Runnable runnable) {
     if (paused || Thread.currentThread() != associatedThread) {
-      postedRunnables.add(0, new PostedRunnable(runnable, currentTime));
+      queueRunnable(runnable, currentTime, nextFrontOfQueueSequence--);
     } else {
       runOrQueueRunnable(runnable, currentTime);
     }
   }
 
   public synchronized void remove(Runnable runnable) {
-    ListIterator<PostedRunnable> iterator = postedRunnables.listIterator();
-    while (iterator.hasNext()) {
-      PostedRunnable next = iterator.next();
-      if (next.runnable == runnable) {
-        iterator.remove();
-      }
+    List<PostedRunnable> postedRunnables = postedRunnablesByRunnable.remove(runnable);
+    if (postedRunnables == null) return;
+
+    for (PostedRunnable postedRunnable : postedRunnables) {
+      removeAt(postedRunnable.index);
     }
   }
 
@@ -83,7 +91,11 @@ public class Scheduler {
       return false;
     }
 
-    return advanceTo(postedRunnables.get(postedRunnables.size() - 1).scheduledTime);
+    long lastScheduledTime = queue[0].scheduledTime;
+    for (int i = 1; i < queueSize; i++) {
+      lastScheduledTime = Math.max(lastScheduledTime, queue[i].scheduledTime);
+    }
+    return advanceTo(lastScheduledTime);
   }
 
   public synchronized boolean advanceToNextPostedRunnable() {
@@ -91,7 +103,7 @@ public class Scheduler {
       return false;
     }
 
-    return advanceTo(postedRunnables.get(0).scheduledTime);
+    return advanceTo(queue[0].scheduledTime);
   }
 
   public synchronized boolean advanceBy(long intervalMs) {
@@ -120,7 +132,7 @@ public class Scheduler {
       return false;
     }
 
-    PostedRunnable postedRunnable = postedRunnables.remove(0);
+    PostedRunnable postedRunnable = poll();
     currentTime = postedRunnable.scheduledTime;
     postedRunnable.run();
     return true;
@@ -132,7 +144,7 @@ public class Scheduler {
     }
 
     while (howMany > 0) {
-      PostedRunnable postedRunnable = postedRunnables.remove(0);
+      PostedRunnable postedRunnable = poll();
       currentTime = postedRunnable.scheduledTime;
       postedRunnable.run();
       howMany--;
@@ -141,7 +153,7 @@ public class Scheduler {
   }
 
   public synchronized int enqueuedTaskCount() {
-    return postedRunnables.size();
+    return queueSize;
   }
 
   public synchronized boolean areAnyRunnable() {
@@ -149,34 +161,58 @@ public class Scheduler {
   }
 
   public synchronized void reset() {
-    postedRunnables.clear();
+    Arrays.fill(queue, 0, queueSize, null);
+    queueSize = 0;
+    postedRunnablesByRunnable.clear();
     paused = false;
     isConstantlyIdling = false;
+    runTaskCount = 0;
+    maxQueueDepth = 0;
   }
 
   public synchronized int size() {
-    return postedRunnables.size();
+    return queueSize;
+  }
+
+  /**
+   * @return how many runnables this scheduler has run since it was created or last reset, whether they were queued
+   *     first or run as soon as they were posted
+   */
+  public synchronized long getRunTaskCount() {
+    return runTaskCount;
+  }
+
+  /**
+   * @return the most runnables that have been waiting to run at once since this scheduler was created or last reset;
+   *     {@link #size()} is how many are waiting now
+   */
+  public synchronized int getMaxQueueDepth() {
+    return maxQueueDepth;
   }
 
   public void idleConstantly(boolean shouldIdleConstantly) {
     isConstantlyIdling = shouldIdleConstantly;
   }
 
-  class PostedRunnable implements Comparable<PostedRunnable> {
+  class PostedRunnable {
     Runnable runnable;
     long scheduledTime;
+    long sequence;
+    int index;
 
-    PostedRunnable(Runnable runnable, long scheduledTime) {
+    PostedRunnable(Runnable runnable, long scheduledTime, long sequence) {
       this.runnable = runnable;
       this.scheduledTime = scheduledTime;
+      this.sequence = sequence;
     }
 
-    @Override
-    public int compareTo(PostedRunnable postedRunnable) {
-      return (int) (scheduledTime - postedRunnable.scheduledTime);
+    boolean runsBefore(PostedRunnable other) {
+      if (scheduledTime != other.scheduledTime) return scheduledTime < other.scheduledTime;
+      return sequence < other.sequence;
     }
 
     public void run() {
+      runTaskCount++;
       isExecutingRunnable = true;
       try {
         runnable.run();
@@ -187,6 +223,80 @@ public class Scheduler {
   }
 
   private boolean nextTaskIsScheduledBefore(long endingTime) {
-    return enqueuedTaskCount() > 0 && postedRunnables.get(0).scheduledTime <= endingTime;
+    return enqueuedTaskCount() > 0 && queue[0].scheduledTime <= endingTime;
+  }
+
+  private void queueRunnable(Runnable runnable, long scheduledTime, long sequence) {
+    PostedRunnable postedRunnable = new PostedRunnable(runnable, scheduledTime, sequence);
+    List<PostedRunnable> postedRunnables = postedRunnablesByRunnable.get(runnable);
+    if (postedRunnables == null) {
+      postedRunnables = new ArrayList<PostedRunnable>(1);
+      postedRunnablesByRunnable.put(runnable, postedRunnables);
+    }
+    postedRunnables.add(postedRunnable);
+
+    if (queueSize == queue.length) {
+      queue = Arrays.copyOf(queue, queueSize * 2);
+    }
+    queueSize++;
+    maxQueueDepth = Math.max(maxQueueDepth, queueSize);
+    siftUp(queueSize - 1, postedRunnable);
+  }
+
+  private PostedRunnable poll() {
+    PostedRunnable postedRunnable = queue[0];
+    List<PostedRunnable> postedRunnables = postedRunnablesByRunnable.get(postedRunnable.runnable);
+    if (postedRunnables.size() == 1) {
+      postedRunnablesByRunnable.remove(postedRunnable.runnable);
+    } else {
+      postedRunnables.remove(postedRunnable);
+    }
+    removeAt(0);
+    return postedRunnable;
+  }
+
+  private void removeAt(int index) {
+    queueSize--;
+    PostedRunnable last = queue[queueSize];
+    queue[queueSize] = null;
+    if (index == queueSize) return;
+
+    siftDown(index, last);
+    if (queue[index] == last) {
+      siftUp(index, last);
+    }
+  }
+
+  private void siftUp(int index, PostedRunnable postedRunnable) {
+    while (index > 0) {
+      int parentIndex = (index - 1) >>> 1;
+      PostedRunnable parent = queue[parentIndex];
+      if (!postedRunnable.runsBefore(parent)) break;
+      place(index, parent);
+      index = parentIndex;
+    }
+    place(index, postedRunnable);
+  }
+
+  private void siftDown(int index, PostedRunnable postedRunnable) {
+    int half = queueSize >>> 1;
+    while (index < half) {
+      int childIndex = 2 * index + 1;
+      PostedRunnable child = queue[childIndex];
+      int rightIndex = childIndex + 1;
+      if (rightIndex < queueSize && queue[rightIndex].runsBefore(child)) {
+        childIndex = rightIndex;
+        child = queue[childIndex];
+      }
+      if (!child.runsBefore(postedRunnable)) break;
+      place(index, child);
+      index = childIndex;
+    }
+    place(index, postedRunnable);
+  }
+
+  private void place(int index, PostedRunnable postedRunnable) {
+    queue[index] = postedRunnable;
+    postedRunnable.index = index;
   }
 }
@@ -0,0 +1,121 @@
+package org.robolectric;
+
+import android.app.Application;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.bytecode.Setup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ParallelTestSchedulerTest {
+  private String oldThreads;
+
+  public static class StateHolder {
+    public static CyclicBarrier barrier;
+    public static Set<String> threadNames;
+    public static Set<ClassLoader> classLoaders;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    oldThreads = System.setProperty("robolectric.threads", "2");
+    StateHolder.barrier = new CyclicBarrier(2);
+    StateHolder.threadNames = Collections.synchronizedSet(new HashSet<String>());
+    StateHolder.classLoaders = Collections.synchronizedSet(new HashSet<ClassLoader>());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (oldThreads == null) {
+      System.clearProperty("robolectric.threads");
+    } else {
+      System.setProperty("robolectric.threads", oldThreads);
+    }
+  }
+
+  @Test
+  public void shouldRunTestsConcurrentlyInSeparateEnvironments() throws Exception {
+    assertNoFailures(run(new Runner(ConcurrentTest.class)));
+
+    assertThat(StateHolder.threadNames).hasSize(2);
+    for (String threadName : StateHolder.threadNames) {
+      assertThat(threadName).startsWith("robolectric-worker-");
+    }
+    assertThat(StateHolder.classLoaders).hasSize(2);
+  }
+
+  @Test
+  public void threadCountShouldComeFromSystemProperty() throws Exception {
+    assertThat(ParallelTestScheduler.getThreadCount()).isEqualTo(2);
+
+    System.setProperty("robolectric.threads", "auto");
+    assertThat(ParallelTestScheduler.getThreadCount()).isEqualTo(Runtime.getRuntime().availableProcessors());
+
+    System.clearProperty("robolectric.threads");
+    assertThat(ParallelTestScheduler.getThreadCount()).isEqualTo(1);
+    assertThat(ParallelTestScheduler.currentWorkerIndex()).isEqualTo(-1);
+  }
+
+  public static class ConcurrentTest {
+    @Test public void first() throws Exception {
+      checkIsolation();
+    }
+
+    @Test public void second() throws Exception {
+      checkIsolation();
+    }
+
+    private void checkIsolation() throws Exception {
+      StateHolder.threadNames.add(Thread.currentThread().getName());
+      StateHolder.classLoaders.add(getClass().getClassLoader());
+
+      Application application = Robolectric.application;
+      assertThat(application).isNotNull();
+      StateHolder.barrier.await(10, TimeUnit.SECONDS); // both tests are running now
+      assertThat(Robolectric.application).isSameAs(application);
+    }
+  }
+
+  private Result run(Runner runner) throws InitializationError {
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    runner.run(notifier);
+    return result;
+  }
+
+  private void assertNoFailures(Result result) {
+    if (!result.wasSuccessful()) {
+      for (Failure failure : result.getFailures()) {
+        fail(failure.getMessage(), failure.getException());
+      }
+    }
+  }
+
+  public static class Runner extends RobolectricTestRunner {
+    public Runner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+    }
+
+    @Override public Setup createSetup() {
+      return new Setup() {
+        @Override public boolean shouldAcquire(String name) {
+          if (name.equals(StateHolder.class.getName())) return false;
+          return super.shouldAcquire(name);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package org.robolectric;
+
+import org.junit.Test;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.annotation.Config;
+import org.robolectric.bytecode.Setup;
+import org.robolectric.bytecode.ShadowMap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SdkEnvironmentPoolTest {
+  private static final SdkConfig SDK_18 = new SdkConfig(18);
+
+  @Test
+  public void shouldReuseEnvironmentsForEqualKeys() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(4);
+    SdkEnvironment first = pool.getSdkEnvironment(key("setup", -1), new CountingFactory());
+    SdkEnvironment second = pool.getSdkEnvironment(key("setup", -1), new CountingFactory());
+
+    assertThat(second).isSameAs(first);
+    assertThat(pool.getCreationCount()).isEqualTo(1);
+    assertThat(pool.getHitCount()).isEqualTo(1);
+    assertThat(pool.getHitRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void shouldNotShareEnvironmentsBetweenSetupsOrWorkers() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(4);
+    SdkEnvironment environment = pool.getSdkEnvironment(key("setup", -1), new CountingFactory());
+
+    assertThat(pool.getSdkEnvironment(key("other setup", -1), new CountingFactory())).isNotSameAs(environment);
+    assertThat(pool.getSdkEnvironment(key("setup", 0), new CountingFactory())).isNotSameAs(environment);
+    assertThat(pool.getCreationCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEnvironmentsBeyondCapacity() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(2);
+    SdkEnvironment a = pool.getSdkEnvironment(key("a", -1), new CountingFactory());
+    pool.getSdkEnvironment(key("b", -1), new CountingFactory());
+    assertThat(pool.getSdkEnvironment(key("a", -1), new CountingFactory())).isSameAs(a);
+
+    pool.getSdkEnvironment(key("c", -1), new CountingFactory());
+
+    assertThat(pool.size()).isEqualTo(2);
+    assertThat(pool.getEvictionCount()).isEqualTo(1);
+    assertThat(pool.getSdkEnvironment(key("a", -1), new CountingFactory())).isSameAs(a);
+    pool.getSdkEnvironment(key("b", -1), new CountingFactory());
+    assertThat(pool.getCreationCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void shouldNotHoldUpOtherKeysWhileBuildingAnEnvironment() throws Exception {
+    final SdkEnvironmentPool pool = new SdkEnvironmentPool(4);
+    final CountDownLatch building = new CountDownLatch(1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    Thread slowRequest = new Thread() {
+      @Override public void run() {
+        pool.getSdkEnvironment(key("slow", -1), new CountingFactory() {
+          @Override public SdkEnvironment create() {
+            building.countDown();
+            try {
+              unblock.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            return super.create();
+          }
+        });
+      }
+    };
+    slowRequest.start();
+
+    try {
+      assertThat(building.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(pool.getSdkEnvironment(key("fast", -1), new CountingFactory())).isNotNull();
+      assertThat(unblock.getCount()).isEqualTo(1);
+    } finally {
+      unblock.countDown();
+      slowRequest.join();
+    }
+    assertThat(pool.getCreationCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotRememberEnvironmentsWhichFailedToBuild() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(4);
+    try {
+      pool.getSdkEnvironment(key("setup", -1), new CountingFactory() {
+        @Override public SdkEnvironment create() {
+          throw new IllegalStateException("boom");
+        }
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("boom");
+    }
+
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(pool.getSdkEnvironment(key("setup", -1), new CountingFactory())).isNotNull();
+  }
+
+  @Test
+  public void runnerSubclassesWhichDontChangeHowEnvironmentsAreBuiltShouldShareThem() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(4);
+    new Runner(SimpleTest.class, pool).run(new RunNotifier());
+    new RunnerWithOtherManifest(SimpleTest.class, pool).run(new RunNotifier());
+    assertThat(pool.getCreationCount()).isEqualTo(1);
+
+    new RunnerWithOtherSetup(SimpleTest.class, pool).run(new RunNotifier());
+    assertThat(pool.getCreationCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void runnerSubclassesShouldNotShareEnvironmentsUnlessTheySayTheyCan() throws Exception {
+    SdkEnvironmentPool pool = new SdkEnvironmentPool(4);
+    new Runner(SimpleTest.class, pool).run(new RunNotifier());
+    new RunnerWithOtherClassHandler(SimpleTest.class, pool).run(new RunNotifier());
+    assertThat(pool.getCreationCount()).isEqualTo(2);
+  }
+
+  private static SdkEnvironmentPool.Key key(String setupFingerprint, int workerIndex) {
+    return new SdkEnvironmentPool.Key(SDK_18, setupFingerprint, RobolectricTestRunner.class, workerIndex);
+  }
+
+  private static class CountingFactory implements SdkEnvironment.Factory {
+    @Override public SdkEnvironment create() {
+      return new SdkEnvironment(SDK_18, getClass().getClassLoader());
+    }
+  }
+
+  @Config(manifest = Config.NONE)
+  public static class SimpleTest {
+    @Test public void shouldDoNothingMuch() throws Exception {
+    }
+  }
+
+  public static class Runner extends RobolectricTestRunner {
+    private final SdkEnvironmentPool pool;
+
+    public Runner(Class<?> testClass, SdkEnvironmentPool pool) throws InitializationError {
+      super(testClass);
+      this.pool = pool;
+    }
+
+    @Override protected SdkEnvironmentPool getSdkEnvironmentPool() {
+      return pool;
+    }
+  }
+
+  public static class RunnerWithOtherManifest extends Runner {
+    public RunnerWithOtherManifest(Class<?> testClass, SdkEnvironmentPool pool) throws InitializationError {
+      super(testClass, pool);
+    }
+
+    @Override protected AndroidManifest getAppManifest(Config config) {
+      return null;
+    }
+
+    @Override protected Object getSdkEnvironmentKey() {
+      return Runner.class;
+    }
+  }
+
+  public static class RunnerWithOtherClassHandler extends Runner {
+    public RunnerWithOtherClassHandler(Class<?> testClass, SdkEnvironmentPool pool) throws InitializationError {
+      super(testClass, pool);
+    }
+
+    @Override protected ShadowMap createShadowMap() {
+      return new ShadowMap.Builder().build();
+    }
+  }
+
+  public static class RunnerWithOtherSetup extends Runner {
+    public RunnerWithOtherSetup(Class<?> testClass, SdkEnvironmentPool pool) throws InitializationError {
+      super(testClass, pool);
+    }
+
+    @Override public Setup createSetup() {
+      return new Setup() {
+        @Override public boolean shouldAcquire(String name) {
+          return super.shouldAcquire(name);
+        }
+      };
+    }
+  }
+}
@@ -70,9 +70,30 @@ public class TestRunnerSequenceTest {
     assertTrue(robolectricTestRunner.allStateIsCleared());
   }
 
+  @Test public void shouldReleaseAllStateOnWorkersAfterClassWhenRunInParallel() throws Exception {
+    StateHolder.transcript = new Transcript();
+    Runner robolectricTestRunner;
+    String oldThreads = System.setProperty("robolectric.threads", "2");
+    try {
+      robolectricTestRunner = new Runner(SimpleTest.class);
+    } finally {
+      if (oldThreads == null) {
+        System.clearProperty("robolectric.threads");
+      } else {
+        System.setProperty("robolectric.threads", oldThreads);
+      }
+    }
+    assertNoFailures(run(robolectricTestRunner));
+    StateHolder.transcript.assertEventsInclude("TEST! on robolectric-worker");
+    assertTrue(robolectricTestRunner.allStateIsCleared());
+  }
+
   public static class SimpleTest {
     @Test public void shouldDoNothingMuch() throws Exception {
       StateHolder.transcript.add("TEST!");
+      if (Thread.currentThread().getName().startsWith("robolectric-worker")) {
+        StateHolder.transcript.add("TEST! on robolectric-worker");
+      }
     }
   }
 
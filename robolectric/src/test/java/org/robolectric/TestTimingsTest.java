@@ -0,0 +1,79 @@
+package org.robolectric;
+
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestTimingsTest {
+  @Test
+  public void shouldTellListenersHowLongEachPhaseOfEachTestTook() throws Exception {
+    final List<TestTimings> timings = Collections.synchronizedList(new ArrayList<TestTimings>());
+    TestTimingListener listener = new TestTimingListener() {
+      @Override public void testTimed(TestTimings testTimings) {
+        timings.add(testTimings);
+      }
+    };
+
+    RobolectricTestRunner.addTestTimingListener(listener);
+    try {
+      assertThat(run(new TestRunners.WithDefaults(SlowTest.class)).getFailureCount()).isEqualTo(1);
+    } finally {
+      RobolectricTestRunner.removeTestTimingListener(listener);
+    }
+
+    assertThat(timings).hasSize(2);
+    for (TestTimings testTimings : timings) {
+      assertThat(testTimings.getClassName()).isEqualTo(SlowTest.class.getName());
+      assertThat(testTimings.getNanos(TestTimings.TEST)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+      assertThat(testTimings.getNanos(TestTimings.CREATE_APPLICATION)).isGreaterThan(0);
+      assertThat(testTimings.getNanos(TestTimings.SET_UP_APPLICATION)).isGreaterThanOrEqualTo(
+          testTimings.getNanos(TestTimings.APP_RESOURCES)
+              + testTimings.getNanos(TestTimings.CREATE_APPLICATION)
+              + testTimings.getNanos(TestTimings.APPLICATION_ON_CREATE));
+      assertThat(testTimings.getNanos(TestTimings.TEAR_DOWN)).isGreaterThan(0);
+
+      long phaseNanos = 0;
+      for (String phase : TestTimings.PHASES) {
+        if (!phase.equals(TestTimings.APP_RESOURCES) && !phase.equals(TestTimings.CREATE_APPLICATION)
+            && !phase.equals(TestTimings.APPLICATION_ON_CREATE)) {
+          phaseNanos += testTimings.getNanos(phase);
+        }
+      }
+      assertThat(testTimings.getTotalNanos()).isGreaterThanOrEqualTo(phaseNanos);
+      assertThat(testTimings.getInstrumentedClassCount()).isLessThanOrEqualTo(testTimings.getLoadedClassCount());
+    }
+
+    List<String> methodNames = new ArrayList<String>();
+    for (TestTimings testTimings : timings) {
+      methodNames.add(testTimings.getMethodName());
+    }
+    assertThat(methodNames).containsOnly("sleep", "sleepAndFail");
+  }
+
+  public static class SlowTest {
+    @Test public void sleep() throws Exception {
+      Thread.sleep(50);
+    }
+
+    @Test public void sleepAndFail() throws Exception {
+      Thread.sleep(50);
+      throw new RuntimeException("failing on purpose");
+    }
+  }
+
+  private Result run(RobolectricTestRunner runner) throws InitializationError {
+    RunNotifier notifier = new RunNotifier();
+    Result result = new Result();
+    notifier.addListener(result.createListener());
+    runner.run(notifier);
+    return result;
+  }
+}
@@ -0,0 +1,77 @@
+package org.robolectric.bytecode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.SdkConfig;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.bytecode.testing.AnExampleClass;
+import org.robolectric.util.Util;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsmInstrumentingClassLoaderInvokeDynamicTest extends InstrumentingClassLoaderTestBase {
+  private String oldInvokeDynamic;
+
+  @Before
+  public void setUp() throws Exception {
+    oldInvokeDynamic = System.setProperty("robolectric.invokedynamic", "true");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (oldInvokeDynamic == null) {
+      System.clearProperty("robolectric.invokedynamic");
+    } else {
+      System.setProperty("robolectric.invokedynamic", oldInvokeDynamic);
+    }
+  }
+
+  protected ClassLoader createClassLoader(Setup setup) throws ClassNotFoundException {
+    return new AsmInstrumentingClassLoader(setup);
+  }
+
+  @Test
+  public void shouldRelinkCallSitesWhenAnotherClassHandlerIsInstalled() throws Exception {
+    ClassLoader classLoader = createClassLoader(new Setup());
+    ShadowWrangler unshadowed = new ShadowWrangler(new ShadowMap.Builder().build(), new SdkConfig(18));
+    ShadowWrangler shadowed = new ShadowWrangler(new ShadowMap.Builder()
+        .addShadowClass(ShadowAnExampleClass.class).build(), new SdkConfig(18));
+
+    RobolectricTestRunner.injectClassHandler(classLoader, unshadowed);
+    Class<?> exampleClass = classLoader.loadClass(AnExampleClass.class.getName());
+    Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+    assertThat(normalMethod.invoke(exampleClass.newInstance(), "a", 1)).isEqualTo("normalMethod(a, 1)");
+
+    RobolectricTestRunner.injectClassHandler(classLoader, shadowed);
+    assertThat(normalMethod.invoke(exampleClass.newInstance(), "b", 2)).isEqualTo("shadowed(b, 2)");
+
+    RobolectricTestRunner.injectClassHandler(classLoader, unshadowed);
+    assertThat(normalMethod.invoke(exampleClass.newInstance(), "c", 3)).isEqualTo("normalMethod(c, 3)");
+  }
+
+  @Test
+  public void robolectricInternalsShouldNotReferToJavaLangInvoke() throws Exception {
+    // RobolectricInternals is loaded even when invokedynamic is off, including on JVMs without java.lang.invoke
+    InputStream classBytes = getClass().getClassLoader().getResourceAsStream(
+        RobolectricInternals.class.getName().replace('.', '/') + ".class");
+    try {
+      assertThat(new String(Util.readBytes(classBytes), "ISO-8859-1")).doesNotContain("java/lang/invoke");
+    } finally {
+      classBytes.close();
+    }
+  }
+
+  @Implements(AnExampleClass.class)
+  public static class ShadowAnExampleClass {
+    @Implementation
+    public String normalMethod(String stringArg, int intArg) {
+      return "shadowed(" + stringArg + ", " + intArg + ")";
+    }
+  }
+}
@@ -1,8 +1,27 @@
 package org.robolectric.bytecode;
 
 import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.SdkConfig;
+import org.robolectric.annotation.Implements;
+import org.robolectric.bytecode.testing.AnExampleClass;
+import org.robolectric.util.ShadowExtractor;
+import org.robolectric.util.ShadowedObject;
 import org.robolectric.util.Transcript;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
 public class AsmInstrumentingClassLoaderTest extends InstrumentingClassLoaderTestBase {
   protected ClassLoader createClassLoader(Setup setup) throws ClassNotFoundException {
     return new AsmInstrumentingClassLoader(setup);
@@ -32,4 +51,104 @@ public class AsmInstrumentingClassLoaderTest extends InstrumentingClassLoaderTes
 
     transcript.assertEventsSoFar("find foo.AClass");
   }
+
+  @Test public void instrumentedClassesShouldExposeTheirShadowsThroughShadowedObject() throws Exception {
+    AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup());
+    RobolectricTestRunner.injectClassHandler(classLoader, new ShadowWrangler(new ShadowMap.Builder()
+        .addShadowClass(ShadowAnExampleClass.class).build(), new SdkConfig(18)));
+
+    Object instance = classLoader.loadClass(AnExampleClass.class.getName()).newInstance();
+
+    assertThat(instance).isInstanceOf(ShadowedObject.class);
+    assertThat(ShadowExtractor.extract(instance).getClass().getName()).isEqualTo(ShadowAnExampleClass.class.getName());
+  }
+
+  @Test public void shouldDefineEachClassOnceWhenManyThreadsLoadItAtOnce() throws Exception {
+    final AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup());
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Class>> futures = new ArrayList<Future<Class>>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(new Callable<Class>() {
+          @Override public Class call() throws Exception {
+            start.await();
+            return classLoader.loadClass(AnExampleClass.class.getName());
+          }
+        }));
+      }
+      start.countDown();
+
+      Class loadedClass = futures.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<Class> future : futures) {
+        assertThat(future.get(10, TimeUnit.SECONDS)).isSameAs(loadedClass);
+      }
+      assertThat(classLoader.getDefinedClassNames()).containsOnlyOnce(AnExampleClass.class.getName());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test public void shouldLoadOtherClassesWhileOneIsStillLoading() throws Exception {
+    final SlowClassLoader classLoader = new SlowClassLoader();
+    assumeTrue(SlowClassLoader.parallelCapable);
+    Thread slowThread = new Thread() {
+      @Override public void run() {
+        try {
+          classLoader.loadClass("foo.SlowClass");
+        } catch (ClassNotFoundException e) {
+          // expected
+        }
+      }
+    };
+    slowThread.start();
+    try {
+      assertThat(classLoader.slowClassStarted.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(classLoader.loadClass(AnExampleClass.class.getName()).getClassLoader()).isSameAs(classLoader);
+    } finally {
+      classLoader.slowClassMayFinish.countDown();
+      slowThread.join();
+    }
+  }
+
+  private static class SlowClassLoader extends AsmInstrumentingClassLoader {
+    static boolean parallelCapable;
+
+    static {
+      try {
+        Method register = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable");
+        register.setAccessible(true);
+        parallelCapable = (Boolean) register.invoke(null);
+      } catch (NoSuchMethodException e) {
+        // Java 6 loads a class at a time
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    final CountDownLatch slowClassStarted = new CountDownLatch(1);
+    final CountDownLatch slowClassMayFinish = new CountDownLatch(1);
+
+    SlowClassLoader() {
+      super(new Setup());
+    }
+
+    @Override
+    protected Class<?> findClass(String className) throws ClassNotFoundException {
+      if (className.equals("foo.SlowClass")) {
+        slowClassStarted.countDown();
+        try {
+          slowClassMayFinish.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        throw new ClassNotFoundException(className);
+      }
+      return super.findClass(className);
+    }
+  }
+
+  @Implements(AnExampleClass.class)
+  public static class ShadowAnExampleClass {
+  }
 }
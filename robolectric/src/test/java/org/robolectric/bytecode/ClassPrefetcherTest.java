@@ -0,0 +1,117 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.bytecode.testing.AChild;
+import org.robolectric.bytecode.testing.AnExampleClass;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClassPrefetcherTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(temporaryFolder.newFolder("prefetch"), "classes.txt");
+  }
+
+  @Test
+  public void shouldRecordTheClassesDefinedWhenThereIsNoListYet() throws Exception {
+    ClassPrefetcher recorder = new ClassPrefetcher(file, 1);
+    AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup());
+    recorder.prefetch(classLoader);
+    classLoader.loadClass(AnExampleClass.class.getName());
+    classLoader.loadClass(AChild.class.getName());
+
+    recorder.writeClassNames();
+
+    ClassPrefetcher prefetcher = new ClassPrefetcher(file, 1);
+    assertThat(prefetcher.getClassNames()).startsWith(AnExampleClass.class.getName()).contains(AChild.class.getName());
+  }
+
+  @Test
+  public void shouldLoadTheListedClassesInTheBackground() throws Exception {
+    ClassPrefetcher recorder = new ClassPrefetcher(file, 1);
+    AsmInstrumentingClassLoader recordingClassLoader = new AsmInstrumentingClassLoader(new Setup());
+    recorder.prefetch(recordingClassLoader);
+    recordingClassLoader.loadClass(AnExampleClass.class.getName());
+    recorder.writeClassNames();
+
+    ClassPrefetcher prefetcher = new ClassPrefetcher(file, 1);
+    AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup());
+    prefetcher.prefetch(classLoader);
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (classLoader.getDefinedClassNames().isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(classLoader.getDefinedClassNames()).contains(AnExampleClass.class.getName());
+  }
+
+  @Test
+  public void shouldSkipListedClassesWhichNoLongerExist() throws Exception {
+    FileWriter writer = new FileWriter(file);
+    writer.write("foo.NoSuchClass\n" + AnExampleClass.class.getName() + "\n");
+    writer.close();
+
+    ClassPrefetcher prefetcher = new ClassPrefetcher(file, 1);
+    AsmInstrumentingClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup());
+    prefetcher.prefetch(classLoader);
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (classLoader.getDefinedClassNames().isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(classLoader.getDefinedClassNames()).containsExactly(AnExampleClass.class.getName());
+  }
+
+  @Test
+  public void shouldNotKeepClassLoadersAliveWhileTheirClassesWaitToBePrefetched() throws Exception {
+    FileWriter writer = new FileWriter(file);
+    writer.write(AnExampleClass.class.getName() + "\n");
+    writer.close();
+
+    ClassPrefetcher prefetcher = new ClassPrefetcher(file, 1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    AsmInstrumentingClassLoader blockingClassLoader = new AsmInstrumentingClassLoader(new Setup()) {
+      @Override public Class loadClass(String name) throws ClassNotFoundException {
+        blocked.countDown();
+        try {
+          unblock.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return super.loadClass(name);
+      }
+    };
+    prefetcher.prefetch(blockingClassLoader);
+    try {
+      assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+
+      AsmInstrumentingClassLoader evictedClassLoader = new AsmInstrumentingClassLoader(new Setup());
+      prefetcher.prefetch(evictedClassLoader);
+      WeakReference<AsmInstrumentingClassLoader> reference = new WeakReference<AsmInstrumentingClassLoader>(evictedClassLoader);
+      evictedClassLoader = null;
+
+      long deadline = System.currentTimeMillis() + 10000;
+      while (reference.get() != null && System.currentTimeMillis() < deadline) {
+        System.gc();
+        Thread.sleep(10);
+      }
+      assertThat(reference.get()).isNull();
+    } finally {
+      unblock.countDown();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.robolectric.test.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InstrumentedClassCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final byte[] ORIG_BYTES = new byte[] {1, 2, 3};
+  private static final byte[] INSTRUMENTED_BYTES = new byte[] {4, 5, 6, 7};
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = temporaryFolder.newFolder("class-cache");
+  }
+
+  @Test
+  public void shouldMissThenHitAfterPut() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(new File(cacheDir, "test.pack"));
+    assertThat(cache.get("android.Foo", ORIG_BYTES)).isNull();
+
+    cache.put("android.Foo", ORIG_BYTES, INSTRUMENTED_BYTES);
+
+    assertThat(cache.get("android.Foo", ORIG_BYTES)).isEqualTo(INSTRUMENTED_BYTES);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getStoreCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldMissWhenOriginalBytesChange() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(new File(cacheDir, "test.pack"));
+    cache.put("android.Foo", ORIG_BYTES, INSTRUMENTED_BYTES);
+
+    assertThat(cache.get("android.Foo", new byte[] {1, 2, 3, 4})).isNull();
+    assertThat(cache.get("android.Bar", ORIG_BYTES)).isNull();
+  }
+
+  @Test
+  public void shouldReturnOriginalBytesForUninstrumentedClasses() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(new File(cacheDir, "test.pack"));
+    cache.put("android.Foo", ORIG_BYTES, ORIG_BYTES);
+    cache.flush();
+
+    byte[] origBytesAgain = ORIG_BYTES.clone();
+    assertThat(new InstrumentedClassCache(cache.getPackFile()).get("android.Foo", origBytesAgain)).isSameAs(origBytesAgain);
+  }
+
+  @Test
+  public void shouldPersistAcrossInstancesAfterFlush() throws Exception {
+    File packFile = new File(cacheDir, "test.pack");
+    InstrumentedClassCache cache = new InstrumentedClassCache(packFile);
+    cache.put("android.Foo", ORIG_BYTES, INSTRUMENTED_BYTES);
+    cache.flush();
+
+    InstrumentedClassCache second = new InstrumentedClassCache(packFile);
+    second.put("android.Bar", ORIG_BYTES, ORIG_BYTES);
+    second.flush();
+
+    InstrumentedClassCache third = new InstrumentedClassCache(packFile);
+    assertThat(third.get("android.Foo", ORIG_BYTES)).isEqualTo(INSTRUMENTED_BYTES);
+    assertThat(third.get("android.Bar", ORIG_BYTES)).isEqualTo(ORIG_BYTES);
+  }
+
+  @Test
+  public void shouldIgnoreCorruptPackFiles() throws Exception {
+    File packFile = new File(cacheDir, "test.pack");
+    FileOutputStream out = new FileOutputStream(packFile);
+    out.write(new byte[] {0x52, 0x4f, 0x42, 0x43, 0, 0, 0, 1, 0, 0, 0, 9, 1});
+    out.close();
+
+    InstrumentedClassCache cache = new InstrumentedClassCache(packFile);
+    assertThat(cache.get("android.Foo", ORIG_BYTES)).isNull();
+
+    cache.put("android.Foo", ORIG_BYTES, INSTRUMENTED_BYTES);
+    cache.flush();
+    assertThat(new InstrumentedClassCache(packFile).get("android.Foo", ORIG_BYTES)).isEqualTo(INSTRUMENTED_BYTES);
+  }
+
+  @Test
+  public void shouldUseDifferentPackFilesWhenSetupChanges() throws Exception {
+    Setup otherSetup = new Setup() {
+      @Override public Set<MethodRef> methodsToIntercept() {
+        return Collections.singleton(new MethodRef("java.lang.System", "nanoTime"));
+      }
+    };
+
+    assertThat(InstrumentedClassCache.fingerprint(new Setup()))
+        .isEqualTo(InstrumentedClassCache.fingerprint(new Setup()))
+        .isNotEqualTo(InstrumentedClassCache.fingerprint(otherSetup));
+    assertThat(InstrumentedClassCache.open(cacheDir, new Setup()))
+        .isSameAs(InstrumentedClassCache.open(cacheDir, new Setup()));
+  }
+
+  @Test
+  public void shouldKeyOnTheInstrumentersNestedAndAnonymousClasses() throws Exception {
+    assertThat(InstrumentedClassCache.instrumenterClassNames()).contains(
+        AsmInstrumentingClassLoader.class.getName(),
+        AsmInstrumentingClassLoader.class.getName() + "$ClassInstrumentor",
+        AsmInstrumentingClassLoader.class.getName() + "$1");
+  }
+
+  @Test
+  public void shouldUseDifferentPackFilesWhenSetupBytecodeChanges() throws Exception {
+    // the same setup class, as it would look before and after a change to its shouldInstrument() override
+    Setup before = (Setup) new RedefiningClassLoader(InstrumentingSetup.class).loadClass(REDEFINED_SETUP).newInstance();
+    Setup after = (Setup) new RedefiningClassLoader(NonInstrumentingSetup.class).loadClass(REDEFINED_SETUP).newInstance();
+
+    assertThat(before.getClass().getName()).isEqualTo(after.getClass().getName());
+    assertThat(InstrumentedClassCache.fingerprint(before))
+        .isNotEqualTo(InstrumentedClassCache.fingerprint(after));
+  }
+
+  private static final String REDEFINED_SETUP = "org.robolectric.bytecode.RedefinedSetup";
+
+  public static class InstrumentingSetup extends Setup {
+    @Override public boolean shouldInstrument(ClassInfo classInfo) {
+      return true;
+    }
+  }
+
+  public static class NonInstrumentingSetup extends Setup {
+    @Override public boolean shouldInstrument(ClassInfo classInfo) {
+      return false;
+    }
+  }
+
+  private static class RedefiningClassLoader extends ClassLoader {
+    private final byte[] bytes;
+
+    RedefiningClassLoader(Class<?> original) throws Exception {
+      super(InstrumentedClassCacheTest.class.getClassLoader());
+      ClassReader classReader = new ClassReader(original.getName());
+      ClassWriter classWriter = new ClassWriter(0);
+      classReader.accept(new RemappingClassAdapter(classWriter, new SimpleRemapper(
+          original.getName().replace('.', '/'), REDEFINED_SETUP.replace('.', '/'))), 0);
+      bytes = classWriter.toByteArray();
+    }
+
+    @Override protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (name.equals(REDEFINED_SETUP)) {
+        Class<?> loadedClass = findLoadedClass(name);
+        return loadedClass != null ? loadedClass : defineClass(name, bytes, 0, bytes.length);
+      }
+      return super.loadClass(name, resolve);
+    }
+
+    @Override public InputStream getResourceAsStream(String name) {
+      if (name.equals(REDEFINED_SETUP.replace('.', '/') + ".class")) {
+        return new ByteArrayInputStream(bytes);
+      }
+      return super.getResourceAsStream(name);
+    }
+  }
+}
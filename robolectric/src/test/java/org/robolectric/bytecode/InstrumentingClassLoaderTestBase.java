@@ -4,6 +4,7 @@ import android.os.Build;
 import org.junit.Test;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.bytecode.testing.*;
+import org.robolectric.shadows.ShadowSystemClock;
 import org.robolectric.util.Transcript;
 import org.robolectric.util.Util;
 
@@ -73,6 +74,29 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     }
   }
 
+  @Test
+  public void uninstrumentedClassesWithResettablePrivateStaticState_shouldTrackWhenTheirCodeRuns() throws Exception {
+    ClassLoader classLoader = createClassLoader(new MySetup(true, false));
+    Class<?> theClass = classLoader.loadClass(AClassWithPrivateStaticState.class.getName());
+    Field dirtyField = theClass.getField(InstrumentingClassLoader.STATIC_STATE_DIRTY_FIELD_NAME);
+    assertFalse(dirtyField.getBoolean(null));
+
+    theClass.getMethod("setState", String.class).invoke(null, "changed");
+    assertTrue(dirtyField.getBoolean(null));
+  }
+
+  @Test
+  public void uninstrumentedClassesWithResettablePublicStaticState_shouldNotTrackWhenTheirCodeRuns() throws Exception {
+    ClassLoader classLoader = createClassLoader(new MySetup(true, false));
+    Class<?> theClass = classLoader.loadClass(AClassWithPublicStaticState.class.getName());
+    try {
+      theClass.getField(InstrumentingClassLoader.STATIC_STATE_DIRTY_FIELD_NAME);
+      fail("other classes can change its state without running its code!");
+    } catch (NoSuchFieldException e) {
+      // expected
+    }
+  }
+
   @Test
   public void shouldPerformClassLoadAndInstrumentLoadForInstrumentedClasses() throws Exception {
     ClassLoader classLoader = createClassLoader(new MySetup(true, true));
@@ -432,6 +456,39 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
         "intercept: org/robolectric/bytecode/testing/AClassToForget/longReturningMethod(Ljava/lang/String;IJ)J with params (str str, 123 123, 456 456)");
   }
 
+  @Test
+  public void shouldCallInterceptionHandlersDirectly() throws Exception {
+    MethodInterceptingSetup setup = new MethodInterceptingSetup(new Setup.MethodRef(AClassToForget.class, "*"));
+    setup.handlers.put(new Setup.MethodRef(AClassToForget.class, "longReturningMethod"),
+        new Setup.MethodRef(AnInterceptionHandler.class, "longReturningMethod"));
+    setClassLoader(createClassLoader(setup));
+    Class<?> theClass = loadClass(AClassThatRefersToAForgettableClassInMethodCallsReturningPrimitive.class);
+    Object instance = theClass.newInstance();
+    assertEquals(3L + 123 + 456, theClass.getMethod("longMethod").invoke(directlyOn(instance, (Class<Object>) theClass)));
+    transcript.assertEventsSoFar(
+        "methodInvoked: AClassThatRefersToAForgettableClassInMethodCallsReturningPrimitive.__constructor__()");
+  }
+
+  @Test
+  public void shouldPassTheInstanceToInterceptionHandlersForInstanceMethods() throws Exception {
+    MethodInterceptingSetup setup = new MethodInterceptingSetup(new Setup.MethodRef(AClassToForget.class, "forgettableMethod"));
+    setup.handlers.put(new Setup.MethodRef(AClassToForget.class, "forgettableMethod"),
+        new Setup.MethodRef(AnInterceptionHandler.class, "forgettableMethod"));
+    setClassLoader(createClassLoader(setup));
+    Class<?> theClass = loadClass(AClassThatRefersToAForgettableClass.class);
+    Object instance = theClass.newInstance();
+    Object output = theClass.getMethod("interactWithForgettableClass").invoke(directlyOn(instance, (Class<Object>) theClass));
+    assertEquals("handled get this!, get this!", output);
+  }
+
+  @Test
+  public void shouldCallShadowSystemClockForSystemNanoTimeByDefault() throws Exception {
+    Class<?> theClass = loadClass(AClassThatCallsSystemNanoTime.class);
+    classLoader.loadClass(ShadowSystemClock.class.getName()).getMethod("setNanoTime", long.class).invoke(null, 1234L);
+    Object instance = theClass.newInstance();
+    assertEquals(1234L, theClass.getMethod("getNanoTime").invoke(directlyOn(instance, (Class<Object>) theClass)));
+  }
+
   @Test
   public void shouldRemapClassesWhileInterceptingMethods() throws Exception {
     setClassLoader(createClassLoader(new MethodInterceptingClassRemappingSetup(new Setup.MethodRef(AClassThatCallsAMethodReturningAForgettableClass.class, "getAForgettableClass"))));
@@ -507,7 +564,7 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     }
 
     @Override
-    public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
+    public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass, int methodId) {
       final InvocationProfile invocationProfile = new InvocationProfile(signature, isStatic, getClass().getClassLoader());
       return new Plan() {
         @Override public Object run(Object instance, Object roboData, Object[] params) throws Exception {
@@ -575,6 +632,7 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
 
   private static class MethodInterceptingSetup extends Setup {
     private final HashSet<MethodRef> methodRefs = new HashSet<MethodRef>();
+    private final Map<MethodRef, MethodRef> handlers = new HashMap<MethodRef, MethodRef>();
 
     private MethodInterceptingSetup(MethodRef... methodRefsToIntercept) {
       Collections.addAll(methodRefs, methodRefsToIntercept);
@@ -584,6 +642,11 @@ abstract public class InstrumentingClassLoaderTestBase { // don't end in "Test"
     public Set<MethodRef> methodsToIntercept() {
       return methodRefs;
     }
+
+    @Override
+    public Map<MethodRef, MethodRef> interceptionHandlers() {
+      return handlers;
+    }
   }
 
   private static class ClassRemappingSetup extends Setup {
@@ -0,0 +1,98 @@
+package org.robolectric.bytecode;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.robolectric.bytecode.testing.AnExampleClass;
+import org.robolectric.bytecode.testing.AnUninstrumentedClass;
+import org.robolectric.test.TemporaryFolder;
+import org.robolectric.util.Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PreInstrumenterTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File inputJar;
+  private File outputJar;
+
+  @Before
+  public void setUp() throws Exception {
+    File dir = temporaryFolder.newFolder("jars");
+    inputJar = new File(dir, "android-all.jar");
+    outputJar = new File(dir, "android-all-instrumented.jar");
+
+    JarOutputStream out = new JarOutputStream(new FileOutputStream(inputJar));
+    for (Class<?> clazz : new Class<?>[] {AnExampleClass.class, AnUninstrumentedClass.class}) {
+      String name = clazz.getName().replace('.', '/') + ".class";
+      out.putNextEntry(new JarEntry(name));
+      out.write(Util.readBytes(getClass().getClassLoader().getResourceAsStream(name)));
+      out.closeEntry();
+    }
+    out.putNextEntry(new JarEntry("res/values/strings.xml"));
+    out.write("<resources/>".getBytes());
+    out.closeEntry();
+    out.close();
+  }
+
+  @Test
+  public void shouldWriteOnlyClassesAndRecordSetupFingerprint() throws Exception {
+    int count = new PreInstrumenter(new Setup()).instrument(inputJar, outputJar);
+
+    assertThat(count).isEqualTo(2);
+    JarFile jarFile = new JarFile(outputJar);
+    assertThat(jarFile.getEntry("org/robolectric/bytecode/testing/AnExampleClass.class")).isNotNull();
+    assertThat(jarFile.getEntry("res/values/strings.xml")).isNull();
+    jarFile.close();
+    assertThat(PreInstrumenter.getFingerprint(outputJar.toURI().toURL()))
+        .isEqualTo(InstrumentedClassCache.fingerprint(new Setup()));
+    assertThat(PreInstrumenter.getFingerprint(inputJar.toURI().toURL())).isNull();
+  }
+
+  @Test
+  public void classLoaderShouldDefinePreInstrumentedClassesWithoutInstrumentingThem() throws Exception {
+    new PreInstrumenter(new Setup()).instrument(inputJar, outputJar);
+
+    ClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup(), outputJar.toURI().toURL()) {
+      @Override
+      byte[] instrument(String className, byte[] origClassBytes) throws ClassNotFoundException {
+        throw new AssertionError("shouldn't instrument " + className);
+      }
+    };
+
+    Class<?> exampleClass = classLoader.loadClass(AnExampleClass.class.getName());
+    assertThat(exampleClass.getClassLoader()).isSameAs(classLoader);
+    assertThat(exampleClass.getField(InstrumentingClassLoader.CLASS_HANDLER_DATA_FIELD_NAME)).isNotNull();
+  }
+
+  @Test
+  public void classLoaderShouldIgnoreJarsInstrumentedWithADifferentSetup() throws Exception {
+    Setup otherSetup = new Setup() {
+      @Override public Set<MethodRef> methodsToIntercept() {
+        return Collections.emptySet();
+      }
+    };
+    new PreInstrumenter(otherSetup).instrument(inputJar, outputJar);
+
+    final boolean[] instrumented = new boolean[1];
+    ClassLoader classLoader = new AsmInstrumentingClassLoader(new Setup(), new URL[] {outputJar.toURI().toURL()}) {
+      @Override
+      byte[] instrument(String className, byte[] origClassBytes) throws ClassNotFoundException {
+        instrumented[0] = true;
+        return super.instrument(className, origClassBytes);
+      }
+    };
+
+    classLoader.loadClass(AnExampleClass.class.getName());
+    assertThat(instrumented[0]).isTrue();
+  }
+}
@@ -1,8 +1,11 @@
 package org.robolectric.bytecode;
 
+import android.view.View;
 import android.widget.CursorAdapter;
 import org.junit.Test;
+import org.robolectric.Shadows;
 import org.robolectric.shadows.ShadowCursorAdapter;
+import org.robolectric.shadows.ShadowView;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -17,6 +20,29 @@ public class ShadowMapTest {
     assertThat(map.get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
   }
 
+  @Test public void shouldLookUpShadowClassesInShadowIndex() throws Exception {
+    ShadowMap map = new ShadowMap.Builder()
+        .addShadowIndex(new String[] {"android.view.View", "com.example.ShadowSomeView", "6"})
+        .build();
+    ShadowConfig shadowConfig = map.get(View.class);
+    assertThat(shadowConfig.shadowClassName).isEqualTo("com.example.ShadowSomeView");
+    assertThat(shadowConfig.callThroughByDefault).isFalse();
+    assertThat(shadowConfig.inheritImplementationMethods).isTrue();
+    assertThat(shadowConfig.looseSignatures).isTrue();
+  }
+
+  @Test public void shouldLookUpShadowClassesMissingFromTheShadowIndexByNamingConvention() throws Exception {
+    ShadowMap map = new ShadowMap.Builder().addShadowIndex(new String[0]).build();
+    assertThat(map.get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
+    assertThat(map.newBuilder().build().get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
+  }
+
+  @Test public void generatedShadowIndexShouldIncludeDefaultShadows() throws Exception {
+    ShadowMap map = new ShadowMap.Builder().addShadowIndex(Shadows.ShadowIndex.ENTRIES).build();
+    assertThat(map.get(View.class).shadowClassName).isEqualTo(ShadowView.class.getName());
+    assertThat(map.get(CursorAdapter.class).shadowClassName).isEqualTo(ShadowCursorAdapter.class.getName());
+  }
+
   @Test public void equalsHashCode() throws Exception {
     ShadowMap a = new ShadowMap.Builder().addShadowClass("a", "b", true, false, false).build();
     ShadowMap b = new ShadowMap.Builder().addShadowClass("a", "b", true, false, false).build();
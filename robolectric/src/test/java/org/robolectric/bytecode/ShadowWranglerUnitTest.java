@@ -63,4 +63,58 @@ public class ShadowWranglerUnitTest {
 
     assertThat(result).isNull();
   }
+
+  @Test
+  public void methodInvoked_shouldCachePlansWithoutEvictingThem() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      String signature = "org/robolectric/bytecode/ShadowWranglerUnitTest/method" + i + "()V";
+      assertThat(shadowWrangler.methodInvoked(signature, false, getClass(), -1)).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    }
+    for (int i = 0; i < 1000; i++) {
+      String signature = "org/robolectric/bytecode/ShadowWranglerUnitTest/method" + i + "()V";
+      assertThat(shadowWrangler.methodInvoked(signature, false, getClass(), -1)).isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    }
+
+    assertThat(shadowWrangler.getPlanCacheMissCount()).isEqualTo(1000);
+    assertThat(shadowWrangler.getPlanCacheHitCount()).isEqualTo(1000);
+    assertThat(shadowWrangler.getPlanRecomputeCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void methodInvoked_shouldCachePlansByMethodId() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      assertThat(shadowWrangler.methodInvoked("org/robolectric/bytecode/ShadowWranglerUnitTest$ClassWithMethodIds/first()V", false, ClassWithMethodIds.class, 0))
+          .isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+      assertThat(shadowWrangler.methodInvoked("org/robolectric/bytecode/ShadowWranglerUnitTest$ClassWithMethodIds/second()V", false, ClassWithMethodIds.class, 1))
+          .isSameAs(ShadowWrangler.CALL_REAL_CODE_PLAN);
+    }
+
+    assertThat(shadowWrangler.getPlanCacheMissCount()).isEqualTo(2);
+    assertThat(shadowWrangler.getPlanCacheHitCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void methodInvoked_shouldFallBackToSignaturesWhenMethodIdIsOutOfRange() throws Exception {
+    String signature = "org/robolectric/bytecode/ShadowWranglerUnitTest$ClassWithMethodIds/third()V";
+    shadowWrangler.methodInvoked(signature, false, ClassWithMethodIds.class, 2);
+    shadowWrangler.methodInvoked(signature, false, ClassWithMethodIds.class, -1);
+
+    assertThat(shadowWrangler.getPlanCacheMissCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCacheHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void methodInvoked_shouldFallBackToSignaturesForClassesWithoutMethodIds() throws Exception {
+    String signature = "org/robolectric/bytecode/ShadowWranglerUnitTest/method()V";
+    shadowWrangler.methodInvoked(signature, false, getClass(), 0);
+    shadowWrangler.methodInvoked(signature, false, getClass(), -1);
+
+    assertThat(shadowWrangler.getPlanCacheMissCount()).isEqualTo(1);
+    assertThat(shadowWrangler.getPlanCacheHitCount()).isEqualTo(1);
+  }
+
+  @SuppressWarnings("UnusedDeclaration")
+  public static class ClassWithMethodIds {
+    public static final int $$robo$methodCount = 2;
+  }
 }
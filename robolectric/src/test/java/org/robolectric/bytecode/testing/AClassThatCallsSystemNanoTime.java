@@ -0,0 +1,11 @@
+package org.robolectric.bytecode.testing;
+
+import org.robolectric.internal.Instrument;
+
+@SuppressWarnings("UnusedDeclaration")
+@Instrument
+public class AClassThatCallsSystemNanoTime {
+  public long getNanoTime() {
+    return System.nanoTime();
+  }
+}
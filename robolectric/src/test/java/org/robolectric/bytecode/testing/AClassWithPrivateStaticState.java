@@ -0,0 +1,16 @@
+package org.robolectric.bytecode.testing;
+
+import org.robolectric.annotation.Resetter;
+
+public class AClassWithPrivateStaticState {
+  private static String state;
+
+  public static void setState(String newState) {
+    state = newState;
+  }
+
+  @Resetter
+  public static void reset() {
+    state = null;
+  }
+}
@@ -0,0 +1,12 @@
+package org.robolectric.bytecode.testing;
+
+import org.robolectric.annotation.Resetter;
+
+public class AClassWithPublicStaticState {
+  public static String state;
+
+  @Resetter
+  public static void reset() {
+    state = null;
+  }
+}
@@ -0,0 +1,11 @@
+package org.robolectric.bytecode.testing;
+
+public class AnInterceptionHandler {
+  public static long longReturningMethod(String str, int i, long l) {
+    return str.length() + i + l;
+  }
+
+  public static String forgettableMethod(AClassToForget aClassToForget) {
+    return "handled " + aClassToForget.memorableMethod();
+  }
+}
@@ -0,0 +1,31 @@
+package org.robolectric.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.readString;
+
+public class ResetterReportTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteTheCostliestResettersFirst() throws Exception {
+    File file = new File(temporaryFolder.getRoot(), "resetters.txt");
+    ResetterReport report = new ResetterReport(file);
+    report.reset("com.example.ShadowCheap", 1000000);
+    report.reset("com.example.ShadowCostly", 2000000);
+    report.reset("com.example.ShadowCostly", 500000);
+    report.skipped("com.example.ShadowCheap");
+
+    report.write();
+
+    assertThat(readString(new FileInputStream(file))).isEqualTo("total ms, resets, skips, shadow\n"
+        + "     2.500       2       0  com.example.ShadowCostly\n"
+        + "     1.000       1       1  com.example.ShadowCheap\n");
+  }
+}
@@ -0,0 +1,109 @@
+package org.robolectric.internal;
+
+import android.net.Uri;
+import android.os.StatFs;
+import android.provider.MediaStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.TestRunners;
+import org.robolectric.bytecode.InstrumentingClassLoader;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowStatFs;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.io.File;
+import java.lang.reflect.Field;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(TestRunners.WithDefaults.class)
+public class ShadowResetterTest {
+  private String oldReportSetting;
+  private Field dirtyField;
+
+  @Before
+  public void setUp() throws Exception {
+    File reportFile = File.createTempFile("resetter-report", ".txt");
+    reportFile.deleteOnExit();
+    oldReportSetting = System.setProperty("robolectric.resetterReport", reportFile.getPath());
+    dirtyField = ShadowStatFs.class.getField(InstrumentingClassLoader.STATIC_STATE_DIRTY_FIELD_NAME);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (oldReportSetting == null) {
+      System.clearProperty("robolectric.resetterReport");
+    } else {
+      System.setProperty("robolectric.resetterReport", oldReportSetting);
+    }
+  }
+
+  @Test
+  public void shouldResetShadowsWhoseCodeHasRun() throws Exception {
+    ShadowStatFs.registerStats("/tmp", 100, 20, 10);
+    assertThat(dirtyField.getBoolean(null)).isTrue();
+
+    ShadowResetter.reset();
+
+    assertThat(dirtyField.getBoolean(null)).isFalse();
+    assertThat(new StatFs("/tmp").getBlockCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldSkipShadowsWhoseCodeHasNotRun() throws Exception {
+    ShadowResetter.reset();
+    int skips = getStatFsEntry().skips;
+    int resets = getStatFsEntry().resets;
+
+    ShadowResetter.reset();
+
+    assertThat(getStatFsEntry().skips).isEqualTo(skips + 1);
+    assertThat(getStatFsEntry().resets).isEqualTo(resets);
+  }
+
+  @Test
+  public void shouldAlwaysResetShadowsWhoseStaticStateIsVisibleToOtherClasses() throws Exception {
+    try {
+      ShadowLog.class.getField(InstrumentingClassLoader.STATIC_STATE_DIRTY_FIELD_NAME);
+      fail("ShadowLog's stream is public, so its code needn't run for its state to change");
+    } catch (NoSuchFieldException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void shouldAlwaysResetShadowsWhoseResetterResetsOtherClassesState() throws Exception {
+    ShadowResetter.reset();
+    ReflectionHelpers.setStaticFieldReflectively(MediaStore.Images.Media.class, "EXTERNAL_CONTENT_URI", Uri.parse("content://changed"));
+
+    ShadowResetter.reset();
+
+    assertThat(MediaStore.Images.Media.EXTERNAL_CONTENT_URI).isEqualTo(Uri.parse("content://media/external/images/media"));
+  }
+
+  // whichever of these runs second fails unless the runner resets state the SDK alone changes between them
+  @Test
+  public void sdkStateChangedByOneTest_shouldBeResetForTheNext_a() throws Exception {
+    assertThatSdkStateIsResetThenChangeIt();
+  }
+
+  @Test
+  public void sdkStateChangedByOneTest_shouldBeResetForTheNext_b() throws Exception {
+    assertThatSdkStateIsResetThenChangeIt();
+  }
+
+  private void assertThatSdkStateIsResetThenChangeIt() {
+    assertThat(MediaStore.Video.Media.EXTERNAL_CONTENT_URI).isEqualTo(Uri.parse("content://media/external/video/media"));
+    ReflectionHelpers.setStaticFieldReflectively(MediaStore.Video.Media.class, "EXTERNAL_CONTENT_URI", Uri.parse("content://changed"));
+  }
+
+  private ResetterReport.Entry getStatFsEntry() {
+    for (ResetterReport.Entry entry : ResetterReport.getInstance().getEntries()) {
+      if (entry.shadowClassName.equals(ShadowStatFs.class.getName())) return entry;
+    }
+    throw new AssertionError("no report for " + ShadowStatFs.class.getName());
+  }
+}
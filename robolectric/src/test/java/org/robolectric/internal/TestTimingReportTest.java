@@ -0,0 +1,50 @@
+package org.robolectric.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.robolectric.TestTimings;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.readString;
+
+public class TestTimingReportTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteAJsonObjectPerTest() throws Exception {
+    String json = TestTimingReport.toJson(new TestTimings("com.example.FooTest", "say \"hi\"\\"));
+
+    assertThat(json).startsWith("{\"class\":\"com.example.FooTest\",\"method\":\"say \\\"hi\\\"\\\\\",\"total\":0.000,"
+        + "\"phases\":{\"manifest\":0.000,\"environment\":0.000,");
+    assertThat(json).endsWith(",\"tearDown\":0.000},\"loadedClasses\":0,\"instrumentedClasses\":0,\"instrumentation\":0.000}\n");
+  }
+
+  @Test
+  public void shouldWriteACsvLinePerTest() throws Exception {
+    String header = TestTimingReport.csvHeader();
+    String csv = TestTimingReport.toCsv(new TestTimings("com.example.FooTest", "a, b"));
+
+    assertThat(header).startsWith("class,method,total,manifest,environment,");
+    assertThat(csv).startsWith("com.example.FooTest,\"a, b\",0.000,0.000,");
+    assertThat(csv.split(",", -1).length).isEqualTo(header.split(",", -1).length + 1); // one more for the quoted comma
+  }
+
+  @Test
+  public void shouldAppendToExistingReportsAndOnlyWriteTheCsvHeaderOnce() throws Exception {
+    File file = new File(temporaryFolder.getRoot(), "timings.csv");
+    for (int i = 0; i < 2; i++) {
+      TestTimingReport report = new TestTimingReport(file);
+      report.testTimed(new TestTimings("com.example.FooTest", "test" + i));
+      report.close();
+    }
+
+    assertThat(readString(new FileInputStream(file)).split("\n")).containsExactly(
+        TestTimingReport.csvHeader().trim(),
+        TestTimingReport.toCsv(new TestTimings("com.example.FooTest", "test0")).trim(),
+        TestTimingReport.toCsv(new TestTimings("com.example.FooTest", "test1")).trim());
+  }
+}
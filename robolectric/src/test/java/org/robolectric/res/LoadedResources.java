@@ -0,0 +1,107 @@
+package org.robolectric.res;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Describes everything a resource loader has loaded, in enough detail to tell whether two loads came out the same.
+ */
+class LoadedResources {
+  static String describe(XResourceLoader resourceLoader) {
+    resourceLoader.initialize();
+    return "data: " + describe(resourceLoader.data.getAllValues())
+        + "\nplurals: " + describe(resourceLoader.pluralsData.getAllValues())
+        + "\nstrings: " + describe(resourceLoader.stringData.getAllValues())
+        + "\nmenus: " + describe(resourceLoader.menuData.getAllValues())
+        + "\ndrawables: " + describe(resourceLoader.drawableData.getAllValues())
+        + "\npreferences: " + describe(resourceLoader.preferenceData.getAllValues())
+        + "\nxml: " + describe(resourceLoader.xmlDocuments.getAllValues())
+        + "\nxml blocks: " + describe(resourceLoader.xmlBlocks.getAllValues())
+        + "\nraw: " + describe(resourceLoader.rawResources.getAllValues());
+  }
+
+  private static String describe(Map<ResName, ? extends Iterable<?>> allValues) {
+    Map<String, String> descriptions = new TreeMap<String, String>();
+    for (Map.Entry<ResName, ? extends Iterable<?>> entry : allValues.entrySet()) {
+      StringBuilder buf = new StringBuilder();
+      for (Object value : entry.getValue()) {
+        if (value instanceof ResBunch.Value) {
+          ResBunch.Value bunchValue = (ResBunch.Value) value;
+          buf.append(bunchValue.qualifiers).append(bunchValue.xmlContext).append(describe(bunchValue.value)).append('\n');
+        } else {
+          ResBundle.Value bundleValue = (ResBundle.Value) value;
+          buf.append(bundleValue.qualifiers).append(bundleValue.xmlContext).append(describe(bundleValue.value)).append('\n');
+        }
+      }
+      descriptions.put(entry.getKey().getFullyQualifiedName(), buf.toString());
+    }
+    return descriptions.toString();
+  }
+
+  private static String describe(Object value) {
+    if (value instanceof TypedResource) {
+      TypedResource typedResource = (TypedResource) value;
+      Object data = typedResource.getData();
+      return typedResource.getClass().getSimpleName() + "/" + typedResource.getResType() + ":"
+          + (data instanceof TypedResource[] ? describeAll((Object[]) data) : describe(data));
+    } else if (value instanceof StyleData) {
+      return value + " " + ((StyleData) value).getItems();
+    } else if (value instanceof PluralResourceLoader.PluralRules) {
+      StringBuilder buf = new StringBuilder();
+      for (Plural plural : ((PluralResourceLoader.PluralRules) value).plurals) {
+        buf.append(plural.quantity).append('=').append(plural.string).append(',');
+      }
+      return buf.toString();
+    } else if (value instanceof MenuNode) {
+      MenuNode menuNode = (MenuNode) value;
+      return menuNode.getName() + menuNode.getAttributes() + describeAll(menuNode.getChildren().toArray());
+    } else if (value instanceof PreferenceNode) {
+      PreferenceNode preferenceNode = (PreferenceNode) value;
+      return preferenceNode.getName() + preferenceNode.getAttributes() + describeAll(preferenceNode.getChildren().toArray());
+    } else if (value instanceof DrawableNode.Xml) {
+      DrawableNode.Xml drawableNode = (DrawableNode.Xml) value;
+      return drawableNode.xmlContext + describe(drawableNode.document);
+    } else if (value instanceof DrawableNode.ImageFile) {
+      DrawableNode.ImageFile drawableNode = (DrawableNode.ImageFile) value;
+      return drawableNode.getFsFile() + ":" + drawableNode.isNinePatch;
+    } else if (value instanceof XmlBlock) {
+      XmlBlock xmlBlock = (XmlBlock) value;
+      return xmlBlock.getFileName() + describe(xmlBlock.toDocument());
+    } else if (value instanceof Document) {
+      return describe(((Document) value).getDocumentElement());
+    } else if (value instanceof Node) {
+      Node node = (Node) value;
+      if (node.getNodeType() != Node.ELEMENT_NODE) return "'" + node.getNodeValue() + "'";
+
+      StringBuilder buf = new StringBuilder("<{" + node.getNamespaceURI() + "}" + node.getNodeName());
+      NamedNodeMap attributes = node.getAttributes();
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node attribute = attributes.item(i);
+        buf.append(" {").append(attribute.getNamespaceURI()).append('}').append(attribute.getNodeName())
+            .append("=").append(attribute.getNodeValue());
+      }
+      buf.append('>');
+      NodeList children = node.getChildNodes();
+      for (int i = 0; i < children.getLength(); i++) {
+        buf.append(describe(children.item(i)));
+      }
+      return buf.append("</>").toString();
+    } else {
+      return String.valueOf(value);
+    }
+  }
+
+  private static String describeAll(Object[] values) {
+    String[] descriptions = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      descriptions[i] = describe(values[i]);
+    }
+    return Arrays.toString(descriptions);
+  }
+}
@@ -53,4 +53,46 @@ public class PackageResourceLoaderTest {
     assertThat(value).describedAs("Item color from gradle output is not loaded").isNotNull();
     assertThat(value.asString()).isEqualTo("1.0");
   }
+
+  @Test
+  public void shouldLoadTheSameResourcesOnSeveralThreads() throws Exception {
+    String sequential = LoadedResources.describe(new PackageResourceLoader(testResources()));
+
+    String oldThreads = System.setProperty("robolectric.resourceLoaderThreads", "4");
+    try {
+      assertThat(LoadedResources.describe(new PackageResourceLoader(testResources()))).isEqualTo(sequential);
+    } finally {
+      if (oldThreads == null) {
+        System.clearProperty("robolectric.resourceLoaderThreads");
+      } else {
+        System.setProperty("robolectric.resourceLoaderThreads", oldThreads);
+      }
+    }
+  }
+
+  @Test
+  public void shouldLoadOnlyTheFoldersALookupNeedsInLazyMode() throws Exception {
+    String everything = LoadedResources.describe(new PackageResourceLoader(testResources()));
+
+    String oldLazy = System.setProperty("robolectric.lazyResourceLoading", "true");
+    try {
+      PackageResourceLoader loader = new PackageResourceLoader(testResources());
+      assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+      assertThat(loader.data.size()).isGreaterThan(0);
+      assertThat(loader.menuData.size()).isEqualTo(0);
+      assertThat(loader.xmlDocuments.size()).isEqualTo(0);
+
+      assertThat(loader.getMenuNode(new ResName(TEST_PACKAGE, "menu", "test"), "")).isNotNull();
+      assertThat(loader.rawResources.size()).isEqualTo(0);
+      assertThat(loader.isInitialized).isFalse();
+
+      assertThat(LoadedResources.describe(loader)).isEqualTo(everything);
+    } finally {
+      if (oldLazy == null) {
+        System.clearProperty("robolectric.lazyResourceLoading");
+      } else {
+        System.setProperty("robolectric.lazyResourceLoading", oldLazy);
+      }
+    }
+  }
 }
@@ -3,6 +3,7 @@ package org.robolectric.res;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class ResBundleTest {
   @Test
@@ -17,6 +18,21 @@ public class ResBundleTest {
         "port-notouch-12key"), "en-GB-port-hdpi-notouch-12key").value);
   }
 
+  @Test
+  public void shouldPickAgainWhenValuesChange() throws Exception {
+    ResBundle.Values<String> values = asValues("", "fr");
+    assertEquals("", ResBundle.pick(values, "en-port").value);
+    assertEquals("", ResBundle.pick(values, "en-port").value);
+
+    values.add(new ResBundle.Value<String>("en", "en", null));
+    assertEquals("en", ResBundle.pick(values, "en-port").value);
+  }
+
+  @Test
+  public void shouldPickNothingFromNoValues() throws Exception {
+    assertNull(ResBundle.pick(asValues(), "en"));
+  }
+
   private ResBundle.Values<String> asValues(String... qualifierses) {
     ResBundle.Values<String> values = new ResBundle.Values<String>();
     for (String qualifiers : qualifierses) {
@@ -0,0 +1,122 @@
+package org.robolectric.res;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.robolectric.R;
+import org.robolectric.res.PackageResourceLoader.ResourceFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.TEST_PACKAGE;
+import static org.robolectric.util.TestUtil.resourceFile;
+
+public class ResourceCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File resDir;
+  private ResourcePath resourcePath;
+  private File cacheFile;
+
+  @Before
+  public void setUp() throws Exception {
+    resDir = new File(temporaryFolder.getRoot(), "res");
+    copy(new File(resourceFile("res").getPath()), resDir);
+    resourcePath = new ResourcePath(R.class, TEST_PACKAGE, Fs.newFile(resDir), resourceFile("assets"));
+    cacheFile = ResourceCache.fileFor(new File(temporaryFolder.getRoot(), "cache"), resourcePath);
+  }
+
+  @Test
+  public void shouldLoadTheSameResourcesWithAndWithoutACache() throws Exception {
+    String parsed = LoadedResources.describe(new PackageResourceLoader(resourcePath));
+
+    assertThat(LoadedResources.describe(ResourceCache.load(cacheFile, resourcePath))).isEqualTo(parsed);
+    assertThat(cacheFile).exists();
+
+    long cachedAt = cacheFile.lastModified();
+    assertThat(LoadedResources.describe(ResourceCache.load(cacheFile, resourcePath))).isEqualTo(parsed);
+    assertThat(cacheFile.lastModified()).isEqualTo(cachedAt);
+  }
+
+  @Test
+  public void shouldReloadFoldersWhoseFilesChanged() throws Exception {
+    ResourceCache.load(cacheFile, resourcePath);
+
+    File stringsFile = new File(resDir, "values/strings.xml");
+    String strings = new String(Fs.newFile(stringsFile).getBytes(), "UTF-8");
+    write(stringsFile, strings.replace(">Hello<", ">Howdy<"));
+
+    PackageResourceLoader cached = ResourceCache.load(cacheFile, resourcePath);
+    assertThat(cached.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Howdy");
+    assertThat(LoadedResources.describe(cached)).isEqualTo(LoadedResources.describe(new PackageResourceLoader(resourcePath)));
+  }
+
+  @Test
+  public void shouldOnlyHashChangesToTheFoldersAFamilyLoads() throws Exception {
+    FsFile resourceBase = Fs.newFile(resDir);
+    Map<ResourceFolder, String> before = ResourceCache.hashFolders(resourceBase);
+
+    write(new File(resDir, "menu/test.xml"), "<menu/>");
+    Map<ResourceFolder, String> after = ResourceCache.hashFolders(resourceBase);
+
+    for (ResourceFolder folder : ResourceFolder.values()) {
+      if (folder == ResourceFolder.MENU) {
+        assertThat(after.get(folder)).isNotEqualTo(before.get(folder));
+      } else {
+        assertThat(after.get(folder)).describedAs(folder.name()).isEqualTo(before.get(folder));
+      }
+    }
+  }
+
+  @Test
+  public void shouldIgnoreCorruptCaches() throws Exception {
+    cacheFile.getParentFile().mkdirs();
+    write(cacheFile, "not a cache");
+
+    PackageResourceLoader loader = ResourceCache.load(cacheFile, resourcePath);
+    assertThat(loader.getValue(new ResName(TEST_PACKAGE, "string", "hello"), "").asString()).isEqualTo("Hello");
+  }
+
+  private static void copy(File from, File to) throws IOException {
+    if (from.isDirectory()) {
+      to.mkdirs();
+      for (String name : from.list()) {
+        copy(new File(from, name), new File(to, name));
+      }
+      return;
+    }
+
+    InputStream in = new FileInputStream(from);
+    try {
+      OutputStream out = new FileOutputStream(to);
+      try {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+          out.write(buffer, 0, count);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void write(File file, String contents) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(contents.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+  }
+}
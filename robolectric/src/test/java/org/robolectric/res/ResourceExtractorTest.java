@@ -62,4 +62,17 @@ public class ResourceExtractorTest {
     assertThat(resourceIndex.getResourceId(new ResName("org.robolectric.lib2", "string", "in_all_libs"))).isEqualTo(R.string.in_all_libs);
     assertThat(resourceIndex.getResourceId(new ResName("org.robolectric.lib3", "string", "in_all_libs"))).isEqualTo(R.string.in_all_libs);
   }
+
+  @Test
+  public void shouldAssignIdsToUnknownSystemResourcesOnce() throws Exception {
+    ResourceExtractor resourceExtractor = new ResourceExtractor(systemResources());
+    ResName unknown = new ResName("android", "attr", "notInR");
+
+    Integer id = resourceExtractor.getResourceId(unknown);
+    assertThat(id).isNotNull();
+    assertThat(resourceExtractor.getResourceId(new ResName("android", "attr", "notInR"))).isEqualTo(id);
+    assertThat(resourceExtractor.getResName(id)).isEqualTo(unknown);
+    assertThat(resourceExtractor.getResName(android.R.id.text1).getFullyQualifiedName()).isEqualTo("android:id/text1");
+    assertThat(resourceExtractor.getResourceId(new ResName(TEST_PACKAGE, "attr", "notInR"))).isNull();
+  }
 }
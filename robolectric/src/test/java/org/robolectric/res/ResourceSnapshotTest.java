@@ -0,0 +1,186 @@
+package org.robolectric.res;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.systemResources;
+import static org.robolectric.util.TestUtil.testResources;
+
+public class ResourceSnapshotTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File snapshotFile;
+
+  @Before
+  public void setUp() throws Exception {
+    snapshotFile = new File(temporaryFolder.getRoot(), "resources.snapshot");
+  }
+
+  @Test
+  public void shouldRestoreEverythingLoadedFromAResourceDirectory() throws Exception {
+    PackageResourceLoader original = new PackageResourceLoader(testResources());
+    ResourceSnapshot.write(snapshotFile, original);
+
+    PackageResourceLoader restored = ResourceSnapshot.read(snapshotFile, testResources());
+
+    assertThat(restored).isNotNull();
+    assertSameResources(restored, original);
+    assertThat(restored.getValue(new ResName("org.robolectric", "string", "hello"), "").asString()).isEqualTo("Hello");
+  }
+
+  @Test
+  public void shouldRestoreEverythingLoadedFromAJar() throws Exception {
+    ResourcePath resourcePath = systemResources();
+    PackageResourceLoader original = new PackageResourceLoader(resourcePath, new ResourceExtractor(getClass().getClassLoader()));
+    ResourceSnapshot.write(snapshotFile, original);
+
+    PackageResourceLoader restored = ResourceSnapshot.read(snapshotFile, resourcePath);
+
+    assertThat(restored).isNotNull();
+    assertSameResources(restored, original);
+    ResName resName = new ResName("android", "style", "Theme");
+    assertThat(restored.getResourceIndex().getResourceId(resName)).isEqualTo(original.getResourceIndex().getResourceId(resName));
+  }
+
+  @Test
+  public void shouldNotReadSnapshotsOfOtherResources() throws Exception {
+    ResourceSnapshot.write(snapshotFile, new PackageResourceLoader(testResources()));
+
+    assertThat(ResourceSnapshot.read(snapshotFile, systemResources())).isNull();
+    assertThat(ResourceSnapshot.read(new File(temporaryFolder.getRoot(), "missing.snapshot"), testResources())).isNull();
+  }
+
+  @Test
+  public void snapshotFileNameShouldChangeWithTheSourceFile() throws Exception {
+    File sourceFile = temporaryFolder.newFile("android-all.jar");
+    File snapshotDir = temporaryFolder.getRoot();
+    File before = ResourceSnapshot.fileFor(snapshotDir, "system", sourceFile);
+    assertThat(ResourceSnapshot.fileFor(snapshotDir, "system", sourceFile)).isEqualTo(before);
+
+    sourceFile.setLastModified(sourceFile.lastModified() - 10000);
+    assertThat(ResourceSnapshot.fileFor(snapshotDir, "system", sourceFile)).isNotEqualTo(before);
+  }
+
+  @Test
+  public void shouldRestoreEverythingLoadedOnSeveralThreads() throws Exception {
+    PackageResourceLoader sequential = new PackageResourceLoader(testResources());
+    sequential.initialize();
+
+    String oldThreads = System.setProperty("robolectric.resourceLoaderThreads", "4");
+    try {
+      PackageResourceLoader threaded = new PackageResourceLoader(testResources());
+      threaded.initialize();
+      assertSameResources(threaded, sequential);
+      ResourceSnapshot.write(snapshotFile, threaded);
+    } finally {
+      if (oldThreads == null) {
+        System.clearProperty("robolectric.resourceLoaderThreads");
+      } else {
+        System.setProperty("robolectric.resourceLoaderThreads", oldThreads);
+      }
+    }
+
+    PackageResourceLoader restored = ResourceSnapshot.read(snapshotFile, testResources());
+
+    assertThat(restored).isNotNull();
+    assertSameResources(restored, sequential);
+  }
+
+  private void assertSameResources(PackageResourceLoader actual, PackageResourceLoader expected) {
+    assertThat(describe(actual.data.getAllValues())).isEqualTo(describe(expected.data.getAllValues()));
+    assertThat(describe(actual.pluralsData.getAllValues())).isEqualTo(describe(expected.pluralsData.getAllValues()));
+    assertThat(describe(actual.menuData.getAllValues())).isEqualTo(describe(expected.menuData.getAllValues()));
+    assertThat(describe(actual.drawableData.getAllValues())).isEqualTo(describe(expected.drawableData.getAllValues()));
+    assertThat(describe(actual.preferenceData.getAllValues())).isEqualTo(describe(expected.preferenceData.getAllValues()));
+    assertThat(describe(actual.xmlDocuments.getAllValues())).isEqualTo(describe(expected.xmlDocuments.getAllValues()));
+    assertThat(describe(actual.rawResources.getAllValues())).isEqualTo(describe(expected.rawResources.getAllValues()));
+  }
+
+  private static String describe(Map<ResName, ? extends Iterable<?>> allValues) {
+    Map<String, String> descriptions = new TreeMap<String, String>();
+    for (Map.Entry<ResName, ? extends Iterable<?>> entry : allValues.entrySet()) {
+      StringBuilder buf = new StringBuilder();
+      for (Object value : entry.getValue()) {
+        if (value instanceof ResBunch.Value) {
+          ResBunch.Value bunchValue = (ResBunch.Value) value;
+          buf.append(bunchValue.qualifiers).append(bunchValue.xmlContext).append(describe(bunchValue.value)).append('\n');
+        } else {
+          ResBundle.Value bundleValue = (ResBundle.Value) value;
+          buf.append(bundleValue.qualifiers).append(bundleValue.xmlContext).append(describe(bundleValue.value)).append('\n');
+        }
+      }
+      descriptions.put(entry.getKey().getFullyQualifiedName(), buf.toString());
+    }
+    return descriptions.toString();
+  }
+
+  private static String describe(Object value) {
+    if (value instanceof TypedResource) {
+      TypedResource typedResource = (TypedResource) value;
+      Object data = typedResource.getData();
+      return typedResource.getClass().getSimpleName() + "/" + typedResource.getResType() + ":"
+          + (data instanceof TypedResource[] ? describeAll((Object[]) data) : describe(data));
+    } else if (value instanceof StyleData) {
+      return value + " " + ((StyleData) value).getItems();
+    } else if (value instanceof PluralResourceLoader.PluralRules) {
+      StringBuilder buf = new StringBuilder();
+      for (Plural plural : ((PluralResourceLoader.PluralRules) value).plurals) {
+        buf.append(plural.quantity).append('=').append(plural.string).append(',');
+      }
+      return buf.toString();
+    } else if (value instanceof MenuNode) {
+      MenuNode menuNode = (MenuNode) value;
+      return menuNode.getName() + menuNode.getAttributes() + describeAll(menuNode.getChildren().toArray());
+    } else if (value instanceof PreferenceNode) {
+      PreferenceNode preferenceNode = (PreferenceNode) value;
+      return preferenceNode.getName() + preferenceNode.getAttributes() + describeAll(preferenceNode.getChildren().toArray());
+    } else if (value instanceof DrawableNode.Xml) {
+      DrawableNode.Xml drawableNode = (DrawableNode.Xml) value;
+      return drawableNode.xmlContext + describe(drawableNode.document);
+    } else if (value instanceof DrawableNode.ImageFile) {
+      DrawableNode.ImageFile drawableNode = (DrawableNode.ImageFile) value;
+      return drawableNode.getFsFile() + ":" + drawableNode.isNinePatch;
+    } else if (value instanceof Document) {
+      return describe(((Document) value).getDocumentElement());
+    } else if (value instanceof Node) {
+      Node node = (Node) value;
+      if (node.getNodeType() != Node.ELEMENT_NODE) return "'" + node.getNodeValue() + "'";
+
+      StringBuilder buf = new StringBuilder("<{" + node.getNamespaceURI() + "}" + node.getNodeName());
+      NamedNodeMap attributes = node.getAttributes();
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node attribute = attributes.item(i);
+        buf.append(" {").append(attribute.getNamespaceURI()).append('}').append(attribute.getNodeName())
+            .append("=").append(attribute.getNodeValue());
+      }
+      buf.append('>');
+      NodeList children = node.getChildNodes();
+      for (int i = 0; i < children.getLength(); i++) {
+        buf.append(describe(children.item(i)));
+      }
+      return buf.append("</>").toString();
+    } else {
+      return String.valueOf(value);
+    }
+  }
+
+  private static String describeAll(Object[] values) {
+    String[] descriptions = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      descriptions[i] = describe(values[i]);
+    }
+    return Arrays.toString(descriptions);
+  }
+}
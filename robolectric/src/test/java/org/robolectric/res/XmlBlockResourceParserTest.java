@@ -0,0 +1,116 @@
+package org.robolectric.res;
+
+import android.content.res.XmlResourceParser;
+import org.junit.Test;
+import org.robolectric.res.builder.XmlFileBuilder;
+import org.robolectric.res.builder.XmlFileBuilder.XmlBlockResourceParser;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.util.TestUtil.TEST_PACKAGE;
+import static org.robolectric.util.TestUtil.testResources;
+
+/**
+ * Tests what's particular to {@link XmlBlockResourceParser}; {@link XmlResourceParsersTest} checks that it otherwise
+ * behaves just like the DOM-based parser.
+ */
+public class XmlBlockResourceParserTest {
+  private static final String XML = "<root xmlns:android='http://schemas.android.com/apk/res/android'"
+      + " xmlns:app='http://schemas.android.com/apk/res-auto' android:id='@+id/root' app:title='@string/hello'>\n"
+      + "  <child>some <![CDATA[<text>]]></child>\n"
+      + "  <child android:text='more'/>\n"
+      + "</root>";
+
+  @Test
+  public void shouldRaiseTheSameEventsForABlockAsForItsDocument() throws Exception {
+    Document document = parse(XML);
+    ResourceIndex resourceIndex = new ResourceExtractor(testResources());
+    XmlBlock xmlBlock = XmlBlock.from(document, "file");
+
+    assertThat(events(new XmlBlockResourceParser(xmlBlock, "file", TEST_PACKAGE, resourceIndex, false)))
+        .isEqualTo(events(new XmlFileBuilder().getXml(document, "file", TEST_PACKAGE, resourceIndex)));
+    assertThat(events(new XmlFileBuilder().getXml(xmlBlock.toDocument(), "file", TEST_PACKAGE, resourceIndex)))
+        .isEqualTo(events(new XmlFileBuilder().getXml(document, "file", TEST_PACKAGE, resourceIndex)));
+  }
+
+  @Test
+  public void shouldTreatResAutoAttributesAsTheAppsOwn() throws Exception {
+    XmlResourceParser parser = XmlFileBuilder.getXmlResourceParser(XmlBlock.from(parse(XML), "file"), TEST_PACKAGE, new ResourceExtractor(testResources()));
+    parser.next();
+    parser.next();
+
+    String appNamespace = Attribute.ANDROID_RES_NS_PREFIX + TEST_PACKAGE;
+    assertThat(parser.getAttributeValue(appNamespace, "title")).isEqualTo("@" + TEST_PACKAGE + ":string/hello");
+    assertThat(parser.getAttributeValue(Attribute.RES_AUTO_NS_URI, "title")).isNull();
+    int title = indexOf(parser, "title");
+    assertThat(title).isNotEqualTo(-1);
+    assertThat(parser.getAttributeNamespace(title)).isEqualTo(appNamespace);
+  }
+
+  @Test
+  public void shouldResolveAttributeNamesOncePerResourceIndex() throws Exception {
+    XmlBlock xmlBlock = XmlBlock.from(parse(XML), "file");
+    ResourceIndex resourceIndex = new MergedResourceIndex(new ResourceExtractor(testResources()), new ResourceExtractor());
+    final int[] resolutions = new int[1];
+    XmlBlock.NameResolver resolver = new XmlBlock.NameResolver() {
+      @Override public int resolve(int index) {
+        resolutions[0]++;
+        return 42;
+      }
+    };
+
+    int root = xmlBlock.getRootElement();
+    assertThat(xmlBlock.getAttributeNameResource(root, 0, resourceIndex, TEST_PACKAGE, resolver)).isEqualTo(42);
+    assertThat(xmlBlock.getAttributeNameResource(root, 0, resourceIndex, TEST_PACKAGE, resolver)).isEqualTo(42);
+    assertThat(resolutions[0]).isEqualTo(1);
+    xmlBlock.getAttributeNameResource(root, 0, resourceIndex, "other", resolver);
+    assertThat(resolutions[0]).isEqualTo(2);
+
+    Document document = parse(XML);
+    XmlResourceParser domParser = new XmlFileBuilder().getXml(document, "file", TEST_PACKAGE, resourceIndex);
+    XmlResourceParser parser = new XmlBlockResourceParser(XmlBlock.from(document, "file"), "file", TEST_PACKAGE, resourceIndex, false);
+    domParser.next();
+    domParser.next();
+    parser.next();
+    parser.next();
+    for (int i = 0; i < domParser.getAttributeCount(); i++) {
+      assertThat(parser.getAttributeNameResource(i)).isEqualTo(domParser.getAttributeNameResource(i));
+      assertThat(parser.getAttributeNameResource(i)).isEqualTo(domParser.getAttributeNameResource(i));
+    }
+  }
+
+  private static int indexOf(XmlResourceParser parser, String attributeName) {
+    for (int i = 0; i < parser.getAttributeCount(); i++) {
+      if (attributeName.equals(parser.getAttributeName(i))) return i;
+    }
+    return -1;
+  }
+
+  private static Document parse(String xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+  }
+
+  private static List<String> events(XmlResourceParser parser) throws Exception {
+    List<String> events = new ArrayList<String>();
+    int event;
+    while ((event = parser.next()) != XmlResourceParser.END_DOCUMENT) {
+      StringBuilder description = new StringBuilder()
+          .append(XmlResourceParser.TYPES[event]).append(" ").append(parser.getDepth())
+          .append(" ").append(parser.getNamespace()).append(" ").append(parser.getName())
+          .append(" [").append(parser.getText()).append("]");
+      for (int i = 0; event == XmlResourceParser.START_TAG && i < parser.getAttributeCount(); i++) {
+        description.append(" ").append(parser.getAttributeNamespace(i)).append(" ").append(parser.getAttributeName(i))
+            .append("=").append(parser.getAttributeValue(i));
+      }
+      events.add(description.toString());
+    }
+    return events;
+  }
+}
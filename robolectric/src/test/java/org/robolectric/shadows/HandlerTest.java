@@ -327,6 +327,34 @@ public class HandlerTest {
     assertThat(wasRun[0]).isFalse();
   }
 
+  @Test
+  public void removeMessages_dropsTheirRunnablesFromTheScheduler() {
+    Robolectric.pauseMainLooper();
+    Handler handler = new Handler();
+    handler.sendEmptyMessageDelayed(123, 500);
+    handler.sendEmptyMessageDelayed(456, 500);
+    handler.sendEmptyMessageDelayed(123, 1000);
+    assertThat(Robolectric.getUiThreadScheduler().size()).isEqualTo(3);
+
+    handler.removeMessages(123);
+
+    assertThat(Robolectric.getUiThreadScheduler().size()).isEqualTo(1);
+    assertThat(handler.hasMessages(456)).isTrue();
+  }
+
+  @Test
+  public void shouldFindAndRemoveMessagesWhoseObjectChangedAfterTheyWereSent() {
+    Robolectric.pauseMainLooper();
+    Handler handler = new Handler();
+    List<String> list = new ArrayList<String>();
+    handler.sendMessage(handler.obtainMessage(123, list));
+    list.add("changed");
+
+    assertThat(handler.hasMessages(123, list)).isTrue();
+    handler.removeMessages(123, list);
+    assertThat(handler.hasMessages(123)).isFalse();
+  }
+
   @Test
   public void shouldRemoveAllMessages() throws Exception {
     final boolean[] wasRun = new boolean[1];
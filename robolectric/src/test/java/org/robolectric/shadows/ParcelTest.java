@@ -514,4 +514,64 @@ public class ParcelTest {
     assertThat(parcel2.readFloat()).isEqualTo(1.25f);
     assertThat(parcel2.readByte()).isEqualTo((byte) 0xAF);
   }
+
+  @Test
+  public void shouldLayOutValuesAsAndroidDoes() {
+    parcel.writeInt(0x01020304);
+    parcel.writeString("hi");
+    parcel.writeString(null);
+    parcel.writeByteArray(new byte[] {5, 6, 7, 8, 9});
+
+    assertThat(parcel.marshall()).isEqualTo(new byte[] {
+        4, 3, 2, 1,
+        2, 0, 0, 0, 'h', 0, 'i', 0, 0, 0, 0, 0,
+        -1, -1, -1, -1,
+        5, 0, 0, 0, 5, 6, 7, 8, 9, 0, 0, 0});
+  }
+
+  @Test
+  public void testWriteAndCreateByteArray_withOffsetAndLength() {
+    parcel.writeByteArray(new byte[] {1, 2, 3, 4, 5}, 1, 3);
+    parcel.writeInt(42);
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.createByteArray()).isEqualTo(new byte[] {2, 3, 4});
+    assertThat(parcel.readInt()).isEqualTo(42);
+  }
+
+  @Test
+  public void testWriteAndCreateLargeByteArray() {
+    byte[] bytes = new byte[1024 * 1024 + 3];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    parcel.writeByteArray(bytes);
+    assertThat(parcel.dataPosition()).isEqualTo(4 + 1024 * 1024 + 4);
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.createByteArray()).isEqualTo(bytes);
+  }
+
+  @Test
+  public void testSetDataSize() {
+    parcel.writeInt(1);
+    parcel.writeInt(2);
+    parcel.setDataSize(4);
+
+    assertThat(parcel.dataSize()).isEqualTo(4);
+    assertThat(parcel.dataPosition()).isEqualTo(4);
+    parcel.setDataPosition(0);
+    assertThat(parcel.readInt()).isEqualTo(1);
+    assertThat(parcel.readInt()).isEqualTo(0);
+  }
+
+  @Test
+  public void testUnmarshallBytesFromElsewhere() {
+    byte[] rawBytes = {7, 0, 0, 0, 1, 0, 0, 0, 'a', 0, 0, 0};
+    parcel.unmarshall(rawBytes, 0, rawBytes.length);
+
+    assertThat(parcel.readInt()).isEqualTo(7);
+    assertThat(parcel.readString()).isEqualTo("a");
+    assertThat(parcel.dataAvail()).isEqualTo(0);
+  }
 }
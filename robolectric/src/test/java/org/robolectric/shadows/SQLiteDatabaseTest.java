@@ -15,6 +15,8 @@ import org.robolectric.Robolectric;
 import org.robolectric.TestRunners;
 
 import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
 import static android.database.sqlite.SQLiteDatabase.OPEN_READWRITE;
@@ -758,6 +760,57 @@ public class SQLiteDatabaseTest {
     }
 
 
+    @Test
+    public void shouldWorkWithAThreadPerConnection() throws Exception {
+        SQLiteDatabase other;
+        Set<Thread> threadsBefore = sqliteConnectionThreads();
+        System.setProperty("robolectric.sqliteThreadPerConnection", "true");
+        try {
+            other = SQLiteDatabase.openOrCreateDatabase(Robolectric.application.getDatabasePath("other").getPath(), null);
+        } finally {
+            System.clearProperty("robolectric.sqliteThreadPerConnection");
+        }
+
+        Set<Thread> connectionThreads = sqliteConnectionThreads();
+        connectionThreads.removeAll(threadsBefore);
+        assertThat(connectionThreads).hasSize(1);
+        Thread connectionThread = connectionThreads.iterator().next();
+
+        try {
+            other.execSQL("CREATE TABLE people (id INTEGER PRIMARY KEY, name VARCHAR(255));");
+            ContentValues values = new ContentValues();
+            values.put("name", "Chuck");
+            long id = other.insert("people", null, values);
+            addJulie();
+
+            Cursor cursor = other.query("people", new String[]{"name"}, "id = ?", new String[]{Long.toString(id)}, null, null, null);
+            assertThat(cursor.moveToFirst()).isTrue();
+            assertThat(cursor.getString(0)).isEqualTo("Chuck");
+            cursor.close();
+
+            try {
+                other.execSQL("SELECT * FROM table_name");
+                fail("Expected exception");
+            } catch (SQLiteException e) {
+                assertThat(e.getMessage()).contains("Cannot prepare statement");
+            }
+        } finally {
+            other.close();
+        }
+
+        connectionThread.join(10000);
+        assertThat(connectionThread.isAlive()).isFalse();
+    }
+
+    private static Set<Thread> sqliteConnectionThreads() {
+        Set<Thread> threads = new HashSet<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().matches("robolectric-sqlite-\\d+")) threads.add(thread);
+        }
+        return threads;
+    }
+
+
     private Cursor executeQuery(String query) {
         return database.rawQuery(query, null);
     }
@@ -134,6 +134,34 @@ public class ThemeTest {
         .isEqualTo("#ffff0000");
   }
 
+  @Test public void shouldResolveEachStyleOnceForAThemeAndQualifiers() throws Exception {
+    TestActivity activity = buildActivity(TestActivityWithAnotherTheme.class).create().get();
+    ResourceLoader resourceLoader = Shadows.shadowOf(activity.getResources()).getResourceLoader();
+    ResName themeName = new ResName(TestUtil.TEST_PACKAGE, "style", "Theme.AnotherTheme");
+    ResName styleName = new ResName(TestUtil.TEST_PACKAGE, "style", "IndirectButtonStyle");
+
+    Style theme = ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "");
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "")).isSameAs(theme);
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "land")).isNotSameAs(theme);
+
+    Style style = ShadowAssetManager.resolveStyle(resourceLoader, theme, styleName, "");
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, theme, styleName, "")).isSameAs(style);
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, styleName, "")).isNotSameAs(style);
+
+    ResName background = new ResName("android", "attr", "background");
+    assertThat(style.getAttrValue(background)).isSameAs(style.getAttrValue(background));
+  }
+
+  @Test public void shouldForgetResolvedStylesWhenReset() throws Exception {
+    TestActivity activity = buildActivity(TestActivityWithAnotherTheme.class).create().get();
+    ResourceLoader resourceLoader = Shadows.shadowOf(activity.getResources()).getResourceLoader();
+    ResName themeName = new ResName(TestUtil.TEST_PACKAGE, "style", "Theme.AnotherTheme");
+
+    Style theme = ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "");
+    ShadowAssetManager.reset();
+    assertThat(ShadowAssetManager.resolveStyle(resourceLoader, null, themeName, "")).isNotSameAs(theme);
+  }
+
   public static class TestActivity extends Activity {
     @Override protected void onCreate(Bundle savedInstanceState) {
       super.onCreate(savedInstanceState);
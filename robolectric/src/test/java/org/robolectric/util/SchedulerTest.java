@@ -226,6 +226,69 @@ public class SchedulerTest {
     assertThat(runnablesThatWereRun).containsExactly(1, 2);
   }
 
+  @Test
+  public void shouldRunRunnablesPostedForTheSameTimeInTheOrderTheyWerePosted() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      scheduler.postDelayed(new AddToTranscript("late " + i), 2000);
+      scheduler.postDelayed(new AddToTranscript("early " + i), 1000);
+    }
+
+    scheduler.advanceBy(1000);
+    transcript.assertEventsSoFar(numbered("early ", 100));
+    scheduler.advanceBy(1000);
+    transcript.assertEventsSoFar(numbered("late ", 100));
+  }
+
+  @Test
+  public void shouldOrderRunnablesPostedFarApart() throws Exception {
+    scheduler.postDelayed(new AddToTranscript("two"), Integer.MAX_VALUE + 1L);
+    scheduler.postDelayed(new AddToTranscript("one"), 1);
+
+    scheduler.advanceToLastPostedRunnable();
+    transcript.assertEventsSoFar("one", "two");
+  }
+
+  @Test
+  public void remove_shouldRemoveEveryPostingOfTheRunnable_andLeaveTheRestInOrder() throws Exception {
+    Runnable removed = new AddToTranscript("removed");
+    for (int i = 0; i < 10; i++) {
+      scheduler.postDelayed(new AddToTranscript("kept " + i), i * 100);
+      scheduler.postDelayed(removed, i * 100 + 50);
+    }
+
+    scheduler.remove(removed);
+
+    assertThat(scheduler.size()).isEqualTo(10);
+    scheduler.advanceToLastPostedRunnable();
+    transcript.assertEventsSoFar(numbered("kept ", 10));
+  }
+
+  @Test
+  public void shouldCountTasksRunAndTheDeepestTheQueueHasBeen() throws Exception {
+    scheduler.post(new AddToTranscript("one"));
+    scheduler.post(new AddToTranscript("two"));
+    scheduler.post(new AddToTranscript("three"));
+    scheduler.runOneTask();
+    scheduler.unPause();
+    scheduler.post(new AddToTranscript("four"));
+
+    assertThat(scheduler.getRunTaskCount()).isEqualTo(4);
+    assertThat(scheduler.getMaxQueueDepth()).isEqualTo(3);
+    assertThat(scheduler.size()).isEqualTo(0);
+
+    scheduler.reset();
+    assertThat(scheduler.getRunTaskCount()).isEqualTo(0);
+    assertThat(scheduler.getMaxQueueDepth()).isEqualTo(0);
+  }
+
+  private static String[] numbered(String prefix, int count) {
+    String[] events = new String[count];
+    for (int i = 0; i < count; i++) {
+      events[i] = prefix + i;
+    }
+    return events;
+  }
+
   private class AddToTranscript implements Runnable {
     private String event;
 